@@ -2,6 +2,7 @@ package ma.fst.aiquakeproject;
 
 import android.Manifest;
 import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Bundle;
 import android.widget.Toast;
 
@@ -15,6 +16,8 @@ import androidx.fragment.app.Fragment;
 
 import com.google.android.material.navigation.NavigationView;
 
+import java.util.Arrays;
+
 public class MainActivity extends AppCompatActivity {
 
     private DrawerLayout drawerLayout;
@@ -51,6 +54,8 @@ public class MainActivity extends AppCompatActivity {
                 loadFragment(new ma.fst.aiquakeproject.fragments.DetectionFragment());
             } else if (id == R.id.nav_settings) {
                 loadFragment(new ma.fst.aiquakeproject.fragments.SettingsFragment());
+            } else if (id == R.id.nav_diagnostics) {
+                loadFragment(new ma.fst.aiquakeproject.fragments.DiagnosticsFragment());
             } else {
                 Toast.makeText(this, "Unknown menu item", Toast.LENGTH_SHORT).show();
             }
@@ -66,11 +71,15 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void requestPermissions() {
-        ActivityCompat.requestPermissions(this,
-                new String[]{Manifest.permission.ACCESS_FINE_LOCATION,
-                        Manifest.permission.WRITE_EXTERNAL_STORAGE,
-                        Manifest.permission.READ_EXTERNAL_STORAGE},
-                1);
+        String[] permissions = {Manifest.permission.ACCESS_FINE_LOCATION,
+                Manifest.permission.WRITE_EXTERNAL_STORAGE,
+                Manifest.permission.READ_EXTERNAL_STORAGE};
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            // The step detector needs it from Android 10 on; the detector starts using it on its next start
+            permissions = Arrays.copyOf(permissions, permissions.length + 1);
+            permissions[permissions.length - 1] = Manifest.permission.ACTIVITY_RECOGNITION;
+        }
+        ActivityCompat.requestPermissions(this, permissions, 1);
     }
 
     private void loadFragment(Fragment fragment) {
@@ -0,0 +1,32 @@
+package ma.fst.aiquakeproject;
+
+import android.app.Application;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import ma.fst.aiquakeproject.detection.DetectionService;
+import ma.fst.aiquakeproject.metrics.PipelineMetrics;
+import ma.fst.aiquakeproject.metrics.StartupTrace;
+
+/**
+ * Starts monitoring as soon as the process exists, so the detector is warming
+ * up while the first screen is still inflating. The engine lives in the
+ * {@link DetectionService} for the life of the process; screens only bind to it.
+ */
+public class QuakeApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        StartupTrace startup = PipelineMetrics.get().startup;
+        startup.setProcessStart(Process.getStartElapsedRealtime());
+        startup.mark(StartupTrace.Mark.APPLICATION, SystemClock.elapsedRealtime());
+        try {
+            DetectionService.start(this);
+        } catch (IllegalStateException e) {
+            // Process started in the background; the first screen starts it again
+            Log.w("DETECTION", "Cannot start monitoring yet: " + e.getMessage());
+        }
+    }
+}
@@ -1,16 +1,46 @@
 package ma.fst.aiquakeproject;
 
+import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.view.animation.Animation;
 import android.view.animation.AnimationUtils;
 import android.widget.ImageView;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import ma.fst.aiquakeproject.detection.DetectionService;
+import ma.fst.aiquakeproject.metrics.PipelineMetrics;
+import ma.fst.aiquakeproject.metrics.StartupTrace;
+
+/**
+ * Shown until the {@link DetectionService} is up, which by then has the
+ * accelerometer registered, and at most {@link #MAX_SPLASH_MS}.
+ */
 public class SplashActivity extends AppCompatActivity {
 
+    private static final long MAX_SPLASH_MS = 2000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean bound = false;
+    private boolean dismissed = false;
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            dismiss();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {}
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -24,12 +54,27 @@ public class SplashActivity extends AppCompatActivity {
             logo.startAnimation(fadeIn);
         });
 
+        // Already running unless the application could not start it from the background
+        DetectionService.start(this);
+        bound = bindService(new Intent(this, DetectionService.class), connection, Context.BIND_AUTO_CREATE);
+        handler.postDelayed(this::dismiss, MAX_SPLASH_MS);
+    }
+
+    private void dismiss() {
+        if (dismissed) return;
+        dismissed = true;
+        PipelineMetrics.get().startup.mark(StartupTrace.Mark.SPLASH_DISMISSED, SystemClock.elapsedRealtime());
+        startActivity(new Intent(SplashActivity.this, MainActivity.class));
+        finish();
+    }
 
-        // Move to MainActivity after animation
-        new Handler().postDelayed(() -> {
-            Intent intent = new Intent(SplashActivity.this, MainActivity.class);
-            startActivity(intent);
-            finish();
-        }, 2000);
+    @Override
+    protected void onDestroy() {
+        handler.removeCallbacksAndMessages(null);
+        if (bound) {
+            unbindService(connection);
+            bound = false;
+        }
+        super.onDestroy();
     }
 }
@@ -0,0 +1,672 @@
+package ma.fst.aiquakeproject.detection;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.hardware.TriggerEvent;
+import android.hardware.TriggerEventListener;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ma.fst.aiquakeproject.dsp.DetectionEngine;
+import ma.fst.aiquakeproject.dsp.DetectorConfig;
+import ma.fst.aiquakeproject.dsp.DetectorState;
+import ma.fst.aiquakeproject.dsp.HandlingGate;
+import ma.fst.aiquakeproject.dsp.NoiseFloor;
+import ma.fst.aiquakeproject.dsp.QuakeMonitor;
+import ma.fst.aiquakeproject.dsp.Resampler;
+import ma.fst.aiquakeproject.dsp.SampleBatch;
+import ma.fst.aiquakeproject.dsp.SamplingController;
+import ma.fst.aiquakeproject.dsp.StaLtaTrigger;
+import ma.fst.aiquakeproject.dsp.StumpEnsemble;
+import ma.fst.aiquakeproject.dsp.ThresholdClassifier;
+import ma.fst.aiquakeproject.dsp.WaveformCapture;
+import ma.fst.aiquakeproject.dsp.WaveformRing;
+import ma.fst.aiquakeproject.metrics.PipelineMetrics;
+import ma.fst.aiquakeproject.metrics.SampleProbe;
+import ma.fst.aiquakeproject.metrics.StartupTrace;
+import ma.fst.aiquakeproject.net.TelemetryFrame;
+import ma.fst.aiquakeproject.net.TelemetryStream;
+import ma.fst.aiquakeproject.utils.FlightRecorder;
+
+/**
+ * Owns a dedicated looper for accelerometer delivery and runs the whole
+ * feature and confirmation pipeline there. Only state changes reach the main
+ * thread, through a {@link StateHandoff}.
+ *
+ * <p>The accelerometer is registered with a max report latency so the sensor
+ * hub can hold samples in its FIFO while the application processor sleeps.
+ * Events of one delivery are only copied into a {@link SampleBatch}; the batch
+ * is processed in one pass when the looper goes idle.
+ *
+ * <p>The detector itself runs on a {@link Resampler} grid at the configured
+ * rate ({@link DetectionEngine#SAMPLING_RATE} by default), timed by sensor
+ * timestamps, so the filter corners and the confirmation window don't depend
+ * on the rate the device happens to deliver.
+ *
+ * <p>A {@link SamplingController} runs the sensor at a low, batched rate while
+ * the STA/LTA gate is closed, and re-registers it at a burst rate as soon as
+ * the gate opens. The grid hides the switch from the detector.
+ *
+ * <p>While a {@link FlightRecorder} is attached every raw sample is also
+ * written to it from the same pass. Every sample also goes into an always-on
+ * {@link WaveformRing}, from which the waveform around a confirmed quake is
+ * captured.
+ *
+ * <p>Windows are classified by the {@link StumpEnsemble} in
+ * {@value #CLASSIFIER_ASSET} when the APK ships one, and by the
+ * {@link ThresholdClassifier} rule otherwise.
+ *
+ * <p>{@link #setConfig} publishes a new {@link DetectorConfig} through one
+ * atomic reference, which the detection thread checks once per batch.
+ *
+ * <p>The monitor learns the device's {@link NoiseFloor}, which is loaded from
+ * {@value #NOISE_FLOOR_FILE} at start and saved there every
+ * {@link #NOISE_SAVE_INTERVAL_NS} of sensor time and at stop.
+ *
+ * <p>A {@link HandlingGate} keeps the monitor from evaluating while someone
+ * handles the phone. It is fed by the step detector and the significant-motion
+ * trigger, which run on the sensor hub, by a gyroscope at
+ * {@value #GYRO_RATE_HZ} Hz that is only on while sampling at the burst rate,
+ * and by the stationary-detect trigger, armed after handling to end it early.
+ * Whatever is missing on a device is simply not used. Confirmations carry the
+ * gate's state, and the evidence goes to the flight recorder with the samples.
+ *
+ * <p>Arrival jitter, stage timings and drop counts go to the process
+ * {@link PipelineMetrics} through a {@link SampleProbe}, and the first
+ * sample and first evaluated window to its {@link StartupTrace}.
+ */
+public class DetectionPipeline implements SensorEventListener, QuakeMonitor.Listener {
+
+    public interface ConfirmationHandler {
+        /**
+         * Called on the detection thread. The waveform captured for this
+         * detection is later delivered with the same {@code detectionId}.
+         *
+         * @param timestampNs sensor timestamp of the sample that confirmed it
+         * @param handling whether the device had been handled shortly before
+         */
+        void onQuakeConfirmed(String detectionId, long timestampNs, float energy, float variance, int peakCount,
+                              HandlingGate.State handling);
+    }
+
+    // Idle latency bounds how late the trigger sees an onset, and so the escalation
+    private static final int IDLE_REPORT_LATENCY_US = 1_000_000;
+    private static final int BURST_REPORT_LATENCY_US = 200_000;
+    // Between the idle and burst periods: a sample this close to the previous came at burst rate
+    private static final long BURST_DT_NS = 1_000_000_000L / SamplingController.IDLE_RATE_HZ / 2;
+    private static final int BATCH_CAPACITY = 1024;
+    private static final long STATS_INTERVAL_NS = 60_000_000_000L;
+
+    static final String CLASSIFIER_ASSET = "models/classifier.aqm";
+    static final String NOISE_FLOOR_FILE = "noise-floor.bin";
+    private static final long NOISE_SAVE_INTERVAL_NS = 10 * 60_000_000_000L;
+
+    static final int GYRO_RATE_HZ = 5;
+
+    private static final long POST_EVENT_NS = 10_000_000_000L;
+    // Sized for the fastest rate SENSOR_DELAY_GAME delivers on common devices
+    private static final int MAX_SAMPLING_RATE_HZ = 200;
+
+    private final SensorManager sensorManager;
+    private final Sensor accelerometer;
+    // Each null where the device lacks it
+    private final Sensor stepDetector;
+    private final Sensor gyroscope;
+    private final Sensor significantMotion;
+    private final Sensor stationaryDetect;
+    private final QuakeMonitor monitor;
+    // Null when no model is shipped
+    private final StumpEnsemble model;
+    private final AtomicReference<DetectorConfig> config = new AtomicReference<>(DetectorConfig.DEFAULTS);
+    // Only touched on the detection thread
+    private DetectorConfig appliedConfig = DetectorConfig.DEFAULTS;
+    private final SamplingController samplingController = new SamplingController(this::onModeChanged);
+    private final Resampler resampler = new Resampler(DetectionEngine.SAMPLING_RATE, Resampler.MAX_GAP_NS,
+            (timestampNs, x, y, z) -> {
+                this.monitor.onAcceleration(x, y, z, timestampNs / 1_000_000L);
+                samplingController.update(timestampNs, this.monitor.isGateOpen());
+            });
+    private final BatteryManager batteryManager;
+    private final SampleBatch batch = new SampleBatch(BATCH_CAPACITY);
+    private final StateHandoff handoff;
+    private final ConfirmationHandler confirmationHandler;
+    private final WaveformRing waveformRing;
+    private final WaveformCapture waveformCapture;
+    private final PipelineMetrics metrics = PipelineMetrics.get();
+    // Only touched on the detection thread
+    private final NoiseFloor noiseFloor = new NoiseFloor();
+    private final File noiseFloorFile;
+    private final Executor ioExecutor;
+    private long noiseSavedNs = -1;
+    private final SampleProbe probe = new SampleProbe(metrics);
+    private long currentTimestampNs;
+    // Only touched on the detection thread
+    private final HandlingGate handlingGate = new HandlingGate();
+    private boolean stationaryArmed = false;
+    private final SensorEventListener handlingListener = new SensorEventListener() {
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            long nowMs = event.timestamp / 1_000_000L;
+            if (event.sensor.getType() == Sensor.TYPE_STEP_DETECTOR) {
+                onHandling(HandlingGate.Evidence.STEP, event.timestamp);
+            } else if (handlingGate.onRotation(event.values[0], event.values[1], event.values[2], nowMs)) {
+                onEvidenceRecorded(HandlingGate.Evidence.ROTATION, event.timestamp);
+            }
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+    };
+    // One-shot sensors report on the main thread and have to be re-armed
+    private final TriggerEventListener motionTrigger = new TriggerEventListener() {
+        @Override
+        public void onTrigger(TriggerEvent event) {
+            Handler h = handler;
+            if (h == null) return;
+            long timestamp = event.timestamp;
+            h.post(() -> onHandling(HandlingGate.Evidence.SIGNIFICANT_MOTION, timestamp));
+            sensorManager.requestTriggerSensor(this, significantMotion);
+        }
+    };
+    private final TriggerEventListener stationaryTrigger = new TriggerEventListener() {
+        @Override
+        public void onTrigger(TriggerEvent event) {
+            Handler h = handler;
+            if (h == null) return;
+            long timestamp = event.timestamp;
+            h.post(() -> {
+                stationaryArmed = false;
+                onHandling(HandlingGate.Evidence.STATIONARY, timestamp);
+            });
+        }
+    };
+    // Set from any thread; frames are cut by sensor time on the detection thread
+    private volatile TelemetryStream telemetry;
+    private volatile long telemetryIntervalNs = 0;
+    // Only touched on the detection thread
+    private long telemetryStartNs = -1;
+    private long telemetryDueNs = Long.MIN_VALUE;
+    private int telemetrySamples = 0;
+    // Only touched on the detection thread; set once the classifier saw a full window
+    private boolean warm = false;
+
+    private HandlerThread thread;
+    private Handler handler;
+    // Only touched on the detection thread
+    private FlightRecorder recorder;
+    private long statsStartNs = -1;
+    private long statsBatches = 0;
+    private long statsSamples = 0;
+    private long statsGaps = 0;
+    private long statsDuplicates = 0;
+    private long statsCharge = Long.MIN_VALUE;
+    private long statsModeChanges = 0;
+    private long modeChanges = 0;
+    // Battery drain attributed to intervals spent entirely in one mode
+    private final long[] drainUah = new long[SamplingController.Mode.values().length];
+    private final long[] drainNs = new long[SamplingController.Mode.values().length];
+    // Escalation in progress: trigger time, and last raw sample before the switch
+    private long escalationTriggerNs = -1;
+    private long escalationMaxGapNs = 0;
+    private long previousSampleNs = -1;
+
+    private final MessageQueue.IdleHandler drainOnIdle = () -> {
+        processBatch();
+        return true;
+    };
+
+    /**
+     * @param preEventSeconds how much signal before confirmation the captured waveform holds
+     * @param captureExecutor runs the waveform copy and {@code waveformListener}
+     */
+    public DetectionPipeline(Context context, ConfirmationHandler confirmationHandler, int preEventSeconds,
+                             Executor captureExecutor, WaveformCapture.Listener waveformListener) {
+        sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        Sensor wakeUp = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER, true);
+        accelerometer = wakeUp != null ? wakeUp : sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        stepDetector = sensorManager.getDefaultSensor(Sensor.TYPE_STEP_DETECTOR);
+        gyroscope = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+        significantMotion = sensorManager.getDefaultSensor(Sensor.TYPE_SIGNIFICANT_MOTION);
+        stationaryDetect = sensorManager.getDefaultSensor(Sensor.TYPE_STATIONARY_DETECT);
+        batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+        model = loadModel(context);
+        monitor = new QuakeMonitor(this, QuakeMonitor.REQUIRED_STREAK, QuakeMonitor.MIN_DETECTION_TIME_MS,
+                new StaLtaTrigger(DetectionEngine.SAMPLING_RATE),
+                model != null ? model : new ThresholdClassifier());
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        handoff = new StateHandoff(mainHandler::post);
+        this.confirmationHandler = confirmationHandler;
+        noiseFloorFile = new File(context.getFilesDir(), NOISE_FLOOR_FILE);
+        ioExecutor = captureExecutor;
+
+        long preEventNs = preEventSeconds * 1_000_000_000L;
+        // Slack so the pre-event start survives until the tail is in
+        int ringSeconds = preEventSeconds + 2 * (int) (POST_EVENT_NS / 1_000_000_000L);
+        // Plus a second the writer may run ahead while a copy is taken
+        waveformRing = new WaveformRing((ringSeconds + 1) * MAX_SAMPLING_RATE_HZ, MAX_SAMPLING_RATE_HZ);
+        waveformCapture = new WaveformCapture(waveformRing, preEventNs, POST_EVENT_NS,
+                captureExecutor, waveformListener);
+    }
+
+    private static StumpEnsemble loadModel(Context context) {
+        try (InputStream in = context.getAssets().open(CLASSIFIER_ASSET)) {
+            StumpEnsemble model = StumpEnsemble.read(in);
+            Log.i("DETECTION", "Loaded classifier with " + model.size() + " stumps");
+            return model;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.e("DETECTION", "Unusable classifier model, using thresholds", e);
+            return null;
+        }
+    }
+
+    /** Applies {@code next} from the next batch on; callable from any thread. */
+    public void setConfig(DetectorConfig next) {
+        if (!next.equals(config.get())) config.set(next);
+    }
+
+    // Runs on the detection thread, between batches
+    private void applyConfig(DetectorConfig next) {
+        monitor.configure(next, model != null ? model : new ThresholdClassifier(next));
+        if (next.samplingRate != appliedConfig.samplingRate) resampler.setRate(next.samplingRate);
+        Log.i("DETECTION", "Detector config " + (next.sameSignalPath(appliedConfig) ? "updated" : "rebuilt"));
+        appliedConfig = next;
+    }
+
+    /**
+     * Sends a {@link TelemetryFrame} to {@code stream} every {@code intervalMs}
+     * of sensor time; null or 0 stops it. Callable from any thread.
+     */
+    public void setTelemetry(TelemetryStream stream, long intervalMs) {
+        telemetryIntervalNs = intervalMs * 1_000_000L;
+        telemetry = intervalMs > 0 ? stream : null;
+    }
+
+    /** Attaches the UI observer, or detaches it with null. Call from the main thread. */
+    public void setObserver(StateHandoff.Observer observer) {
+        handoff.setObserver(observer);
+    }
+
+    public void start() {
+        if (thread != null) return;
+        thread = new HandlerThread("detection", Process.THREAD_PRIORITY_DISPLAY);
+        thread.start();
+        Looper looper = thread.getLooper();
+        handler = new Handler(looper);
+        handler.post(() -> {
+            monitor.reset();
+            resampler.reset();
+            samplingController.reset();
+            probe.reset();
+            loadNoiseFloor();
+            monitor.setNoiseFloor(noiseFloor);
+            registerHandling();
+            looper.getQueue().addIdleHandler(drainOnIdle);
+        });
+        register(samplingController.getMode());
+        metrics.startup.mark(StartupTrace.Mark.SENSOR, SystemClock.elapsedRealtime());
+        Log.i("DETECTION", "Registered " + accelerometer.getName()
+                + (accelerometer.isWakeUpSensor() ? " (wake-up)" : "")
+                + ", FIFO " + accelerometer.getFifoMaxEventCount());
+    }
+
+    private void register(SamplingController.Mode mode) {
+        boolean burst = mode == SamplingController.Mode.BURST;
+        int rateHz = burst ? SamplingController.BURST_RATE_HZ : SamplingController.IDLE_RATE_HZ;
+        sensorManager.registerListener(this, accelerometer, 1_000_000 / rateHz,
+                burst ? BURST_REPORT_LATENCY_US : IDLE_REPORT_LATENCY_US, handler);
+    }
+
+    // Runs on the detection thread. Without ACTIVITY_RECOGNITION the step detector is refused.
+    private void registerHandling() {
+        handlingGate.reset();
+        stationaryArmed = false;
+        boolean steps = stepDetector != null && sensorManager.registerListener(handlingListener, stepDetector,
+                SensorManager.SENSOR_DELAY_NORMAL, IDLE_REPORT_LATENCY_US, handler);
+        boolean motion = significantMotion != null && sensorManager.requestTriggerSensor(motionTrigger, significantMotion);
+        handlingGate.setAvailable(steps || motion || gyroscope != null);
+        monitor.setHandlingGate(handlingGate);
+        Log.i("DETECTION", "Handling gate: steps " + steps + ", significant motion " + motion
+                + ", gyroscope " + (gyroscope != null) + ", stationary " + (stationaryDetect != null));
+    }
+
+    private void unregisterHandling() {
+        sensorManager.unregisterListener(handlingListener);
+        if (significantMotion != null) sensorManager.cancelTriggerSensor(motionTrigger, significantMotion);
+        if (stationaryDetect != null) sensorManager.cancelTriggerSensor(stationaryTrigger, stationaryDetect);
+    }
+
+    // Runs on the detection thread
+    private void onHandling(HandlingGate.Evidence evidence, long timestampNs) {
+        handlingGate.onEvidence(evidence, timestampNs / 1_000_000L);
+        onEvidenceRecorded(evidence, timestampNs);
+    }
+
+    private void onEvidenceRecorded(HandlingGate.Evidence evidence, long timestampNs) {
+        if (recorder != null) recorder.recordHandling(timestampNs, evidence.code);
+        if (evidence != HandlingGate.Evidence.STATIONARY && !stationaryArmed && stationaryDetect != null) {
+            stationaryArmed = sensorManager.requestTriggerSensor(stationaryTrigger, stationaryDetect);
+        }
+    }
+
+    // Runs on the detection thread, from inside processBatch
+    private void onModeChanged(SamplingController.Mode mode, long nowNs) {
+        if (handler == null) return;
+        modeChanges++;
+        sensorManager.unregisterListener(this);
+        register(mode);
+        if (gyroscope != null) {
+            if (mode == SamplingController.Mode.BURST) {
+                sensorManager.registerListener(handlingListener, gyroscope, 1_000_000 / GYRO_RATE_HZ,
+                        BURST_REPORT_LATENCY_US, handler);
+            } else {
+                sensorManager.unregisterListener(handlingListener, gyroscope);
+            }
+        }
+        if (mode == SamplingController.Mode.BURST) {
+            escalationTriggerNs = nowNs;
+            escalationMaxGapNs = 0;
+        }
+        Log.i("DETECTION", "Sampling mode " + mode);
+    }
+
+    public void stop() {
+        stop(() -> {});
+    }
+
+    /** Stops sampling; {@code onStopped} is the last thing to run on the detection thread. */
+    public void stop(Runnable onStopped) {
+        if (thread == null) {
+            onStopped.run();
+            return;
+        }
+        sensorManager.unregisterListener(this);
+        unregisterHandling();
+        handler.post(() -> {
+            closeRecorder();
+            writeNoiseFloor(serializeNoiseFloor());
+            onStopped.run();
+        });
+        thread.quitSafely();
+        thread = null;
+        handler = null;
+    }
+
+    /** Starts writing raw samples to {@code recorder}, replacing any current one. */
+    public void startRecording(FlightRecorder recorder) {
+        if (handler == null) {
+            recorder.close();
+            return;
+        }
+        handler.post(() -> {
+            closeRecorder();
+            this.recorder = recorder;
+        });
+    }
+
+    /** Stops recording; {@code onStopped} runs on the detection thread once the recorder is closed. */
+    public void stopRecording(Runnable onStopped) {
+        if (handler == null) {
+            onStopped.run();
+            return;
+        }
+        handler.post(() -> {
+            closeRecorder();
+            onStopped.run();
+        });
+    }
+
+    private void closeRecorder() {
+        if (recorder != null) {
+            recorder.close();
+            recorder = null;
+        }
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        if (batch.add(event.timestamp, event.values[0], event.values[1], event.values[2])) {
+            processBatch();
+        }
+    }
+
+    private void processBatch() {
+        int size = batch.size();
+        if (size == 0) return;
+        DetectorConfig next = config.get();
+        if (next != appliedConfig) applyConfig(next);
+
+        long batchStartNs = System.nanoTime();
+        FlightRecorder rec = recorder;
+        TelemetryStream stream = telemetry;
+        long telemetryNs = telemetryIntervalNs;
+        if (stream == null) {
+            telemetryStartNs = -1;
+            telemetryDueNs = Long.MIN_VALUE;
+        }
+        for (int i = 0; i < size; i++) {
+            long timestamp = batch.timestamp(i);
+            float x = batch.x(i);
+            float y = batch.y(i);
+            float z = batch.z(i);
+            boolean timed = probe.onSample(timestamp);
+            long startNs = timed ? System.nanoTime() : 0;
+            if (rec != null) rec.recordSample(timestamp, x, y, z);
+            waveformRing.add(timestamp, x, y, z);
+            waveformCapture.onSample(timestamp);
+            long ingestedNs = timed ? System.nanoTime() : 0;
+            currentTimestampNs = timestamp;
+            if (escalationTriggerNs >= 0) checkEscalation(timestamp);
+            previousSampleNs = timestamp;
+            // Sensor time, not wall time: a whole batch is processed at once
+            resampler.add(timestamp, x, y, z);
+            if (timed) probe.onStages(startNs, ingestedNs, System.nanoTime());
+            telemetrySamples++;
+            if (stream != null && timestamp >= telemetryDueNs) emitTelemetry(stream, telemetryNs, timestamp);
+        }
+        long lastNs = batch.timestamp(size - 1);
+        batch.clear();
+        probe.onBatch(System.nanoTime() - batchStartNs, resampler.getGapCount(), resampler.getDuplicateCount());
+        if (!warm) checkWarm();
+        saveNoiseFloor(lastNs);
+        logWakeups(lastNs);
+    }
+
+    // The first call only starts the interval
+    private void emitTelemetry(TelemetryStream stream, long intervalNs, long timestampNs) {
+        long elapsedNs = timestampNs - telemetryStartNs;
+        if (telemetryStartNs >= 0 && elapsedNs > 0) {
+            int flags = (monitor.isGateOpen() ? TelemetryFrame.GATE_OPEN : 0)
+                    | (monitor.isHandled() ? TelemetryFrame.HANDLED : 0);
+            int battery = TelemetryFrame.UNKNOWN_BATTERY;
+            if (batteryManager != null) {
+                int capacity = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
+                if (capacity > 0 && capacity <= 100) battery = capacity;
+                if (batteryManager.isCharging()) flags |= TelemetryFrame.CHARGING;
+            }
+            // Sensor time is elapsed realtime; the dashboard wants wall time
+            long wallMs = System.currentTimeMillis()
+                    - (SystemClock.elapsedRealtimeNanos() - timestampNs) / 1_000_000L;
+            stream.offer(wallMs, monitor.getShortTermRms(), monitor.getTriggerRatio(),
+                    telemetrySamples * 1e9f / elapsedNs, battery, flags);
+        }
+        telemetryStartNs = timestampNs;
+        telemetryDueNs = timestampNs + intervalNs;
+        telemetrySamples = 0;
+    }
+
+    private void loadNoiseFloor() {
+        try (InputStream in = new FileInputStream(noiseFloorFile)) {
+            noiseFloor.read(in);
+            Log.i("DETECTION", "Noise floor: " + Math.round(noiseFloor.getSeconds() / 60) + " min known, p99 energy "
+                    + noiseFloor.energyQuantile());
+        } catch (FileNotFoundException e) {
+            // First start: the floor is learned from scratch
+        } catch (IOException e) {
+            Log.w("DETECTION", "Unusable noise floor, learning it again", e);
+        }
+    }
+
+    // The copy is taken here; the write runs on the I/O executor
+    private void saveNoiseFloor(long nowNs) {
+        if (noiseSavedNs < 0) noiseSavedNs = nowNs;
+        if (nowNs - noiseSavedNs < NOISE_SAVE_INTERVAL_NS) return;
+        noiseSavedNs = nowNs;
+        byte[] state = serializeNoiseFloor();
+        ioExecutor.execute(() -> writeNoiseFloor(state));
+        Log.i("DETECTION", "Noise floor p99 energy " + noiseFloor.energyQuantile()
+                + ", variance " + noiseFloor.varianceQuantile());
+    }
+
+    private byte[] serializeNoiseFloor() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        try {
+            noiseFloor.write(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    // From the I/O executor, and from the detection thread at stop
+    private void writeNoiseFloor(byte[] state) {
+        synchronized (noiseFloorFile) {
+            File temp = new File(noiseFloorFile.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(temp)) {
+                out.write(state);
+            } catch (IOException e) {
+                Log.w("DETECTION", "Cannot save the noise floor", e);
+                return;
+            }
+            if (!temp.renameTo(noiseFloorFile)) Log.w("DETECTION", "Cannot replace " + noiseFloorFile);
+        }
+    }
+
+    private void checkWarm() {
+        long nowMs = SystemClock.elapsedRealtime();
+        metrics.startup.mark(StartupTrace.Mark.FIRST_SAMPLE, nowMs);
+        if (monitor.getWindowCount() == 0) return;
+        warm = true;
+        if (metrics.startup.mark(StartupTrace.Mark.FIRST_WINDOW, nowMs)) {
+            Log.i("DETECTION", "First window evaluated "
+                    + metrics.startup.sinceStartMs(StartupTrace.Mark.FIRST_WINDOW) + " ms after process start");
+        }
+    }
+
+    // Until the burst rate arrives the onset is only seen at the idle rate, and
+    // re-registering may drop samples; both are logged once the burst rate is in
+    private void checkEscalation(long timestampNs) {
+        if (timestampNs <= escalationTriggerNs) return;
+        long dt = timestampNs - previousSampleNs;
+        if (dt >= BURST_DT_NS) {
+            escalationMaxGapNs = Math.max(escalationMaxGapNs, dt);
+            return;
+        }
+        Log.i("DETECTION", "Burst rate " + (timestampNs - escalationTriggerNs) / 1_000_000L
+                + " ms after the trigger, longest gap " + escalationMaxGapNs / 1_000_000L + " ms");
+        escalationTriggerNs = -1;
+    }
+
+    private void logWakeups(long nowNs) {
+        if (statsStartNs < 0) {
+            statsStartNs = nowNs;
+            statsBatches = batch.getBatchCount();
+            statsSamples = batch.getSampleCount();
+            statsGaps = resampler.getGapCount();
+            statsDuplicates = resampler.getDuplicateCount();
+            statsCharge = chargeCounter();
+            statsModeChanges = modeChanges;
+            return;
+        }
+        if (nowNs - statsStartNs < STATS_INTERVAL_NS) return;
+
+        long batches = batch.getBatchCount() - statsBatches;
+        long samples = batch.getSampleCount() - statsSamples;
+        float minutes = (nowNs - statsStartNs) / 60_000_000_000f;
+        Log.i("DETECTION", "Wakeups/min: " + (batches / minutes)
+                + ", samples/wakeup: " + (batches > 0 ? samples / batches : 0)
+                + ", sensor Hz: " + (samples / (minutes * 60))
+                + ", gaps: " + (resampler.getGapCount() - statsGaps)
+                + ", duplicates: " + (resampler.getDuplicateCount() - statsDuplicates));
+        statsBatches = batch.getBatchCount();
+        statsSamples = batch.getSampleCount();
+        statsGaps = resampler.getGapCount();
+        statsDuplicates = resampler.getDuplicateCount();
+        logDrain(nowNs - statsStartNs);
+        statsStartNs = nowNs;
+    }
+
+    private void logDrain(long intervalNs) {
+        long charge = chargeCounter();
+        if (modeChanges == statsModeChanges && charge != Long.MIN_VALUE && statsCharge != Long.MIN_VALUE
+                && !batteryManager.isCharging()) {
+            int mode = samplingController.getMode().ordinal();
+            drainUah[mode] += statsCharge - charge;
+            drainNs[mode] += intervalNs;
+        }
+        statsCharge = charge;
+        statsModeChanges = modeChanges;
+
+        StringBuilder sb = new StringBuilder("Battery mAh/h:");
+        for (SamplingController.Mode m : SamplingController.Mode.values()) {
+            int i = m.ordinal();
+            sb.append(' ').append(m).append(' ');
+            sb.append(drainNs[i] > 0 ? String.valueOf(drainUah[i] * 3600e6 / drainNs[i]) : "-");
+        }
+        Log.i("DETECTION", sb.toString());
+    }
+
+    // µAh, or Long.MIN_VALUE where the fuel gauge doesn't report it
+    private long chargeCounter() {
+        if (batteryManager == null) return Long.MIN_VALUE;
+        long value = batteryManager.getLongProperty(BatteryManager.BATTERY_PROPERTY_CHARGE_COUNTER);
+        return value <= 0 ? Long.MIN_VALUE : value;
+    }
+
+    public long getBatchCount() {
+        return batch.getBatchCount();
+    }
+
+    public long getSampleCount() {
+        return batch.getSampleCount();
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+
+    @Override
+    public void onStateChanged(DetectorState state, int seconds) {
+        handoff.publish(state, seconds);
+    }
+
+    @Override
+    public void onQuakeConfirmed(float energy, float variance, int peakCount) {
+        String detectionId = UUID.randomUUID().toString();
+        metrics.confirmations.getAndIncrement();
+        waveformCapture.trigger(detectionId, currentTimestampNs);
+        confirmationHandler.onQuakeConfirmed(detectionId, currentTimestampNs, energy, variance, peakCount,
+                handlingGate.state(currentTimestampNs / 1_000_000L));
+    }
+}
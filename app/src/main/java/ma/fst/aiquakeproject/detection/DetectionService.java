@@ -0,0 +1,393 @@
+package ma.fst.aiquakeproject.detection;
+
+import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.os.Binder;
+import android.os.Build;
+import android.os.IBinder;
+import android.os.SystemClock;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.core.app.ActivityCompat;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import ma.fst.aiquakeproject.R;
+import ma.fst.aiquakeproject.dsp.HandlingGate;
+import ma.fst.aiquakeproject.dsp.Waveform;
+import ma.fst.aiquakeproject.metrics.MetricsLog;
+import ma.fst.aiquakeproject.metrics.MetricsSnapshot;
+import ma.fst.aiquakeproject.metrics.PipelineMetrics;
+import ma.fst.aiquakeproject.metrics.StartupTrace;
+import ma.fst.aiquakeproject.net.DetectionRecord;
+import ma.fst.aiquakeproject.net.DetectionUploadQueue;
+import ma.fst.aiquakeproject.net.MetricsUploader;
+import ma.fst.aiquakeproject.net.SharedHttpClient;
+import ma.fst.aiquakeproject.net.TelemetryStream;
+import ma.fst.aiquakeproject.net.WaveformCodec;
+import ma.fst.aiquakeproject.net.WaveformUploadQueue;
+import ma.fst.aiquakeproject.utils.FlightRecordExporter;
+import ma.fst.aiquakeproject.utils.FlightRecorder;
+
+/**
+ * Foreground service that owns the sensor pipeline, so monitoring keeps
+ * running when the detection screen is gone or the display is off. Screens
+ * bind to it and observe the state through {@link #setObserver}.
+ *
+ * <p>Every {@value #METRICS_INTERVAL_S} s a {@link PipelineMetrics} snapshot is
+ * appended to {@code files/metrics.jsonl} and posted to the dashboard.
+ */
+public class DetectionService extends Service {
+
+    private static final String SERVICE_CHANNEL_ID = "detection_service";
+    private static final String ALERT_CHANNEL_ID = "quake_alerts";
+    private static final int SERVICE_NOTIFICATION_ID = 2;
+
+    private static final int PRE_EVENT_SECONDS = 30;
+
+    private static final int RECORDING_SEGMENT_BYTES = 4 * 1024 * 1024;
+    private static final long RECORDING_MAX_BYTES = 256L * 1024 * 1024;
+
+    private static final long METRICS_INTERVAL_S = 60;
+    private static final long METRICS_LOG_BYTES = 1024 * 1024;
+
+    public class LocalBinder extends Binder {
+        public DetectionService getService() {
+            return DetectionService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+
+    private DetectionPipeline pipeline;
+    private LocationTracker locationTracker;
+
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private final ScheduledExecutorService metricsExecutor =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "metrics"));
+    private final PipelineMetrics metrics = PipelineMetrics.get();
+    private MetricsLog metricsLog;
+    private MetricsUploader metricsUploader;
+    private volatile FlightRecorder recorder;
+    private WaveformUploadQueue waveformQueue;
+    private DetectionUploadQueue uploadQueue;
+    // Null while telemetry is off; main thread only
+    private TelemetryStream telemetry;
+    private DetectorSettings settings;
+    private volatile String deviceId;
+
+    // Held here because SharedPreferences only keeps a weak reference
+    private final SharedPreferences.OnSharedPreferenceChangeListener settingsListener =
+            (prefs, key) -> applySettings();
+
+    public static void start(Context context) {
+        ContextCompat.startForegroundService(context, new Intent(context, DetectionService.class));
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        metrics.startup.mark(StartupTrace.Mark.SERVICE, SystemClock.elapsedRealtime());
+        createNotificationChannels();
+
+        int type = 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+            type |= ServiceInfo.FOREGROUND_SERVICE_TYPE_SPECIAL_USE;
+        }
+        // Claiming the location type without the permission makes startForeground throw
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && hasLocationPermission()) {
+            type |= ServiceInfo.FOREGROUND_SERVICE_TYPE_LOCATION;
+        }
+        ServiceCompat.startForeground(this, SERVICE_NOTIFICATION_ID, buildServiceNotification(), type);
+
+        settings = new DetectorSettings(this);
+        String serverUrl = settings.getServerUrl();
+        deviceId = settings.getDeviceId();
+        try {
+            uploadQueue = new DetectionUploadQueue(new File(getFilesDir(), "upload-queue"),
+                    SharedHttpClient.get(), serverUrl);
+            waveformQueue = new WaveformUploadQueue(new File(getFilesDir(), "waveform-queue"),
+                    SharedHttpClient.get(), serverUrl, uploadQueue);
+        } catch (IOException e) {
+            Log.e("SERVER", "Cannot open the upload queues", e);
+        }
+
+        pipeline = new DetectionPipeline(this, this::onQuakeConfirmed, PRE_EVENT_SECONDS,
+                ioExecutor, this::onWaveform);
+        pipeline.setConfig(settings.getDetectorConfig());
+        applyTelemetry(serverUrl);
+        pipeline.start();
+
+        metricsLog = new MetricsLog(new File(getFilesDir(), "metrics.jsonl"), METRICS_LOG_BYTES);
+        metricsUploader = new MetricsUploader(SharedHttpClient.get(), serverUrl);
+        metricsExecutor.scheduleWithFixedDelay(this::reportMetrics,
+                METRICS_INTERVAL_S, METRICS_INTERVAL_S, TimeUnit.SECONDS);
+        settings.registerListener(settingsListener);
+
+        locationTracker = new LocationTracker(this, this::onFix);
+        if (hasLocationPermission()) {
+            locationTracker.start();
+        } else {
+            Log.w("GPS", "Location permission not granted");
+        }
+    }
+
+    private boolean hasLocationPermission() {
+        return ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    // Main thread, after the settings screen saved
+    private void applySettings() {
+        pipeline.setConfig(settings.getDetectorConfig());
+        String serverUrl = settings.getServerUrl();
+        metricsUploader.setServerUrl(serverUrl);
+        if (uploadQueue != null) uploadQueue.setServerUrl(serverUrl);
+        if (waveformQueue != null) waveformQueue.setServerUrl(serverUrl);
+        deviceId = settings.getDeviceId();
+        applyTelemetry(serverUrl);
+    }
+
+    // Opens, retargets or closes the live telemetry stream to match the settings
+    private void applyTelemetry(String serverUrl) {
+        long intervalMs = settings.getTelemetryIntervalMs();
+        if (intervalMs <= 0) {
+            if (telemetry == null) return;
+            pipeline.setTelemetry(null, 0);
+            telemetry.close();
+            telemetry = null;
+            return;
+        }
+        if (telemetry == null) {
+            telemetry = new TelemetryStream(SharedHttpClient.get(), serverUrl, settings.getDeviceId());
+            telemetry.start();
+        } else {
+            telemetry.setServerUrl(serverUrl);
+            telemetry.setDeviceId(settings.getDeviceId());
+        }
+        pipeline.setTelemetry(telemetry, intervalMs);
+    }
+
+    // Runs on the metrics thread
+    private void reportMetrics() {
+        MetricsSnapshot snapshot = metrics.snapshot();
+        try {
+            metricsLog.append(snapshot);
+        } catch (IOException e) {
+            Log.w("METRICS", "Cannot write " + metricsLog.getFile(), e);
+        }
+        try {
+            metricsUploader.upload(deviceId, snapshot);
+        } catch (IOException e) {
+            Log.w("SERVER", "Failed to send metrics: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        return START_STICKY;
+    }
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    /** Attaches the UI observer, or detaches it with null. Call from the main thread. */
+    public void setObserver(StateHandoff.Observer observer) {
+        pipeline.setObserver(observer);
+    }
+
+    public boolean isRecording() {
+        return recorder != null;
+    }
+
+    /** Starts a new flight recording of the raw accelerometer stream. */
+    public void startRecording() {
+        if (recorder != null) return;
+        String name = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File dir = new File(getExternalFilesDir("recordings"), name);
+        try {
+            FlightRecorder newRecorder = new FlightRecorder(dir, RECORDING_SEGMENT_BYTES, RECORDING_MAX_BYTES);
+            LocationFix fix = locationTracker.getFix();
+            if (fix != null) newRecorder.updateLocation(fix.latitude, fix.longitude, fix.accuracyM);
+            recorder = newRecorder;
+            pipeline.startRecording(newRecorder);
+            Log.i("RECORDER", "Recording to " + dir);
+        } catch (IOException e) {
+            Log.e("RECORDER", "Failed to start recording", e);
+        }
+    }
+
+    /** Stops the current recording and exports it to CSV next to the segments. */
+    public void stopRecording() {
+        FlightRecorder stopped = recorder;
+        if (stopped == null) return;
+        recorder = null;
+        pipeline.stopRecording(() -> ioExecutor.execute(() -> {
+            File dir = stopped.getDirectory();
+            File csv = new File(dir.getParentFile(), dir.getName() + ".csv");
+            try {
+                long samples = FlightRecordExporter.exportCsv(dir, csv);
+                Log.i("RECORDER", "Exported " + samples + " samples to " + csv);
+            } catch (IOException e) {
+                Log.e("RECORDER", "Failed to export " + dir, e);
+            }
+        }));
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        settings.unregisterListener(settingsListener);
+        metricsExecutor.shutdownNow();
+        stopRecording();
+        if (telemetry != null) {
+            pipeline.setTelemetry(null, 0);
+            telemetry.close();
+        }
+        // Runs last on the detection thread, after any export or capture handoff
+        pipeline.stop(() -> {
+            ioExecutor.shutdown();
+            if (uploadQueue != null) uploadQueue.close();
+            if (waveformQueue != null) waveformQueue.close();
+        });
+        locationTracker.stop();
+    }
+
+    private void createNotificationChannels() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager notificationManager = getSystemService(NotificationManager.class);
+            if (notificationManager == null) return;
+
+            NotificationChannel alerts = new NotificationChannel(
+                    ALERT_CHANNEL_ID,
+                    "Earthquake Alerts",
+                    NotificationManager.IMPORTANCE_HIGH);
+            alerts.setDescription("Alerts for detected earthquakes");
+            notificationManager.createNotificationChannel(alerts);
+
+            NotificationChannel service = new NotificationChannel(
+                    SERVICE_CHANNEL_ID,
+                    "Monitoring",
+                    NotificationManager.IMPORTANCE_LOW);
+            service.setDescription("Shown while the phone is monitoring for earthquakes");
+            notificationManager.createNotificationChannel(service);
+        }
+    }
+
+    private Notification buildServiceNotification() {
+        return new NotificationCompat.Builder(this, SERVICE_CHANNEL_ID)
+                .setSmallIcon(R.drawable.quake_idle)
+                .setContentTitle("QuakeAlert")
+                .setContentText("Monitoring for earthquakes")
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setOngoing(true)
+                .build();
+    }
+
+    // Main thread, when the cached fix changes
+    private void onFix(LocationFix fix) {
+        Log.i("GPS", "Fix from " + fix.provider + ", accuracy " + fix.accuracyM + " m");
+        FlightRecorder current = recorder;
+        if (current != null) current.updateLocation(fix.latitude, fix.longitude, fix.accuracyM);
+    }
+
+    // Runs on the io thread, once the post-event tail is in
+    private void onWaveform(String detectionId, Waveform waveform) {
+        if (waveformQueue == null) {
+            Log.e("SERVER", "No waveform queue, dropping waveform " + detectionId);
+            return;
+        }
+        try {
+            byte[] payload = WaveformCodec.encode(waveform);
+            Log.i("SERVER", "Queueing waveform " + detectionId + ": " + waveform.size + " samples, " + payload.length + " bytes");
+            // Sent once the server accepted the detection, with retries on the waveform upload thread
+            waveformQueue.enqueue(detectionId, payload);
+        } catch (IOException e) {
+            Log.e("SERVER", "Failed to encode waveform", e);
+        }
+    }
+
+    // Runs on the detection thread
+    private void onQuakeConfirmed(String detectionId, long timestampNs, float energy, float variance, int peakCount,
+                                  HandlingGate.State handling) {
+        // Trigger system notification
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, ALERT_CHANNEL_ID)
+                .setSmallIcon(R.drawable.quake_verifying) // use an existing icon
+                .setContentTitle("QuakeAlert")
+                .setContentText("⚠️ Earthquake detected!")
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setAutoCancel(true);
+
+        NotificationManagerCompat notificationManager = NotificationManagerCompat.from(this);
+        notificationManager.notify(1, builder.build());
+        // Sensor timestamps share the elapsed realtime clock
+        metrics.alert.record(SystemClock.elapsedRealtimeNanos() - timestampNs);
+
+        // Trigger vibration
+        Vibrator vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
+        if (vibrator != null && vibrator.hasVibrator()) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                vibrator.vibrate(VibrationEffect.createOneShot(1000, VibrationEffect.DEFAULT_AMPLITUDE));
+            } else {
+                vibrator.vibrate(1000);
+            }
+        }
+
+        // Sent at once with whatever fix is cached; its age goes along with it
+        sendDetectionToServer(detectionId, System.currentTimeMillis(), SystemClock.elapsedRealtime(),
+                locationTracker.getFix(), energy, variance, peakCount, handling);
+        locationTracker.refreshIfStale();
+    }
+
+    //Sending data to the web dashboard sectoion
+    private void sendDetectionToServer(String detectionId, long timestampMs, long elapsedMs, @Nullable LocationFix fix,
+                                       float energy, float variance, int peakCount, HandlingGate.State handling) {
+        if (uploadQueue == null) {
+            Log.e("SERVER", "No upload queue, dropping detection " + detectionId);
+            return;
+        }
+        DetectionRecord record;
+        if (fix != null) {
+            Log.d("SENDLAT", "Sending lat: " + fix.latitude + ", lon: " + fix.longitude + ", accuracy: " + fix.accuracyM);
+            record = new DetectionRecord(detectionId, timestampMs, fix.latitude, fix.longitude, fix.accuracyM,
+                    fix.ageMs(elapsedMs), energy, variance, peakCount, deviceId, handling);
+        } else {
+            Log.w("SENDLAT", "No location fix, sending detection " + detectionId + " without one");
+            record = new DetectionRecord(detectionId, timestampMs, Double.NaN, Double.NaN, Float.NaN,
+                    DetectionRecord.UNKNOWN_AGE, energy, variance, peakCount, deviceId, handling);
+        }
+        // Synced to disk here, then sent in batches with retries on the upload thread
+        uploadQueue.enqueue(record);
+    }
+
+    /** Detections persisted but not yet accepted by the server. */
+    public int getPendingUploads() {
+        return uploadQueue != null ? uploadQueue.getDepth() : 0;
+    }
+}
@@ -0,0 +1,109 @@
+package ma.fst.aiquakeproject.detection;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import ma.fst.aiquakeproject.dsp.DetectorConfig;
+
+/**
+ * Persists the detector tuning, the backend URL, the device id and the
+ * telemetry interval in SharedPreferences. Only the settings screen and the
+ * service's change listener read it; the detection thread sees a
+ * {@link DetectorConfig} snapshot instead.
+ */
+public final class DetectorSettings {
+
+    public static final String DEFAULT_SERVER_URL = "http://192.168.100.109:3000";
+    public static final String DEFAULT_DEVICE_ID = "AIQuakePhone1";
+    /** One telemetry frame a second; 0 turns the stream off. */
+    public static final long DEFAULT_TELEMETRY_INTERVAL_MS = 1000;
+
+    private static final String PREFS = "detector";
+    private static final String WINDOW_SIZE = "window_size";
+    private static final String FILTER_LOW = "filter_low";
+    private static final String FILTER_HIGH = "filter_high";
+    private static final String SAMPLING_RATE = "sampling_rate";
+    private static final String ENERGY_THRESHOLD = "energy_threshold";
+    private static final String VARIANCE_THRESHOLD = "variance_threshold";
+    private static final String PEAK_THRESHOLD = "peak_threshold";
+    private static final String PEAK_AMPLITUDE = "peak_amplitude";
+    private static final String PEAK_SPACING = "peak_spacing";
+    private static final String MIN_BAND_RATIO = "min_band_ratio";
+    private static final String REQUIRED_STREAK = "required_streak";
+    private static final String MIN_DETECTION_TIME_MS = "min_detection_time_ms";
+    private static final String SERVER_URL = "server_url";
+    private static final String DEVICE_ID = "device_id";
+    private static final String TELEMETRY_INTERVAL_MS = "telemetry_interval_ms";
+
+    private final SharedPreferences prefs;
+
+    public DetectorSettings(Context context) {
+        prefs = context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    /** The stored config, or the defaults if nothing valid is stored. */
+    public DetectorConfig getDetectorConfig() {
+        DetectorConfig d = DetectorConfig.DEFAULTS;
+        try {
+            return new DetectorConfig(
+                    prefs.getInt(WINDOW_SIZE, d.windowSize),
+                    prefs.getFloat(FILTER_LOW, d.filterLow),
+                    prefs.getFloat(FILTER_HIGH, d.filterHigh),
+                    prefs.getFloat(SAMPLING_RATE, d.samplingRate),
+                    prefs.getFloat(ENERGY_THRESHOLD, d.energyThreshold),
+                    prefs.getFloat(VARIANCE_THRESHOLD, d.varianceThreshold),
+                    prefs.getInt(PEAK_THRESHOLD, d.peakThreshold),
+                    prefs.getFloat(PEAK_AMPLITUDE, d.peakAmplitude),
+                    prefs.getInt(PEAK_SPACING, d.peakSpacing),
+                    prefs.getFloat(MIN_BAND_RATIO, d.minBandRatio),
+                    prefs.getInt(REQUIRED_STREAK, d.requiredStreak),
+                    prefs.getLong(MIN_DETECTION_TIME_MS, d.minDetectionTimeMs));
+        } catch (IllegalArgumentException | ClassCastException e) {
+            Log.w("SETTINGS", "Stored detector config is unusable, using defaults", e);
+            return d;
+        }
+    }
+
+    public String getServerUrl() {
+        return prefs.getString(SERVER_URL, DEFAULT_SERVER_URL);
+    }
+
+    public String getDeviceId() {
+        return prefs.getString(DEVICE_ID, DEFAULT_DEVICE_ID);
+    }
+
+    public long getTelemetryIntervalMs() {
+        return prefs.getLong(TELEMETRY_INTERVAL_MS, DEFAULT_TELEMETRY_INTERVAL_MS);
+    }
+
+    /** Stores everything in one commit, so a listener never sees half of it. */
+    public void save(DetectorConfig config, String serverUrl, String deviceId, long telemetryIntervalMs) {
+        prefs.edit()
+                .putInt(WINDOW_SIZE, config.windowSize)
+                .putFloat(FILTER_LOW, config.filterLow)
+                .putFloat(FILTER_HIGH, config.filterHigh)
+                .putFloat(SAMPLING_RATE, config.samplingRate)
+                .putFloat(ENERGY_THRESHOLD, config.energyThreshold)
+                .putFloat(VARIANCE_THRESHOLD, config.varianceThreshold)
+                .putInt(PEAK_THRESHOLD, config.peakThreshold)
+                .putFloat(PEAK_AMPLITUDE, config.peakAmplitude)
+                .putInt(PEAK_SPACING, config.peakSpacing)
+                .putFloat(MIN_BAND_RATIO, config.minBandRatio)
+                .putInt(REQUIRED_STREAK, config.requiredStreak)
+                .putLong(MIN_DETECTION_TIME_MS, config.minDetectionTimeMs)
+                .putString(SERVER_URL, serverUrl)
+                .putString(DEVICE_ID, deviceId)
+                .putLong(TELEMETRY_INTERVAL_MS, telemetryIntervalMs)
+                .apply();
+    }
+
+    /** The listener is held weakly by SharedPreferences; keep a reference to it. */
+    public void registerListener(SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        prefs.registerOnSharedPreferenceChangeListener(listener);
+    }
+
+    public void unregisterListener(SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        prefs.unregisterOnSharedPreferenceChangeListener(listener);
+    }
+}
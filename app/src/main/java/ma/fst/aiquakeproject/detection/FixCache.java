@@ -0,0 +1,49 @@
+package ma.fst.aiquakeproject.detection;
+
+/**
+ * The best known position of a station that is assumed not to move. A newer
+ * fix replaces the cached one only if it is about as accurate, so a coarse
+ * network fix never overwrites a good GPS one. Once {@link #onMoved} reports
+ * motion, the next fix is taken whatever its accuracy.
+ *
+ * <p>Offered from one thread; {@link #get} and {@link #needsRefresh} may be
+ * called from any.
+ */
+public final class FixCache {
+
+    /** How much worse a newer fix may be and still replace the cached one. */
+    public static final float ACCURACY_SLACK_M = 50f;
+
+    private volatile LocationFix fix;
+    private volatile boolean moved = false;
+
+    /** @return whether {@code candidate} is now the cached fix */
+    public boolean offer(LocationFix candidate) {
+        LocationFix current = fix;
+        if (current != null && !moved && !isBetter(candidate, current)) return false;
+        fix = candidate;
+        moved = false;
+        return true;
+    }
+
+    static boolean isBetter(LocationFix candidate, LocationFix current) {
+        if (candidate.elapsedMs <= current.elapsedMs) return false;
+        return candidate.accuracyM <= current.accuracyM + ACCURACY_SLACK_M;
+    }
+
+    /** The device moved since the cached fix, which no longer says where it is. */
+    public void onMoved() {
+        moved = true;
+    }
+
+    /** Null until the first fix. */
+    public LocationFix get() {
+        return fix;
+    }
+
+    /** No fix, motion since the fix, or a fix older than {@code maxAgeMs}. */
+    public boolean needsRefresh(long nowElapsedMs, long maxAgeMs) {
+        LocationFix current = fix;
+        return current == null || moved || current.ageMs(nowElapsedMs) > maxAgeMs;
+    }
+}
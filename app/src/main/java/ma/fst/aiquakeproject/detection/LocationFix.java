@@ -0,0 +1,24 @@
+package ma.fst.aiquakeproject.detection;
+
+/** One position fix, timed on the elapsed realtime clock so its age survives wall clock changes. */
+public final class LocationFix {
+
+    public final double latitude;
+    public final double longitude;
+    /** Radius of 68% confidence, in meters. */
+    public final float accuracyM;
+    public final long elapsedMs;
+    public final String provider;
+
+    public LocationFix(double latitude, double longitude, float accuracyM, long elapsedMs, String provider) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracyM = accuracyM;
+        this.elapsedMs = elapsedMs;
+        this.provider = provider;
+    }
+
+    public long ageMs(long nowElapsedMs) {
+        return Math.max(0, nowElapsedMs - elapsedMs);
+    }
+}
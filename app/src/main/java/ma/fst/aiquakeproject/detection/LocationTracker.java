@@ -0,0 +1,183 @@
+package ma.fst.aiquakeproject.detection;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.hardware.TriggerEvent;
+import android.hardware.TriggerEventListener;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import ma.fst.aiquakeproject.metrics.PipelineMetrics;
+
+/**
+ * Keeps the station's position in a {@link FixCache} without keeping the GPS
+ * on. A fix is requested at start, when the significant motion sensor fires,
+ * and when a detection went out with the cached fix missing or older than
+ * {@link #MAX_FIX_AGE_MS}; each request ends at a good fix or after
+ * {@link #FIX_TIMEOUT_MS}. In between, fixes other apps obtain arrive for
+ * free through the passive provider.
+ *
+ * <p>GPS-on time is added to {@link PipelineMetrics#gpsOnMs}.
+ */
+public final class LocationTracker {
+
+    public interface FixListener {
+        /** Called on the main thread whenever the cached fix changes. */
+        void onFix(LocationFix fix);
+    }
+
+    public static final long MAX_FIX_AGE_MS = 60 * 60_000L;
+    public static final long FIX_TIMEOUT_MS = 30_000;
+    // A fix this good ends a request early
+    private static final float GOOD_ACCURACY_M = 20f;
+    private static final long PASSIVE_INTERVAL_MS = 60_000;
+
+    private final LocationManager locationManager;
+    private final SensorManager sensorManager;
+    private final Sensor significantMotion;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final FixCache cache = new FixCache();
+    private final FixListener listener;
+    private final PipelineMetrics metrics = PipelineMetrics.get();
+
+    // Main thread only
+    private boolean started = false;
+    private boolean fixRequested = false;
+    private long gpsOnSinceMs = -1;
+
+    private final Runnable fixTimeout = this::finishFix;
+
+    public LocationTracker(Context context, FixListener listener) {
+        locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        significantMotion = sensorManager.getDefaultSensor(Sensor.TYPE_SIGNIFICANT_MOTION);
+        this.listener = listener;
+    }
+
+    /** Main thread, with ACCESS_FINE_LOCATION granted. */
+    @SuppressLint("MissingPermission")
+    public void start() {
+        if (started) return;
+        started = true;
+        for (String provider : new String[] {LocationManager.GPS_PROVIDER, LocationManager.NETWORK_PROVIDER,
+                LocationManager.PASSIVE_PROVIDER}) {
+            Location last = locationManager.getLastKnownLocation(provider);
+            if (last != null) offer(last);
+        }
+        locationManager.requestLocationUpdates(LocationManager.PASSIVE_PROVIDER, PASSIVE_INTERVAL_MS, 0,
+                passiveListener, Looper.getMainLooper());
+        if (significantMotion != null) {
+            sensorManager.requestTriggerSensor(motionListener, significantMotion);
+        }
+        requestFix("startup");
+    }
+
+    /** Main thread. */
+    public void stop() {
+        if (!started) return;
+        started = false;
+        locationManager.removeUpdates(passiveListener);
+        if (significantMotion != null) {
+            sensorManager.cancelTriggerSensor(motionListener, significantMotion);
+        }
+        finishFix();
+    }
+
+    /** The cached fix, or null before the first one. */
+    public LocationFix getFix() {
+        return cache.get();
+    }
+
+    /**
+     * Requests a fix when the cached one is missing, older than
+     * {@link #MAX_FIX_AGE_MS} or from before the phone moved. Nothing waits for
+     * it; the next detection gets the new fix. Callable from any thread.
+     */
+    public void refreshIfStale() {
+        if (!cache.needsRefresh(SystemClock.elapsedRealtime(), MAX_FIX_AGE_MS)) return;
+        handler.post(() -> {
+            if (started) requestFix("detection");
+        });
+    }
+
+    @SuppressLint("MissingPermission")
+    private void requestFix(String reason) {
+        if (fixRequested) return;
+        fixRequested = true;
+        boolean requested = false;
+        for (String provider : new String[] {LocationManager.GPS_PROVIDER, LocationManager.NETWORK_PROVIDER}) {
+            if (!locationManager.isProviderEnabled(provider)) continue;
+            locationManager.requestLocationUpdates(provider, 0, 0, fixListener, Looper.getMainLooper());
+            if (provider.equals(LocationManager.GPS_PROVIDER)) gpsOnSinceMs = SystemClock.elapsedRealtime();
+            requested = true;
+        }
+        if (!requested) {
+            Log.w("GPS", "No location provider enabled");
+            finishFix();
+            return;
+        }
+        handler.postDelayed(fixTimeout, FIX_TIMEOUT_MS);
+        Log.i("GPS", "Requesting a fix (" + reason + ")");
+    }
+
+    private void finishFix() {
+        if (!fixRequested) return;
+        fixRequested = false;
+        handler.removeCallbacks(fixTimeout);
+        locationManager.removeUpdates(fixListener);
+        if (gpsOnSinceMs >= 0) {
+            long onMs = SystemClock.elapsedRealtime() - gpsOnSinceMs;
+            metrics.gpsOnMs.getAndAdd(onMs);
+            gpsOnSinceMs = -1;
+            Log.i("GPS", "GPS off after " + onMs + " ms");
+        }
+    }
+
+    private boolean offer(Location location) {
+        // Every real provider reports accuracy; a fix without it can't be ranked
+        if (!location.hasAccuracy()) return false;
+        LocationFix fix = new LocationFix(location.getLatitude(), location.getLongitude(), location.getAccuracy(),
+                location.getElapsedRealtimeNanos() / 1_000_000L, location.getProvider());
+        if (!cache.offer(fix)) return false;
+        listener.onFix(fix);
+        return true;
+    }
+
+    private final LocationListener fixListener = new LocationListener() {
+        @Override
+        public void onLocationChanged(@NonNull Location location) {
+            // The GPS stays on until a good fix
+            offer(location);
+            if (location.hasAccuracy() && location.getAccuracy() <= GOOD_ACCURACY_M) finishFix();
+        }
+    };
+
+    private final LocationListener passiveListener = new LocationListener() {
+        @Override
+        public void onLocationChanged(@NonNull Location location) {
+            offer(location);
+        }
+    };
+
+    // One-shot: re-armed after every trigger
+    private final TriggerEventListener motionListener = new TriggerEventListener() {
+        @Override
+        public void onTrigger(TriggerEvent event) {
+            cache.onMoved();
+            handler.post(() -> {
+                if (!started) return;
+                sensorManager.requestTriggerSensor(motionListener, significantMotion);
+                requestFix("moved");
+            });
+        }
+    };
+}
@@ -0,0 +1,69 @@
+package ma.fst.aiquakeproject.detection;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ma.fst.aiquakeproject.dsp.DetectorState;
+
+/**
+ * Single-writer handoff of the detector state from the sampling thread to the
+ * UI. The writer overwrites one packed volatile slot and posts a drain only if
+ * none is pending, so a slow UI sees the latest state instead of a backlog.
+ */
+public final class StateHandoff {
+
+    public interface Observer {
+        void onStateChanged(DetectorState state, int seconds);
+    }
+
+    private final Executor uiExecutor;
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+    private volatile Observer observer;
+    private volatile long latest;
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            pending.set(false);
+            deliver();
+        }
+    };
+
+    public StateHandoff(Executor uiExecutor) {
+        this.uiExecutor = uiExecutor;
+        this.latest = pack(DetectorState.IDLE, 0);
+    }
+
+    public StateHandoff(Executor uiExecutor, Observer observer) {
+        this(uiExecutor);
+        this.observer = observer;
+    }
+
+    /**
+     * Attaches an observer on the UI thread and immediately shows it the
+     * latest state, so a view created mid-detection starts in sync.
+     */
+    public void setObserver(Observer observer) {
+        this.observer = observer;
+        if (observer != null) deliver();
+    }
+
+    /** Must only be called from the sampling thread. */
+    public void publish(DetectorState state, int seconds) {
+        latest = pack(state, seconds);
+        if (pending.compareAndSet(false, true)) {
+            uiExecutor.execute(drain);
+        }
+    }
+
+    private void deliver() {
+        Observer current = observer;
+        if (current == null) return;
+        long value = latest;
+        current.onStateChanged(DetectorState.fromOrdinal((int) (value >>> 32)), (int) value);
+    }
+
+    private static long pack(DetectorState state, int seconds) {
+        return ((long) state.ordinal() << 32) | (seconds & 0xFFFFFFFFL);
+    }
+}
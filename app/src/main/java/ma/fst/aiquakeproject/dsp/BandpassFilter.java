@@ -0,0 +1,48 @@
+package ma.fst.aiquakeproject.dsp;
+
+/**
+ * First-order high-pass followed by first-order low-pass, with the same
+ * coefficients as the original window-recompute filter but keeping its state
+ * between samples instead of restarting on every window, so
+ * {@link MultiScaleStats} sees each sample filtered once.
+ */
+public final class BandpassFilter {
+
+    private final float highAlpha;
+    private final float lowAlpha;
+
+    private float prevInput;
+    private float prevHigh;
+    private float prevLow;
+    private boolean primed;
+
+    public BandpassFilter(float low, float high, float fs) {
+        float dt = 1.0f / fs;
+        float highRC = 1.0f / (2 * (float) Math.PI * low);
+        float lowRC = 1.0f / (2 * (float) Math.PI * high);
+        highAlpha = highRC / (highRC + dt);
+        lowAlpha = dt / (lowRC + dt);
+    }
+
+    public float filter(float x) {
+        if (!primed) {
+            // Start from rest so the DC level (gravity) does not ring through
+            prevInput = x;
+            primed = true;
+            return 0f;
+        }
+        float high = highAlpha * (prevHigh + x - prevInput);
+        float low = prevLow + lowAlpha * (high - prevLow);
+        prevInput = x;
+        prevHigh = high;
+        prevLow = low;
+        return low;
+    }
+
+    public void reset() {
+        prevInput = 0f;
+        prevHigh = 0f;
+        prevLow = 0f;
+        primed = false;
+    }
+}
@@ -0,0 +1,156 @@
+package ma.fst.aiquakeproject.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Splits each three-axis sample into a vertical and a horizontal part along a
+ * slowly tracked gravity vector, and keeps the RMS of both over the last
+ * {@code size} samples. Body waves separate roughly along these lines, with P
+ * mostly vertical and S mostly horizontal, and handling rarely moves a phone
+ * the way ground motion does on both.
+ *
+ * <p>The components are kept in parallel primitive rings with running sums,
+ * rebuilt once per window so float round-off doesn't accumulate, as
+ * {@link MultiScaleStats} rebases its prefix sums. The gravity direction is
+ * renormalized every {@link #NORMALIZE_EVERY} samples rather than per sample,
+ * since it moves on a time scale of seconds.
+ */
+public final class ComponentFeatures {
+
+    /** Time constant of the gravity estimate. */
+    public static final float GRAVITY_SECONDS = 2f;
+
+    static final int NORMALIZE_EVERY = 16;
+
+    private final float alpha;
+    private final float[] vertical;
+    private final float[] horizontalSquared;
+    private int index = 0;
+    private int count = 0;
+    private double verticalSum = 0.0;
+    private double verticalSumSquares = 0.0;
+    private double horizontalSum = 0.0;
+
+    private float gx;
+    private float gy;
+    private float gz;
+    // Unit vector along the gravity estimate
+    private float ux;
+    private float uy;
+    private float uz;
+    private int sinceNormalize = 0;
+    private boolean seeded = false;
+
+    public ComponentFeatures(int size, float fs) {
+        alpha = 1f / (GRAVITY_SECONDS * fs);
+        vertical = new float[size];
+        horizontalSquared = new float[size];
+        reset();
+    }
+
+    public void add(float x, float y, float z) {
+        if (!seeded) {
+            gx = x;
+            gy = y;
+            gz = z;
+            seeded = true;
+            normalize();
+        } else {
+            gx += (x - gx) * alpha;
+            gy += (y - gy) * alpha;
+            gz += (z - gz) * alpha;
+            if (++sinceNormalize == NORMALIZE_EVERY) normalize();
+        }
+
+        float dx = x - gx;
+        float dy = y - gy;
+        float dz = z - gz;
+        float v = dx * ux + dy * uy + dz * uz;
+        float h2 = Math.max(0f, dx * dx + dy * dy + dz * dz - v * v);
+
+        float oldV = vertical[index];
+        float oldH2 = horizontalSquared[index];
+        vertical[index] = v;
+        horizontalSquared[index] = h2;
+        index++;
+        if (count < vertical.length) {
+            count++;
+        } else {
+            verticalSum -= oldV;
+            verticalSumSquares -= (double) oldV * oldV;
+            horizontalSum -= oldH2;
+        }
+        verticalSum += v;
+        verticalSumSquares += (double) v * v;
+        horizontalSum += h2;
+
+        if (index == vertical.length) {
+            index = 0;
+            if (count == vertical.length) resync();
+        }
+    }
+
+    private void normalize() {
+        sinceNormalize = 0;
+        float norm = (float) Math.sqrt(gx * gx + gy * gy + gz * gz);
+        // In free fall there is no direction to follow; keep the last one
+        if (norm < 1e-3f) return;
+        ux = gx / norm;
+        uy = gy / norm;
+        uz = gz / norm;
+    }
+
+    private void resync() {
+        double s = 0.0;
+        double sq = 0.0;
+        double h = 0.0;
+        for (int i = 0; i < vertical.length; i++) {
+            s += vertical[i];
+            sq += (double) vertical[i] * vertical[i];
+            h += horizontalSquared[i];
+        }
+        verticalSum = s;
+        verticalSumSquares = sq;
+        horizontalSum = h;
+    }
+
+    public boolean isFull() {
+        return count == vertical.length;
+    }
+
+    /** RMS of the vertical component around its window mean. */
+    public float verticalRms() {
+        if (count == 0) return 0f;
+        double mean = verticalSum / count;
+        return (float) Math.sqrt(Math.max(0.0, verticalSumSquares / count - mean * mean));
+    }
+
+    public float horizontalRms() {
+        if (count == 0) return 0f;
+        return (float) Math.sqrt(Math.max(0.0, horizontalSum / count));
+    }
+
+    /** Horizontal over vertical RMS, or 0 while there is no vertical motion. */
+    public float horizontalRatio() {
+        float v = verticalRms();
+        return v > 1e-6f ? horizontalRms() / v : 0f;
+    }
+
+    public void reset() {
+        Arrays.fill(vertical, 0f);
+        Arrays.fill(horizontalSquared, 0f);
+        index = 0;
+        count = 0;
+        verticalSum = 0.0;
+        verticalSumSquares = 0.0;
+        horizontalSum = 0.0;
+        gx = 0f;
+        gy = 0f;
+        gz = 0f;
+        ux = 0f;
+        uy = 0f;
+        uz = 1f;
+        sinceNormalize = 0;
+        seeded = false;
+    }
+}
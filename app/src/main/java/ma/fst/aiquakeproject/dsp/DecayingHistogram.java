@@ -0,0 +1,121 @@
+package ma.fst.aiquakeproject.dsp;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Streaming quantiles of a positive quantity over a fading memory, in a fixed
+ * number of log-spaced bins. Each value comes with a weight, e.g. the time it
+ * stands for, and everything added before it fades by {@code e^(-weight/memory)}.
+ *
+ * <p>Instead of scaling every bin down, new weights are scaled up by a running
+ * gain, and the bins are renormalized only when the gain gets large, so
+ * {@link #add} is O(1) and does not allocate.
+ */
+public final class DecayingHistogram {
+
+    // Renormalize well before a double overflows
+    private static final double MAX_GAIN = 1e100;
+
+    private final float min;
+    private final float max;
+    private final double logMin;
+    private final double binsPerLog;
+    private final double memory;
+    private final double[] counts;
+    private double gain = 1.0;
+    private double total = 0.0;
+
+    /**
+     * @param min lower edge of the first bin; smaller values land in it
+     * @param max upper edge of the last bin; larger values land in it
+     * @param memory weight over which older values fade by a factor e
+     */
+    public DecayingHistogram(float min, float max, int bins, double memory) {
+        if (!(min > 0f && max > min) || bins < 1 || !(memory > 0)) {
+            throw new IllegalArgumentException("Need 0 < min < max, bins and memory: " + min + ", " + max);
+        }
+        this.min = min;
+        this.max = max;
+        this.logMin = Math.log(min);
+        this.binsPerLog = bins / (Math.log(max) - logMin);
+        this.memory = memory;
+        this.counts = new double[bins];
+    }
+
+    public void add(float value, double weight) {
+        if (!(weight > 0)) return;
+        gain *= Math.exp(weight / memory);
+        double w = weight * gain;
+        counts[bin(value)] += w;
+        total += w;
+        if (gain > MAX_GAIN) renormalize();
+    }
+
+    private int bin(float value) {
+        if (!(value > min)) return 0;
+        int b = (int) ((Math.log(value) - logMin) * binsPerLog);
+        return Math.min(b, counts.length - 1);
+    }
+
+    private void renormalize() {
+        for (int i = 0; i < counts.length; i++) counts[i] /= gain;
+        total /= gain;
+        gain = 1.0;
+    }
+
+    /** Total weight still remembered. */
+    public double weight() {
+        return total / gain;
+    }
+
+    /** Upper edge of the bin holding the {@code q} quantile, or 0 while empty. */
+    public float quantile(double q) {
+        if (total <= 0) return 0f;
+        double rank = q * total;
+        double seen = 0;
+        for (int b = 0; b < counts.length; b++) {
+            seen += counts[b];
+            if (seen >= rank) return upperEdge(b);
+        }
+        return max;
+    }
+
+    private float upperEdge(int bin) {
+        return (float) Math.exp(logMin + (bin + 1) / binsPerLog);
+    }
+
+    public void clear() {
+        for (int i = 0; i < counts.length; i++) counts[i] = 0.0;
+        gain = 1.0;
+        total = 0.0;
+    }
+
+    void write(DataOutput out) throws IOException {
+        renormalize();
+        out.writeFloat(min);
+        out.writeFloat(max);
+        out.writeShort(counts.length);
+        for (double count : counts) out.writeDouble(count);
+    }
+
+    /** Reads what {@link #write} wrote, which must have the same bins. */
+    void read(DataInput in) throws IOException {
+        float savedMin = in.readFloat();
+        float savedMax = in.readFloat();
+        int bins = in.readUnsignedShort();
+        if (savedMin != min || savedMax != max || bins != counts.length) {
+            throw new IOException("Histogram layout changed");
+        }
+        double sum = 0;
+        for (int i = 0; i < bins; i++) {
+            double count = in.readDouble();
+            if (!(count >= 0)) throw new IOException("Bad count " + count);
+            counts[i] = count;
+            sum += count;
+        }
+        gain = 1.0;
+        total = sum;
+    }
+}
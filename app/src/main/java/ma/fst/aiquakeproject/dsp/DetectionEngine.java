@@ -0,0 +1,200 @@
+package ma.fst.aiquakeproject.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Streaming replacement for the per-sample window recompute that used to live
+ * in DetectionFragment. Every sample goes through a stateful band-pass filter
+ * and updates the sliding RMS/variance and spaced-peak count in O(1), without
+ * allocating.
+ *
+ * <p>Those come from a {@link MultiScaleStats} that also covers the
+ * {@link #SCALE_SHIFTS} windows, from half to eight times the configured
+ * length: 64 to 1024 samples, about 1.3 to 20 s, by default. Sharp local
+ * shocks show best in the short one and long-period motion from distant
+ * events in the long ones. Their features are refreshed every
+ * {@link SpectralFeatures#HOP} samples, after the window features.
+ *
+ * <p>The raw window also goes through {@link SpectralFeatures} every
+ * {@link SpectralFeatures#HOP} samples. All features of a full window are
+ * handed to a {@link WindowClassifier}, by default the
+ * {@link ThresholdClassifier} rule, which additionally needs at least as much
+ * power inside the filter band as outside it to rule out machinery and other
+ * vibration that is mostly above the band.
+ *
+ * <p>Fed three axes, the engine also runs {@link ComponentFeatures} for the
+ * vertical and horizontal RMS.
+ */
+public final class DetectionEngine {
+
+    public static final int WINDOW_SIZE = 128;
+
+    public static final float FILTER_LOW = 1.0f;
+    public static final float FILTER_HIGH = 10.0f;
+    public static final float SAMPLING_RATE = 50.0f;
+
+    public static final float ENERGY_THRESHOLD = 0.5f;
+    public static final float VARIANCE_THRESHOLD = 0.07f;
+    public static final int PEAK_THRESHOLD = 7;
+    public static final float PEAK_AMPLITUDE = 0.4f;
+    public static final int PEAK_SPACING = 10;
+    public static final float MIN_BAND_RATIO = 1.0f;
+
+    /**
+     * The other window lengths, as powers of two of the configured one. Their
+     * energy, variance and peak count follow the window features in that
+     * order, from {@link WindowClassifier#SCALE_FEATURES} on.
+     */
+    public static final int[] SCALE_SHIFTS = {-1, 1, 2, 3};
+
+    private final BandpassFilter filter;
+    // Scale 0 is the configured window, then SCALE_SHIFTS
+    private final MultiScaleStats stats;
+    private final SpectralFeatures spectrum;
+    private final ComponentFeatures components;
+    private WindowClassifier classifier;
+    private final float[] features = new float[WindowClassifier.FEATURE_COUNT];
+
+    private float energy;
+    private float variance;
+    private int peakCount;
+    private int sinceScales = 0;
+
+    public DetectionEngine() {
+        this(DetectorConfig.DEFAULTS, new ThresholdClassifier());
+    }
+
+    public DetectionEngine(WindowClassifier classifier) {
+        this(DetectorConfig.DEFAULTS, classifier);
+    }
+
+    public DetectionEngine(int windowSize, float low, float high, float fs) {
+        this(new DetectorConfig(windowSize, low, high, fs, ENERGY_THRESHOLD, VARIANCE_THRESHOLD, PEAK_THRESHOLD,
+                PEAK_AMPLITUDE, PEAK_SPACING, MIN_BAND_RATIO, QuakeMonitor.REQUIRED_STREAK,
+                QuakeMonitor.MIN_DETECTION_TIME_MS), new ThresholdClassifier());
+    }
+
+    /** Builds the signal path for {@code config}; its decision thresholds belong to the classifier. */
+    public DetectionEngine(DetectorConfig config, WindowClassifier classifier) {
+        this.classifier = classifier;
+        filter = new BandpassFilter(config.filterLow, config.filterHigh, config.samplingRate);
+        stats = new MultiScaleStats(scaleLengths(config.windowSize), config.peakAmplitude, config.peakSpacing);
+        spectrum = new SpectralFeatures(config.windowSize, config.samplingRate, config.filterLow, config.filterHigh);
+        components = new ComponentFeatures(config.windowSize, config.samplingRate);
+    }
+
+    /** {@code windowSize} followed by the {@link #SCALE_SHIFTS} lengths. */
+    static int[] scaleLengths(int windowSize) {
+        int[] lengths = new int[SCALE_SHIFTS.length + 1];
+        lengths[0] = windowSize;
+        for (int i = 0; i < SCALE_SHIFTS.length; i++) {
+            int shift = SCALE_SHIFTS[i];
+            lengths[i + 1] = shift >= 0 ? windowSize << shift : windowSize >> -shift;
+        }
+        return lengths;
+    }
+
+    /** The longest window kept for {@code windowSize}, in samples. */
+    public static int longestWindow(int windowSize) {
+        int longest = 0;
+        for (int length : scaleLengths(windowSize)) longest = Math.max(longest, length);
+        return longest;
+    }
+
+    /**
+     * Feeds one three-axis sample, in m/s². Same as {@link #addSample(float)}
+     * with its magnitude, plus the component features.
+     */
+    public boolean addSample(float x, float y, float z) {
+        components.add(x, y, z);
+        return addSample((float) Math.sqrt(x * x + y * y + z * z));
+    }
+
+    /**
+     * Feeds one acceleration magnitude sample.
+     *
+     * @return true once a full window has been seen and the features are valid
+     */
+    public boolean addSample(float magnitude) {
+        float filtered = filter.filter(magnitude);
+        stats.add(filtered);
+        spectrum.add(magnitude);
+        if (!stats.isFull(0)) return false;
+
+        energy = stats.rms(0);
+        variance = stats.variance(0);
+        peakCount = stats.peakCount(0);
+        features[WindowClassifier.ENERGY] = energy;
+        features[WindowClassifier.VARIANCE] = variance;
+        features[WindowClassifier.PEAK_COUNT] = peakCount;
+        features[WindowClassifier.DOMINANT_FREQUENCY] = spectrum.getDominantFrequency();
+        features[WindowClassifier.BAND_RATIO] = spectrum.getBandRatio();
+        features[WindowClassifier.FLATNESS] = spectrum.getFlatness();
+        features[WindowClassifier.VERTICAL_RMS] = components.verticalRms();
+        features[WindowClassifier.HORIZONTAL_RMS] = components.horizontalRms();
+        features[WindowClassifier.HORIZONTAL_RATIO] = components.horizontalRatio();
+        if (sinceScales-- == 0) {
+            sinceScales = SpectralFeatures.HOP - 1;
+            int f = WindowClassifier.SCALE_FEATURES;
+            for (int scale = 1; scale < stats.scaleCount(); scale++) {
+                features[f++] = stats.rms(scale);
+                features[f++] = stats.variance(scale);
+                features[f++] = stats.peakCount(scale);
+            }
+        }
+        return true;
+    }
+
+    public float getEnergy() {
+        return energy;
+    }
+
+    public float getVariance() {
+        return variance;
+    }
+
+    public int getPeakCount() {
+        return peakCount;
+    }
+
+    /** Spectral features of the raw window, as of the last hop. */
+    public SpectralFeatures getSpectrum() {
+        return spectrum;
+    }
+
+    /** Vertical and horizontal parts of the window; empty unless fed three axes. */
+    public ComponentFeatures getComponents() {
+        return components;
+    }
+
+    /** Copies the current feature vector, indexed as in {@link WindowClassifier}, into {@code out}. */
+    public void getFeatures(float[] out) {
+        System.arraycopy(features, 0, out, 0, features.length);
+    }
+
+    /** Minimum height of a counted peak, for peaks from the next sample on. */
+    public void setPeakAmplitude(float amplitude) {
+        stats.setPeakThreshold(amplitude);
+    }
+
+    /** Swaps the decision without touching the window; call on the sampling thread. */
+    public void setClassifier(WindowClassifier classifier) {
+        this.classifier = classifier;
+    }
+
+    public boolean isPatternDetected() {
+        return classifier.isQuake(features);
+    }
+
+    public void reset() {
+        filter.reset();
+        stats.reset();
+        sinceScales = 0;
+        spectrum.reset();
+        components.reset();
+        energy = 0f;
+        variance = 0f;
+        peakCount = 0;
+        Arrays.fill(features, 0f);
+    }
+}
@@ -0,0 +1,109 @@
+package ma.fst.aiquakeproject.dsp;
+
+/**
+ * Immutable snapshot of every detector tuning parameter. A running
+ * {@link QuakeMonitor} is switched to a new snapshot with
+ * {@link QuakeMonitor#configure}, so the sampling path only ever sees plain
+ * final fields.
+ */
+public final class DetectorConfig {
+
+    public static final int MIN_WINDOW_SIZE = 32;
+    public static final int MAX_WINDOW_SIZE = 512;
+
+    public static final DetectorConfig DEFAULTS = new DetectorConfig(
+            DetectionEngine.WINDOW_SIZE, DetectionEngine.FILTER_LOW, DetectionEngine.FILTER_HIGH,
+            DetectionEngine.SAMPLING_RATE, DetectionEngine.ENERGY_THRESHOLD, DetectionEngine.VARIANCE_THRESHOLD,
+            DetectionEngine.PEAK_THRESHOLD, DetectionEngine.PEAK_AMPLITUDE, DetectionEngine.PEAK_SPACING,
+            DetectionEngine.MIN_BAND_RATIO, QuakeMonitor.REQUIRED_STREAK, QuakeMonitor.MIN_DETECTION_TIME_MS);
+
+    public final int windowSize;
+    public final float filterLow;
+    public final float filterHigh;
+    public final float samplingRate;
+    public final float energyThreshold;
+    public final float varianceThreshold;
+    public final int peakThreshold;
+    public final float peakAmplitude;
+    public final int peakSpacing;
+    public final float minBandRatio;
+    public final int requiredStreak;
+    public final long minDetectionTimeMs;
+
+    /** @throws IllegalArgumentException if a value is out of range */
+    public DetectorConfig(int windowSize, float filterLow, float filterHigh, float samplingRate,
+                          float energyThreshold, float varianceThreshold, int peakThreshold,
+                          float peakAmplitude, int peakSpacing, float minBandRatio,
+                          int requiredStreak, long minDetectionTimeMs) {
+        if (windowSize < MIN_WINDOW_SIZE || windowSize > MAX_WINDOW_SIZE || Integer.bitCount(windowSize) != 1) {
+            throw new IllegalArgumentException("Window size must be a power of two from "
+                    + MIN_WINDOW_SIZE + " to " + MAX_WINDOW_SIZE + ": " + windowSize);
+        }
+        if (!(samplingRate >= 10f && samplingRate <= 200f)) {
+            throw new IllegalArgumentException("Sampling rate must be 10 to 200 Hz: " + samplingRate);
+        }
+        if (!(filterLow > 0f && filterLow < filterHigh && filterHigh < samplingRate / 2)) {
+            throw new IllegalArgumentException("Need 0 < low < high < " + samplingRate / 2 + " Hz: "
+                    + filterLow + "-" + filterHigh);
+        }
+        if (!(energyThreshold >= 0f && varianceThreshold >= 0f && peakAmplitude >= 0f && minBandRatio >= 0f)) {
+            throw new IllegalArgumentException("Thresholds must not be negative");
+        }
+        if (peakThreshold < 0 || peakSpacing < 1 || requiredStreak < 1 || minDetectionTimeMs < 0) {
+            throw new IllegalArgumentException("Counts must be positive");
+        }
+        this.windowSize = windowSize;
+        this.filterLow = filterLow;
+        this.filterHigh = filterHigh;
+        this.samplingRate = samplingRate;
+        this.energyThreshold = energyThreshold;
+        this.varianceThreshold = varianceThreshold;
+        this.peakThreshold = peakThreshold;
+        this.peakAmplitude = peakAmplitude;
+        this.peakSpacing = peakSpacing;
+        this.minBandRatio = minBandRatio;
+        this.requiredStreak = requiredStreak;
+        this.minDetectionTimeMs = minDetectionTimeMs;
+    }
+
+    /** Whether both build the same engine, so switching between them can keep its window. */
+    public boolean sameSignalPath(DetectorConfig other) {
+        return windowSize == other.windowSize
+                && filterLow == other.filterLow
+                && filterHigh == other.filterHigh
+                && samplingRate == other.samplingRate
+                && peakAmplitude == other.peakAmplitude
+                && peakSpacing == other.peakSpacing;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DetectorConfig)) return false;
+        DetectorConfig c = (DetectorConfig) o;
+        return sameSignalPath(c)
+                && energyThreshold == c.energyThreshold
+                && varianceThreshold == c.varianceThreshold
+                && peakThreshold == c.peakThreshold
+                && minBandRatio == c.minBandRatio
+                && requiredStreak == c.requiredStreak
+                && minDetectionTimeMs == c.minDetectionTimeMs;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = windowSize;
+        h = 31 * h + Float.floatToIntBits(filterLow);
+        h = 31 * h + Float.floatToIntBits(filterHigh);
+        h = 31 * h + Float.floatToIntBits(samplingRate);
+        h = 31 * h + Float.floatToIntBits(energyThreshold);
+        h = 31 * h + Float.floatToIntBits(varianceThreshold);
+        h = 31 * h + peakThreshold;
+        h = 31 * h + Float.floatToIntBits(peakAmplitude);
+        h = 31 * h + peakSpacing;
+        h = 31 * h + Float.floatToIntBits(minBandRatio);
+        h = 31 * h + requiredStreak;
+        h = 31 * h + Long.hashCode(minDetectionTimeMs);
+        return h;
+    }
+}
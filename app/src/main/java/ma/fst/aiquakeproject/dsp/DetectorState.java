@@ -0,0 +1,17 @@
+package ma.fst.aiquakeproject.dsp;
+
+/**
+ * What the detection screen shows. VERIFYING carries the elapsed seconds
+ * separately so state updates stay primitive.
+ */
+public enum DetectorState {
+    IDLE,
+    VERIFYING,
+    CONFIRMED;
+
+    private static final DetectorState[] VALUES = values();
+
+    public static DetectorState fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
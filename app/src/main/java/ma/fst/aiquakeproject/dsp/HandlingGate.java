@@ -0,0 +1,140 @@
+package ma.fst.aiquakeproject.dsp;
+
+/**
+ * Tells from cheap platform signals whether someone is handling the device:
+ * a step, a significant-motion trigger or a rotation faster than
+ * {@link #ROTATION_THRESHOLD} is evidence, and the device counts as handled
+ * from {@link #LEAD_MS} before the first piece of evidence until
+ * {@link #HOLD_MS} after the last. A stationary-detect event ends the
+ * interval at once.
+ *
+ * <p>The lead covers evidence that arrives after the accelerometer samples it
+ * explains: sensors are batched separately, and a step is only reported once
+ * it is complete. Times are sensor time in ms, as {@link QuakeMonitor} sees it.
+ *
+ * <p>Not thread-safe; owned by the sampling thread.
+ */
+public final class HandlingGate {
+
+    /** Kinds of evidence, with the codes they are recorded and exported under. */
+    public enum Evidence {
+        STEP(1, "step"),
+        SIGNIFICANT_MOTION(2, "significant_motion"),
+        ROTATION(3, "rotation"),
+        STATIONARY(4, "stationary");
+
+        public final int code;
+        public final String key;
+
+        Evidence(int code, String key) {
+            this.code = code;
+            this.key = key;
+        }
+
+        /** Null for an unknown code. */
+        public static Evidence fromCode(int code) {
+            for (Evidence e : values()) if (e.code == code) return e;
+            return null;
+        }
+
+        /** Null for an unknown key. */
+        public static Evidence fromKey(String key) {
+            for (Evidence e : values()) if (e.key.equals(key)) return e;
+            return null;
+        }
+    }
+
+    /** What the gate knew when a detection was confirmed. */
+    public enum State {
+        /** No handling sensor on this device, or the record predates gating. */
+        UNAVAILABLE(0, "unavailable"),
+        /** Stationary detect fired after the last handling. */
+        STATIONARY(1, "stationary"),
+        /** No handling within {@link #RECENT_MS}. */
+        SETTLED(2, "settled"),
+        /** Handled within {@link #RECENT_MS}, but not any more. */
+        RECENTLY_HANDLED(3, "recently_handled");
+
+        public final int code;
+        public final String key;
+
+        State(int code, String key) {
+            this.code = code;
+            this.key = key;
+        }
+
+        /** {@link #UNAVAILABLE} for an unknown code. */
+        public static State fromCode(int code) {
+            for (State s : values()) if (s.code == code) return s;
+            return UNAVAILABLE;
+        }
+    }
+
+    public static final long LEAD_MS = 2000;
+    public static final long HOLD_MS = 5000;
+    public static final long RECENT_MS = 30_000;
+    /** Rad/s; a phone lying on a table, even a shaking one, turns far slower. */
+    public static final float ROTATION_THRESHOLD = 0.5f;
+
+    private static final long NEVER = Long.MIN_VALUE / 2;
+
+    private boolean available = false;
+    // Current or last handled interval, by its first and last evidence
+    private long firstMs = NEVER;
+    private long lastMs = NEVER;
+    private long stationaryMs = NEVER;
+    private long evidenceCount = 0;
+
+    /** Whether any handling sensor is delivering; without one the gate never closes. */
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public void onEvidence(Evidence evidence, long nowMs) {
+        if (evidence == Evidence.STATIONARY) {
+            stationaryMs = nowMs;
+            // Still from here on, so no hold past it
+            if (lastMs + HOLD_MS > nowMs) lastMs = nowMs - HOLD_MS;
+            return;
+        }
+        evidenceCount++;
+        if (nowMs - lastMs > HOLD_MS + LEAD_MS) firstMs = nowMs;
+        lastMs = Math.max(lastMs, nowMs);
+    }
+
+    /**
+     * Angular rate in rad/s, from a low-rate gyroscope.
+     *
+     * @return whether it was fast enough to count as evidence
+     */
+    public boolean onRotation(float wx, float wy, float wz, long nowMs) {
+        if (wx * wx + wy * wy + wz * wz <= ROTATION_THRESHOLD * ROTATION_THRESHOLD) return false;
+        onEvidence(Evidence.ROTATION, nowMs);
+        return true;
+    }
+
+    public boolean isHandled(long nowMs) {
+        return nowMs >= firstMs - LEAD_MS && nowMs < lastMs + HOLD_MS;
+    }
+
+    public State state(long nowMs) {
+        if (!available) return State.UNAVAILABLE;
+        if (stationaryMs != NEVER && stationaryMs >= lastMs && stationaryMs <= nowMs) return State.STATIONARY;
+        return nowMs - lastMs < RECENT_MS ? State.RECENTLY_HANDLED : State.SETTLED;
+    }
+
+    /** Evidence seen other than stationary events. */
+    public long getEvidenceCount() {
+        return evidenceCount;
+    }
+
+    public void reset() {
+        firstMs = NEVER;
+        lastMs = NEVER;
+        stationaryMs = NEVER;
+    }
+}
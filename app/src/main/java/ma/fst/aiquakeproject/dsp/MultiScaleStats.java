@@ -0,0 +1,140 @@
+package ma.fst.aiquakeproject.dsp;
+
+import java.util.Arrays;
+
+/**
+ * RMS, variance and spaced-peak count over several window lengths at once,
+ * from one ring of prefix sums. Each sample appends the running sum, sum of
+ * squares and peak count; a window of any length up to the longest scale is
+ * the difference of two ring entries, so each scale costs O(1) whatever its
+ * length.
+ *
+ * <p>Peaks follow {@link SpacedPeakCounter}: local maxima above a threshold,
+ * at least {@code minSpacing} samples apart, counted when they lie strictly
+ * inside the window. A peak is only known once the next sample is in, so it
+ * is added to the entry written the sample before.
+ *
+ * <p>The prefix sums are rebased to zero whenever the ring wraps, which keeps
+ * their size, and the round-off of their differences, to that of one ring.
+ */
+public final class MultiScaleStats {
+
+    private final int[] scales;
+    private final double[] sums;
+    private final double[] squares;
+    private final int[] peaks;
+    private final int mask;
+    private final int minSpacing;
+    private float threshold;
+
+    // Samples added; the entry for this count holds the sums of all of them
+    private long count = 0;
+    private long lastPeak;
+    private float prev2;
+    private float prev1;
+
+    /** @param scales window lengths, each at least 2 samples */
+    public MultiScaleStats(int[] scales, float peakThreshold, int minSpacing) {
+        int longest = 0;
+        for (int scale : scales) {
+            if (scale < 2) throw new IllegalArgumentException("Window too short: " + scale);
+            longest = Math.max(longest, scale);
+        }
+        this.scales = scales.clone();
+        // Strictly longer than the longest window, so both of its ends are in the ring
+        int capacity = Integer.highestOneBit(longest) << 1;
+        sums = new double[capacity];
+        squares = new double[capacity];
+        peaks = new int[capacity];
+        mask = capacity - 1;
+        this.threshold = peakThreshold;
+        this.minSpacing = minSpacing;
+        reset();
+    }
+
+    public void add(float v) {
+        int previous = (int) (count & mask);
+        // prev1 is a peak candidate once both of its neighbours are known
+        if (count >= 2 && prev1 > threshold && prev1 > prev2 && prev1 > v) {
+            long candidate = count - 1;
+            if (candidate - lastPeak >= minSpacing) {
+                peaks[previous]++;
+                lastPeak = candidate;
+            }
+        }
+        prev2 = prev1;
+        prev1 = v;
+
+        count++;
+        int slot = (int) (count & mask);
+        sums[slot] = sums[previous] + v;
+        squares[slot] = squares[previous] + (double) v * v;
+        peaks[slot] = peaks[previous];
+        if (slot == 0) rebase();
+    }
+
+    private void rebase() {
+        double s = sums[0];
+        double sq = squares[0];
+        int p = peaks[0];
+        for (int i = 0; i <= mask; i++) {
+            sums[i] -= s;
+            squares[i] -= sq;
+            peaks[i] -= p;
+        }
+    }
+
+    /** Applies to peaks found from the next sample on. */
+    public void setPeakThreshold(float peakThreshold) {
+        threshold = peakThreshold;
+    }
+
+    public int scaleCount() {
+        return scales.length;
+    }
+
+    /** Length of window {@code scale}, in samples. */
+    public int length(int scale) {
+        return scales[scale];
+    }
+
+    public boolean isFull(int scale) {
+        return count >= scales[scale];
+    }
+
+    /** RMS over window {@code scale}; 0 until it is full. */
+    public float rms(int scale) {
+        int n = scales[scale];
+        if (count < n) return 0f;
+        double sq = squares[(int) (count & mask)] - squares[(int) ((count - n) & mask)];
+        return (float) Math.sqrt(Math.max(0.0, sq / n));
+    }
+
+    /** Variance over window {@code scale}; 0 until it is full. */
+    public float variance(int scale) {
+        int n = scales[scale];
+        if (count < n) return 0f;
+        int end = (int) (count & mask);
+        int start = (int) ((count - n) & mask);
+        double mean = (sums[end] - sums[start]) / n;
+        return (float) Math.max(0.0, (squares[end] - squares[start]) / n - mean * mean);
+    }
+
+    /** Peaks inside window {@code scale}; 0 until it is full. */
+    public int peakCount(int scale) {
+        int n = scales[scale];
+        if (count < n) return 0;
+        // Neither the first nor the last sample of a window can be a peak in it
+        return peaks[(int) ((count - 1) & mask)] - peaks[(int) ((count - n + 1) & mask)];
+    }
+
+    public void reset() {
+        Arrays.fill(sums, 0.0);
+        Arrays.fill(squares, 0.0);
+        Arrays.fill(peaks, 0);
+        count = 0;
+        lastPeak = Long.MIN_VALUE / 2;
+        prev2 = 0f;
+        prev1 = 0f;
+    }
+}
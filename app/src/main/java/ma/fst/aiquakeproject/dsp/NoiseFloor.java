@@ -0,0 +1,113 @@
+package ma.fst.aiquakeproject.dsp;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The device's own background level: the distribution of window energy and
+ * variance over the last {@link #MEMORY_SECONDS}, each window weighted by the
+ * time it stands for. Once {@link #READY_SECONDS} are known, the detection
+ * thresholds become {@link #MARGIN} times the rolling p99 instead of the
+ * configured absolute values, and the peak amplitude moves with the energy
+ * threshold.
+ *
+ * <p>The adapted values stay within {@link #MIN_FACTOR} and
+ * {@link #MAX_FACTOR} of the configured ones, so a phone on a quiet floor
+ * gets more sensitive and one on a vibrating desk less, but neither loses
+ * the configured scale entirely.
+ *
+ * <p>Not thread-safe; owned by the sampling thread. {@link #write} and
+ * {@link #read} keep it across restarts.
+ */
+public final class NoiseFloor {
+
+    public static final int MAGIC = 0x41514E46;
+    public static final int VERSION = 1;
+
+    public static final double MEMORY_SECONDS = 24 * 3600;
+    public static final double READY_SECONDS = 10 * 60;
+    public static final double QUANTILE = 0.99;
+    public static final float MARGIN = 3f;
+    public static final float MIN_FACTOR = 0.25f;
+    public static final float MAX_FACTOR = 4f;
+
+    // RMS and variance in m/s², 16 bins per decade
+    private final DecayingHistogram energy = new DecayingHistogram(1e-4f, 1e2f, 96, MEMORY_SECONDS);
+    private final DecayingHistogram variance = new DecayingHistogram(1e-8f, 1e4f, 192, MEMORY_SECONDS);
+
+    /** Adds one background window standing for {@code seconds} of signal. */
+    public void observe(float windowEnergy, float windowVariance, double seconds) {
+        energy.add(windowEnergy, seconds);
+        variance.add(windowVariance, seconds);
+    }
+
+    /** Seconds of background still remembered. */
+    public double getSeconds() {
+        return energy.weight();
+    }
+
+    public boolean isReady() {
+        return getSeconds() >= READY_SECONDS;
+    }
+
+    public float energyQuantile() {
+        return energy.quantile(QUANTILE);
+    }
+
+    public float varianceQuantile() {
+        return variance.quantile(QUANTILE);
+    }
+
+    /** The energy threshold to use under {@code config}. */
+    public float energyThreshold(DetectorConfig config) {
+        if (!isReady()) return config.energyThreshold;
+        return clamp(MARGIN * energyQuantile(), config.energyThreshold);
+    }
+
+    /** The variance threshold; variance goes with the square of the margin. */
+    public float varianceThreshold(DetectorConfig config) {
+        if (!isReady()) return config.varianceThreshold;
+        return clamp(MARGIN * MARGIN * varianceQuantile(), config.varianceThreshold);
+    }
+
+    public float peakAmplitude(DetectorConfig config) {
+        if (config.energyThreshold <= 0f) return config.peakAmplitude;
+        return config.peakAmplitude * energyThreshold(config) / config.energyThreshold;
+    }
+
+    private static float clamp(float adapted, float configured) {
+        return Math.max(configured * MIN_FACTOR, Math.min(configured * MAX_FACTOR, adapted));
+    }
+
+    public void clear() {
+        energy.clear();
+        variance.clear();
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        energy.write(data);
+        variance.write(data);
+        data.flush();
+    }
+
+    /** Replaces the state with what {@link #write} saved; left empty if that fails. Does not close {@code in}. */
+    public void read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        try {
+            if (data.readInt() != MAGIC) throw new IOException("Not a noise floor");
+            int version = data.readInt();
+            if (version != VERSION) throw new IOException("Unsupported noise floor version " + version);
+            energy.read(data);
+            variance.read(data);
+        } catch (IOException e) {
+            clear();
+            throw e;
+        }
+    }
+}
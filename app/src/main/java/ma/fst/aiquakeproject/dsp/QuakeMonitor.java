@@ -0,0 +1,390 @@
+package ma.fst.aiquakeproject.dsp;
+
+/**
+ * Runs the {@link DetectionEngine} and the streak/duration confirmation on
+ * whatever thread delivers the samples, and reports only state changes.
+ *
+ * <p>A {@link StaLtaTrigger} gates the engine: while it is off and nothing is
+ * being verified, a sample only updates the trigger and a short history.
+ * When the trigger turns on, that history is replayed first so the engine's
+ * window is already full at the sample that opened the gate. The engine's
+ * longer windows are not replayed; they fill while the gate stays open.
+ *
+ * <p>The trigger runs on the magnitude; the engine and the history keep all
+ * three axes, in parallel primitive arrays.
+ *
+ * <p>With a {@link NoiseFloor} set, one evaluated window per
+ * {@link SpectralFeatures#HOP} goes into it unless a detection is verifying
+ * or confirmed, however long the event lasts. While the gate is closed the
+ * history is run through the engine once per {@link #NOISE_PROBE_SECONDS} to
+ * measure the quiet background. Each
+ * window is weighted by the time it stands for. The threshold rule then
+ * takes its energy, variance and peak amplitude thresholds from the floor;
+ * a trained model keeps the features it was trained on.
+ *
+ * <p>With a {@link HandlingGate} set, samples it marks as handled skip
+ * everything, the trigger included: any verification in progress ends, the
+ * gate closes and the history is dropped, so neither the handling motion nor
+ * its replay reaches the engine or the noise floor.
+ */
+public final class QuakeMonitor {
+
+    public static final int REQUIRED_STREAK = 10;
+    public static final long MIN_DETECTION_TIME_MS = 3000;
+
+    /** Cap for repeated updates within one state, e.g. the verifying countdown (4 Hz). */
+    public static final long MIN_UPDATE_INTERVAL_MS = 250;
+
+    /** While the gate is closed, one background window is measured this often. */
+    public static final float NOISE_PROBE_SECONDS = 60f;
+    // Thresholds follow the noise floor after this much more background
+    private static final double ADAPT_SECONDS = 10;
+
+    public interface Listener {
+        /**
+         * Called on the sampling thread on every transition, and at most every
+         * {@link #MIN_UPDATE_INTERVAL_MS} while the verifying countdown moves.
+         */
+        void onStateChanged(DetectorState state, int seconds);
+
+        /** Called on the sampling thread once per confirmed quake. */
+        void onQuakeConfirmed(float energy, float variance, int peakCount);
+    }
+
+    private final Listener listener;
+    private DetectorConfig config;
+    private DetectionEngine engine;
+    private int requiredStreak;
+    private long minDetectionTimeMs;
+    private StaLtaTrigger trigger;
+    private WindowClassifier classifier;
+    // Null for the configured thresholds
+    private NoiseFloor noiseFloor;
+    // Samples not yet credited to the noise floor, by gate state
+    private long openSamples = 0;
+    private long closedSamples = 0;
+    private double secondsSinceAdapt = 0;
+    // Null when no handling sensor is used
+    private HandlingGate handling;
+    private boolean handled = false;
+    private long handledSamples = 0;
+
+    // Covers the feature window plus time for the bandpass to settle; a power of two
+    private float[] historyX;
+    private float[] historyY;
+    private float[] historyZ;
+    private long[] historyTimes;
+    private int historyMask;
+    private int historyNext = 0;
+    private int historyCount = 0;
+    private boolean gateOpen = true;
+    private long gateOpenings = 0;
+    private long samples = 0;
+    private long evaluatedSamples = 0;
+    private long windows = 0;
+
+    private int detectionStreak = 0;
+    private long detectionStartTime = 0;
+    private boolean quakeConfirmed = false;
+
+    private DetectorState state = null;
+    private int seconds = -1;
+    private long lastUpdateTime = 0;
+
+    public QuakeMonitor(Listener listener) {
+        this(listener, REQUIRED_STREAK, MIN_DETECTION_TIME_MS);
+    }
+
+    public QuakeMonitor(Listener listener, int requiredStreak, long minDetectionTimeMs) {
+        this(listener, requiredStreak, minDetectionTimeMs, new StaLtaTrigger(DetectionEngine.SAMPLING_RATE));
+    }
+
+    /** @param trigger gate in front of the engine, or null to evaluate every sample */
+    public QuakeMonitor(Listener listener, int requiredStreak, long minDetectionTimeMs, StaLtaTrigger trigger) {
+        this(listener, requiredStreak, minDetectionTimeMs, trigger, new ThresholdClassifier());
+    }
+
+    public QuakeMonitor(Listener listener, int requiredStreak, long minDetectionTimeMs, StaLtaTrigger trigger,
+                        WindowClassifier classifier) {
+        this.listener = listener;
+        this.config = DetectorConfig.DEFAULTS;
+        this.engine = new DetectionEngine(config, classifier);
+        this.classifier = classifier;
+        this.requiredStreak = requiredStreak;
+        this.minDetectionTimeMs = minDetectionTimeMs;
+        this.trigger = trigger;
+        allocateHistory();
+    }
+
+    private void allocateHistory() {
+        int size = 2 * config.windowSize;
+        historyX = new float[size];
+        historyY = new float[size];
+        historyZ = new float[size];
+        historyTimes = new long[size];
+        historyMask = size - 1;
+        historyNext = 0;
+        historyCount = 0;
+    }
+
+    /**
+     * Switches to {@code config} and {@code classifier}; call on the sampling
+     * thread. The engine's window and the verification in progress are kept
+     * when only decision parameters change. A different signal path needs a
+     * new engine, and a different rate a new trigger, so those start over.
+     */
+    public void configure(DetectorConfig config, WindowClassifier classifier) {
+        DetectorConfig previous = this.config;
+        this.config = config;
+        requiredStreak = config.requiredStreak;
+        minDetectionTimeMs = config.minDetectionTimeMs;
+        this.classifier = classifier;
+        if (config.sameSignalPath(previous)) {
+            engine.setClassifier(classifier);
+            if (noiseFloor != null) applyNoiseFloor();
+            return;
+        }
+
+        engine = new DetectionEngine(config, classifier);
+        if (noiseFloor != null) applyNoiseFloor();
+        if (trigger != null && config.samplingRate != previous.samplingRate) {
+            trigger = new StaLtaTrigger(config.samplingRate);
+        }
+        allocateHistory();
+        gateOpen = true;
+        detectionStreak = 0;
+        detectionStartTime = 0;
+        quakeConfirmed = false;
+    }
+
+    /**
+     * Learns the background into {@code noiseFloor}, which may hold a saved
+     * state, and takes the rule's thresholds from it; null goes back to the
+     * configured thresholds. Call on the sampling thread.
+     */
+    public void setNoiseFloor(NoiseFloor noiseFloor) {
+        this.noiseFloor = noiseFloor;
+        openSamples = 0;
+        closedSamples = 0;
+        applyNoiseFloor();
+    }
+
+    private void applyNoiseFloor() {
+        if (!(classifier instanceof ThresholdClassifier)) return;
+        ThresholdClassifier rule = (ThresholdClassifier) classifier;
+        if (noiseFloor == null) {
+            rule.setThresholds(config.energyThreshold, config.varianceThreshold);
+            engine.setPeakAmplitude(config.peakAmplitude);
+        } else {
+            rule.setThresholds(noiseFloor.energyThreshold(config), noiseFloor.varianceThreshold(config));
+            engine.setPeakAmplitude(noiseFloor.peakAmplitude(config));
+        }
+    }
+
+    /** Skips the samples {@code handling} marks as handled; null to evaluate them all. Call on the sampling thread. */
+    public void setHandlingGate(HandlingGate handling) {
+        this.handling = handling;
+    }
+
+    /** Feeds one raw accelerometer reading, in m/s². */
+    public void onAcceleration(float x, float y, float z, long nowMs) {
+        samples++;
+        if (handling != null && handling.isHandled(nowMs)) {
+            suppress(nowMs);
+            return;
+        }
+        handled = false;
+        if (trigger == null) {
+            openSamples++;
+            evaluate(x, y, z, nowMs);
+            return;
+        }
+
+        boolean on = trigger.add((float) Math.sqrt(x * x + y * y + z * z));
+        if (!gateOpen && on) {
+            gateOpen = true;
+            gateOpenings++;
+            replayHistory();
+        }
+        if (gateOpen) {
+            openSamples++;
+            evaluate(x, y, z, nowMs);
+            if (!on && detectionStreak == 0) {
+                gateOpen = false;
+                engine.reset();
+            }
+            remember(x, y, z, nowMs);
+        } else {
+            closedSamples++;
+            remember(x, y, z, nowMs);
+            if (noiseFloor != null && closedSamples >= NOISE_PROBE_SECONDS * config.samplingRate) probe();
+        }
+    }
+
+    private void suppress(long nowMs) {
+        handledSamples++;
+        if (handled) return;
+        handled = true;
+        engine.reset();
+        historyNext = 0;
+        historyCount = 0;
+        gateOpen = trigger == null;
+        openSamples = 0;
+        closedSamples = 0;
+        detectionStreak = 0;
+        detectionStartTime = 0;
+        quakeConfirmed = false;
+        publish(DetectorState.IDLE, 0, nowMs);
+    }
+
+    /** Feeds a magnitude-only sample, taken as purely vertical. */
+    public void onSample(float magnitude, long nowMs) {
+        onAcceleration(0f, 0f, magnitude, nowMs);
+    }
+
+    private void remember(float x, float y, float z, long nowMs) {
+        historyX[historyNext] = x;
+        historyY[historyNext] = y;
+        historyZ[historyNext] = z;
+        historyTimes[historyNext] = nowMs;
+        historyNext = (historyNext + 1) & historyMask;
+        if (historyCount <= historyMask) historyCount++;
+    }
+
+    private void replayHistory() {
+        int start = (historyNext - historyCount) & historyMask;
+        for (int i = 0; i < historyCount; i++) {
+            int slot = (start + i) & historyMask;
+            evaluate(historyX[slot], historyY[slot], historyZ[slot], historyTimes[slot]);
+        }
+    }
+
+    // Measures the window at the end of the history, outside of the confirmation
+    private void probe() {
+        int start = (historyNext - historyCount) & historyMask;
+        boolean full = false;
+        for (int i = 0; i < historyCount; i++) {
+            int slot = (start + i) & historyMask;
+            full = engine.addSample(historyX[slot], historyY[slot], historyZ[slot]);
+        }
+        evaluatedSamples += historyCount;
+        if (full) observe(closedSamples);
+        closedSamples = 0;
+        engine.reset();
+    }
+
+    private void observe(long samples) {
+        double seconds = samples / config.samplingRate;
+        noiseFloor.observe(engine.getEnergy(), engine.getVariance(), seconds);
+        secondsSinceAdapt += seconds;
+        if (secondsSinceAdapt >= ADAPT_SECONDS) {
+            secondsSinceAdapt = 0;
+            applyNoiseFloor();
+        }
+    }
+
+    private void evaluate(float x, float y, float z, long nowMs) {
+        evaluatedSamples++;
+        if (!engine.addSample(x, y, z)) return;
+        windows++;
+        if (noiseFloor != null && openSamples >= SpectralFeatures.HOP) {
+            // A quake being verified or in progress is not background, however long it lasts
+            if (detectionStreak == 0 && !quakeConfirmed) observe(openSamples);
+            openSamples = 0;
+        }
+
+        if (engine.isPatternDetected()) {
+            if (detectionStreak == 0) {
+                detectionStartTime = nowMs;
+            }
+
+            detectionStreak++;
+            long elapsed = nowMs - detectionStartTime;
+
+            if (elapsed >= minDetectionTimeMs && detectionStreak >= requiredStreak && !quakeConfirmed) {
+                quakeConfirmed = true;
+                listener.onQuakeConfirmed(engine.getEnergy(), engine.getVariance(), engine.getPeakCount());
+                publish(DetectorState.CONFIRMED, 0, nowMs);
+            } else if (!quakeConfirmed) {
+                publish(DetectorState.VERIFYING, (int) (elapsed / 1000), nowMs);
+            }
+        } else {
+            detectionStreak = 0;
+            detectionStartTime = 0;
+            quakeConfirmed = false;
+            publish(DetectorState.IDLE, 0, nowMs);
+        }
+    }
+
+    private void publish(DetectorState newState, int newSeconds, long nowMs) {
+        if (newState == state) {
+            if (newSeconds == seconds) return;
+            // Left unchanged so the next sample past the interval retries it
+            if (nowMs - lastUpdateTime < MIN_UPDATE_INTERVAL_MS) return;
+        }
+        state = newState;
+        seconds = newSeconds;
+        lastUpdateTime = nowMs;
+        listener.onStateChanged(newState, newSeconds);
+    }
+
+    /** Whether the engine is running; always true without a trigger. */
+    public boolean isGateOpen() {
+        return trigger == null || gateOpen;
+    }
+
+    /** Whether the last sample was skipped as handled. */
+    public boolean isHandled() {
+        return handled;
+    }
+
+    /** The trigger's short-term RMS and STA/LTA ratio; 0 without a trigger. */
+    public float getShortTermRms() {
+        return trigger == null ? 0f : trigger.getShortTermRms();
+    }
+
+    public float getTriggerRatio() {
+        return trigger == null ? 0f : trigger.getRatio();
+    }
+
+    /** How often the trigger opened the gate. */
+    public long getGateOpenings() {
+        return gateOpenings;
+    }
+
+    /** Samples seen, and samples that went through the engine, replays included. */
+    public long getSampleCount() {
+        return samples;
+    }
+
+    public long getEvaluatedSampleCount() {
+        return evaluatedSamples;
+    }
+
+    /** Samples skipped because the device was being handled. */
+    public long getHandledSampleCount() {
+        return handledSamples;
+    }
+
+    /** Full windows the classifier decided on; the first one ends the warm-up. */
+    public long getWindowCount() {
+        return windows;
+    }
+
+    public void reset() {
+        engine.reset();
+        if (trigger != null) trigger.reset();
+        historyNext = 0;
+        historyCount = 0;
+        gateOpen = true;
+        handled = false;
+        openSamples = 0;
+        closedSamples = 0;
+        detectionStreak = 0;
+        detectionStartTime = 0;
+        quakeConfirmed = false;
+        state = null;
+        seconds = -1;
+        lastUpdateTime = 0;
+    }
+}
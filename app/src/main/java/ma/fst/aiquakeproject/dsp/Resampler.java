@@ -0,0 +1,119 @@
+package ma.fst.aiquakeproject.dsp;
+
+/**
+ * Puts sensor samples onto an exact fixed-rate grid by linear interpolation
+ * on their own timestamps, so the filters downstream run at the rate they
+ * were designed for whatever the sensor actually delivers.
+ *
+ * <p>A sample whose timestamp does not move forward is counted as a
+ * duplicate and dropped. When two samples are further apart than
+ * {@code maxGapNs}, nothing is invented in between: the gap is counted and
+ * the grid restarts at the later sample.
+ */
+public final class Resampler {
+
+    /** Default gap limit: longer than any FIFO jitter, short enough not to smear an onset. */
+    public static final long MAX_GAP_NS = 250_000_000L;
+
+    public interface Output {
+        /** Called once per grid point, on the thread that calls {@link #add}. */
+        void onSample(long timestampNs, float x, float y, float z);
+    }
+
+    private long periodNs;
+    private final long maxGapNs;
+    private final Output output;
+
+    private boolean primed = false;
+    private long lastNs;
+    private float lastX;
+    private float lastY;
+    private float lastZ;
+    private long nextGridNs;
+
+    private long inputCount = 0;
+    private long outputCount = 0;
+    private long gapCount = 0;
+    private long duplicateCount = 0;
+
+    public Resampler(float rateHz, long maxGapNs, Output output) {
+        this.periodNs = Math.round(1_000_000_000.0 / rateHz);
+        this.maxGapNs = maxGapNs;
+        this.output = output;
+    }
+
+    public void add(long timestampNs, float x, float y, float z) {
+        inputCount++;
+        if (!primed) {
+            restart(timestampNs, x, y, z);
+            return;
+        }
+        long dt = timestampNs - lastNs;
+        if (dt <= 0) {
+            duplicateCount++;
+            return;
+        }
+        if (dt > maxGapNs) {
+            gapCount++;
+            restart(timestampNs, x, y, z);
+            return;
+        }
+
+        // Every grid point in (lastNs, timestampNs]
+        float inv = 1f / dt;
+        while (nextGridNs <= timestampNs) {
+            float t = (nextGridNs - lastNs) * inv;
+            output.onSample(nextGridNs,
+                    lastX + (x - lastX) * t,
+                    lastY + (y - lastY) * t,
+                    lastZ + (z - lastZ) * t);
+            outputCount++;
+            nextGridNs += periodNs;
+        }
+        lastNs = timestampNs;
+        lastX = x;
+        lastY = y;
+        lastZ = z;
+    }
+
+    private void restart(long timestampNs, float x, float y, float z) {
+        primed = true;
+        lastNs = timestampNs;
+        lastX = x;
+        lastY = y;
+        lastZ = z;
+        output.onSample(timestampNs, x, y, z);
+        outputCount++;
+        nextGridNs = timestampNs + periodNs;
+    }
+
+    /** Continues the grid at a new rate from the last input sample. */
+    public void setRate(float rateHz) {
+        periodNs = Math.round(1_000_000_000.0 / rateHz);
+        if (primed) nextGridNs = lastNs + periodNs;
+    }
+
+    public void reset() {
+        primed = false;
+    }
+
+    public long getPeriodNs() {
+        return periodNs;
+    }
+
+    public long getInputCount() {
+        return inputCount;
+    }
+
+    public long getOutputCount() {
+        return outputCount;
+    }
+
+    public long getGapCount() {
+        return gapCount;
+    }
+
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+}
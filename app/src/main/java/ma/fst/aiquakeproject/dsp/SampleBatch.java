@@ -0,0 +1,71 @@
+package ma.fst.aiquakeproject.dsp;
+
+/**
+ * Primitive struct-of-arrays buffer for one delivery of accelerometer
+ * samples, so a hardware FIFO batch can be processed in a single pass once
+ * the looper has drained it. Also counts deliveries to expose wakeups.
+ */
+public final class SampleBatch {
+
+    private final long[] timestamps;
+    private final float[] x;
+    private final float[] y;
+    private final float[] z;
+    private int size = 0;
+
+    private long batchCount = 0;
+    private long sampleCount = 0;
+
+    public SampleBatch(int capacity) {
+        timestamps = new long[capacity];
+        x = new float[capacity];
+        y = new float[capacity];
+        z = new float[capacity];
+    }
+
+    /** @return true when the batch is full and must be drained before the next add */
+    public boolean add(long timestampNs, float ax, float ay, float az) {
+        timestamps[size] = timestampNs;
+        x[size] = ax;
+        y[size] = ay;
+        z[size] = az;
+        size++;
+        return size == timestamps.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long timestamp(int i) {
+        return timestamps[i];
+    }
+
+    public float x(int i) {
+        return x[i];
+    }
+
+    public float y(int i) {
+        return y[i];
+    }
+
+    public float z(int i) {
+        return z[i];
+    }
+
+    /** Marks the current contents as processed and counts it as one delivery. */
+    public void clear() {
+        if (size == 0) return;
+        batchCount++;
+        sampleCount += size;
+        size = 0;
+    }
+
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+}
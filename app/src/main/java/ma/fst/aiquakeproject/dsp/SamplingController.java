@@ -0,0 +1,88 @@
+package ma.fst.aiquakeproject.dsp;
+
+/**
+ * Decides the sensor rate: a low, heavily batched rate while quiet and a
+ * burst rate while the trigger is on, stepping back down only after the
+ * trigger has stayed off for a hold-off. Works on sensor time and keeps
+ * track of the time spent in each mode.
+ *
+ * <p>Downstream stages never see the rate change, since they run on the
+ * {@link Resampler} grid.
+ */
+public final class SamplingController {
+
+    public enum Mode { IDLE, BURST }
+
+    public interface Listener {
+        /** Called from {@link #update} with the mode to switch the sensor to. */
+        void onModeChanged(Mode mode, long nowNs);
+    }
+
+    public static final int IDLE_RATE_HZ = 20;
+    public static final int BURST_RATE_HZ = 100;
+    public static final long HOLD_OFF_NS = 30_000_000_000L;
+
+    private final Listener listener;
+    private final long holdOffNs;
+
+    private Mode mode = Mode.BURST;
+    private long modeSinceNs = -1;
+    private long lastTriggeredNs = -1;
+    private final long[] timeInModeNs = new long[Mode.values().length];
+    private long escalations = 0;
+
+    public SamplingController(Listener listener) {
+        this(listener, HOLD_OFF_NS);
+    }
+
+    public SamplingController(Listener listener, long holdOffNs) {
+        this.listener = listener;
+        this.holdOffNs = holdOffNs;
+    }
+
+    /** Starts in {@link Mode#BURST}, since the trigger has no reference level yet. */
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void update(long nowNs, boolean triggered) {
+        if (modeSinceNs < 0) {
+            modeSinceNs = nowNs;
+            lastTriggeredNs = nowNs;
+        }
+        if (triggered) lastTriggeredNs = nowNs;
+
+        if (mode == Mode.IDLE && triggered) {
+            escalations++;
+            switchTo(Mode.BURST, nowNs);
+        } else if (mode == Mode.BURST && !triggered && nowNs - lastTriggeredNs >= holdOffNs) {
+            switchTo(Mode.IDLE, nowNs);
+        }
+    }
+
+    private void switchTo(Mode next, long nowNs) {
+        timeInModeNs[mode.ordinal()] += nowNs - modeSinceNs;
+        mode = next;
+        modeSinceNs = nowNs;
+        listener.onModeChanged(next, nowNs);
+    }
+
+    /** Total time spent in {@code m} up to {@code nowNs}. */
+    public long getTimeInModeNs(Mode m, long nowNs) {
+        long total = timeInModeNs[m.ordinal()];
+        if (m == mode && modeSinceNs >= 0) total += nowNs - modeSinceNs;
+        return total;
+    }
+
+    public long getEscalations() {
+        return escalations;
+    }
+
+    public void reset() {
+        mode = Mode.BURST;
+        modeSinceNs = -1;
+        lastTriggeredNs = -1;
+        for (int i = 0; i < timeInModeNs.length; i++) timeInModeNs[i] = 0;
+        escalations = 0;
+    }
+}
@@ -0,0 +1,65 @@
+package ma.fst.aiquakeproject.dsp;
+
+/**
+ * Incremental version of the original window-recompute peak count: local maxima
+ * above a threshold, at least {@code minSpacing} samples apart, counted over
+ * the last {@code windowSize} samples. Accepted peak positions live in a small
+ * primitive ring and expire as the window slides past them.
+ */
+public final class SpacedPeakCounter {
+
+    private final int windowSize;
+    private final float threshold;
+    private final int minSpacing;
+    private final long[] peaks;
+
+    private int head = 0;
+    private int count = 0;
+    private long sampleIndex = -1;
+    private long lastPeak;
+    private float prev2;
+    private float prev1;
+
+    public SpacedPeakCounter(int windowSize, float threshold, int minSpacing) {
+        this.windowSize = windowSize;
+        this.threshold = threshold;
+        this.minSpacing = minSpacing;
+        this.peaks = new long[windowSize / Math.max(1, minSpacing) + 2];
+        reset();
+    }
+
+    public void add(float v) {
+        sampleIndex++;
+        // prev1 is a peak candidate once both of its neighbours are known
+        if (sampleIndex >= 2 && prev1 > threshold && prev1 > prev2 && prev1 > v) {
+            long candidate = sampleIndex - 1;
+            if (candidate - lastPeak >= minSpacing) {
+                peaks[(head + count) % peaks.length] = candidate;
+                count++;
+                lastPeak = candidate;
+            }
+        }
+        prev2 = prev1;
+        prev1 = v;
+
+        // The first and last sample of the window can never be peaks
+        long oldest = sampleIndex - windowSize + 2;
+        while (count > 0 && peaks[head] < oldest) {
+            head = (head + 1) % peaks.length;
+            count--;
+        }
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public void reset() {
+        head = 0;
+        count = 0;
+        sampleIndex = -1;
+        lastPeak = Long.MIN_VALUE / 2;
+        prev2 = 0f;
+        prev1 = 0f;
+    }
+}
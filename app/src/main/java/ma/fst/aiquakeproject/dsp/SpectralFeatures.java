@@ -0,0 +1,210 @@
+package ma.fst.aiquakeproject.dsp;
+
+/**
+ * Spectral features of the last {@code size} samples, recomputed every
+ * {@link #HOP} samples: dominant frequency, the ratio of power inside the
+ * detection band to power outside it, and spectral flatness.
+ *
+ * <p>The window is mean-removed and Hann-weighted, then transformed with an
+ * in-place radix-2 real FFT: the {@code size} real samples are packed into a
+ * complex FFT of half the size and split afterwards. Twiddles, the window and
+ * the bit-reversal permutation are precomputed, so no call allocates.
+ */
+public final class SpectralFeatures {
+
+    public static final int HOP = 32;
+
+    // Keeps log() finite for empty bins
+    private static final double POWER_FLOOR = 1e-12;
+
+    private final int size;
+    private final int half;
+    private final float binHz;
+    private final int bandFrom;
+    private final int bandTo;
+
+    private final float[] ring;
+    private final float[] hann;
+    private final float[] re;
+    private final float[] im;
+    private final float[] cos;
+    private final float[] sin;
+    private final int[] bitReverse;
+    private final float[] power;
+
+    private int next = 0;
+    private int count = 0;
+    private int sinceCompute = 0;
+
+    private float dominantFrequency;
+    private float bandRatio;
+    private float flatness;
+
+    /**
+     * @param size window length, a power of two
+     * @param bandLow lower edge of the band whose power is compared with the rest, in Hz
+     */
+    public SpectralFeatures(int size, float fs, float bandLow, float bandHigh) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Window size must be a power of two: " + size);
+        }
+        this.size = size;
+        this.half = size / 2;
+        this.binHz = fs / size;
+        this.bandFrom = Math.max(1, (int) Math.ceil(bandLow / binHz));
+        this.bandTo = Math.min(half, (int) Math.floor(bandHigh / binHz));
+
+        ring = new float[size];
+        hann = new float[size];
+        for (int i = 0; i < size; i++) {
+            hann[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / size));
+        }
+        re = new float[half];
+        im = new float[half];
+        // e^{-2πik/size}: the first half drives the complex FFT, all of it the split
+        cos = new float[half];
+        sin = new float[half];
+        for (int k = 0; k < half; k++) {
+            cos[k] = (float) Math.cos(2 * Math.PI * k / size);
+            sin[k] = (float) -Math.sin(2 * Math.PI * k / size);
+        }
+        bitReverse = new int[half];
+        int bits = Integer.numberOfTrailingZeros(half);
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        power = new float[half + 1];
+    }
+
+    /**
+     * Feeds one sample.
+     *
+     * @return true if the features were recomputed on this sample
+     */
+    public boolean add(float sample) {
+        ring[next] = sample;
+        next = (next + 1) & (size - 1);
+        if (count < size) {
+            // First full window
+            if (++count < size) return false;
+        } else if (++sinceCompute < HOP) {
+            return false;
+        }
+        sinceCompute = 0;
+        compute();
+        return true;
+    }
+
+    private void compute() {
+        float mean = 0f;
+        for (int i = 0; i < size; i++) mean += ring[i];
+        mean /= size;
+
+        // Oldest sample first; even samples go to re, odd ones to im
+        for (int i = 0; i < half; i++) {
+            int a = 2 * i;
+            int b = a + 1;
+            int j = bitReverse[i];
+            re[j] = (ring[(next + a) & (size - 1)] - mean) * hann[a];
+            im[j] = (ring[(next + b) & (size - 1)] - mean) * hann[b];
+        }
+        transform();
+        split();
+        summarize();
+    }
+
+    // Iterative radix-2 on bit-reversed input; twiddle stride doubles the full-size table step
+    private void transform() {
+        for (int len = 2; len <= half; len <<= 1) {
+            int step = size / len;
+            int span = len >> 1;
+            for (int start = 0; start < half; start += len) {
+                for (int k = 0; k < span; k++) {
+                    float wr = cos[k * step];
+                    float wi = sin[k * step];
+                    int p = start + k;
+                    int q = p + span;
+                    float tr = re[q] * wr - im[q] * wi;
+                    float ti = re[q] * wi + im[q] * wr;
+                    re[q] = re[p] - tr;
+                    im[q] = im[p] - ti;
+                    re[p] += tr;
+                    im[p] += ti;
+                }
+            }
+        }
+    }
+
+    // X[k] = (Z[k] + conj Z[M-k]) / 2 - i e^{-2πik/N} (Z[k] - conj Z[M-k]) / 2
+    private void split() {
+        for (int k = 0; k <= half; k++) {
+            int a = k == half ? 0 : k;
+            int b = k == 0 ? 0 : half - k;
+            float zr = re[a];
+            float zi = im[a];
+            float cr = re[b];
+            float ci = -im[b];
+            float er = 0.5f * (zr + cr);
+            float ei = 0.5f * (zi + ci);
+            float or = 0.5f * (zi - ci);
+            float oi = -0.5f * (zr - cr);
+            float wr = k == half ? -1f : cos[k];
+            float wi = k == half ? 0f : sin[k];
+            float xr = er + wr * or - wi * oi;
+            float xi = ei + wr * oi + wi * or;
+            power[k] = xr * xr + xi * xi;
+        }
+    }
+
+    private void summarize() {
+        int peak = 1;
+        double inBand = 0;
+        double outOfBand = 0;
+        double total = 0;
+        double logSum = 0;
+        for (int k = 1; k <= half; k++) {
+            float p = power[k];
+            if (p > power[peak]) peak = k;
+            if (k >= bandFrom && k <= bandTo) inBand += p;
+            else outOfBand += p;
+            total += p;
+            logSum += Math.log(p + POWER_FLOOR);
+        }
+        dominantFrequency = peak * binHz;
+        bandRatio = (float) (inBand / Math.max(outOfBand, POWER_FLOOR));
+        double arithmetic = total / half + POWER_FLOOR;
+        flatness = (float) (Math.exp(logSum / half) / arithmetic);
+    }
+
+    /** Power of bins 0 to size/2 from the last computation. Do not modify. */
+    float[] power() {
+        return power;
+    }
+
+    public float getDominantFrequency() {
+        return dominantFrequency;
+    }
+
+    /** In-band power over out-of-band power, DC excluded. */
+    public float getBandRatio() {
+        return bandRatio;
+    }
+
+    /** Geometric over arithmetic mean of the power spectrum: near 1 for noise, near 0 for a tone. */
+    public float getFlatness() {
+        return flatness;
+    }
+
+    public boolean isFull() {
+        return count == size;
+    }
+
+    public void reset() {
+        next = 0;
+        count = 0;
+        sinceCompute = 0;
+        dominantFrequency = 0f;
+        bandRatio = 0f;
+        flatness = 0f;
+    }
+}
@@ -0,0 +1,106 @@
+package ma.fst.aiquakeproject.dsp;
+
+/**
+ * Recursive STA/LTA trigger on the acceleration magnitude: the ratio of a
+ * short-term to a long-term exponential average of the squared deviation
+ * from a slow baseline (gravity). O(1) per sample with a few floats of state.
+ *
+ * <p>The trigger turns on when the ratio reaches {@code onRatio}, or when the
+ * short-term average alone reaches {@code absoluteOn}, so steady shaking
+ * strong enough for the feature thresholds can't hide behind a noisy LTA. It
+ * turns off once both drop below their off levels. The LTA is frozen while
+ * triggered so the event does not raise its own reference level, and the
+ * trigger reports on until the LTA has been warmed up over one LTA length.
+ */
+public final class StaLtaTrigger {
+
+    public static final float STA_SECONDS = 1f;
+    public static final float LTA_SECONDS = 30f;
+    public static final float ON_RATIO = 3f;
+    public static final float OFF_RATIO = 1.5f;
+    // Half the STA an in-band RMS at DetectionEngine.ENERGY_THRESHOLD produces
+    public static final float ABSOLUTE_ON = 0.5f * DetectionEngine.ENERGY_THRESHOLD * DetectionEngine.ENERGY_THRESHOLD;
+
+    private static final float BASELINE_SECONDS = 10f;
+    // Below any real accelerometer's noise, so a flat signal can't trigger on 0 >= 0
+    private static final float LTA_FLOOR = 1e-5f;
+
+    private final float staAlpha;
+    private final float ltaAlpha;
+    private final float baselineAlpha;
+    private final float onRatio;
+    private final float offRatio;
+    private final float absoluteOn;
+    private final int warmupSamples;
+
+    private float baseline;
+    private float sta;
+    private float lta;
+    private int samples;
+    private boolean triggered;
+
+    public StaLtaTrigger(float fs) {
+        this(fs, STA_SECONDS, LTA_SECONDS, ON_RATIO, OFF_RATIO, ABSOLUTE_ON);
+    }
+
+    public StaLtaTrigger(float fs, float staSeconds, float ltaSeconds, float onRatio, float offRatio, float absoluteOn) {
+        this.staAlpha = 1f / (staSeconds * fs);
+        this.ltaAlpha = 1f / (ltaSeconds * fs);
+        this.baselineAlpha = 1f / (BASELINE_SECONDS * fs);
+        this.onRatio = onRatio;
+        this.offRatio = offRatio;
+        this.absoluteOn = absoluteOn;
+        this.warmupSamples = Math.round(ltaSeconds * fs);
+        reset();
+    }
+
+    /** Feeds one magnitude and returns whether the trigger is on. */
+    public boolean add(float magnitude) {
+        if (samples == 0) baseline = magnitude;
+        float deviation = magnitude - baseline;
+        float cf = deviation * deviation;
+        sta += (cf - sta) * staAlpha;
+        if (samples < warmupSamples) {
+            // Plain running means until there is a full LTA of history
+            samples++;
+            baseline += deviation / samples;
+            lta += (cf - lta) / samples;
+            // Nothing to compare against yet
+            triggered = true;
+            return true;
+        }
+
+        float reference = Math.max(lta, LTA_FLOOR);
+        if (triggered) {
+            if (sta < offRatio * reference && sta < 0.5f * absoluteOn) triggered = false;
+        } else if (sta >= onRatio * reference || sta >= absoluteOn) {
+            triggered = true;
+        }
+        if (!triggered) {
+            baseline += deviation * baselineAlpha;
+            lta += (cf - lta) * ltaAlpha;
+        }
+        return triggered;
+    }
+
+    public boolean isTriggered() {
+        return triggered;
+    }
+
+    public float getRatio() {
+        return lta > 0f ? sta / lta : 0f;
+    }
+
+    /** RMS of the magnitude's deviation from its baseline over the short-term window. */
+    public float getShortTermRms() {
+        return (float) Math.sqrt(sta);
+    }
+
+    public void reset() {
+        baseline = 0f;
+        sta = 0f;
+        lta = 0f;
+        samples = 0;
+        triggered = true;
+    }
+}
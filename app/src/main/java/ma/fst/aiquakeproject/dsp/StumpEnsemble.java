@@ -0,0 +1,117 @@
+package ma.fst.aiquakeproject.dsp;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Gradient-boosted decision stumps with 16-bit leaves: the score is
+ * {@code bias + scale * sum(leaf)} over stumps that each compare one feature
+ * with a threshold, and a window is a quake when the score reaches the cutoff.
+ * The model is held in parallel primitive arrays, so scoring is one loop of
+ * compares and integer adds.
+ *
+ * <p>File format, big-endian: magic {@code "AQCL"}, version, feature count,
+ * stump count, scale, bias, cutoff, then per stump the feature index, the
+ * threshold, and the leaves for {@code <=} and {@code >}.
+ */
+public final class StumpEnsemble implements WindowClassifier {
+
+    public static final int MAGIC = 0x4151434C;
+    public static final int VERSION = 1;
+    /** Keeps a window well inside the inference budget even on slow cores. */
+    public static final int MAX_STUMPS = 256;
+
+    private final byte[] feature;
+    private final float[] threshold;
+    private final short[] left;
+    private final short[] right;
+    private final float scale;
+    private final float bias;
+    private final float cutoff;
+
+    public StumpEnsemble(byte[] feature, float[] threshold, short[] left, short[] right,
+                         float scale, float bias, float cutoff) {
+        int n = feature.length;
+        if (n > MAX_STUMPS) throw new IllegalArgumentException("Too many stumps: " + n);
+        if (threshold.length != n || left.length != n || right.length != n) {
+            throw new IllegalArgumentException("Stump arrays differ in length");
+        }
+        for (byte f : feature) {
+            if (f < 0 || f >= FEATURE_COUNT) throw new IllegalArgumentException("Unknown feature " + f);
+        }
+        this.feature = feature;
+        this.threshold = threshold;
+        this.left = left;
+        this.right = right;
+        this.scale = scale;
+        this.bias = bias;
+        this.cutoff = cutoff;
+    }
+
+    /** Log-odds of a quake. */
+    public float score(float[] features) {
+        int sum = 0;
+        for (int i = 0; i < feature.length; i++) {
+            sum += features[feature[i]] <= threshold[i] ? left[i] : right[i];
+        }
+        return bias + scale * sum;
+    }
+
+    @Override
+    public boolean isQuake(float[] features) {
+        return score(features) >= cutoff;
+    }
+
+    public int size() {
+        return feature.length;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeByte(FEATURE_COUNT);
+        data.writeShort(feature.length);
+        data.writeFloat(scale);
+        data.writeFloat(bias);
+        data.writeFloat(cutoff);
+        for (int i = 0; i < feature.length; i++) {
+            data.writeByte(feature[i]);
+            data.writeFloat(threshold[i]);
+            data.writeShort(left[i]);
+            data.writeShort(right[i]);
+        }
+        data.flush();
+    }
+
+    /** Reads a model written by {@link #write}; does not close {@code in}. */
+    public static StumpEnsemble read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) throw new IOException("Not a classifier model");
+        int version = data.readInt();
+        if (version != VERSION) throw new IOException("Unsupported model version " + version);
+        int features = data.readUnsignedByte();
+        if (features > FEATURE_COUNT) throw new IOException("Model expects " + features + " features");
+        int n = data.readUnsignedShort();
+        if (n > MAX_STUMPS) throw new IOException("Model has " + n + " stumps, the limit is " + MAX_STUMPS);
+        float scale = data.readFloat();
+        float bias = data.readFloat();
+        float cutoff = data.readFloat();
+
+        byte[] feature = new byte[n];
+        float[] threshold = new float[n];
+        short[] left = new short[n];
+        short[] right = new short[n];
+        for (int i = 0; i < n; i++) {
+            feature[i] = data.readByte();
+            if (feature[i] < 0 || feature[i] >= features) throw new IOException("Unknown feature " + feature[i]);
+            threshold[i] = data.readFloat();
+            left[i] = data.readShort();
+            right[i] = data.readShort();
+        }
+        return new StumpEnsemble(feature, threshold, left, right, scale, bias, cutoff);
+    }
+}
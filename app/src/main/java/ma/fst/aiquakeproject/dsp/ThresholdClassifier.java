@@ -0,0 +1,71 @@
+package ma.fst.aiquakeproject.dsp;
+
+/**
+ * The hand-tuned rule: energy, variance and peak count over their
+ * {@link DetectorConfig} thresholds, with most of the power inside the band.
+ * Used when no trained model is available.
+ *
+ * <p>Each of the other {@link DetectionEngine#SCALE_SHIFTS} windows can also
+ * carry the decision, against thresholds scaled from the configured ones:
+ * the short window only for strong shaking, the long ones for weaker motion
+ * that lasts, at a lower peak rate.
+ */
+public final class ThresholdClassifier implements WindowClassifier {
+
+    private float energyThreshold;
+    private float varianceThreshold;
+    private final int peakThreshold;
+    private final float minBandRatio;
+
+    // Per scale, the energy threshold and peak rate relative to the configured window
+    private static final float[] SCALE_ENERGY = {2f, 0.7f, 0.5f, 0.35f};
+    private static final float[] SCALE_PEAK_RATE = {0.6f, 0.7f, 0.5f, 0.35f};
+
+    private final float[] scaleEnergy = new float[SCALE_ENERGY.length];
+    private final float[] scaleVariance = new float[SCALE_ENERGY.length];
+    private final int[] scalePeaks = new int[SCALE_ENERGY.length];
+
+    public ThresholdClassifier() {
+        this(DetectorConfig.DEFAULTS);
+    }
+
+    public ThresholdClassifier(DetectorConfig config) {
+        peakThreshold = config.peakThreshold;
+        minBandRatio = config.minBandRatio;
+        for (int i = 0; i < SCALE_ENERGY.length; i++) {
+            int shift = DetectionEngine.SCALE_SHIFTS[i];
+            float length = shift >= 0 ? 1 << shift : 1f / (1 << -shift);
+            scalePeaks[i] = (int) Math.ceil(peakThreshold * length * SCALE_PEAK_RATE[i]);
+        }
+        setThresholds(config.energyThreshold, config.varianceThreshold);
+    }
+
+    /** Moves the energy and variance thresholds, e.g. to a {@link NoiseFloor}; call on the sampling thread. */
+    public void setThresholds(float energy, float variance) {
+        energyThreshold = energy;
+        varianceThreshold = variance;
+        for (int i = 0; i < SCALE_ENERGY.length; i++) {
+            scaleEnergy[i] = energy * SCALE_ENERGY[i];
+            // Variance goes with the square of the amplitude
+            scaleVariance[i] = variance * SCALE_ENERGY[i] * SCALE_ENERGY[i];
+        }
+    }
+
+    @Override
+    public boolean isQuake(float[] features) {
+        if (features[BAND_RATIO] < minBandRatio) return false;
+        if (features[ENERGY] > energyThreshold
+                && features[VARIANCE] > varianceThreshold
+                && features[PEAK_COUNT] >= peakThreshold) {
+            return true;
+        }
+        for (int i = 0, f = SCALE_FEATURES; i < scaleEnergy.length; i++, f += 3) {
+            if (features[f] > scaleEnergy[i]
+                    && features[f + 1] > scaleVariance[i]
+                    && features[f + 2] >= scalePeaks[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,21 @@
+package ma.fst.aiquakeproject.dsp;
+
+/** A copied-out stretch of raw 3-axis samples around a trigger. */
+public final class Waveform {
+
+    public final long triggerNs;
+    public final long[] timestamps;
+    public final float[] x;
+    public final float[] y;
+    public final float[] z;
+    public final int size;
+
+    public Waveform(long triggerNs, long[] timestamps, float[] x, float[] y, float[] z, int size) {
+        this.triggerNs = triggerNs;
+        this.timestamps = timestamps;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.size = size;
+    }
+}
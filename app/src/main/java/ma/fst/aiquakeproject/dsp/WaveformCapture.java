@@ -0,0 +1,60 @@
+package ma.fst.aiquakeproject.dsp;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Captures the pre-event window plus a post-event tail from a
+ * {@link WaveformRing} when a quake is confirmed. Triggering and tracking run
+ * on the sampling thread and cost a comparison per sample; once the tail is
+ * in the ring the copy runs on {@code executor} while sampling continues.
+ */
+public final class WaveformCapture {
+
+    public interface Listener {
+        /** Called on the capture executor. */
+        void onWaveform(String detectionId, Waveform waveform);
+    }
+
+    private final WaveformRing ring;
+    private final long preNs;
+    private final long postNs;
+    private final Executor executor;
+    private final Listener listener;
+
+    private String pendingId;
+    private long pendingStartSeq;
+    private long pendingTriggerNs;
+
+    public WaveformCapture(WaveformRing ring, long preNs, long postNs, Executor executor, Listener listener) {
+        this.ring = ring;
+        this.preNs = preNs;
+        this.postNs = postNs;
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    /** Sampling thread: starts a capture around {@code triggerNs}. A capture in progress is flushed first. */
+    public void trigger(String detectionId, long triggerNs) {
+        if (pendingId != null) complete();
+        pendingId = detectionId;
+        pendingTriggerNs = triggerNs;
+        pendingStartSeq = Math.max(0, ring.written() - ring.usable());
+    }
+
+    /** Sampling thread: call after each {@link WaveformRing#add}. */
+    public void onSample(long timestampNs) {
+        if (pendingId != null && timestampNs - pendingTriggerNs >= postNs) {
+            complete();
+        }
+    }
+
+    private void complete() {
+        String id = pendingId;
+        long startSeq = pendingStartSeq;
+        long endSeq = ring.written();
+        long triggerNs = pendingTriggerNs;
+        long fromNs = triggerNs - preNs;
+        pendingId = null;
+        executor.execute(() -> listener.onWaveform(id, ring.snapshot(startSeq, endSeq, fromNs, triggerNs)));
+    }
+}
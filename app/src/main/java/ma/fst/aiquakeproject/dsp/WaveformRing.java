@@ -0,0 +1,102 @@
+package ma.fst.aiquakeproject.dsp;
+
+/**
+ * Always-on primitive ring of the last raw 3-axis samples with their sensor
+ * timestamps. One thread writes; any thread may copy a range out without a
+ * lock. The write sequence is published through a volatile, read once before
+ * the copy. The copy leaves out the {@code margin} oldest slots, which the
+ * writer could only reach by adding that many samples while the copy runs, so
+ * no sample is returned torn as long as a copy takes less than
+ * {@code margin} sample periods. Checking {@code written} again after the copy
+ * would not be enough: without a load fence the array reads may be reordered
+ * past that volatile read.
+ */
+public final class WaveformRing {
+
+    private final long[] timestamps;
+    private final float[] x;
+    private final float[] y;
+    private final float[] z;
+    private final int capacity;
+    private final int margin;
+
+    /** Number of samples ever written; sample n lives at n % capacity. */
+    private volatile long written = 0;
+
+    /** A ring whose copies keep an eighth of it clear of the writer. */
+    public WaveformRing(int capacity) {
+        this(capacity, capacity / 8);
+    }
+
+    /** @param margin samples the writer may add while a copy runs */
+    public WaveformRing(int capacity, int margin) {
+        if (margin < 1 || margin >= capacity) throw new IllegalArgumentException("Margin " + margin);
+        this.capacity = capacity;
+        this.margin = margin;
+        timestamps = new long[capacity];
+        x = new float[capacity];
+        y = new float[capacity];
+        z = new float[capacity];
+    }
+
+    /** Writer thread only. */
+    public void add(long timestampNs, float ax, float ay, float az) {
+        long n = written;
+        int i = (int) (n % capacity);
+        timestamps[i] = timestampNs;
+        x[i] = ax;
+        y[i] = ay;
+        z[i] = az;
+        written = n + 1;
+    }
+
+    public long written() {
+        return written;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /** How many of the latest samples a copy can return. */
+    public int usable() {
+        return capacity - margin;
+    }
+
+    /**
+     * Copies the samples with sequence in {@code [fromSeq, toSeq)} whose
+     * timestamp is at least {@code fromNs}, out of the latest {@link #usable}
+     * ones. Safe to call while the writer runs.
+     */
+    public Waveform snapshot(long fromSeq, long toSeq, long fromNs, long triggerNs) {
+        long published = written;
+        long end = Math.min(toSeq, published);
+        // The slot being filled is published + 1 - capacity; the margin keeps the copy clear of it
+        long start = Math.max(fromSeq, Math.max(0, published + margin - capacity));
+        int n = (int) Math.max(0, end - start);
+
+        long[] ts = new long[n];
+        float[] xs = new float[n];
+        float[] ys = new float[n];
+        float[] zs = new float[n];
+        for (int k = 0; k < n; k++) {
+            int i = (int) ((start + k) % capacity);
+            ts[k] = timestamps[i];
+            xs[k] = x[i];
+            ys[k] = y[i];
+            zs[k] = z[i];
+        }
+
+        int skip = 0;
+        while (skip < n && ts[skip] < fromNs) skip++;
+
+        int size = n - skip;
+        if (skip > 0) {
+            System.arraycopy(ts, skip, ts, 0, size);
+            System.arraycopy(xs, skip, xs, 0, size);
+            System.arraycopy(ys, skip, ys, 0, size);
+            System.arraycopy(zs, skip, zs, 0, size);
+        }
+        return new Waveform(triggerNs, ts, xs, ys, zs, size);
+    }
+}
@@ -0,0 +1,33 @@
+package ma.fst.aiquakeproject.dsp;
+
+/**
+ * Decides from one window's features whether it looks like a quake. The
+ * feature vector is indexed by the constants below and filled by
+ * {@link DetectionEngine} once per sample after the window is full. The
+ * component features stay 0 when the engine is fed magnitudes only.
+ */
+public interface WindowClassifier {
+
+    int ENERGY = 0;
+    int VARIANCE = 1;
+    int PEAK_COUNT = 2;
+    int DOMINANT_FREQUENCY = 3;
+    int BAND_RATIO = 4;
+    int FLATNESS = 5;
+    int VERTICAL_RMS = 6;
+    int HORIZONTAL_RMS = 7;
+    int HORIZONTAL_RATIO = 8;
+    /**
+     * Energy, variance and peak count of each {@link DetectionEngine#SCALE_SHIFTS}
+     * window, three per scale from here on; 0 until that window is full.
+     */
+    int SCALE_FEATURES = 9;
+    /** New features are appended, so a model trained on fewer stays valid. */
+    int FEATURE_COUNT = 21;
+
+    /**
+     * Called on the sampling thread for every full window. Must not allocate
+     * or keep a reference to {@code features}.
+     */
+    boolean isQuake(float[] features);
+}
@@ -0,0 +1,66 @@
+package ma.fst.aiquakeproject.fragments;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+import ma.fst.aiquakeproject.R;
+import ma.fst.aiquakeproject.metrics.MetricsSnapshot;
+import ma.fst.aiquakeproject.metrics.PipelineMetrics;
+
+/**
+ * Shows the {@link PipelineMetrics} of the running detector, refreshed every
+ * second while the screen is visible.
+ */
+public class DiagnosticsFragment extends Fragment {
+
+    private static final long REFRESH_MS = 1000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private TextView metricsText;
+    private MetricsSnapshot previous;
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            MetricsSnapshot snapshot = PipelineMetrics.get().snapshot();
+            metricsText.setText(snapshot.format(previous));
+            previous = snapshot;
+            handler.postDelayed(this, REFRESH_MS);
+        }
+    };
+
+    public DiagnosticsFragment() {}
+
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container,
+                             Bundle savedInstanceState) {
+        return inflater.inflate(R.layout.fragment_diagnostics, container, false);
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        metricsText = view.findViewById(R.id.metricsText);
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        previous = null;
+        refresh.run();
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        handler.removeCallbacks(refresh);
+    }
+}
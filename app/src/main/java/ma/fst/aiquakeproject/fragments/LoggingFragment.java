@@ -1,6 +1,11 @@
 package ma.fst.aiquakeproject.fragments;
 
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -12,9 +17,25 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
 import ma.fst.aiquakeproject.R;
+import ma.fst.aiquakeproject.detection.DetectionService;
 
 public class LoggingFragment extends Fragment {
 
+    private DetectionService service;
+    private boolean bound = false;
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            service = ((DetectionService.LocalBinder) binder).getService();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            service = null;
+        }
+    };
+
     public LoggingFragment() {
         // Required empty public constructor
     }
@@ -30,10 +51,30 @@ public class LoggingFragment extends Fragment {
         Button startButton = view.findViewById(R.id.startButton);
         Button stopButton = view.findViewById(R.id.stopButton);
 
-        startButton.setOnClickListener(v ->
-                Toast.makeText(getContext(), "Start Logging", Toast.LENGTH_SHORT).show());
+        Context context = requireContext();
+        DetectionService.start(context);
+        bound = context.bindService(new Intent(context, DetectionService.class), connection, Context.BIND_AUTO_CREATE);
+
+        startButton.setOnClickListener(v -> {
+            if (service == null) return;
+            service.startRecording();
+            Toast.makeText(getContext(), service.isRecording() ? "Start Logging" : "Logging failed", Toast.LENGTH_SHORT).show();
+        });
 
-        stopButton.setOnClickListener(v ->
-                Toast.makeText(getContext(), "Stop Logging", Toast.LENGTH_SHORT).show());
+        stopButton.setOnClickListener(v -> {
+            if (service == null || !service.isRecording()) return;
+            service.stopRecording();
+            Toast.makeText(getContext(), "Stop Logging", Toast.LENGTH_SHORT).show();
+        });
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        service = null;
+        if (bound) {
+            requireContext().unbindService(connection);
+            bound = false;
+        }
     }
 }
@@ -4,15 +4,42 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.EditText;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
 import ma.fst.aiquakeproject.R;
+import ma.fst.aiquakeproject.detection.DetectorSettings;
+import ma.fst.aiquakeproject.dsp.DetectorConfig;
 
+/**
+ * Edits the detector tuning, backend URL, device id and telemetry interval.
+ * Saving validates the values as a {@link DetectorConfig} first; the running
+ * service picks the change up from SharedPreferences.
+ */
 public class SettingsFragment extends Fragment {
 
+    private DetectorSettings settings;
+
+    private EditText serverUrl;
+    private EditText deviceId;
+    private EditText telemetryInterval;
+    private EditText windowSize;
+    private EditText samplingRate;
+    private EditText filterLow;
+    private EditText filterHigh;
+    private EditText energyThreshold;
+    private EditText varianceThreshold;
+    private EditText peakThreshold;
+    private EditText peakAmplitude;
+    private EditText peakSpacing;
+    private EditText minBandRatio;
+    private EditText requiredStreak;
+    private EditText minDetectionTime;
+
     public SettingsFragment() {}
 
     @Override
@@ -23,6 +50,102 @@ public class SettingsFragment extends Fragment {
 
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
-        // Future logic for settings UI
+        settings = new DetectorSettings(requireContext());
+
+        serverUrl = view.findViewById(R.id.serverUrlInput);
+        deviceId = view.findViewById(R.id.deviceIdInput);
+        telemetryInterval = view.findViewById(R.id.telemetryIntervalInput);
+        windowSize = view.findViewById(R.id.windowSizeInput);
+        samplingRate = view.findViewById(R.id.samplingRateInput);
+        filterLow = view.findViewById(R.id.filterLowInput);
+        filterHigh = view.findViewById(R.id.filterHighInput);
+        energyThreshold = view.findViewById(R.id.energyThresholdInput);
+        varianceThreshold = view.findViewById(R.id.varianceThresholdInput);
+        peakThreshold = view.findViewById(R.id.peakThresholdInput);
+        peakAmplitude = view.findViewById(R.id.peakAmplitudeInput);
+        peakSpacing = view.findViewById(R.id.peakSpacingInput);
+        minBandRatio = view.findViewById(R.id.minBandRatioInput);
+        requiredStreak = view.findViewById(R.id.requiredStreakInput);
+        minDetectionTime = view.findViewById(R.id.minDetectionTimeInput);
+
+        if (savedInstanceState == null) {
+            show(settings.getDetectorConfig(), settings.getServerUrl(), settings.getDeviceId(),
+                    settings.getTelemetryIntervalMs());
+        }
+
+        view.findViewById(R.id.saveButton).setOnClickListener(v -> save());
+        view.findViewById(R.id.defaultsButton).setOnClickListener(v -> show(DetectorConfig.DEFAULTS,
+                DetectorSettings.DEFAULT_SERVER_URL, DetectorSettings.DEFAULT_DEVICE_ID,
+                DetectorSettings.DEFAULT_TELEMETRY_INTERVAL_MS));
+    }
+
+    private void show(DetectorConfig config, String url, String device, long telemetryMs) {
+        serverUrl.setText(url);
+        deviceId.setText(device);
+        telemetryInterval.setText(String.valueOf(telemetryMs));
+        windowSize.setText(String.valueOf(config.windowSize));
+        samplingRate.setText(String.valueOf(config.samplingRate));
+        filterLow.setText(String.valueOf(config.filterLow));
+        filterHigh.setText(String.valueOf(config.filterHigh));
+        energyThreshold.setText(String.valueOf(config.energyThreshold));
+        varianceThreshold.setText(String.valueOf(config.varianceThreshold));
+        peakThreshold.setText(String.valueOf(config.peakThreshold));
+        peakAmplitude.setText(String.valueOf(config.peakAmplitude));
+        peakSpacing.setText(String.valueOf(config.peakSpacing));
+        minBandRatio.setText(String.valueOf(config.minBandRatio));
+        requiredStreak.setText(String.valueOf(config.requiredStreak));
+        minDetectionTime.setText(String.valueOf(config.minDetectionTimeMs));
+    }
+
+    private void save() {
+        String url = serverUrl.getText().toString().trim();
+        String device = deviceId.getText().toString().trim();
+        if (!url.startsWith("http://") && !url.startsWith("https://")) {
+            Toast.makeText(getContext(), "Server URL must start with http:// or https://", Toast.LENGTH_LONG).show();
+            return;
+        }
+        if (device.isEmpty()) {
+            Toast.makeText(getContext(), "Device ID must not be empty", Toast.LENGTH_LONG).show();
+            return;
+        }
+
+        long telemetryMs;
+        try {
+            telemetryMs = Long.parseLong(text(telemetryInterval));
+        } catch (NumberFormatException e) {
+            telemetryMs = -1;
+        }
+        if (telemetryMs < 0) {
+            Toast.makeText(getContext(), "Telemetry interval must be 0 (off) or more ms", Toast.LENGTH_LONG).show();
+            return;
+        }
+
+        DetectorConfig config;
+        try {
+            config = new DetectorConfig(
+                    Integer.parseInt(text(windowSize)),
+                    Float.parseFloat(text(filterLow)),
+                    Float.parseFloat(text(filterHigh)),
+                    Float.parseFloat(text(samplingRate)),
+                    Float.parseFloat(text(energyThreshold)),
+                    Float.parseFloat(text(varianceThreshold)),
+                    Integer.parseInt(text(peakThreshold)),
+                    Float.parseFloat(text(peakAmplitude)),
+                    Integer.parseInt(text(peakSpacing)),
+                    Float.parseFloat(text(minBandRatio)),
+                    Integer.parseInt(text(requiredStreak)),
+                    Long.parseLong(text(minDetectionTime)));
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException included
+            Toast.makeText(getContext(), "Invalid value: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            return;
+        }
+
+        settings.save(config, url.endsWith("/") ? url.substring(0, url.length() - 1) : url, device, telemetryMs);
+        Toast.makeText(getContext(), "Settings saved", Toast.LENGTH_SHORT).show();
+    }
+
+    private static String text(EditText field) {
+        return field.getText().toString().trim();
     }
 }
@@ -0,0 +1,53 @@
+package ma.fst.aiquakeproject.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket histogram of non-negative durations in nanoseconds. Buckets are
+ * log-linear: four per power of two, so any recorded value is reported within
+ * 25%. Values past about half an hour land in the last bucket.
+ *
+ * <p>{@link #record} is lock-free and allocation-free and may be called from
+ * any number of threads; {@link #snapshot} may run concurrently with it.
+ */
+public final class LatencyHistogram {
+
+    static final int SUB_BITS = 2;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    public static final int BUCKETS = 40 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /** Negative values, e.g. from a clock step, count as zero. */
+    public void record(long valueNs) {
+        if (valueNs < 0) valueNs = 0;
+        counts.getAndIncrement(bucketOf(valueNs));
+        sum.getAndAdd(valueNs);
+        long m = max.get();
+        while (valueNs > m && !max.compareAndSet(m, valueNs)) m = max.get();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int bucket = ((exponent - 1) << SUB_BITS) + (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /** Smallest value that falls into {@code bucket}. */
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = (bucket >>> SUB_BITS) + 1;
+        return (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << (exponent - SUB_BITS);
+    }
+
+    /** A copy of the counts; count, sum and max may be a few records apart under concurrent writes. */
+    public MetricsSnapshot.Histogram snapshot() {
+        long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = counts.get(i);
+        return new MetricsSnapshot.Histogram(buckets, sum.get(), max.get());
+    }
+}
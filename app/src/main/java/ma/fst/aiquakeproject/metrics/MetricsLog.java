@@ -0,0 +1,42 @@
+package ma.fst.aiquakeproject.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Appends one JSON snapshot per line to a file. Past {@code maxBytes} the file
+ * is renamed to {@code <name>.1}, replacing the previous one, so at most twice
+ * that is kept. Call from one thread.
+ */
+public final class MetricsLog {
+
+    private final File file;
+    private final File previous;
+    private final long maxBytes;
+
+    public MetricsLog(File file, long maxBytes) {
+        this.file = file;
+        this.previous = new File(file.getPath() + ".1");
+        this.maxBytes = maxBytes;
+    }
+
+    public void append(MetricsSnapshot snapshot) throws IOException {
+        if (file.length() >= maxBytes) {
+            if (previous.exists() && !previous.delete()) throw new IOException("Cannot delete " + previous);
+            if (!file.renameTo(previous)) throw new IOException("Cannot rotate " + file);
+        }
+        StringBuilder line = new StringBuilder(1536);
+        snapshot.appendJson(line);
+        line.append('\n');
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
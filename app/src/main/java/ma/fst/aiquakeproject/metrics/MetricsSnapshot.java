@@ -0,0 +1,208 @@
+package ma.fst.aiquakeproject.metrics;
+
+import java.util.Locale;
+
+/** Immutable copy of the {@link PipelineMetrics} at one point in time. */
+public final class MetricsSnapshot {
+
+    /** Copy of one {@link LatencyHistogram}. */
+    public static final class Histogram {
+        private final long[] buckets;
+        public final long count;
+        public final long sumNs;
+        public final long maxNs;
+
+        Histogram(long[] buckets, long sumNs, long maxNs) {
+            this.buckets = buckets;
+            long n = 0;
+            for (long c : buckets) n += c;
+            this.count = n;
+            this.sumNs = sumNs;
+            this.maxNs = maxNs;
+        }
+
+        public long meanNs() {
+            return count > 0 ? sumNs / count : 0;
+        }
+
+        /** Upper bound of the bucket holding the {@code q} quantile, capped at the max; 0 when empty. */
+        public long quantileNs(double q) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int b = 0; b < buckets.length - 1; b++) {
+                seen += buckets[b];
+                if (seen >= rank) return Math.min(LatencyHistogram.lowerBound(b + 1) - 1, maxNs);
+            }
+            return maxNs;
+        }
+
+        void appendJson(StringBuilder sb) {
+            sb.append("{\"count\":").append(count);
+            sb.append(",\"meanNs\":").append(meanNs());
+            sb.append(",\"p50Ns\":").append(quantileNs(0.5));
+            sb.append(",\"p90Ns\":").append(quantileNs(0.9));
+            sb.append(",\"p99Ns\":").append(quantileNs(0.99));
+            sb.append(",\"maxNs\":").append(maxNs);
+            sb.append('}');
+        }
+    }
+
+    public final long startedMs;
+    public final long timestampMs;
+    public final long samples;
+    public final long sensorTimeNs;
+    public final long batches;
+    public final long gaps;
+    public final long duplicates;
+    public final long confirmations;
+    public final long uploadsSent;
+    public final long uploadsDropped;
+    public final long uploadRetries;
+    public final long waveformsSent;
+    public final long waveformsFailed;
+    public final long gpsOnMs;
+    public final Histogram jitter;
+    public final Histogram ingest;
+    public final Histogram detect;
+    public final Histogram batch;
+    public final Histogram alert;
+    public final Histogram uploadRequest;
+    public final Histogram uploadDelivery;
+    public final Histogram waveformUpload;
+    // Indexed by StartupTrace.Mark ordinal
+    private final long[] startupMs;
+
+    MetricsSnapshot(long startedMs, long timestampMs, long samples, long sensorTimeNs, long batches,
+                    long gaps, long duplicates, long confirmations, long uploadsSent, long uploadsDropped, long uploadRetries,
+                    long waveformsSent, long waveformsFailed, long gpsOnMs,
+                    Histogram jitter, Histogram ingest, Histogram detect, Histogram batch, Histogram alert,
+                    Histogram uploadRequest, Histogram uploadDelivery, Histogram waveformUpload,
+                    long[] startupMs) {
+        this.startedMs = startedMs;
+        this.timestampMs = timestampMs;
+        this.samples = samples;
+        this.sensorTimeNs = sensorTimeNs;
+        this.batches = batches;
+        this.gaps = gaps;
+        this.duplicates = duplicates;
+        this.confirmations = confirmations;
+        this.uploadsSent = uploadsSent;
+        this.uploadsDropped = uploadsDropped;
+        this.uploadRetries = uploadRetries;
+        this.waveformsSent = waveformsSent;
+        this.waveformsFailed = waveformsFailed;
+        this.gpsOnMs = gpsOnMs;
+        this.jitter = jitter;
+        this.ingest = ingest;
+        this.detect = detect;
+        this.batch = batch;
+        this.alert = alert;
+        this.uploadRequest = uploadRequest;
+        this.uploadDelivery = uploadDelivery;
+        this.waveformUpload = waveformUpload;
+        this.startupMs = startupMs;
+    }
+
+    /** Milliseconds from the process start to {@code mark}, or -1 if not reached. */
+    public long startupMs(StartupTrace.Mark mark) {
+        return startupMs[mark.ordinal()];
+    }
+
+    /** Delivered sensor rate since {@code previous}, or since the start when it is null. */
+    public float sampleRateHz(MetricsSnapshot previous) {
+        long n = samples - (previous != null ? previous.samples : 0);
+        long ns = sensorTimeNs - (previous != null ? previous.sensorTimeNs : 0);
+        return ns > 0 ? n * 1e9f / ns : 0f;
+    }
+
+    /** GPS-on seconds per hour since the metrics started; 3600 means always on. */
+    public float gpsSecondsPerHour() {
+        long uptimeMs = timestampMs - startedMs;
+        return uptimeMs > 0 ? gpsOnMs * 3600f / uptimeMs : 0f;
+    }
+
+    public void appendJson(StringBuilder sb) {
+        sb.append("{\"timestamp\":").append(timestampMs);
+        sb.append(",\"uptimeMs\":").append(timestampMs - startedMs);
+        sb.append(",\"samples\":").append(samples);
+        sb.append(",\"sensorTimeNs\":").append(sensorTimeNs);
+        sb.append(",\"sampleRateHz\":").append(sampleRateHz(null));
+        sb.append(",\"batches\":").append(batches);
+        sb.append(",\"gaps\":").append(gaps);
+        sb.append(",\"duplicates\":").append(duplicates);
+        sb.append(",\"confirmations\":").append(confirmations);
+        sb.append(",\"uploadsSent\":").append(uploadsSent);
+        sb.append(",\"uploadsDropped\":").append(uploadsDropped);
+        sb.append(",\"uploadRetries\":").append(uploadRetries);
+        sb.append(",\"waveformsSent\":").append(waveformsSent);
+        sb.append(",\"waveformsFailed\":").append(waveformsFailed);
+        sb.append(",\"gpsOnMs\":").append(gpsOnMs);
+        sb.append(",\"startupMs\":");
+        StartupTrace.appendJson(sb, startupMs);
+        sb.append(",\"histograms\":{\"jitter\":");
+        jitter.appendJson(sb);
+        sb.append(",\"ingest\":");
+        ingest.appendJson(sb);
+        sb.append(",\"detect\":");
+        detect.appendJson(sb);
+        sb.append(",\"batch\":");
+        batch.appendJson(sb);
+        sb.append(",\"alert\":");
+        alert.appendJson(sb);
+        sb.append(",\"uploadRequest\":");
+        uploadRequest.appendJson(sb);
+        sb.append(",\"uploadDelivery\":");
+        uploadDelivery.appendJson(sb);
+        sb.append(",\"waveformUpload\":");
+        waveformUpload.appendJson(sb);
+        sb.append("}}");
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(1536);
+        appendJson(sb);
+        return sb.toString();
+    }
+
+    /** Human-readable table, with the sensor rate since {@code previous} when given. */
+    public String format(MetricsSnapshot previous) {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append(String.format(Locale.ROOT, "%-16s %.1f Hz (%.1f overall)%n", "Sensor rate",
+                sampleRateHz(previous), sampleRateHz(null)));
+        sb.append(String.format(Locale.ROOT, "%-16s %d in %d batches%n", "Samples", samples, batches));
+        sb.append(String.format(Locale.ROOT, "%-16s %d gaps, %d duplicates%n", "Dropped", gaps, duplicates));
+        sb.append(String.format(Locale.ROOT, "%-16s %d%n", "Confirmations", confirmations));
+        sb.append(String.format(Locale.ROOT, "%-16s %d sent, %d dropped, %d retries%n", "Uploads",
+                uploadsSent, uploadsDropped, uploadRetries));
+        sb.append(String.format(Locale.ROOT, "%-16s %d sent, %d failed%n", "Waveforms",
+                waveformsSent, waveformsFailed));
+        sb.append(String.format(Locale.ROOT, "%-16s %.0f s/h, %d s in all (continuous: 3600 s/h)%n", "GPS on",
+                gpsSecondsPerHour(), gpsOnMs / 1000));
+        sb.append(String.format(Locale.ROOT, "Startup, after process start%n"));
+        StartupTrace.format(sb, startupMs);
+        sb.append(String.format(Locale.ROOT, "%n"));
+        sb.append(String.format(Locale.ROOT, "%-16s %9s %9s %9s %9s%n", "", "p50", "p99", "max", "count"));
+        appendRow(sb, "Jitter", jitter);
+        appendRow(sb, "Ingest/sample", ingest);
+        appendRow(sb, "Detect/sample", detect);
+        appendRow(sb, "Batch", batch);
+        appendRow(sb, "Event to alert", alert);
+        appendRow(sb, "Upload request", uploadRequest);
+        appendRow(sb, "Upload delivery", uploadDelivery);
+        appendRow(sb, "Waveform upload", waveformUpload);
+        return sb.toString();
+    }
+
+    private static void appendRow(StringBuilder sb, String name, Histogram h) {
+        sb.append(String.format(Locale.ROOT, "%-16s %9s %9s %9s %9d%n", name,
+                duration(h.quantileNs(0.5)), duration(h.quantileNs(0.99)), duration(h.maxNs), h.count));
+    }
+
+    static String duration(long ns) {
+        if (ns < 1_000) return ns + " ns";
+        if (ns < 1_000_000) return String.format(Locale.ROOT, "%.1f us", ns / 1e3);
+        if (ns < 1_000_000_000) return String.format(Locale.ROOT, "%.1f ms", ns / 1e6);
+        return String.format(Locale.ROOT, "%.2f s", ns / 1e9);
+    }
+}
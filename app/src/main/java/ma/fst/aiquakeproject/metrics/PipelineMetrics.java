@@ -0,0 +1,72 @@
+package ma.fst.aiquakeproject.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms of the detection pipeline, from the sensor
+ * to the server. Every field is lock-free to update from any thread; the
+ * detection thread feeds its share through a {@link SampleProbe}.
+ * {@link #snapshot} copies everything for the diagnostics screen and the
+ * periodic report.
+ *
+ * <p>Durations are in nanoseconds. Counters only grow, so rates come from the
+ * difference of two snapshots.
+ */
+public final class PipelineMetrics {
+
+    private static final class Holder {
+        static final PipelineMetrics INSTANCE = new PipelineMetrics();
+    }
+
+    /** The metrics of this process. */
+    public static PipelineMetrics get() {
+        return Holder.INSTANCE;
+    }
+
+    public final long startedMs = System.currentTimeMillis();
+
+    /** Raw sensor samples, and the sensor time they span. */
+    public final AtomicLong samples = new AtomicLong();
+    public final AtomicLong sensorTimeNs = new AtomicLong();
+    public final AtomicLong batches = new AtomicLong();
+    /** Resampler gaps (samples lost for longer than it bridges) and dropped duplicate timestamps. */
+    public final AtomicLong gaps = new AtomicLong();
+    public final AtomicLong duplicates = new AtomicLong();
+    public final AtomicLong confirmations = new AtomicLong();
+    public final AtomicLong uploadsSent = new AtomicLong();
+    public final AtomicLong uploadsDropped = new AtomicLong();
+    public final AtomicLong uploadRetries = new AtomicLong();
+    public final AtomicLong waveformsSent = new AtomicLong();
+    public final AtomicLong waveformsFailed = new AtomicLong();
+    /** Time the GPS provider was requested, counted when each request ends. */
+    public final AtomicLong gpsOnMs = new AtomicLong();
+
+    /** Change of the sensor inter-arrival time from one sample to the next. */
+    public final LatencyHistogram jitter = new LatencyHistogram();
+    /** Per sample: recorder, waveform ring and capture. Sampled, see {@link SampleProbe#TIMED_EVERY}. */
+    public final LatencyHistogram ingest = new LatencyHistogram();
+    /** Per sample: resampler, trigger, features and classifier. Sampled like {@link #ingest}. */
+    public final LatencyHistogram detect = new LatencyHistogram();
+    /** One pass over a sensor batch. */
+    public final LatencyHistogram batch = new LatencyHistogram();
+    /** Sensor timestamp of the sample that confirmed a quake to the alert notification. */
+    public final LatencyHistogram alert = new LatencyHistogram();
+    /** Round trip of one detection upload request. */
+    public final LatencyHistogram uploadRequest = new LatencyHistogram();
+    /** Detection to server acceptance, retries and backoff included. */
+    public final LatencyHistogram uploadDelivery = new LatencyHistogram();
+    /** All chunks of one waveform. */
+    public final LatencyHistogram waveformUpload = new LatencyHistogram();
+    /** Cold start milestones, up to the first evaluated window. */
+    public final StartupTrace startup = new StartupTrace();
+
+    public MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(startedMs, System.currentTimeMillis(),
+                samples.get(), sensorTimeNs.get(), batches.get(), gaps.get(), duplicates.get(),
+                confirmations.get(), uploadsSent.get(), uploadsDropped.get(), uploadRetries.get(),
+                waveformsSent.get(), waveformsFailed.get(), gpsOnMs.get(),
+                jitter.snapshot(), ingest.snapshot(), detect.snapshot(), batch.snapshot(), alert.snapshot(),
+                uploadRequest.snapshot(), uploadDelivery.snapshot(), waveformUpload.snapshot(),
+                startup.snapshot());
+    }
+}
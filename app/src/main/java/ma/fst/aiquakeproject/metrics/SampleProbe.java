@@ -0,0 +1,78 @@
+package ma.fst.aiquakeproject.metrics;
+
+/**
+ * The detection thread's side of the {@link PipelineMetrics}. Per sample it
+ * only records the arrival jitter; stage timings are taken for one sample in
+ * {@value #TIMED_EVERY}, since reading the clock costs about as much as the
+ * rest of the instrumentation. Counts are kept in plain fields and published
+ * once per batch.
+ *
+ * <p>Not thread-safe: every call must come from the detection thread.
+ */
+public final class SampleProbe {
+
+    /** Power of two. */
+    public static final int TIMED_EVERY = 16;
+
+    private final PipelineMetrics metrics;
+
+    private long previousNs = -1;
+    private long previousDtNs = -1;
+    private int index = 0;
+    private long pendingSamples = 0;
+    private long pendingSensorNs = 0;
+    private long lastGaps = 0;
+    private long lastDuplicates = 0;
+
+    public SampleProbe(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Called for every raw sample, in order.
+     *
+     * @return whether this sample's stages should be timed
+     */
+    public boolean onSample(long timestampNs) {
+        if (previousNs >= 0) {
+            long dt = timestampNs - previousNs;
+            if (previousDtNs >= 0) metrics.jitter.record(Math.abs(dt - previousDtNs));
+            previousDtNs = dt;
+            pendingSensorNs += dt;
+        }
+        previousNs = timestampNs;
+        pendingSamples++;
+        return (index++ & (TIMED_EVERY - 1)) == 0;
+    }
+
+    /** Clock readings around the stages of a sample {@link #onSample} chose to time. */
+    public void onStages(long startNs, long ingestedNs, long detectedNs) {
+        metrics.ingest.record(ingestedNs - startNs);
+        metrics.detect.record(detectedNs - ingestedNs);
+    }
+
+    /**
+     * Called after each batch.
+     *
+     * @param gapCount       the resampler's running gap count
+     * @param duplicateCount the resampler's running duplicate count
+     */
+    public void onBatch(long elapsedNs, long gapCount, long duplicateCount) {
+        metrics.batch.record(elapsedNs);
+        metrics.batches.getAndIncrement();
+        metrics.samples.getAndAdd(pendingSamples);
+        metrics.sensorTimeNs.getAndAdd(pendingSensorNs);
+        if (gapCount != lastGaps) metrics.gaps.getAndAdd(gapCount - lastGaps);
+        if (duplicateCount != lastDuplicates) metrics.duplicates.getAndAdd(duplicateCount - lastDuplicates);
+        pendingSamples = 0;
+        pendingSensorNs = 0;
+        lastGaps = gapCount;
+        lastDuplicates = duplicateCount;
+    }
+
+    /** Forgets the last sample, e.g. when the sensor is re-registered after a stop. */
+    public void reset() {
+        previousNs = -1;
+        previousDtNs = -1;
+    }
+}
@@ -0,0 +1,87 @@
+package ma.fst.aiquakeproject.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Milestones of a cold start, from the process being forked to the first
+ * window the classifier evaluated. Each {@link Mark} keeps the first time it
+ * was reported, on the elapsed-realtime clock; {@link #sinceStartMs} gives it
+ * relative to the process start. Safe to mark from any thread.
+ */
+public final class StartupTrace {
+
+    public enum Mark {
+        APPLICATION("application"),
+        SERVICE("service"),
+        SENSOR("sensor"),
+        FIRST_SAMPLE("firstSample"),
+        FIRST_WINDOW("firstWindow"),
+        SPLASH_DISMISSED("splashDismissed");
+
+        final String key;
+
+        Mark(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final Mark[] MARKS = Mark.values();
+    private static final long UNSET = -1;
+
+    private final AtomicLongArray elapsedMs = new AtomicLongArray(MARKS.length);
+    private volatile long processStartMs = UNSET;
+
+    public StartupTrace() {
+        for (int i = 0; i < MARKS.length; i++) elapsedMs.set(i, UNSET);
+    }
+
+    /** Origin of {@link #sinceStartMs}; without it the application mark is used. */
+    public void setProcessStart(long elapsedRealtimeMs) {
+        processStartMs = elapsedRealtimeMs;
+    }
+
+    /** Records {@code mark} unless it already was; returns whether this call recorded it. */
+    public boolean mark(Mark mark, long elapsedRealtimeMs) {
+        return elapsedMs.compareAndSet(mark.ordinal(), UNSET, elapsedRealtimeMs);
+    }
+
+    public boolean isMarked(Mark mark) {
+        return elapsedMs.get(mark.ordinal()) != UNSET;
+    }
+
+    /** Milliseconds from the process start to {@code mark}, or -1 when either is unknown. */
+    public long sinceStartMs(Mark mark) {
+        long at = elapsedMs.get(mark.ordinal());
+        long origin = processStartMs != UNSET ? processStartMs : elapsedMs.get(Mark.APPLICATION.ordinal());
+        return at != UNSET && origin != UNSET ? at - origin : UNSET;
+    }
+
+    /** {@link #sinceStartMs} of every mark, in {@link Mark} order. */
+    long[] snapshot() {
+        long[] copy = new long[MARKS.length];
+        for (Mark mark : MARKS) copy[mark.ordinal()] = sinceStartMs(mark);
+        return copy;
+    }
+
+    /** Appends {@code {"application":120,...}}, with null for marks not reached. */
+    static void appendJson(StringBuilder sb, long[] sinceStartMs) {
+        sb.append('{');
+        for (Mark mark : MARKS) {
+            if (mark.ordinal() > 0) sb.append(',');
+            sb.append('"').append(mark.key).append("\":");
+            long ms = sinceStartMs[mark.ordinal()];
+            if (ms < 0) sb.append("null");
+            else sb.append(ms);
+        }
+        sb.append('}');
+    }
+
+    /** One "{@code name  ms}" line per mark, after process start. */
+    static void format(StringBuilder sb, long[] sinceStartMs) {
+        for (Mark mark : MARKS) {
+            long ms = sinceStartMs[mark.ordinal()];
+            sb.append(String.format(Locale.ROOT, "  %-14s %s%n", mark.key, ms < 0 ? "-" : ms + " ms"));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package ma.fst.aiquakeproject.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import ma.fst.aiquakeproject.dsp.HandlingGate;
+
+/**
+ * One confirmed detection as sent to the dashboard. Without a location fix the
+ * coordinates are NaN and go out as JSON {@code null}, never as 0,0.
+ */
+public final class DetectionRecord {
+
+    // Version 1 had no accuracy or fix age, version 2 no handling state; such records still load
+    private static final int STORAGE_VERSION = 3;
+
+    /** {@link #fixAgeMs} when there is no fix or its age is unknown. */
+    public static final long UNKNOWN_AGE = -1;
+
+    public final String detectionId;
+    public final long timestampMs;
+    /** NaN without a fix. */
+    public final double latitude;
+    public final double longitude;
+    /** Fix accuracy radius in meters, NaN if unknown. */
+    public final float accuracyM;
+    /** Age of the fix when the record was made. */
+    public final long fixAgeMs;
+    public final float energy;
+    public final float variance;
+    public final int peakCount;
+    public final String deviceId;
+    /** Whether the device had just been handled when the detection was confirmed. */
+    public final HandlingGate.State handling;
+
+    public DetectionRecord(String detectionId, long timestampMs, double latitude, double longitude,
+                           float accuracyM, long fixAgeMs, float energy, float variance, int peakCount,
+                           String deviceId) {
+        this(detectionId, timestampMs, latitude, longitude, accuracyM, fixAgeMs, energy, variance, peakCount,
+                deviceId, HandlingGate.State.UNAVAILABLE);
+    }
+
+    public DetectionRecord(String detectionId, long timestampMs, double latitude, double longitude,
+                           float accuracyM, long fixAgeMs, float energy, float variance, int peakCount,
+                           String deviceId, HandlingGate.State handling) {
+        this.detectionId = detectionId;
+        this.timestampMs = timestampMs;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracyM = accuracyM;
+        this.fixAgeMs = fixAgeMs;
+        this.energy = energy;
+        this.variance = variance;
+        this.peakCount = peakCount;
+        this.deviceId = deviceId;
+        this.handling = handling;
+    }
+
+    public boolean hasLocation() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+
+    /** Appends the JSON object the /api/detections endpoint accepts. */
+    public void appendJson(StringBuilder sb) {
+        sb.append('{');
+        sb.append("\"detectionId\":");
+        appendString(sb, detectionId);
+        sb.append(",\"timestamp\":").append(timestampMs);
+        if (hasLocation()) {
+            sb.append(",\"latitude\":").append(latitude);
+            sb.append(",\"longitude\":").append(longitude);
+        } else {
+            sb.append(",\"latitude\":null,\"longitude\":null");
+        }
+        sb.append(",\"accuracy\":");
+        if (Float.isNaN(accuracyM)) sb.append("null"); else sb.append(accuracyM);
+        sb.append(",\"fixAgeMs\":");
+        if (fixAgeMs < 0) sb.append("null"); else sb.append(fixAgeMs);
+        sb.append(",\"energy\":").append(energy);
+        sb.append(",\"variance\":").append(variance);
+        sb.append(",\"peakCount\":").append(peakCount);
+        sb.append(",\"deviceId\":");
+        appendString(sb, deviceId);
+        sb.append(",\"handling\":");
+        appendString(sb, handling.key);
+        sb.append('}');
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(192);
+        appendJson(sb);
+        return sb.toString();
+    }
+
+    static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    /** Compact form kept in the on-disk upload queue. */
+    public byte[] toBytes() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(STORAGE_VERSION);
+            out.writeUTF(detectionId);
+            out.writeLong(timestampMs);
+            out.writeDouble(latitude);
+            out.writeDouble(longitude);
+            out.writeFloat(accuracyM);
+            out.writeLong(fixAgeMs);
+            out.writeFloat(energy);
+            out.writeFloat(variance);
+            out.writeInt(peakCount);
+            out.writeUTF(deviceId);
+            out.writeByte(handling.code);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static DetectionRecord fromBytes(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int version = in.readUnsignedByte();
+        if (version < 1 || version > STORAGE_VERSION) throw new IOException("Unsupported record version " + version);
+        String id = in.readUTF();
+        long timestamp = in.readLong();
+        double lat = in.readDouble();
+        double lon = in.readDouble();
+        float accuracy = version >= 2 ? in.readFloat() : Float.NaN;
+        long fixAge = version >= 2 ? in.readLong() : UNKNOWN_AGE;
+        float energy = in.readFloat();
+        float variance = in.readFloat();
+        int peaks = in.readInt();
+        String deviceId = in.readUTF();
+        HandlingGate.State handling = version >= 3
+                ? HandlingGate.State.fromCode(in.readUnsignedByte()) : HandlingGate.State.UNAVAILABLE;
+        return new DetectionRecord(id, timestamp, lat, lon, accuracy, fixAge, energy, variance, peaks, deviceId,
+                handling);
+    }
+}
@@ -0,0 +1,355 @@
+package ma.fst.aiquakeproject.net;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ma.fst.aiquakeproject.metrics.PipelineMetrics;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Durable outbox for detections. {@link #enqueue} appends the record to a
+ * {@link PersistentQueue} and syncs it before returning; a single upload
+ * thread sends what is pending in batches. A lone detection keeps going to
+ * {@code POST /api/detections}; several go to {@code POST /api/detections/batch}
+ * as a JSON array. Records are removed only once the server accepted them, so
+ * delivery is at-least-once and the server dedupes by {@code detectionId}. A
+ * server without the batch endpoint (404 or 405) gets one request per record
+ * from then on.
+ *
+ * <p>Bodies are JSON until the server lists {@link DetectionWire#CONTENT_TYPE}
+ * in an {@code Accept-Post} response header; from then on they are sent in that
+ * binary format. A server that still answers 415 Unsupported Media Type to it
+ * gets JSON again, for good.
+ *
+ * <p>Network and 5xx failures, and a 404/405 from the single endpoint, are
+ * retried with capped exponential backoff and full jitter, so many phones that
+ * lost the same server don't come back in lockstep. Any other 4xx but 408/429
+ * drops the batch, since retrying can't fix it.
+ *
+ * <p>A {@link DeliveryListener} hears when each detection left the queue, so
+ * attachments can wait for their record.
+ */
+public final class DetectionUploadQueue implements Closeable {
+
+    public static final int MAX_BATCH = 20;
+    public static final long BASE_BACKOFF_MS = 1_000;
+    public static final long MAX_BACKOFF_MS = 5 * 60_000;
+
+    public interface DeliveryListener {
+        /** Called on the upload thread once the server accepted a detection, or it was dropped. */
+        void onDelivered(String detectionId, boolean accepted);
+    }
+
+    private static final Logger LOG = Logger.getLogger("DetectionUploadQueue");
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final MediaType BINARY = MediaType.get(DetectionWire.CONTENT_TYPE);
+
+    private final PersistentQueue queue;
+    private final OkHttpClient client;
+    private volatile String serverUrl;
+    private final ScheduledExecutorService executor;
+    private final Random random;
+
+    // Only touched on the upload thread
+    private ScheduledFuture<?> scheduledFlush;
+    private int attempt = 0;
+    private final DetectionWire wire = new DetectionWire();
+    private volatile boolean binary = false;
+    private volatile boolean binaryRefused = false;
+    private volatile boolean batching = true;
+    // From enqueue until accepted or dropped
+    private final Set<String> pendingIds = ConcurrentHashMap.newKeySet();
+    private volatile DeliveryListener listener;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final PipelineMetrics metrics = PipelineMetrics.get();
+    private volatile int depth;
+    private volatile long lastRequestMs = -1;
+    private volatile long lastDeliveryLatencyMs = -1;
+
+    public DetectionUploadQueue(File dir, OkHttpClient client, String serverUrl) throws IOException {
+        this(dir, client, serverUrl, newUploadExecutor(), new Random());
+    }
+
+    private static ScheduledExecutorService newUploadExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> new Thread(r, "upload"));
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return executor;
+    }
+
+    DetectionUploadQueue(File dir, OkHttpClient client, String serverUrl,
+                         ScheduledExecutorService executor, Random random) throws IOException {
+        this.queue = new PersistentQueue(dir);
+        this.client = client;
+        this.serverUrl = serverUrl;
+        this.executor = executor;
+        this.random = random;
+        this.depth = queue.size();
+        for (byte[] entry : queue.peek(depth)) {
+            pendingIds.add(DetectionRecord.fromBytes(entry).detectionId);
+        }
+        // Leftovers from a previous run
+        if (depth > 0) executor.execute(this::flush);
+    }
+
+    /** Sends to {@code url} from the next request on; pending detections go there too. */
+    public void setServerUrl(String url) {
+        if (url.equals(serverUrl)) return;
+        serverUrl = url;
+        // The new server starts on JSON, and gets another chance at the batch endpoint
+        binary = false;
+        binaryRefused = false;
+        batching = true;
+    }
+
+    public void setDeliveryListener(DeliveryListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Safe from any thread. The record is on disk when this returns, so it
+     * blocks for the write; the network work happens on the upload thread.
+     */
+    public void enqueue(DetectionRecord record) {
+        pendingIds.add(record.detectionId);
+        try {
+            queue.append(record.toBytes());
+            depth = queue.size();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Cannot persist detection " + record.detectionId, e);
+            dropped.incrementAndGet();
+            metrics.uploadsDropped.getAndIncrement();
+            delivered(record.detectionId, false);
+            return;
+        }
+        try {
+            executor.execute(this::onAppended);
+        } catch (RejectedExecutionException e) {
+            // Closed; the record goes out after the next start
+        }
+    }
+
+    /** True from {@link #enqueue} until the server accepted the detection or it was dropped. */
+    public boolean isPending(String detectionId) {
+        return pendingIds.contains(detectionId);
+    }
+
+    private void delivered(String detectionId, boolean accepted) {
+        pendingIds.remove(detectionId);
+        DeliveryListener current = listener;
+        if (current != null) current.onDelivered(detectionId, accepted);
+    }
+
+    private void onAppended() {
+        // While backing off, the new record just joins the next attempt
+        if (attempt == 0) scheduleFlush(0);
+    }
+
+    private void scheduleFlush(long delayMs) {
+        if (scheduledFlush != null) scheduledFlush.cancel(false);
+        scheduledFlush = executor.schedule(this::flush, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        scheduledFlush = null;
+        List<DetectionRecord> batch;
+        try {
+            batch = readBatch();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Cannot read upload queue", e);
+            return;
+        }
+        if (batch.isEmpty()) return;
+
+        long startNs = System.nanoTime();
+        int code;
+        try (Response response = client.newCall(buildRequest(batch)).execute()) {
+            code = response.code();
+            if (!binary && !binaryRefused && acceptsBinary(response)) {
+                LOG.info("Server takes " + DetectionWire.CONTENT_TYPE + ", switching to it");
+                binary = true;
+            }
+        } catch (IOException e) {
+            code = -1;
+        }
+        long requestNs = System.nanoTime() - startNs;
+        long now = System.currentTimeMillis();
+        lastRequestMs = requestNs / 1_000_000L;
+        metrics.uploadRequest.record(requestNs);
+
+        if ((code == 404 || code == 405) && batch.size() > 1) {
+            LOG.info("Server has no batch endpoint, sending detections one at a time");
+            batching = false;
+            scheduleFlush(0);
+            return;
+        }
+        if (code == 415 && binary) {
+            LOG.info("Server does not take " + DetectionWire.CONTENT_TYPE + ", falling back to JSON");
+            binary = false;
+            binaryRefused = true;
+            scheduleFlush(0);
+            return;
+        }
+
+        boolean accepted = code >= 200 && code < 300;
+        // A missing endpoint is a server mid-deploy, not a bad record
+        boolean retryable = code < 0 || code >= 500 || code == 404 || code == 405 || code == 408 || code == 429;
+        if (!accepted && retryable) {
+            failedAttempts.incrementAndGet();
+            metrics.uploadRetries.getAndIncrement();
+            long delay = backoffMs(attempt++, random);
+            LOG.info("Upload of " + batch.size() + " detections failed (" + code + "), retrying in " + delay + " ms");
+            scheduleFlush(delay);
+            return;
+        }
+
+        try {
+            queue.remove(batch.size());
+            depth = queue.size();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Cannot acknowledge uploaded detections", e);
+        }
+        attempt = 0;
+        if (accepted) {
+            sent.addAndGet(batch.size());
+            metrics.uploadsSent.getAndAdd(batch.size());
+            lastDeliveryLatencyMs = now - batch.get(0).timestampMs;
+            for (int i = 0; i < batch.size(); i++) {
+                metrics.uploadDelivery.record((now - batch.get(i).timestampMs) * 1_000_000L);
+            }
+        } else {
+            dropped.addAndGet(batch.size());
+            metrics.uploadsDropped.getAndAdd(batch.size());
+            LOG.warning("Server rejected " + batch.size() + " detections (" + code + "), dropping them");
+        }
+        for (int i = 0; i < batch.size(); i++) delivered(batch.get(i).detectionId, accepted);
+        if (depth > 0) scheduleFlush(0);
+    }
+
+    private List<DetectionRecord> readBatch() throws IOException {
+        List<byte[]> entries = queue.peek(batching ? MAX_BATCH : 1);
+        List<DetectionRecord> batch = new ArrayList<>(entries.size());
+        for (byte[] entry : entries) {
+            batch.add(DetectionRecord.fromBytes(entry));
+        }
+        return batch;
+    }
+
+    private static boolean acceptsBinary(Response response) {
+        for (String accept : response.headers("Accept-Post")) {
+            if (accept.contains(DetectionWire.CONTENT_TYPE)) return true;
+        }
+        return false;
+    }
+
+    private Request buildRequest(List<DetectionRecord> batch) {
+        String path = batch.size() == 1 ? "/api/detections" : "/api/detections/batch";
+        RequestBody body;
+        if (binary) {
+            // The wire buffer is reused, but only after this call has completed
+            wire.reset();
+            wire.beginDetections(batch.size());
+            for (int i = 0; i < batch.size(); i++) wire.addDetection(batch.get(i));
+            body = RequestBody.create(wire.buffer(), BINARY, 0, wire.length());
+        } else {
+            body = RequestBody.create(toJson(batch), JSON);
+        }
+        return new Request.Builder()
+                .url(serverUrl + path)
+                .post(body)
+                .build();
+    }
+
+    private static String toJson(List<DetectionRecord> batch) {
+        StringBuilder json = new StringBuilder(192 * batch.size());
+        if (batch.size() == 1) {
+            batch.get(0).appendJson(json);
+        } else {
+            json.append('[');
+            for (int i = 0; i < batch.size(); i++) {
+                if (i > 0) json.append(',');
+                batch.get(i).appendJson(json);
+            }
+            json.append(']');
+        }
+        return json.toString();
+    }
+
+    /** Full jitter: uniform in [0, min(MAX, BASE * 2^attempt)]. */
+    static long backoffMs(int attempt, Random random) {
+        long ceiling = BASE_BACKOFF_MS << Math.min(attempt, 20);
+        ceiling = Math.min(ceiling, MAX_BACKOFF_MS);
+        return (long) (random.nextDouble() * (ceiling + 1));
+    }
+
+    /** False once the server turned the batch endpoint down. */
+    public boolean isBatching() {
+        return batching;
+    }
+
+    /** True once the server said it takes the binary format, and until it turned it down. */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /** Detections waiting on disk, including the batch in flight. */
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getFailedAttempts() {
+        return failedAttempts.get();
+    }
+
+    /** Round trip of the last upload request, or -1 before the first. */
+    public long getLastRequestMs() {
+        return lastRequestMs;
+    }
+
+    /** Detection to server acceptance for the oldest record of the last delivered batch. */
+    public long getLastDeliveryLatencyMs() {
+        return lastDeliveryLatencyMs;
+    }
+
+    /** Stops uploading; whatever is pending stays on disk for the next start. */
+    @Override
+    public void close() {
+        executor.execute(() -> {
+            if (scheduledFlush != null) scheduledFlush.cancel(false);
+            try {
+                queue.close();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Cannot close upload queue", e);
+            }
+        });
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,396 @@
+package ma.fst.aiquakeproject.net;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import ma.fst.aiquakeproject.dsp.HandlingGate;
+import ma.fst.aiquakeproject.dsp.SampleBatch;
+
+/**
+ * Binary wire format for detections, raw sample blocks and telemetry, sent as
+ * {@value #CONTENT_TYPE} in place of JSON. Encoding into an instance is
+ * allocation-free once its buffer has grown to the largest frame; the frame
+ * stays valid in {@link #buffer()} until the next {@link #reset()}.
+ *
+ * <pre>
+ * frame:     "AQ" u8 version  u8 kind  varint count  count x record
+ * detection: u8 flags  id  zvarint dtMs  [location]  f32 energy
+ *            f32 variance  varint peakCount  string deviceId  u8 handling
+ *            (id is 16 raw bytes if flags has ID_UUID, else a string;
+ *             dtMs is relative to the previous record, the first to 0)
+ * location:  i32 latE7  i32 lonE7  f32 accuracyM  zvarint fixAgeMs
+ *            (present only if flags has HAS_LOCATION)
+ * samples:   i64 firstNs, then per sample zvarint dtNs, dx, dy, dz
+ *            (axes quantized to {@value #SAMPLE_SCALE} m/s², delta coded)
+ * telemetry: zvarint dSeq  zvarint dtMs  f32 rms  f32 staLta
+ *            f32 sampleRateHz  u8 batteryPercent  u8 flags
+ *            (seq and time relative to the previous record, the first to 0)
+ * string:    varint byteLength  UTF-8 bytes
+ * </pre>
+ *
+ * Multi-byte fixed fields are little-endian. Version 1 detections always
+ * carried latE7 and lonE7, with no accuracy or age and no HAS_LOCATION flag;
+ * the decoder still reads them. Before version 3 there was no handling byte.
+ */
+public final class DetectionWire {
+
+    public static final String CONTENT_TYPE = "application/vnd.aiquake.detections";
+    public static final int VERSION = 3;
+    public static final int KIND_DETECTIONS = 1;
+    public static final int KIND_SAMPLES = 2;
+    public static final int KIND_TELEMETRY = 3;
+    public static final float SAMPLE_SCALE = 1e-4f;
+
+    private static final int ID_UUID = 1;
+    private static final int HAS_LOCATION = 2;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private byte[] buf;
+    private int pos;
+    private long previousMs;
+    private long previousSeq;
+
+    public DetectionWire() {
+        this(256);
+    }
+
+    public DetectionWire(int initialCapacity) {
+        buf = new byte[initialCapacity];
+    }
+
+    public void reset() {
+        pos = 0;
+    }
+
+    public byte[] buffer() {
+        return buf;
+    }
+
+    public int length() {
+        return pos;
+    }
+
+    /** Starts a frame of {@code count} detections; follow with exactly that many {@link #addDetection}. */
+    public void beginDetections(int count) {
+        writeHeader(KIND_DETECTIONS, count);
+        previousMs = 0;
+    }
+
+    public void addDetection(DetectionRecord r) {
+        int location = r.hasLocation() ? HAS_LOCATION : 0;
+        if (isUuid(r.detectionId)) {
+            ensure(17);
+            buf[pos++] = (byte) (ID_UUID | location);
+            writeUuid(r.detectionId);
+        } else {
+            ensure(1);
+            buf[pos++] = (byte) location;
+            writeString(r.detectionId);
+        }
+        writeVarint(zigzag(r.timestampMs - previousMs));
+        previousMs = r.timestampMs;
+        if (location != 0) {
+            writeInt((int) Math.round(r.latitude * 1e7));
+            writeInt((int) Math.round(r.longitude * 1e7));
+            writeInt(Float.floatToIntBits(r.accuracyM));
+            writeVarint(zigzag(r.fixAgeMs));
+        }
+        writeInt(Float.floatToIntBits(r.energy));
+        writeInt(Float.floatToIntBits(r.variance));
+        writeVarint(r.peakCount);
+        writeString(r.deviceId);
+        ensure(1);
+        buf[pos++] = (byte) r.handling.code;
+    }
+
+    /** Starts a frame of {@code count} telemetry records; follow with exactly that many {@link #addTelemetry}. */
+    public void beginTelemetry(int count) {
+        writeHeader(KIND_TELEMETRY, count);
+        previousMs = 0;
+        previousSeq = 0;
+    }
+
+    public void addTelemetry(long seq, long timestampMs, float rms, float staLta, float sampleRateHz,
+                             int batteryPercent, int flags) {
+        writeVarint(zigzag(seq - previousSeq));
+        previousSeq = seq;
+        writeVarint(zigzag(timestampMs - previousMs));
+        previousMs = timestampMs;
+        writeInt(Float.floatToIntBits(rms));
+        writeInt(Float.floatToIntBits(staLta));
+        writeInt(Float.floatToIntBits(sampleRateHz));
+        ensure(2);
+        buf[pos++] = (byte) batteryPercent;
+        buf[pos++] = (byte) flags;
+    }
+
+    /** Encodes a whole batch of raw samples as one frame. */
+    public void encodeSamples(SampleBatch batch) {
+        int size = batch.size();
+        writeHeader(KIND_SAMPLES, size);
+        if (size == 0) return;
+        long prevTs = batch.timestamp(0);
+        writeLong(prevTs);
+        int px = 0;
+        int py = 0;
+        int pz = 0;
+        for (int i = 0; i < size; i++) {
+            int qx = Math.round(batch.x(i) / SAMPLE_SCALE);
+            int qy = Math.round(batch.y(i) / SAMPLE_SCALE);
+            int qz = Math.round(batch.z(i) / SAMPLE_SCALE);
+            long ts = batch.timestamp(i);
+            writeVarint(zigzag(ts - prevTs));
+            writeVarint(zigzag(qx - px));
+            writeVarint(zigzag(qy - py));
+            writeVarint(zigzag(qz - pz));
+            prevTs = ts;
+            px = qx;
+            py = qy;
+            pz = qz;
+        }
+    }
+
+    private void writeHeader(int kind, int count) {
+        ensure(4);
+        buf[pos++] = 'A';
+        buf[pos++] = 'Q';
+        buf[pos++] = VERSION;
+        buf[pos++] = (byte) kind;
+        writeVarint(count);
+    }
+
+    private void ensure(int bytes) {
+        if (pos + bytes > buf.length) {
+            byte[] grown = new byte[Math.max(buf.length * 2, pos + bytes)];
+            System.arraycopy(buf, 0, grown, 0, pos);
+            buf = grown;
+        }
+    }
+
+    private void writeVarint(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+        ensure(4);
+        buf[pos++] = (byte) value;
+        buf[pos++] = (byte) (value >>> 8);
+        buf[pos++] = (byte) (value >>> 16);
+        buf[pos++] = (byte) (value >>> 24);
+    }
+
+    private void writeLong(long value) {
+        writeInt((int) value);
+        writeInt((int) (value >>> 32));
+    }
+
+    private void writeString(String s) {
+        int length = s.length();
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) bytes += 1;
+            else if (c < 0x800) bytes += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else bytes += 3;
+        }
+        writeVarint(bytes);
+        ensure(bytes);
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                // Lone surrogates come out as U+FFFD, like String.getBytes
+                if (Character.isSurrogate(c)) c = '\uFFFD';
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /** Lowercase 8-4-4-4-12 form, as {@code UUID.toString()} produces, so it decodes back unchanged. */
+    static boolean isUuid(String s) {
+        if (s.length() != 36) return false;
+        for (int i = 0; i < 36; i++) {
+            char c = s.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') return false;
+            } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeUuid(String s) {
+        for (int i = 0; i < 36; ) {
+            if (s.charAt(i) == '-') {
+                i++;
+                continue;
+            }
+            buf[pos++] = (byte) ((Character.digit(s.charAt(i), 16) << 4) | Character.digit(s.charAt(i + 1), 16));
+            i += 2;
+        }
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    // Decoding runs on the server side and in tests, so it may allocate
+
+    public static List<DetectionRecord> decodeDetections(byte[] data, int offset, int length) throws IOException {
+        Reader in = new Reader(data, offset, length);
+        int count = in.header(KIND_DETECTIONS);
+        List<DetectionRecord> records = new ArrayList<>(count);
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            int flags = in.u8();
+            String id = (flags & ID_UUID) != 0 ? in.uuid() : in.string();
+            previous += unzigzag(in.varint());
+            double lat = Double.NaN;
+            double lon = Double.NaN;
+            float accuracy = Float.NaN;
+            long fixAge = DetectionRecord.UNKNOWN_AGE;
+            if (in.version == 1 || (flags & HAS_LOCATION) != 0) {
+                lat = in.i32() / 1e7;
+                lon = in.i32() / 1e7;
+                if (in.version >= 2) {
+                    accuracy = Float.intBitsToFloat(in.i32());
+                    fixAge = unzigzag(in.varint());
+                }
+            }
+            float energy = Float.intBitsToFloat(in.i32());
+            float variance = Float.intBitsToFloat(in.i32());
+            int peaks = (int) in.varint();
+            String deviceId = in.string();
+            HandlingGate.State handling = in.version >= 3
+                    ? HandlingGate.State.fromCode(in.u8()) : HandlingGate.State.UNAVAILABLE;
+            records.add(new DetectionRecord(id, previous, lat, lon, accuracy, fixAge,
+                    energy, variance, peaks, deviceId, handling));
+        }
+        return records;
+    }
+
+    public static List<TelemetryFrame> decodeTelemetry(byte[] data, int offset, int length) throws IOException {
+        Reader in = new Reader(data, offset, length);
+        int count = in.header(KIND_TELEMETRY);
+        List<TelemetryFrame> frames = new ArrayList<>(count);
+        long seq = 0;
+        long timestamp = 0;
+        for (int i = 0; i < count; i++) {
+            seq += unzigzag(in.varint());
+            timestamp += unzigzag(in.varint());
+            float rms = Float.intBitsToFloat(in.i32());
+            float staLta = Float.intBitsToFloat(in.i32());
+            float rate = Float.intBitsToFloat(in.i32());
+            frames.add(new TelemetryFrame(seq, timestamp, rms, staLta, rate, in.u8(), in.u8()));
+        }
+        return frames;
+    }
+
+    public static SampleBatch decodeSamples(byte[] data, int offset, int length) throws IOException {
+        Reader in = new Reader(data, offset, length);
+        int count = in.header(KIND_SAMPLES);
+        SampleBatch batch = new SampleBatch(Math.max(1, count));
+        if (count == 0) return batch;
+        long ts = in.i32() & 0xFFFFFFFFL;
+        ts |= (long) in.i32() << 32;
+        int qx = 0;
+        int qy = 0;
+        int qz = 0;
+        for (int i = 0; i < count; i++) {
+            ts += unzigzag(in.varint());
+            qx += (int) unzigzag(in.varint());
+            qy += (int) unzigzag(in.varint());
+            qz += (int) unzigzag(in.varint());
+            batch.add(ts, qx * SAMPLE_SCALE, qy * SAMPLE_SCALE, qz * SAMPLE_SCALE);
+        }
+        return batch;
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private final int end;
+        private int pos;
+        int version;
+
+        Reader(byte[] data, int offset, int length) {
+            this.data = data;
+            this.pos = offset;
+            this.end = offset + length;
+        }
+
+        int header(int expectedKind) throws IOException {
+            if (u8() != 'A' || u8() != 'Q') throw new IOException("Not an AIQuake frame");
+            version = u8();
+            if (version < 1 || version > VERSION) throw new IOException("Unsupported wire version " + version);
+            int kind = u8();
+            if (kind != expectedKind) throw new IOException("Expected frame kind " + expectedKind + ", got " + kind);
+            return (int) varint();
+        }
+
+        int u8() throws IOException {
+            if (pos >= end) throw new IOException("Truncated frame");
+            return data[pos++] & 0xFF;
+        }
+
+        int i32() throws IOException {
+            return u8() | (u8() << 8) | (u8() << 16) | (u8() << 24);
+        }
+
+        long varint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = u8();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        String string() throws IOException {
+            int length = (int) varint();
+            if (length < 0 || pos + length > end) throw new IOException("Truncated string");
+            String s = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+
+        String uuid() throws IOException {
+            char[] out = new char[36];
+            int o = 0;
+            for (int i = 0; i < 16; i++) {
+                if (i == 4 || i == 6 || i == 8 || i == 10) out[o++] = '-';
+                int b = u8();
+                out[o++] = HEX[b >> 4];
+                out[o++] = HEX[b & 0xF];
+            }
+            return new String(out);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ma.fst.aiquakeproject.net;
+
+import java.io.IOException;
+
+import ma.fst.aiquakeproject.metrics.MetricsSnapshot;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Posts a {@link MetricsSnapshot} to {@code POST <server>/api/metrics} as
+ * {@code {"deviceId": ..., "metrics": {...}}}. Snapshots are cumulative, so a
+ * failed post is not retried; the next one carries the same counts. Blocking;
+ * call off the main thread.
+ */
+public final class MetricsUploader {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private final OkHttpClient client;
+    private volatile String serverUrl;
+
+    public MetricsUploader(OkHttpClient client, String serverUrl) {
+        this.client = client;
+        this.serverUrl = serverUrl;
+    }
+
+    public void setServerUrl(String url) {
+        serverUrl = url;
+    }
+
+    public void upload(String deviceId, MetricsSnapshot snapshot) throws IOException {
+        StringBuilder json = new StringBuilder(1600);
+        json.append("{\"deviceId\":");
+        DetectionRecord.appendString(json, deviceId);
+        json.append(",\"metrics\":");
+        snapshot.appendJson(json);
+        json.append('}');
+        Request request = new Request.Builder()
+                .url(serverUrl + "/api/metrics")
+                .post(RequestBody.create(json.toString(), JSON))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) throw new IOException("Metrics rejected: " + response.code());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ma.fst.aiquakeproject.net;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * FIFO of byte[] entries that survives process death. Entries are appended
+ * to {@code queue.log} as {@code [int length][int crc32][payload]} and synced;
+ * the offset of the first unacknowledged entry lives in {@code queue.head}.
+ * On open, a torn tail (crash mid-append) is detected by its CRC and cut off.
+ * The log is truncated whenever the queue drains, so it only grows while
+ * entries are actually pending.
+ */
+public final class PersistentQueue implements Closeable {
+
+    private static final int ENTRY_HEADER = 8;
+    private static final int MAX_ENTRY = 1024 * 1024;
+
+    private final RandomAccessFile log;
+    private final File headFile;
+    private final File headTemp;
+    private final ArrayDeque<long[]> entries = new ArrayDeque<>(); // {offset, length}
+    private long head;
+
+    public PersistentQueue(File dir) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        log = new RandomAccessFile(new File(dir, "queue.log"), "rw");
+        headFile = new File(dir, "queue.head");
+        headTemp = new File(dir, "queue.head.tmp");
+        head = readHead();
+        recover();
+    }
+
+    private long readHead() throws IOException {
+        if (!headFile.exists()) return 0;
+        try (RandomAccessFile f = new RandomAccessFile(headFile, "r")) {
+            return f.length() >= 8 ? f.readLong() : 0;
+        }
+    }
+
+    private void writeHead(long offset) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(headTemp)) {
+            out.write(ByteBuffer.allocate(8).putLong(offset).array());
+            out.getFD().sync();
+        }
+        if (!headTemp.renameTo(headFile)) throw new IOException("Cannot update " + headFile);
+        head = offset;
+    }
+
+    private void recover() throws IOException {
+        long length = log.length();
+        if (head > length) head = length;
+
+        long pos = head;
+        byte[] buffer = new byte[256];
+        CRC32 crc = new CRC32();
+        while (pos + ENTRY_HEADER <= length) {
+            log.seek(pos);
+            int size = log.readInt();
+            int checksum = log.readInt();
+            if (size < 0 || size > MAX_ENTRY || pos + ENTRY_HEADER + size > length) break;
+            if (buffer.length < size) buffer = new byte[size];
+            log.readFully(buffer, 0, size);
+            crc.reset();
+            crc.update(buffer, 0, size);
+            if ((int) crc.getValue() != checksum) break;
+            entries.add(new long[]{pos, size});
+            pos += ENTRY_HEADER + size;
+        }
+        if (pos < length) {
+            // Torn or corrupt tail from a crash mid-append
+            log.setLength(pos);
+            log.getFD().sync();
+        }
+    }
+
+    public synchronized void append(byte[] payload) throws IOException {
+        if (payload.length > MAX_ENTRY) throw new IOException("Entry too large: " + payload.length);
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        long pos = log.length();
+        log.seek(pos);
+        log.writeInt(payload.length);
+        log.writeInt((int) crc.getValue());
+        log.write(payload);
+        log.getFD().sync();
+        entries.add(new long[]{pos, payload.length});
+    }
+
+    /** Returns up to {@code max} of the oldest entries without removing them. */
+    public synchronized List<byte[]> peek(int max) throws IOException {
+        List<byte[]> out = new ArrayList<>(Math.min(max, entries.size()));
+        Iterator<long[]> it = entries.iterator();
+        while (it.hasNext() && out.size() < max) {
+            long[] entry = it.next();
+            byte[] payload = new byte[(int) entry[1]];
+            log.seek(entry[0] + ENTRY_HEADER);
+            log.readFully(payload);
+            out.add(payload);
+        }
+        return out;
+    }
+
+    /** Acknowledges the {@code count} oldest entries. */
+    public synchronized void remove(int count) throws IOException {
+        for (int i = 0; i < count && !entries.isEmpty(); i++) entries.poll();
+        if (entries.isEmpty()) {
+            log.setLength(0);
+            log.getFD().sync();
+            writeHead(0);
+        } else {
+            writeHead(entries.peek()[0]);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+}
@@ -0,0 +1,27 @@
+package ma.fst.aiquakeproject.net;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * The one OkHttpClient of the process, so every upload shares a connection
+ * pool and dispatcher. Derive variants with {@code get().newBuilder()}.
+ */
+public final class SharedHttpClient {
+
+    private SharedHttpClient() {}
+
+    private static final class Holder {
+        static final OkHttpClient CLIENT = new OkHttpClient.Builder()
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(15, TimeUnit.SECONDS)
+                .writeTimeout(15, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+    }
+
+    public static OkHttpClient get() {
+        return Holder.CLIENT;
+    }
+}
@@ -0,0 +1,38 @@
+package ma.fst.aiquakeproject.net;
+
+/**
+ * One decoded health and feature sample of the {@link TelemetryStream}, as the
+ * dashboard receives it.
+ */
+public final class TelemetryFrame {
+
+    public static final int GATE_OPEN = 1;
+    public static final int HANDLED = 2;
+    public static final int CHARGING = 4;
+
+    /** {@link #batteryPercent} when the fuel gauge doesn't report it. */
+    public static final int UNKNOWN_BATTERY = 255;
+
+    /** Consecutive per stream; the server acknowledges by it. */
+    public final long seq;
+    public final long timestampMs;
+    /** Short-term RMS of the magnitude around gravity, in m/s². */
+    public final float rms;
+    /** STA/LTA ratio of the trigger. */
+    public final float staLta;
+    /** Raw accelerometer rate over the interval. */
+    public final float sampleRateHz;
+    public final int batteryPercent;
+    public final int flags;
+
+    public TelemetryFrame(long seq, long timestampMs, float rms, float staLta, float sampleRateHz,
+                          int batteryPercent, int flags) {
+        this.seq = seq;
+        this.timestampMs = timestampMs;
+        this.rms = rms;
+        this.staLta = staLta;
+        this.sampleRateHz = sampleRateHz;
+        this.batteryPercent = batteryPercent;
+        this.flags = flags;
+    }
+}
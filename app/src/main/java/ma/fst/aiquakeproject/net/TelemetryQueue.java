@@ -0,0 +1,115 @@
+package ma.fst.aiquakeproject.net;
+
+/**
+ * Bounded send queue of the {@link TelemetryStream}, in parallel primitive
+ * arrays. Frames stay in it until the server acknowledges them, so a new
+ * connection can resend from the oldest unacknowledged one. When it is full
+ * the oldest frame is dropped, sent or not: the live view wants the newest
+ * data, and memory stays fixed however long the server is gone.
+ *
+ * <p>Thread-safe; offered to by the detection thread, drained by the stream.
+ */
+final class TelemetryQueue {
+
+    private final long[] seqs;
+    private final long[] timestamps;
+    private final float[] rms;
+    private final float[] staLta;
+    private final float[] rates;
+    private final byte[] battery;
+    private final byte[] flags;
+    private final int capacity;
+
+    // Oldest unacknowledged frame, frames held, and how many of them went out on this connection
+    private int head = 0;
+    private int size = 0;
+    private int sent = 0;
+    private long nextSeq = 0;
+    private long dropped = 0;
+
+    TelemetryQueue(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        seqs = new long[capacity];
+        timestamps = new long[capacity];
+        rms = new float[capacity];
+        staLta = new float[capacity];
+        rates = new float[capacity];
+        battery = new byte[capacity];
+        flags = new byte[capacity];
+    }
+
+    /** @return the frame's sequence number */
+    synchronized long offer(long timestampMs, float rmsValue, float ratio, float rateHz, int batteryPercent,
+                            int flagBits) {
+        if (size == capacity) {
+            removeHead();
+            dropped++;
+        }
+        int slot = (head + size) % capacity;
+        long seq = nextSeq++;
+        seqs[slot] = seq;
+        timestamps[slot] = timestampMs;
+        rms[slot] = rmsValue;
+        staLta[slot] = ratio;
+        rates[slot] = rateHz;
+        battery[slot] = (byte) batteryPercent;
+        flags[slot] = (byte) flagBits;
+        size++;
+        return seq;
+    }
+
+    private void removeHead() {
+        head = (head + 1) % capacity;
+        size--;
+        if (sent > 0) sent--;
+    }
+
+    /** Forgets every frame up to and including {@code seq}. */
+    synchronized void ack(long seq) {
+        while (size > 0 && seqs[head] <= seq) removeHead();
+    }
+
+    /** A new connection starts over from the oldest unacknowledged frame. */
+    synchronized void rewind() {
+        sent = 0;
+    }
+
+    /**
+     * Encodes up to {@code max} frames not yet sent on this connection into
+     * {@code wire} as one telemetry frame, and counts them as sent.
+     *
+     * @return the number of records encoded, 0 if there was nothing to send
+     */
+    synchronized int encodeNext(DetectionWire wire, int max) {
+        int n = Math.min(max, size - sent);
+        if (n <= 0) return 0;
+        wire.reset();
+        wire.beginTelemetry(n);
+        for (int i = 0; i < n; i++) {
+            int slot = (head + sent + i) % capacity;
+            wire.addTelemetry(seqs[slot], timestamps[slot], rms[slot], staLta[slot], rates[slot],
+                    battery[slot] & 0xFF, flags[slot] & 0xFF);
+        }
+        sent += n;
+        return n;
+    }
+
+    /** Frames sent on this connection and not acknowledged yet. */
+    synchronized int inFlight() {
+        return sent;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    /** Sequence number the next frame will get. */
+    synchronized long nextSeq() {
+        return nextSeq;
+    }
+}
@@ -0,0 +1,291 @@
+package ma.fst.aiquakeproject.net;
+
+import java.io.Closeable;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * Long-lived WebSocket to {@code <server>/api/telemetry} that streams
+ * {@link TelemetryFrame}s for live dashboards. Frames go out as binary
+ * {@link DetectionWire} telemetry messages, several per message when there is
+ * a backlog; the server answers with text messages {@code ack <seq>} covering
+ * everything up to that sequence number.
+ *
+ * <p>{@link #offer} never blocks: frames wait in a bounded
+ * {@link TelemetryQueue} that drops the oldest when full. At most
+ * {@link #MAX_IN_FLIGHT} unacknowledged frames and {@link #MAX_QUEUED_BYTES}
+ * are handed to OkHttp at a time, so a slow server backs up into that queue
+ * rather than into OkHttp's unbounded buffer.
+ *
+ * <p>OkHttp pings every {@link #HEARTBEAT_MS} and fails the socket when a pong
+ * doesn't come back. A lost connection is reopened, at once the first time and
+ * then with the same backoff as {@link DetectionUploadQueue}. The handshake
+ * carries the device id, a session id that is new for every instance, and the
+ * last sequence number acknowledged; the stream resends from the oldest frame
+ * still held, and the server drops what it already has.
+ */
+public final class TelemetryStream implements Closeable {
+
+    /** Ten minutes at the default one frame per second. */
+    public static final int CAPACITY = 600;
+    public static final int MAX_FRAMES_PER_MESSAGE = 32;
+    public static final int MAX_IN_FLIGHT = 256;
+    public static final long MAX_QUEUED_BYTES = 32 * 1024;
+    public static final long HEARTBEAT_MS = 15_000;
+
+    private static final Logger LOG = Logger.getLogger("TelemetryStream");
+
+    private final OkHttpClient client;
+    private volatile String serverUrl;
+    private volatile String deviceId;
+    private final long session;
+    private final ScheduledExecutorService executor;
+    private final Random random;
+    private final TelemetryQueue queue;
+    private final AtomicBoolean pumpPending = new AtomicBoolean();
+
+    // Only touched on the telemetry thread
+    private final DetectionWire wire = new DetectionWire(1024);
+    private WebSocket socket;
+    private volatile boolean open = false;
+    private int attempt = 0;
+    private boolean closed = false;
+
+    private final AtomicLong lastAck = new AtomicLong(-1);
+    private final AtomicLong sentFrames = new AtomicLong();
+    private final AtomicLong sentMessages = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong connections = new AtomicLong();
+    private volatile long maxQueuedBytes = 0;
+
+    public TelemetryStream(OkHttpClient client, String serverUrl, String deviceId) {
+        this(client, serverUrl, deviceId, newTelemetryExecutor(), new Random(), CAPACITY);
+    }
+
+    private static ScheduledExecutorService newTelemetryExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> new Thread(r, "telemetry"));
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return executor;
+    }
+
+    TelemetryStream(OkHttpClient client, String serverUrl, String deviceId, ScheduledExecutorService executor,
+                    Random random, int capacity) {
+        this.client = client.newBuilder().pingInterval(HEARTBEAT_MS, TimeUnit.MILLISECONDS).build();
+        this.serverUrl = serverUrl;
+        this.deviceId = deviceId;
+        this.session = System.currentTimeMillis();
+        this.executor = executor;
+        this.random = random;
+        this.queue = new TelemetryQueue(capacity);
+    }
+
+    public void start() {
+        run(this::connect);
+    }
+
+    /** Reconnects to {@code url}; frames not yet acknowledged go there. */
+    public void setServerUrl(String url) {
+        if (url.equals(serverUrl)) return;
+        serverUrl = url;
+        run(this::reconnect);
+    }
+
+    public void setDeviceId(String id) {
+        if (id.equals(deviceId)) return;
+        deviceId = id;
+        run(this::reconnect);
+    }
+
+    /**
+     * Queues one frame; safe from any thread, does not block.
+     *
+     * @param batteryPercent 0-100, or {@link TelemetryFrame#UNKNOWN_BATTERY}
+     * @param flags {@link TelemetryFrame#GATE_OPEN} and the other flag bits
+     */
+    public void offer(long timestampMs, float rms, float staLta, float sampleRateHz, int batteryPercent, int flags) {
+        queue.offer(timestampMs, rms, staLta, sampleRateHz, batteryPercent, flags);
+        schedulePump();
+    }
+
+    private void schedulePump() {
+        if (pumpPending.compareAndSet(false, true)) run(this::pump);
+    }
+
+    private void run(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Closed; the frames are only live data
+        }
+    }
+
+    private void connect() {
+        if (closed || socket != null) return;
+        Request request = new Request.Builder()
+                .url(serverUrl + "/api/telemetry")
+                .header("X-Device-Id", deviceId)
+                .header("X-Telemetry-Session", String.valueOf(session))
+                .header("X-Last-Ack", String.valueOf(lastAck.get()))
+                .build();
+        socket = client.newWebSocket(request, new Listener());
+    }
+
+    private void reconnect() {
+        if (socket != null) socket.close(1000, "Reconnecting");
+        socket = null;
+        open = false;
+        attempt = 0;
+        connect();
+    }
+
+    private void pump() {
+        pumpPending.set(false);
+        if (!open) return;
+        WebSocket ws = socket;
+        while (queue.inFlight() < MAX_IN_FLIGHT) {
+            long queued = ws.queueSize();
+            if (queued > maxQueuedBytes) maxQueuedBytes = queued;
+            if (queued >= MAX_QUEUED_BYTES) return;
+            int n = queue.encodeNext(wire, MAX_FRAMES_PER_MESSAGE);
+            if (n == 0) return;
+            // Closing already; the frames are resent on the next connection
+            if (!ws.send(ByteString.of(wire.buffer(), 0, wire.length()))) return;
+            sentFrames.addAndGet(n);
+            sentMessages.incrementAndGet();
+            sentBytes.addAndGet(wire.length());
+        }
+    }
+
+    private void onOpen(WebSocket ws) {
+        if (ws != socket) return;
+        open = true;
+        attempt = 0;
+        connections.incrementAndGet();
+        queue.rewind();
+        pump();
+    }
+
+    private void onLost(WebSocket ws, String reason) {
+        if (ws != socket) return;
+        socket = null;
+        open = false;
+        if (closed) return;
+        long delay = attempt == 0 ? 0 : DetectionUploadQueue.backoffMs(attempt - 1, random);
+        attempt++;
+        // Routine on a flaky network; frames are buffered and resent
+        LOG.fine("Telemetry connection lost (" + reason + "), reconnecting in " + delay + " ms");
+        try {
+            executor.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed meanwhile
+        }
+    }
+
+    private void onAck(String text) {
+        if (!text.startsWith("ack ")) return;
+        long seq;
+        try {
+            seq = Long.parseLong(text.substring(4).trim());
+        } catch (NumberFormatException e) {
+            return;
+        }
+        lastAck.accumulateAndGet(seq, Math::max);
+        queue.ack(seq);
+        schedulePump();
+    }
+
+    private final class Listener extends WebSocketListener {
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            run(() -> TelemetryStream.this.onOpen(webSocket));
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            onAck(text);
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            webSocket.close(1000, null);
+            run(() -> onLost(webSocket, "closed " + code));
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            run(() -> onLost(webSocket, String.valueOf(t.getMessage())));
+        }
+    }
+
+    public boolean isConnected() {
+        return open;
+    }
+
+    /** Highest sequence number the server acknowledged, -1 before the first. */
+    public long getLastAck() {
+        return lastAck.get();
+    }
+
+    /** Frames offered so far. */
+    public long getOfferedCount() {
+        return queue.nextSeq();
+    }
+
+    /** Frames dropped unacknowledged because the queue was full. */
+    public long getDroppedCount() {
+        return queue.getDroppedCount();
+    }
+
+    /** Frames held, sent or not, until acknowledged. */
+    public int getDepth() {
+        return queue.size();
+    }
+
+    /** Frames sent, resends included. */
+    public long getSentCount() {
+        return sentFrames.get();
+    }
+
+    public long getSentMessages() {
+        return sentMessages.get();
+    }
+
+    public long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    /** Connections opened, the first included. */
+    public long getConnectionCount() {
+        return connections.get();
+    }
+
+    /** Most bytes seen waiting in OkHttp's outgoing buffer. */
+    public long getMaxQueuedBytes() {
+        return maxQueuedBytes;
+    }
+
+    /** Closes the socket; frames not acknowledged yet are dropped. */
+    @Override
+    public void close() {
+        run(() -> {
+            closed = true;
+            if (socket != null) socket.close(1000, "Stopped");
+            socket = null;
+            open = false;
+        });
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,120 @@
+package ma.fst.aiquakeproject.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import ma.fst.aiquakeproject.dsp.Waveform;
+
+/**
+ * Compact encoding for waveform attachments. Timestamps and axes are delta
+ * coded as zigzag varints (axes quantized to {@value #SCALE} m/s²), then
+ * gzipped.
+ *
+ * <pre>
+ * "AQWF" u8 version  i64 triggerNs  i64 firstNs  varint count
+ * count x (varint dtNs, varint dx, varint dy, varint dz)
+ * </pre>
+ */
+public final class WaveformCodec {
+
+    public static final int MAGIC = 0x41515746; // "AQWF"
+    public static final int VERSION = 1;
+    public static final float SCALE = 1e-4f;
+    public static final String CONTENT_TYPE = "application/vnd.aiquake.waveform";
+
+    private WaveformCodec() {}
+
+    public static byte[] encode(Waveform w) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(w.size * 6 + 64);
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(w.triggerNs);
+            out.writeLong(w.size > 0 ? w.timestamps[0] : 0);
+            writeVarint(out, w.size);
+
+            long prevTs = w.size > 0 ? w.timestamps[0] : 0;
+            int px = 0;
+            int py = 0;
+            int pz = 0;
+            for (int i = 0; i < w.size; i++) {
+                int qx = Math.round(w.x[i] / SCALE);
+                int qy = Math.round(w.y[i] / SCALE);
+                int qz = Math.round(w.z[i] / SCALE);
+                writeVarint(out, zigzag(w.timestamps[i] - prevTs));
+                writeVarint(out, zigzag(qx - px));
+                writeVarint(out, zigzag(qy - py));
+                writeVarint(out, zigzag(qz - pz));
+                prevTs = w.timestamps[i];
+                px = qx;
+                py = qy;
+                pz = qz;
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    public static Waveform decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a waveform");
+            int version = in.readUnsignedByte();
+            if (version != VERSION) throw new IOException("Unsupported waveform version " + version);
+            long triggerNs = in.readLong();
+            long ts = in.readLong();
+            int size = (int) readVarint(in);
+
+            long[] timestamps = new long[size];
+            float[] x = new float[size];
+            float[] y = new float[size];
+            float[] z = new float[size];
+            int qx = 0;
+            int qy = 0;
+            int qz = 0;
+            for (int i = 0; i < size; i++) {
+                ts += unzigzag(readVarint(in));
+                qx += (int) unzigzag(readVarint(in));
+                qy += (int) unzigzag(readVarint(in));
+                qz += (int) unzigzag(readVarint(in));
+                timestamps[i] = ts;
+                x[i] = qx * SCALE;
+                y[i] = qy * SCALE;
+                z[i] = qz * SCALE;
+            }
+            return new Waveform(triggerNs, timestamps, x, y, z, size);
+        }
+    }
+
+    static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    static void writeVarint(OutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    static long readVarint(InputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new IOException("Truncated varint");
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IOException("Malformed varint");
+    }
+}
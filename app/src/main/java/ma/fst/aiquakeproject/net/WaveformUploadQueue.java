@@ -0,0 +1,306 @@
+package ma.fst.aiquakeproject.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ma.fst.aiquakeproject.metrics.PipelineMetrics;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Durable outbox for waveforms. {@link #enqueue} returns at once; a single
+ * upload thread splits the encoded waveform into chunks of {@link #CHUNK_SIZE},
+ * appends them to a {@link PersistentQueue} and sends them in order as
+ * {@code PUT <server>/api/detections/<detectionId>/waveform/<index>} with the
+ * chunk count in {@code X-Chunk-Count}.
+ *
+ * <p>A waveform goes out only once the {@link DetectionUploadQueue} reports
+ * that the server accepted its detection, so the server never gets an
+ * attachment for a record it hasn't seen. The waveform of a dropped detection
+ * is dropped too.
+ *
+ * <p>Chunks are idempotent and removed only once accepted. Network and 5xx
+ * failures, 408 and 429 are retried with the backoff of the detection queue;
+ * any other 4xx drops the rest of that waveform, since the server then has the
+ * record and still won't take it.
+ */
+public final class WaveformUploadQueue implements Closeable, DetectionUploadQueue.DeliveryListener {
+
+    public static final int CHUNK_SIZE = 32 * 1024;
+
+    private static final Logger LOG = Logger.getLogger("WaveformUploadQueue");
+    private static final MediaType MEDIA_TYPE = MediaType.get(WaveformCodec.CONTENT_TYPE);
+    private static final int STORAGE_VERSION = 1;
+
+    private final PersistentQueue queue;
+    private final OkHttpClient client;
+    private volatile String serverUrl;
+    private final DetectionUploadQueue detections;
+    private final ScheduledExecutorService executor;
+    private final Random random;
+    // Dropped detections whose waveform may still come or be queued
+    private final Set<String> droppedIds = ConcurrentHashMap.newKeySet();
+
+    // Only touched on the upload thread
+    private ScheduledFuture<?> scheduledFlush;
+    private int attempt = 0;
+    private long waveformNs = 0;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final PipelineMetrics metrics = PipelineMetrics.get();
+    private volatile int depth;
+
+    /** Registers itself as the delivery listener of {@code detections}. */
+    public WaveformUploadQueue(File dir, OkHttpClient client, String serverUrl, DetectionUploadQueue detections)
+            throws IOException {
+        this(dir, client, serverUrl, detections, newUploadExecutor(), new Random());
+    }
+
+    private static ScheduledExecutorService newUploadExecutor() {
+        ScheduledThreadPoolExecutor executor =
+                new ScheduledThreadPoolExecutor(1, r -> new Thread(r, "waveform-upload"));
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return executor;
+    }
+
+    WaveformUploadQueue(File dir, OkHttpClient client, String serverUrl, DetectionUploadQueue detections,
+                        ScheduledExecutorService executor, Random random) throws IOException {
+        this.queue = new PersistentQueue(dir);
+        this.client = client;
+        this.serverUrl = serverUrl;
+        this.detections = detections;
+        this.executor = executor;
+        this.random = random;
+        this.depth = queue.size();
+        // Before the first flush, so no acceptance is missed
+        detections.setDeliveryListener(this);
+        // Leftovers from a previous run
+        if (depth > 0) executor.execute(this::flush);
+    }
+
+    public void setServerUrl(String url) {
+        serverUrl = url;
+    }
+
+    /** Safe from any thread; disk and network work happens on the upload thread. */
+    public void enqueue(String detectionId, byte[] payload) {
+        try {
+            executor.execute(() -> append(detectionId, payload));
+        } catch (RejectedExecutionException e) {
+            LOG.warning("Waveform queue closed, dropping waveform " + detectionId);
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void append(String detectionId, byte[] payload) {
+        if (droppedIds.remove(detectionId)) {
+            LOG.info("Detection " + detectionId + " was dropped, so is its waveform");
+            dropped.incrementAndGet();
+            return;
+        }
+        int chunks = Math.max(1, (payload.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        try {
+            for (int i = 0; i < chunks; i++) {
+                int from = i * CHUNK_SIZE;
+                int to = Math.min(payload.length, from + CHUNK_SIZE);
+                queue.append(Chunk.toBytes(detectionId, i, chunks, payload, from, to));
+            }
+        } catch (IOException e) {
+            // Chunks already written go out; the server can tell the waveform is incomplete
+            LOG.log(Level.WARNING, "Cannot persist waveform " + detectionId, e);
+            dropped.incrementAndGet();
+        }
+        depth = queue.size();
+        if (attempt == 0) scheduleFlush(0);
+    }
+
+    /** Called on the detection upload thread. */
+    @Override
+    public void onDelivered(String detectionId, boolean accepted) {
+        if (!accepted) droppedIds.add(detectionId);
+        try {
+            executor.execute(() -> {
+                // While backing off, the next attempt picks it up
+                if (attempt == 0) scheduleFlush(0);
+            });
+        } catch (RejectedExecutionException e) {
+            // Closed; the chunks stay on disk for the next start
+        }
+    }
+
+    private void scheduleFlush(long delayMs) {
+        if (scheduledFlush != null) scheduledFlush.cancel(false);
+        scheduledFlush = executor.schedule(this::flush, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        scheduledFlush = null;
+        Chunk chunk;
+        try {
+            List<byte[]> head = queue.peek(1);
+            if (head.isEmpty()) return;
+            chunk = Chunk.fromBytes(head.get(0));
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Cannot read waveform queue", e);
+            return;
+        }
+        if (droppedIds.remove(chunk.detectionId)) {
+            LOG.info("Detection " + chunk.detectionId + " was dropped, so is its waveform");
+            removeRest(chunk);
+            dropped.incrementAndGet();
+            if (depth > 0) scheduleFlush(0);
+            return;
+        }
+        // Resumed by onDelivered
+        if (detections.isPending(chunk.detectionId)) return;
+
+        long startNs = System.nanoTime();
+        int code;
+        try (Response response = client.newCall(buildRequest(chunk)).execute()) {
+            code = response.code();
+        } catch (IOException e) {
+            code = -1;
+        }
+        waveformNs += System.nanoTime() - startNs;
+
+        boolean accepted = code >= 200 && code < 300;
+        boolean retryable = code < 0 || code >= 500 || code == 408 || code == 429;
+        if (!accepted && retryable) {
+            metrics.waveformsFailed.getAndIncrement();
+            long delay = DetectionUploadQueue.backoffMs(attempt++, random);
+            LOG.info("Upload of waveform " + chunk.detectionId + " chunk " + chunk.index + "/" + chunk.count
+                    + " failed (" + code + "), retrying in " + delay + " ms");
+            scheduleFlush(delay);
+            return;
+        }
+        attempt = 0;
+        if (accepted) {
+            remove(1);
+            if (chunk.index == chunk.count - 1) {
+                sent.incrementAndGet();
+                metrics.waveformsSent.getAndIncrement();
+                metrics.waveformUpload.record(waveformNs);
+                waveformNs = 0;
+            }
+        } else {
+            LOG.warning("Server rejected waveform " + chunk.detectionId + " (" + code + "), dropping it");
+            metrics.waveformsFailed.getAndIncrement();
+            removeRest(chunk);
+            dropped.incrementAndGet();
+        }
+        if (depth > 0) scheduleFlush(0);
+    }
+
+    // The chunks of one waveform are appended together, so the rest follow the head
+    private void removeRest(Chunk head) {
+        remove(head.count - head.index);
+        waveformNs = 0;
+    }
+
+    private void remove(int count) {
+        try {
+            queue.remove(count);
+            depth = queue.size();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Cannot acknowledge waveform chunks", e);
+        }
+    }
+
+    private Request buildRequest(Chunk chunk) {
+        return new Request.Builder()
+                .url(serverUrl + "/api/detections/" + chunk.detectionId + "/waveform/" + chunk.index)
+                .header("X-Chunk-Count", String.valueOf(chunk.count))
+                .put(RequestBody.create(chunk.data, MEDIA_TYPE))
+                .build();
+    }
+
+    /** Chunks waiting on disk, including the one in flight. */
+    public int getDepth() {
+        return depth;
+    }
+
+    /** Waveforms whose last chunk the server accepted. */
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /** Stops uploading; whatever is pending stays on disk for the next start. */
+    @Override
+    public void close() {
+        executor.execute(() -> {
+            if (scheduledFlush != null) scheduledFlush.cancel(false);
+            try {
+                queue.close();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Cannot close waveform queue", e);
+            }
+        });
+        executor.shutdown();
+    }
+
+    /** One persisted chunk. */
+    private static final class Chunk {
+        final String detectionId;
+        final int index;
+        final int count;
+        final byte[] data;
+
+        Chunk(String detectionId, int index, int count, byte[] data) {
+            this.detectionId = detectionId;
+            this.index = index;
+            this.count = count;
+            this.data = data;
+        }
+
+        static byte[] toBytes(String detectionId, int index, int count, byte[] payload, int from, int to)
+                throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(to - from + 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(STORAGE_VERSION);
+            out.writeUTF(detectionId);
+            out.writeInt(index);
+            out.writeInt(count);
+            out.writeInt(to - from);
+            out.write(payload, from, to - from);
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        static Chunk fromBytes(byte[] entry) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+            int version = in.readUnsignedByte();
+            if (version != STORAGE_VERSION) throw new IOException("Unsupported chunk version " + version);
+            String id = in.readUTF();
+            int index = in.readInt();
+            int count = in.readInt();
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            return new Chunk(id, index, count, data);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ma.fst.aiquakeproject.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import ma.fst.aiquakeproject.dsp.HandlingGate;
+
+/**
+ * Converts a {@link FlightRecorder} recording to the
+ * {@code Timestamp,X,Y,Z,Latitude,Longitude} CSV the old CSVLogger wrote, so
+ * existing analysis and the replay tool keep working. Handling evidence, if
+ * any was recorded, goes next to it as {@code Timestamp,Evidence} in
+ * {@link #handlingFile}.
+ */
+public final class FlightRecordExporter {
+
+    public static final String HANDLING_SUFFIX = ".handling.csv";
+
+    private FlightRecordExporter() {}
+
+    /** @return the number of samples written */
+    public static long exportCsv(File recordingDir, File csv) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csv), StandardCharsets.UTF_8))) {
+            writer.write("Timestamp,X,Y,Z,Latitude,Longitude\n");
+            CsvVisitor visitor = new CsvVisitor(writer);
+            try {
+                FlightRecordReader.readAll(recordingDir, visitor);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (visitor.handling.length() > 0) {
+                try (Writer sidecar = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(handlingFile(csv)), StandardCharsets.UTF_8))) {
+                    sidecar.write("Timestamp,Evidence\n");
+                    sidecar.append(visitor.handling);
+                }
+            }
+            return visitor.samples;
+        }
+    }
+
+    /** {@code trace.csv} to {@code trace.handling.csv}. */
+    public static File handlingFile(File csv) {
+        String name = csv.getName();
+        String base = name.endsWith(".csv") ? name.substring(0, name.length() - 4) : name;
+        return new File(csv.getParentFile(), base + HANDLING_SUFFIX);
+    }
+
+    private static final class CsvVisitor implements FlightRecordReader.Visitor {
+        private final Writer writer;
+        private final StringBuilder line = new StringBuilder(96);
+        final StringBuilder handling = new StringBuilder();
+        private double lat = 0.0;
+        private double lon = 0.0;
+        long samples = 0;
+
+        CsvVisitor(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void onSample(long wallMs, long sensorNs, float x, float y, float z) {
+            line.setLength(0);
+            line.append(wallMs).append(',').append(x).append(',').append(y).append(',').append(z)
+                    .append(',').append(lat).append(',').append(lon).append('\n');
+            try {
+                writer.append(line);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            samples++;
+        }
+
+        @Override
+        public void onLocation(long wallMs, long sensorNs, double latitude, double longitude, float accuracy) {
+            lat = latitude;
+            lon = longitude;
+        }
+
+        @Override
+        public void onHandling(long wallMs, long sensorNs, int evidence) {
+            HandlingGate.Evidence e = HandlingGate.Evidence.fromCode(evidence);
+            if (e != null) handling.append(wallMs).append(',').append(e.key).append('\n');
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: FlightRecordExporter <recording dir> <out.csv>");
+            System.exit(2);
+        }
+        long samples = exportCsv(new File(args[0]), new File(args[1]));
+        System.out.println("Exported " + samples + " samples to " + args[1]);
+    }
+}
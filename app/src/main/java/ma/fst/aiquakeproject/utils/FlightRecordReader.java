@@ -0,0 +1,58 @@
+package ma.fst.aiquakeproject.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/** Reads the segments written by {@link FlightRecorder}. */
+public final class FlightRecordReader {
+
+    public interface Visitor {
+        void onSample(long wallMs, long sensorNs, float x, float y, float z);
+
+        void onLocation(long wallMs, long sensorNs, double latitude, double longitude, float accuracy);
+
+        default void onHandling(long wallMs, long sensorNs, int evidence) {}
+    }
+
+    private FlightRecordReader() {}
+
+    /** Visits every segment of a recording directory in order. */
+    public static void readAll(File dir, Visitor visitor) throws IOException {
+        for (File segment : FlightRecorder.segments(dir)) {
+            read(segment, visitor);
+        }
+    }
+
+    public static void read(File segment, Visitor visitor) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment, "r")) {
+            ByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != FlightRecorder.MAGIC) throw new IOException("Not a flight record: " + segment);
+            int version = buffer.getInt();
+            if (version != FlightRecorder.VERSION) throw new IOException("Unsupported version " + version);
+            int recordSize = buffer.getInt();
+            long baseWallMs = buffer.getLong(FlightRecorder.HEADER_SIZE - 16);
+            long baseSensorNs = buffer.getLong(FlightRecorder.HEADER_SIZE - 8);
+
+            for (int pos = FlightRecorder.HEADER_SIZE; pos + recordSize <= buffer.limit(); pos += recordSize) {
+                int type = buffer.getInt(pos);
+                if (type == FlightRecorder.TYPE_END) break;
+                long sensorNs = buffer.getLong(pos + 16);
+                long wallMs = baseWallMs + (sensorNs - baseSensorNs) / 1_000_000L;
+                if (type == FlightRecorder.TYPE_SAMPLE) {
+                    visitor.onSample(wallMs, sensorNs,
+                            buffer.getFloat(pos + 4), buffer.getFloat(pos + 8), buffer.getFloat(pos + 12));
+                } else if (type == FlightRecorder.TYPE_LOCATION) {
+                    visitor.onLocation(wallMs, sensorNs,
+                            buffer.getInt(pos + 8) / 1e7, buffer.getInt(pos + 12) / 1e7, buffer.getFloat(pos + 4));
+                } else if (type == FlightRecorder.TYPE_HANDLING) {
+                    visitor.onHandling(wallMs, sensorNs, buffer.getInt(pos + 4));
+                }
+            }
+        }
+    }
+}
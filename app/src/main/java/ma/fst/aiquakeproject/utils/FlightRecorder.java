@@ -0,0 +1,208 @@
+package ma.fst.aiquakeproject.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Records raw accelerometer samples as fixed-size binary records into
+ * pre-allocated, memory-mapped segment files. Writing a sample is a handful of
+ * absolute puts into the mapping: no formatting, no allocation, no syscall.
+ * Segments rotate when full and the oldest are deleted past a size cap.
+ *
+ * <p>Segment layout, little-endian: a {@value #HEADER_SIZE}-byte header
+ * (magic, version, record size, wall clock ms and sensor ns of the first
+ * record) followed by {@value #RECORD_SIZE}-byte records:
+ * <pre>
+ * sample:   int type=1, float x, float y, float z, long sensorNs
+ * location: int type=2, float accuracy, int latE7, int lonE7, long sensorNs
+ * handling: int type=3, int evidence, 8 unused bytes, long sensorNs
+ * </pre>
+ * The unused tail of a segment is zero, which reads as type 0 (end).
+ *
+ * <p>{@link #recordSample}, {@link #recordHandling} and {@link #close} must be called from one thread;
+ * {@link #updateLocation} may be called from any thread.
+ */
+public final class FlightRecorder implements Closeable {
+
+    public static final int MAGIC = 0x52465141; // "AQFR"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 24;
+
+    public static final int TYPE_END = 0;
+    public static final int TYPE_SAMPLE = 1;
+    public static final int TYPE_LOCATION = 2;
+    public static final int TYPE_HANDLING = 3;
+
+    public static final String SEGMENT_SUFFIX = ".aqfr";
+
+    private static final long LOCATION_INTERVAL_NS = 10_000_000_000L;
+    private static final long NO_FIX = Long.MIN_VALUE;
+
+    private final File dir;
+    private final int segmentBytes;
+    private final long maxTotalBytes;
+
+    private RandomAccessFile file;
+    private MappedByteBuffer buffer;
+    private int segmentIndex = 0;
+    private boolean headerWritten;
+    private boolean closed = false;
+
+    private volatile long packedLocation = NO_FIX;
+    private volatile float locationAccuracy;
+    private long writtenLocation = NO_FIX;
+    private long lastLocationNs;
+
+    private long samplesWritten = 0;
+
+    public FlightRecorder(File dir, int segmentBytes, long maxTotalBytes) throws IOException {
+        if (segmentBytes < HEADER_SIZE + RECORD_SIZE * 2) {
+            throw new IllegalArgumentException("Segment too small: " + segmentBytes);
+        }
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+
+        File[] existing = segments(dir);
+        if (existing.length > 0) {
+            segmentIndex = parseIndex(existing[existing.length - 1]) + 1;
+        }
+        openSegment();
+    }
+
+    /** Latest fix, written into the stream periodically and whenever it changes. */
+    public void updateLocation(double latitude, double longitude, float accuracy) {
+        locationAccuracy = accuracy;
+        int latE7 = (int) Math.round(latitude * 1e7);
+        int lonE7 = (int) Math.round(longitude * 1e7);
+        packedLocation = ((long) latE7 << 32) | (lonE7 & 0xFFFFFFFFL);
+    }
+
+    public void recordSample(long sensorNs, float x, float y, float z) {
+        if (closed) return;
+
+        long location = packedLocation;
+        if (location != NO_FIX && (location != writtenLocation || sensorNs - lastLocationNs >= LOCATION_INTERVAL_NS)) {
+            if (!ensureRoom(sensorNs)) return;
+            buffer.putInt(TYPE_LOCATION);
+            buffer.putFloat(locationAccuracy);
+            buffer.putInt((int) (location >> 32));
+            buffer.putInt((int) location);
+            buffer.putLong(sensorNs);
+            writtenLocation = location;
+            lastLocationNs = sensorNs;
+        }
+
+        if (!ensureRoom(sensorNs)) return;
+        buffer.putInt(TYPE_SAMPLE);
+        buffer.putFloat(x);
+        buffer.putFloat(y);
+        buffer.putFloat(z);
+        buffer.putLong(sensorNs);
+        samplesWritten++;
+    }
+
+    /** One piece of handling evidence, by its {@code HandlingGate.Evidence} code, so replays can gate too. */
+    public void recordHandling(long sensorNs, int evidence) {
+        if (closed || !ensureRoom(sensorNs)) return;
+        buffer.putInt(TYPE_HANDLING);
+        buffer.putInt(evidence);
+        buffer.putLong(0L);
+        buffer.putLong(sensorNs);
+    }
+
+    public long getSamplesWritten() {
+        return samplesWritten;
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    private boolean ensureRoom(long sensorNs) {
+        if (buffer.remaining() < RECORD_SIZE) {
+            try {
+                closeSegment();
+                segmentIndex++;
+                openSegment();
+                enforceCap();
+            } catch (IOException e) {
+                e.printStackTrace();
+                closed = true;
+                return false;
+            }
+        }
+        if (!headerWritten) {
+            buffer.putLong(HEADER_SIZE - 16, System.currentTimeMillis());
+            buffer.putLong(HEADER_SIZE - 8, sensorNs);
+            headerWritten = true;
+        }
+        return true;
+    }
+
+    private void openSegment() throws IOException {
+        File segment = new File(dir, String.format(Locale.ROOT, "%08d%s", segmentIndex, SEGMENT_SUFFIX));
+        file = new RandomAccessFile(segment, "rw");
+        file.setLength(segmentBytes);
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(RECORD_SIZE);
+        buffer.position(HEADER_SIZE);
+        headerWritten = false;
+        // A new segment restates the location so it can be read on its own
+        writtenLocation = NO_FIX;
+    }
+
+    private void closeSegment() throws IOException {
+        if (buffer != null) buffer.force();
+        if (file != null) file.close();
+        buffer = null;
+        file = null;
+    }
+
+    private void enforceCap() {
+        File[] all = segments(dir);
+        long total = 0;
+        for (File f : all) total += f.length();
+        // Never delete the segment being written
+        for (int i = 0; i < all.length - 1 && total > maxTotalBytes; i++) {
+            total -= all[i].length();
+            if (!all[i].delete()) break;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed && buffer == null) return;
+        closed = true;
+        try {
+            closeSegment();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Segment files of a recording, oldest first. */
+    public static File[] segments(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) return new File[0];
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static int parseIndex(File segment) {
+        String name = segment.getName();
+        return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,40 @@
+package ma.fst.aiquakeproject.detection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FixCacheTest {
+
+    private static LocationFix fix(float accuracyM, long elapsedMs) {
+        return new LocationFix(34.02, -6.84, accuracyM, elapsedMs, "test");
+    }
+
+    @Test
+    public void coarseFixDoesNotReplaceAGoodOne() {
+        FixCache cache = new FixCache();
+        assertTrue(cache.needsRefresh(0, 60_000));
+        assertTrue(cache.offer(fix(1500f, 1_000)));
+        assertTrue(cache.offer(fix(8f, 2_000)));
+        assertFalse(cache.offer(fix(1500f, 3_000)));
+        assertFalse(cache.offer(fix(5f, 1_500)));
+        assertTrue(cache.offer(fix(12f, 4_000)));
+        assertEquals(12f, cache.get().accuracyM, 0f);
+    }
+
+    @Test
+    public void refreshesWhenStaleOrMoved() {
+        FixCache cache = new FixCache();
+        cache.offer(fix(8f, 1_000));
+        assertFalse(cache.needsRefresh(31_000, 60_000));
+        assertTrue(cache.needsRefresh(62_000, 60_000));
+
+        cache.onMoved();
+        assertTrue(cache.needsRefresh(2_000, 60_000));
+        // The stale fix stays available until the new one arrives, whatever its accuracy
+        assertEquals(8f, cache.get().accuracyM, 0f);
+        assertTrue(cache.offer(fix(1500f, 3_000)));
+        assertFalse(cache.needsRefresh(4_000, 60_000));
+        assertEquals(1_000, cache.get().ageMs(4_000));
+    }
+}
@@ -0,0 +1,88 @@
+package ma.fst.aiquakeproject.detection;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ma.fst.aiquakeproject.dsp.DetectorState;
+import ma.fst.aiquakeproject.dsp.QuakeMonitor;
+
+import static org.junit.Assert.*;
+
+public class StateHandoffTest {
+
+    private static final float GRAVITY = 9.81f;
+
+    @Test
+    public void uiThreadOnlyReceivesStateChanges() throws Exception {
+        ExecutorService ui = Executors.newSingleThreadExecutor(r -> new Thread(r, "ui"));
+        ExecutorService detection = Executors.newSingleThreadExecutor(r -> new Thread(r, "detection"));
+
+        List<String> uiThreads = Collections.synchronizedList(new ArrayList<>());
+        List<String> dspThreads = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger uiCalls = new AtomicInteger();
+        AtomicReference<DetectorState> lastState = new AtomicReference<>();
+
+        StateHandoff handoff = new StateHandoff(ui, (state, seconds) -> {
+            uiThreads.add(Thread.currentThread().getName());
+            uiCalls.incrementAndGet();
+            lastState.set(state);
+        });
+        QuakeMonitor monitor = new QuakeMonitor(new QuakeMonitor.Listener() {
+            @Override
+            public void onStateChanged(DetectorState state, int seconds) {
+                dspThreads.add(Thread.currentThread().getName());
+                handoff.publish(state, seconds);
+            }
+
+            @Override
+            public void onQuakeConfirmed(float energy, float variance, int peakCount) {
+                dspThreads.add(Thread.currentThread().getName());
+            }
+        });
+
+        int samples = 50 * 20;
+        detection.submit(() -> {
+            for (int i = 0; i < samples; i++) {
+                long now = i * 20L;
+                float shake = i > 300 ? 1.5f * (float) Math.sin(2 * Math.PI * 3 * i / 50.0) : 0f;
+                monitor.onSample(GRAVITY + shake, now);
+            }
+        }).get(5, TimeUnit.SECONDS);
+        detection.shutdown();
+        ui.shutdown();
+        assertTrue(ui.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertFalse(dspThreads.isEmpty());
+        for (String name : dspThreads) assertEquals("detection", name);
+        for (String name : uiThreads) assertEquals("ui", name);
+
+        // A handful of transitions, never one UI call per sample
+        assertTrue(uiCalls.get() >= 1);
+        assertTrue(uiCalls.get() < 20);
+        assertEquals(DetectorState.CONFIRMED, lastState.get());
+    }
+
+    @Test
+    public void slowUiCoalescesToLatestState() {
+        List<Runnable> queued = new ArrayList<>();
+        List<Integer> seen = new ArrayList<>();
+        StateHandoff handoff = new StateHandoff(queued::add, (state, seconds) -> seen.add(seconds));
+
+        for (int i = 0; i < 5; i++) handoff.publish(DetectorState.VERIFYING, i);
+        assertEquals(1, queued.size());
+
+        queued.remove(0).run();
+        assertEquals(Collections.singletonList(4), seen);
+
+        handoff.publish(DetectorState.IDLE, 0);
+        assertEquals(1, queued.size());
+    }
+}
@@ -0,0 +1,69 @@
+package ma.fst.aiquakeproject.dsp;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class ComponentFeaturesTest {
+
+    private static final float FS = 50f;
+    private static final float G = 9.81f;
+
+    /** Phone tilted 40° about x, shaking at 3 Hz along {@code (sx, sy, sz)} in world axes, z up. */
+    private static void feed(ComponentFeatures features, int n, float sx, float sy, float sz) {
+        float c = (float) Math.cos(Math.toRadians(40));
+        float s = (float) Math.sin(Math.toRadians(40));
+        for (int i = 0; i < n; i++) {
+            float a = (float) Math.sin(2 * Math.PI * 3 * i / FS);
+            float wx = sx * a;
+            float wy = sy * a;
+            float wz = G + sz * a;
+            // World to device: rotate by -40° about x
+            features.add(wx, c * wy + s * wz, -s * wy + c * wz);
+        }
+    }
+
+    @Test
+    public void verticalShakingOnATiltedPhoneStaysVertical() {
+        ComponentFeatures features = new ComponentFeatures(128, FS);
+        feed(features, 1000, 0f, 0f, 1f);
+        assertEquals(1f / (float) Math.sqrt(2), features.verticalRms(), 0.02f);
+        assertEquals(0f, features.horizontalRms(), 0.02f);
+    }
+
+    @Test
+    public void horizontalShakingIsSeparated() {
+        ComponentFeatures features = new ComponentFeatures(128, FS);
+        feed(features, 1000, 0.6f, 0.8f, 0f);
+        assertEquals(1f / (float) Math.sqrt(2), features.horizontalRms(), 0.02f);
+        assertEquals(0f, features.verticalRms(), 0.02f);
+
+        ComponentFeatures mixed = new ComponentFeatures(128, FS);
+        feed(mixed, 1000, 2f, 0f, 1f);
+        assertEquals(2f, mixed.horizontalRatio(), 0.1f);
+    }
+
+    @Test
+    public void engineFillsComponentFeaturesWithoutAllocating() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) return;
+
+        DetectionEngine engine = new DetectionEngine();
+        float[] out = new float[WindowClassifier.FEATURE_COUNT];
+        for (int i = 0; i < 1000; i++) engine.addSample(0.5f * (float) Math.sin(i * 0.4), 0f, G);
+
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < 10_000; i++) engine.addSample(0.5f * (float) Math.sin(i * 0.4), 0f, G);
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+
+        engine.getFeatures(out);
+        assertTrue(out[WindowClassifier.HORIZONTAL_RMS] > 0.3f);
+        assertTrue(out[WindowClassifier.HORIZONTAL_RATIO] > 10f);
+    }
+}
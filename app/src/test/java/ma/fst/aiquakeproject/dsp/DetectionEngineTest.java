@@ -0,0 +1,113 @@
+package ma.fst.aiquakeproject.dsp;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DetectionEngineTest {
+
+    private static final float GRAVITY = 9.81f;
+
+    /** Vertical shaking on top of gravity, as the phone lying flat would see it. */
+    private static float[] trace(int length, float amplitude, float frequency, float noise, long seed) {
+        Random random = new Random(seed);
+        float[] out = new float[length];
+        for (int i = 0; i < length; i++) {
+            double t = i / DetectionEngine.SAMPLING_RATE;
+            out[i] = GRAVITY + amplitude * (float) Math.sin(2 * Math.PI * frequency * t)
+                    + noise * (float) random.nextGaussian();
+        }
+        return out;
+    }
+
+    private static float[] referenceWindow(float[] samples, int end) {
+        float[] window = new float[DetectionEngine.WINDOW_SIZE];
+        System.arraycopy(samples, end - window.length + 1, window, 0, window.length);
+        WindowFeatures.removeMean(window);
+        return WindowFeatures.bandpassFilter(window, DetectionEngine.FILTER_LOW,
+                DetectionEngine.FILTER_HIGH, DetectionEngine.SAMPLING_RATE);
+    }
+
+    @Test
+    public void featuresMatchWindowRecompute() {
+        float[] samples = trace(1000, 1.5f, 3f, 0.02f, 1);
+        DetectionEngine engine = new DetectionEngine();
+        for (int i = 0; i < samples.length; i++) {
+            boolean ready = engine.addSample(samples[i]);
+            assertEquals(i >= DetectionEngine.WINDOW_SIZE - 1, ready);
+            if (i < 400) continue;
+
+            float[] filtered = referenceWindow(samples, i);
+            float energy = WindowFeatures.computeRMS(filtered);
+            float variance = WindowFeatures.computeVariance(filtered);
+            int peaks = WindowFeatures.countSpacedPeaks(filtered, DetectionEngine.PEAK_AMPLITUDE,
+                    DetectionEngine.PEAK_SPACING);
+
+            assertEquals(energy, engine.getEnergy(), energy * 0.1f);
+            assertEquals(variance, engine.getVariance(), variance * 0.2f);
+            assertEquals(peaks, engine.getPeakCount(), 1);
+        }
+    }
+
+    @Test
+    public void decisionMatchesThresholds() {
+        DetectionEngine quiet = new DetectionEngine();
+        for (float v : trace(600, 0f, 0f, 0.02f, 2)) quiet.addSample(v);
+        assertFalse(quiet.isPatternDetected());
+
+        DetectionEngine shaking = new DetectionEngine();
+        for (float v : trace(600, 1.5f, 3f, 0.02f, 3)) shaking.addSample(v);
+        assertTrue(shaking.isPatternDetected());
+    }
+
+    @Test
+    public void longWindowsCatchSustainedWeakerShaking() {
+        // Below the configured window's energy and peak thresholds, but steady
+        float[] samples = trace(1500, 0.5f, 2f, 0f, 0);
+        DetectionEngine engine = new DetectionEngine();
+        for (int i = 0; i < 400; i++) engine.addSample(samples[i]);
+        assertTrue(engine.getEnergy() < DetectionEngine.ENERGY_THRESHOLD);
+        assertFalse(engine.isPatternDetected());
+
+        for (int i = 400; i < samples.length; i++) engine.addSample(samples[i]);
+        assertTrue(engine.getPeakCount() < DetectionEngine.PEAK_THRESHOLD);
+        assertTrue(engine.isPatternDetected());
+    }
+
+    @Test
+    public void runningSumsDoNotDrift() {
+        SlidingWindowStats stats = new SlidingWindowStats(64);
+        Random random = new Random(4);
+        float[] last = new float[64];
+        for (int i = 0; i < 200_000; i++) {
+            float v = (float) random.nextGaussian() * 100f;
+            stats.add(v);
+            last[i % 64] = v;
+        }
+        assertEquals(WindowFeatures.computeRMS(last), stats.rms(), 1e-2f);
+        assertEquals(WindowFeatures.computeVariance(last), stats.variance(), 1f);
+    }
+
+    @Test
+    public void steadyStateDoesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) return;
+
+        float[] samples = trace(10_000, 1.5f, 3f, 0.05f, 5);
+        DetectionEngine engine = new DetectionEngine();
+        for (float v : samples) engine.addSample(v);
+
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (float v : samples) engine.addSample(v);
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+
+        // Leave room for the bean call itself, but nothing proportional to the trace
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
@@ -0,0 +1,58 @@
+package ma.fst.aiquakeproject.dsp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DetectorConfigTest {
+
+    private static DetectorConfig window(int size) {
+        DetectorConfig d = DetectorConfig.DEFAULTS;
+        return new DetectorConfig(size, d.filterLow, d.filterHigh, d.samplingRate, d.energyThreshold,
+                d.varianceThreshold, d.peakThreshold, d.peakAmplitude, d.peakSpacing, d.minBandRatio,
+                d.requiredStreak, d.minDetectionTimeMs);
+    }
+
+    @Test
+    public void defaultsMatchTheEngineConstants() {
+        DetectorConfig d = DetectorConfig.DEFAULTS;
+        assertEquals(DetectionEngine.WINDOW_SIZE, d.windowSize);
+        assertEquals(DetectionEngine.SAMPLING_RATE, d.samplingRate, 0f);
+        assertEquals(DetectionEngine.ENERGY_THRESHOLD, d.energyThreshold, 0f);
+        assertEquals(QuakeMonitor.REQUIRED_STREAK, d.requiredStreak);
+        assertEquals(d, window(DetectionEngine.WINDOW_SIZE));
+        assertEquals(d.hashCode(), window(DetectionEngine.WINDOW_SIZE).hashCode());
+    }
+
+    @Test
+    public void rejectsValuesTheEngineCannotRun() {
+        for (int size : new int[] {16, 100, 1024}) {
+            try {
+                window(size);
+                fail("window " + size);
+            } catch (IllegalArgumentException expected) {
+                // ok
+            }
+        }
+        DetectorConfig d = DetectorConfig.DEFAULTS;
+        try {
+            // High corner above Nyquist
+            new DetectorConfig(d.windowSize, 1f, 30f, 50f, d.energyThreshold, d.varianceThreshold,
+                    d.peakThreshold, d.peakAmplitude, d.peakSpacing, d.minBandRatio, d.requiredStreak,
+                    d.minDetectionTimeMs);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("25.0"));
+        }
+    }
+
+    @Test
+    public void signalPathIgnoresDecisionParameters() {
+        DetectorConfig d = DetectorConfig.DEFAULTS;
+        DetectorConfig stricter = new DetectorConfig(d.windowSize, d.filterLow, d.filterHigh, d.samplingRate,
+                1f, 0.2f, 9, d.peakAmplitude, d.peakSpacing, 2f, 20, 5000);
+        assertTrue(d.sameSignalPath(stricter));
+        assertNotEquals(d, stricter);
+        assertFalse(d.sameSignalPath(window(256)));
+    }
+}
@@ -0,0 +1,52 @@
+package ma.fst.aiquakeproject.dsp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HandlingGateTest {
+
+    @Test
+    public void evidenceMarksAnIntervalWithLeadAndHold() {
+        HandlingGate gate = new HandlingGate();
+        gate.setAvailable(true);
+        assertFalse(gate.isHandled(10_000));
+        assertEquals(HandlingGate.State.SETTLED, gate.state(10_000));
+
+        gate.onEvidence(HandlingGate.Evidence.STEP, 20_000);
+        gate.onEvidence(HandlingGate.Evidence.STEP, 21_000);
+        assertFalse(gate.isHandled(20_000 - HandlingGate.LEAD_MS - 1));
+        assertTrue(gate.isHandled(20_000 - HandlingGate.LEAD_MS));
+        assertTrue(gate.isHandled(21_000 + HandlingGate.HOLD_MS - 1));
+        assertFalse(gate.isHandled(21_000 + HandlingGate.HOLD_MS));
+        assertEquals(HandlingGate.State.RECENTLY_HANDLED, gate.state(30_000));
+        assertEquals(HandlingGate.State.SETTLED, gate.state(21_000 + HandlingGate.RECENT_MS));
+    }
+
+    @Test
+    public void stationaryEndsTheHold() {
+        HandlingGate gate = new HandlingGate();
+        gate.setAvailable(true);
+        gate.onEvidence(HandlingGate.Evidence.SIGNIFICANT_MOTION, 5_000);
+        gate.onEvidence(HandlingGate.Evidence.STATIONARY, 6_000);
+        assertTrue(gate.isHandled(5_500));
+        assertFalse(gate.isHandled(6_000));
+        assertEquals(HandlingGate.State.STATIONARY, gate.state(7_000));
+
+        gate.onEvidence(HandlingGate.Evidence.STEP, 8_000);
+        assertTrue(gate.isHandled(8_000));
+        assertEquals(HandlingGate.State.RECENTLY_HANDLED, gate.state(20_000));
+    }
+
+    @Test
+    public void onlyFastRotationCounts() {
+        HandlingGate gate = new HandlingGate();
+        gate.onRotation(0.1f, 0.2f, 0.1f, 1_000);
+        assertFalse(gate.isHandled(1_000));
+        gate.onRotation(0.4f, 0.4f, 0f, 2_000);
+        assertTrue(gate.isHandled(2_000));
+        assertEquals(1, gate.getEvidenceCount());
+        // Without a handling sensor detections carry no handling information
+        assertEquals(HandlingGate.State.UNAVAILABLE, gate.state(2_000));
+    }
+}
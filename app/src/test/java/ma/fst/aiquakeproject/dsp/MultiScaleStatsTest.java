@@ -0,0 +1,53 @@
+package ma.fst.aiquakeproject.dsp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MultiScaleStatsTest {
+
+    @Test
+    public void everyScaleMatchesItsOwnSlidingWindow() {
+        int[] scales = {64, 128, 256, 512, 1024};
+        MultiScaleStats multi = new MultiScaleStats(scales, 0.4f, 10);
+        SlidingWindowStats[] stats = new SlidingWindowStats[scales.length];
+        SpacedPeakCounter[] peaks = new SpacedPeakCounter[scales.length];
+        for (int s = 0; s < scales.length; s++) {
+            stats[s] = new SlidingWindowStats(scales[s]);
+            peaks[s] = new SpacedPeakCounter(scales[s], 0.4f, 10);
+        }
+
+        Random random = new Random(1);
+        // Long enough for many rebases, with a slow offset so the sums don't cancel out
+        for (int i = 0; i < 100_000; i++) {
+            float v = (float) (random.nextGaussian() * 0.5 + Math.sin(i / 500.0));
+            multi.add(v);
+            for (int s = 0; s < scales.length; s++) {
+                stats[s].add(v);
+                peaks[s].add(v);
+                assertEquals(stats[s].isFull(), multi.isFull(s));
+                if (!stats[s].isFull() || i % 97 != 0) continue;
+                assertEquals(stats[s].rms(), multi.rms(s), 1e-4f);
+                assertEquals(stats[s].variance(), multi.variance(s), 1e-4f);
+                assertEquals(peaks[s].count(), multi.peakCount(s));
+            }
+        }
+    }
+
+    @Test
+    public void scalesReportNothingUntilFull() {
+        MultiScaleStats multi = new MultiScaleStats(new int[] {4, 16}, 0f, 1);
+        for (int i = 0; i < 8; i++) multi.add(i % 2 == 0 ? 1f : -1f);
+        assertEquals(1f, multi.rms(0), 1e-6f);
+        assertEquals(1, multi.peakCount(0));
+        assertFalse(multi.isFull(1));
+        assertEquals(0f, multi.rms(1), 0f);
+        assertEquals(0, multi.peakCount(1));
+
+        multi.reset();
+        assertFalse(multi.isFull(0));
+        assertEquals(0f, multi.variance(0), 0f);
+    }
+}
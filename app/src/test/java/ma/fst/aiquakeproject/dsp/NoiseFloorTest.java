@@ -0,0 +1,148 @@
+package ma.fst.aiquakeproject.dsp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NoiseFloorTest {
+
+    private static final float GRAVITY = 9.81f;
+
+    @Test
+    public void quantileFollowsTheRecentLevel() {
+        DecayingHistogram histogram = new DecayingHistogram(1e-4f, 1e2f, 96, 100);
+        Random random = new Random(1);
+        for (int i = 0; i < 10_000; i++) histogram.add((float) Math.abs(random.nextGaussian()) * 0.01f, 1);
+        // p99 of |N(0, 0.01)| is 0.0258, within one bin (15%)
+        assertEquals(0.0258f, histogram.quantile(0.99), 0.0258f * 0.16f);
+        assertEquals(100, histogram.weight(), 1);
+
+        // Ten memories later the old level is gone
+        for (int i = 0; i < 1_000; i++) histogram.add(0.5f, 1);
+        assertEquals(0.5f, histogram.quantile(0.01), 0.5f * 0.16f);
+    }
+
+    @Test
+    public void thresholdsFollowTheFloorWithinBounds() {
+        DetectorConfig config = DetectorConfig.DEFAULTS;
+        NoiseFloor floor = new NoiseFloor();
+        floor.observe(0.01f, 1e-4f, 60);
+        assertFalse(floor.isReady());
+        assertEquals(config.energyThreshold, floor.energyThreshold(config), 0f);
+
+        for (int i = 0; i < 20; i++) floor.observe(0.05f, 0.0025f, 60);
+        assertTrue(floor.isReady());
+        float energy = floor.energyThreshold(config);
+        assertEquals(NoiseFloor.MARGIN * 0.05f, energy, 0.03f);
+        assertEquals(config.peakAmplitude * energy / config.energyThreshold, floor.peakAmplitude(config), 1e-6f);
+
+        // A quiet floor hits the lower bound, a vibrating desk the upper one
+        NoiseFloor quiet = new NoiseFloor();
+        quiet.observe(1e-3f, 1e-6f, NoiseFloor.READY_SECONDS);
+        assertEquals(config.energyThreshold * NoiseFloor.MIN_FACTOR, quiet.energyThreshold(config), 0f);
+        NoiseFloor loud = new NoiseFloor();
+        loud.observe(5f, 25f, NoiseFloor.READY_SECONDS);
+        assertEquals(config.varianceThreshold * NoiseFloor.MAX_FACTOR, loud.varianceThreshold(config), 0f);
+    }
+
+    @Test
+    public void stateSurvivesARestart() throws IOException {
+        DetectorConfig config = DetectorConfig.DEFAULTS;
+        NoiseFloor floor = new NoiseFloor();
+        Random random = new Random(2);
+        for (int i = 0; i < 2_000; i++) {
+            float e = 0.05f + 0.02f * (float) random.nextGaussian();
+            floor.observe(e, e * e, 1);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        floor.write(out);
+
+        NoiseFloor restored = new NoiseFloor();
+        restored.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(floor.getSeconds(), restored.getSeconds(), 1e-6);
+        assertEquals(floor.energyThreshold(config), restored.energyThreshold(config), 0f);
+        assertEquals(floor.varianceThreshold(config), restored.varianceThreshold(config), 0f);
+
+        byte[] corrupt = out.toByteArray();
+        corrupt[3] ^= 1;
+        try {
+            restored.read(new ByteArrayInputStream(corrupt));
+            fail();
+        } catch (IOException expected) {
+            assertEquals(0, restored.getSeconds(), 0);
+        }
+    }
+
+    private static final class Counter implements QuakeMonitor.Listener {
+        DetectorState state;
+        int confirmations;
+
+        @Override
+        public void onStateChanged(DetectorState state, int seconds) {
+            this.state = state;
+        }
+
+        @Override
+        public void onQuakeConfirmed(float energy, float variance, int peakCount) {
+            confirmations++;
+        }
+    }
+
+    private static int feed(QuakeMonitor monitor, Random random, int from, int to, float amplitude, float noise) {
+        for (int i = from; i < to; i++) {
+            float shake = amplitude * (float) Math.sin(2 * Math.PI * 3 * i / 50.0);
+            monitor.onSample(GRAVITY + shake + noise * (float) random.nextGaussian(), i * 20L);
+        }
+        return to;
+    }
+
+    @Test
+    public void quietFloorCatchesAWeakerQuake() {
+        int quiet = 50 * 60 * 15;
+        int event = 50 * 8;
+        Counter fixed = new Counter();
+        QuakeMonitor fixedMonitor = new QuakeMonitor(fixed);
+        int end = feed(fixedMonitor, new Random(3), 0, quiet, 0f, 0.005f);
+        feed(fixedMonitor, new Random(4), end, end + event, 0.4f, 0.005f);
+        assertEquals(0, fixed.confirmations);
+
+        Counter adaptive = new Counter();
+        QuakeMonitor adaptiveMonitor = new QuakeMonitor(adaptive);
+        adaptiveMonitor.setNoiseFloor(new NoiseFloor());
+        end = feed(adaptiveMonitor, new Random(3), 0, quiet, 0f, 0.005f);
+        assertEquals(0, adaptive.confirmations);
+        feed(adaptiveMonitor, new Random(4), end, end + event, 0.4f, 0.005f);
+        assertEquals(1, adaptive.confirmations);
+    }
+
+    @Test
+    public void longEventLeavesThresholdsUnchanged() {
+        DetectorConfig config = DetectorConfig.DEFAULTS;
+        Counter counter = new Counter();
+        QuakeMonitor monitor = new QuakeMonitor(counter, QuakeMonitor.REQUIRED_STREAK,
+                QuakeMonitor.MIN_DETECTION_TIME_MS, null);
+        NoiseFloor floor = new NoiseFloor();
+        monitor.setNoiseFloor(floor);
+        int end = feed(monitor, new Random(5), 0, 50 * 60 * 15, 0f, 0.005f);
+        assertTrue(floor.isReady());
+        float energy = floor.energyThreshold(config);
+        float variance = floor.varianceThreshold(config);
+        // Windows straddling the onset still count, as nothing is detected yet
+        end = feed(monitor, new Random(6), end, end + 50 * 10, 1.5f, 0.005f);
+        assertEquals(1, counter.confirmations);
+        double seconds = floor.getSeconds();
+
+        // Twenty minutes of shaking, far past any single quake
+        feed(monitor, new Random(7), end, end + 50 * 60 * 20, 1.5f, 0.005f);
+        assertEquals(1, counter.confirmations);
+        assertEquals(DetectorState.CONFIRMED, counter.state);
+        assertEquals(seconds, floor.getSeconds(), 0);
+        assertEquals(energy, floor.energyThreshold(config), 0f);
+        assertEquals(variance, floor.varianceThreshold(config), 0f);
+    }
+}
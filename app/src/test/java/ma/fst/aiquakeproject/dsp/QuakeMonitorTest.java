@@ -0,0 +1,162 @@
+package ma.fst.aiquakeproject.dsp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QuakeMonitorTest {
+
+    private static final float GRAVITY = 9.81f;
+
+    private static final class Recorder implements QuakeMonitor.Listener {
+        final List<DetectorState> states = new ArrayList<>();
+        final List<Long> times = new ArrayList<>();
+        long now;
+        int confirmations;
+
+        @Override
+        public void onStateChanged(DetectorState state, int seconds) {
+            states.add(state);
+            times.add(now);
+        }
+
+        @Override
+        public void onQuakeConfirmed(float energy, float variance, int peakCount) {
+            confirmations++;
+        }
+    }
+
+    private static void feed(QuakeMonitor monitor, Recorder recorder, int from, int to, float amplitude) {
+        for (int i = from; i < to; i++) {
+            recorder.now = i * 20L;
+            float shake = amplitude * (float) Math.sin(2 * Math.PI * 3 * i / 50.0);
+            monitor.onSample(GRAVITY + shake, recorder.now);
+        }
+    }
+
+    @Test
+    public void quietSignalEmitsOnce() {
+        Recorder recorder = new Recorder();
+        QuakeMonitor monitor = new QuakeMonitor(recorder);
+        feed(monitor, recorder, 0, 50 * 60, 0f);
+        assertEquals(1, recorder.states.size());
+        assertEquals(DetectorState.IDLE, recorder.states.get(0));
+    }
+
+    @Test
+    public void shakingEmitsTransitionsAtCappedRate() {
+        Recorder recorder = new Recorder();
+        QuakeMonitor monitor = new QuakeMonitor(recorder);
+        feed(monitor, recorder, 0, 300, 0f);
+        feed(monitor, recorder, 300, 50 * 30, 1.5f);
+
+        assertEquals(1, recorder.confirmations);
+        assertEquals(DetectorState.CONFIRMED, recorder.states.get(recorder.states.size() - 1));
+        assertTrue(recorder.states.size() < 10);
+        for (int i = 1; i < recorder.states.size(); i++) {
+            if (recorder.states.get(i) == recorder.states.get(i - 1)) {
+                long gap = recorder.times.get(i) - recorder.times.get(i - 1);
+                assertTrue(gap >= QuakeMonitor.MIN_UPDATE_INTERVAL_MS);
+            }
+        }
+    }
+
+    // Sensor noise, then shaking from onsetSample; returns the confirmation time or -1
+    private static long confirmAfterQuiet(QuakeMonitor monitor, Recorder recorder, int onsetSample) {
+        Random noise = new Random(3);
+        for (int i = 0; i < onsetSample + 50 * 30; i++) {
+            recorder.now = i * 20L;
+            float shake = i >= onsetSample ? 1.5f * (float) Math.sin(2 * Math.PI * 3 * i / 50.0) : 0f;
+            monitor.onSample(GRAVITY + shake + 0.01f * (float) noise.nextGaussian(), recorder.now);
+            if (recorder.confirmations > 0) return recorder.now;
+        }
+        return -1;
+    }
+
+    @Test
+    public void gateSkipsQuietSamplesWithoutDelayingConfirmation() {
+        int onset = 50 * 120;
+        Recorder ungatedRecorder = new Recorder();
+        QuakeMonitor ungated = new QuakeMonitor(ungatedRecorder, QuakeMonitor.REQUIRED_STREAK,
+                QuakeMonitor.MIN_DETECTION_TIME_MS, null);
+        long expected = confirmAfterQuiet(ungated, ungatedRecorder, onset);
+
+        Recorder gatedRecorder = new Recorder();
+        QuakeMonitor gated = new QuakeMonitor(gatedRecorder);
+        long actual = confirmAfterQuiet(gated, gatedRecorder, onset);
+
+        assertTrue(expected > 0);
+        assertEquals(expected, actual);
+        assertEquals(1, gated.getGateOpenings());
+        // Only the LTA warm-up, the replayed history and the event itself
+        assertTrue(gated.getEvaluatedSampleCount() < gated.getSampleCount() / 2);
+        assertEquals(ungated.getSampleCount(), ungated.getEvaluatedSampleCount());
+    }
+
+    private static DetectorConfig withEnergyThreshold(DetectorConfig d, float energy) {
+        return new DetectorConfig(d.windowSize, d.filterLow, d.filterHigh, d.samplingRate, energy,
+                d.varianceThreshold, d.peakThreshold, d.peakAmplitude, d.peakSpacing, d.minBandRatio,
+                d.requiredStreak, d.minDetectionTimeMs);
+    }
+
+    @Test
+    public void thresholdSwapKeepsTheWindow() {
+        Recorder recorder = new Recorder();
+        QuakeMonitor monitor = new QuakeMonitor(recorder, QuakeMonitor.REQUIRED_STREAK,
+                QuakeMonitor.MIN_DETECTION_TIME_MS, null);
+        DetectorConfig strict = withEnergyThreshold(DetectorConfig.DEFAULTS, 100f);
+        monitor.configure(strict, new ThresholdClassifier(strict));
+        feed(monitor, recorder, 0, 50 * 10, 1.5f);
+        assertEquals(DetectorState.IDLE, recorder.states.get(recorder.states.size() - 1));
+
+        // Back to the defaults: the very next sample already has a full window
+        monitor.configure(DetectorConfig.DEFAULTS, new ThresholdClassifier());
+        feed(monitor, recorder, 50 * 10, 50 * 10 + 1, 1.5f);
+        assertEquals(DetectorState.VERIFYING, recorder.states.get(recorder.states.size() - 1));
+    }
+
+    @Test
+    public void newSignalPathStartsOver() {
+        Recorder recorder = new Recorder();
+        QuakeMonitor monitor = new QuakeMonitor(recorder, QuakeMonitor.REQUIRED_STREAK,
+                QuakeMonitor.MIN_DETECTION_TIME_MS, null);
+        feed(monitor, recorder, 0, 50 * 3, 1.5f);
+        assertEquals(DetectorState.VERIFYING, recorder.states.get(recorder.states.size() - 1));
+
+        DetectorConfig d = DetectorConfig.DEFAULTS;
+        DetectorConfig wide = new DetectorConfig(256, d.filterLow, d.filterHigh, d.samplingRate, d.energyThreshold,
+                d.varianceThreshold, d.peakThreshold, d.peakAmplitude, d.peakSpacing, d.minBandRatio,
+                d.requiredStreak, d.minDetectionTimeMs);
+        monitor.configure(wide, new ThresholdClassifier(wide));
+        int states = recorder.states.size();
+        feed(monitor, recorder, 50 * 3, 50 * 3 + 255, 1.5f);
+        assertEquals(states, recorder.states.size());
+        feed(monitor, recorder, 50 * 3 + 255, 50 * 30, 1.5f);
+        assertEquals(1, recorder.confirmations);
+    }
+
+    @Test
+    public void handledShakingIsSkipped() {
+        Recorder recorder = new Recorder();
+        QuakeMonitor monitor = new QuakeMonitor(recorder);
+        HandlingGate handling = new HandlingGate();
+        monitor.setHandlingGate(handling);
+        feed(monitor, recorder, 0, 50 * 40, 0f);
+        // Steps every half second through ten seconds of shaking
+        for (int step = 0; step < 20; step++) handling.onEvidence(HandlingGate.Evidence.STEP, 40_000 + step * 500L);
+        feed(monitor, recorder, 50 * 40, 50 * 50, 1.5f);
+
+        assertEquals(0, recorder.confirmations);
+        assertFalse(monitor.isGateOpen());
+        long handled = monitor.getHandledSampleCount();
+        assertTrue("handled " + handled, handled >= 50 * 10);
+
+        // Once the hold has run out, the same shaking is evaluated again
+        feed(monitor, recorder, 50 * 50, 50 * 70, 1.5f);
+        assertEquals(1, recorder.confirmations);
+    }
+}
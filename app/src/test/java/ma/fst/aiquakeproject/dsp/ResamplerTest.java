@@ -0,0 +1,121 @@
+package ma.fst.aiquakeproject.dsp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ResamplerTest {
+
+    private static final class Collector implements Resampler.Output {
+        final List<Long> timestamps = new ArrayList<>();
+        final List<Float> z = new ArrayList<>();
+
+        @Override
+        public void onSample(long timestampNs, float x, float y, float zValue) {
+            timestamps.add(timestampNs);
+            z.add(zValue);
+        }
+    }
+
+    @Test
+    public void jitteryFastInputLandsOnAnExactGrid() {
+        Collector out = new Collector();
+        Resampler resampler = new Resampler(50f, Resampler.MAX_GAP_NS, out);
+        Random random = new Random(1);
+        long t = 1_000_000_000L;
+        // About 190 Hz with ±1 ms of jitter, a ramp so interpolation is exact
+        while (t < 11_000_000_000L) {
+            resampler.add(t, 0f, 0f, t / 1e9f);
+            t += 5_260_000L + random.nextInt(2_000_000) - 1_000_000;
+        }
+
+        assertEquals(500, out.timestamps.size(), 1);
+        for (int i = 0; i < out.timestamps.size(); i++) {
+            assertEquals(1_000_000_000L + i * 20_000_000L, (long) out.timestamps.get(i));
+            assertEquals(out.timestamps.get(i) / 1e9f, out.z.get(i), 1e-4f);
+        }
+        assertEquals(0, resampler.getGapCount());
+        assertEquals(0, resampler.getDuplicateCount());
+    }
+
+    @Test
+    public void slowInputIsInterpolatedUp() {
+        Collector out = new Collector();
+        Resampler resampler = new Resampler(50f, Resampler.MAX_GAP_NS, out);
+        for (int i = 0; i <= 40; i++) {
+            resampler.add(i * 40_000_000L, 0f, 0f, i);
+        }
+        assertEquals(81, out.timestamps.size());
+        assertEquals(0.5f, out.z.get(1), 1e-6f);
+        assertEquals(40f, out.z.get(80), 1e-6f);
+    }
+
+    @Test
+    public void countsDuplicatesAndRestartsAfterGaps() {
+        Collector out = new Collector();
+        Resampler resampler = new Resampler(50f, Resampler.MAX_GAP_NS, out);
+        resampler.add(0, 0f, 0f, 1f);
+        resampler.add(20_000_000L, 0f, 0f, 1f);
+        resampler.add(20_000_000L, 0f, 0f, 5f);
+        resampler.add(10_000_000L, 0f, 0f, 5f);
+        assertEquals(2, resampler.getDuplicateCount());
+        assertEquals(2, out.timestamps.size());
+
+        // A second of silence: nothing is made up, the grid starts over
+        resampler.add(1_020_000_000L + 3_000_000L, 0f, 0f, 2f);
+        assertEquals(1, resampler.getGapCount());
+        assertEquals(3, out.timestamps.size());
+        assertEquals(1_023_000_000L, (long) out.timestamps.get(2));
+        resampler.add(1_043_000_000L, 0f, 0f, 2f);
+        assertEquals(1_043_000_000L, (long) out.timestamps.get(3));
+    }
+
+    @Test
+    public void filterCornerDoesNotMoveWithTheSensorRate() {
+        // 5 Hz is in band and 0.2 Hz is not, at any delivery rate
+        for (int rate : new int[]{50, 100, 200}) {
+            float inBand = bandpassRms(rate, 5f);
+            float outOfBand = bandpassRms(rate, 0.2f);
+            assertEquals("in band at " + rate + " Hz", bandpassRms(50, 5f), inBand, 0.02f);
+            assertEquals("out of band at " + rate + " Hz", bandpassRms(50, 0.2f), outOfBand, 0.02f);
+        }
+    }
+
+    private static float bandpassRms(int sensorRate, float toneHz) {
+        BandpassFilter filter = new BandpassFilter(DetectionEngine.FILTER_LOW, DetectionEngine.FILTER_HIGH,
+                DetectionEngine.SAMPLING_RATE);
+        float[] sum = new float[2];
+        Resampler resampler = new Resampler(DetectionEngine.SAMPLING_RATE, Resampler.MAX_GAP_NS,
+                (timestampNs, x, y, z) -> {
+                    float v = filter.filter(z);
+                    if (timestampNs > 5_000_000_000L) {
+                        sum[0] += v * v;
+                        sum[1]++;
+                    }
+                });
+        long period = 1_000_000_000L / sensorRate;
+        for (long t = 0; t < 20_000_000_000L; t += period) {
+            resampler.add(t, 0f, 0f, (float) Math.sin(2 * Math.PI * toneHz * t / 1e9));
+        }
+        return (float) Math.sqrt(sum[0] / sum[1]);
+    }
+
+    @Test
+    public void rateChangeContinuesFromTheLastSample() {
+        Collector out = new Collector();
+        Resampler resampler = new Resampler(50f, Resampler.MAX_GAP_NS, out);
+        for (int i = 0; i <= 10; i++) resampler.add(i * 10_000_000L, 0f, 0f, i);
+        resampler.setRate(100f);
+        int before = out.timestamps.size();
+        for (int i = 11; i <= 20; i++) resampler.add(i * 10_000_000L, 0f, 0f, i);
+
+        assertEquals(100_000_000L, (long) out.timestamps.get(before - 1));
+        assertEquals(10, out.timestamps.size() - before);
+        assertEquals(110_000_000L, (long) out.timestamps.get(before));
+        assertEquals(10_000_000L, resampler.getPeriodNs());
+    }
+}
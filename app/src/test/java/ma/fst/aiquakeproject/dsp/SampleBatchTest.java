@@ -0,0 +1,34 @@
+package ma.fst.aiquakeproject.dsp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SampleBatchTest {
+
+    @Test
+    public void countsDeliveriesNotSamples() {
+        SampleBatch batch = new SampleBatch(64);
+        for (int delivery = 0; delivery < 3; delivery++) {
+            for (int i = 0; i < 50; i++) {
+                assertFalse(batch.add(i * 20_000_000L, 0f, 0f, 9.81f));
+            }
+            assertEquals(50, batch.size());
+            batch.clear();
+        }
+        batch.clear();
+        assertEquals(3, batch.getBatchCount());
+        assertEquals(150, batch.getSampleCount());
+    }
+
+    @Test
+    public void reportsFullAtCapacity() {
+        SampleBatch batch = new SampleBatch(4);
+        assertFalse(batch.add(1, 1f, 2f, 3f));
+        assertFalse(batch.add(2, 1f, 2f, 3f));
+        assertFalse(batch.add(3, 1f, 2f, 3f));
+        assertTrue(batch.add(4, 4f, 5f, 6f));
+        assertEquals(4, batch.timestamp(3));
+        assertEquals(6f, batch.z(3), 0f);
+    }
+}
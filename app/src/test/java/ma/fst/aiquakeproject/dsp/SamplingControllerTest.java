@@ -0,0 +1,103 @@
+package ma.fst.aiquakeproject.dsp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SamplingControllerTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    // Worst case for a switch to take effect: one full idle FIFO batch
+    private static final long SWITCH_DELAY_NS = SECOND;
+
+    /** A sensor whose rate follows the controller, feeding the same grid and monitor as the app. */
+    private static final class Simulation implements QuakeMonitor.Listener {
+        final boolean adaptive;
+        final QuakeMonitor monitor = new QuakeMonitor(this);
+        final SamplingController controller;
+        final Resampler resampler;
+        int rateHz = SamplingController.BURST_RATE_HZ;
+        int pendingRateHz = 0;
+        long switchAtNs = 0;
+        long confirmedNs = -1;
+        long burstSinceNs = -1;
+        long gridNow;
+
+        Simulation(boolean adaptive) {
+            this.adaptive = adaptive;
+            controller = new SamplingController((mode, nowNs) -> {
+                pendingRateHz = mode == SamplingController.Mode.BURST
+                        ? SamplingController.BURST_RATE_HZ : SamplingController.IDLE_RATE_HZ;
+                switchAtNs = nowNs + SWITCH_DELAY_NS;
+            });
+            resampler = new Resampler(DetectionEngine.SAMPLING_RATE, Resampler.MAX_GAP_NS, (t, x, y, z) -> {
+                gridNow = t;
+                monitor.onAcceleration(x, y, z, t / 1_000_000L);
+                if (adaptive) controller.update(t, monitor.isGateOpen());
+            });
+        }
+
+        void run(long onsetNs, long endShakeNs, long endNs) {
+            Random noise = new Random(9);
+            long t = 0;
+            while (t < endNs) {
+                if (pendingRateHz != 0 && t >= switchAtNs) {
+                    rateHz = pendingRateHz;
+                    pendingRateHz = 0;
+                    if (rateHz == SamplingController.BURST_RATE_HZ && burstSinceNs < 0 && t > onsetNs) burstSinceNs = t;
+                }
+                double seconds = t / 1e9;
+                float shake = t >= onsetNs && t < endShakeNs ? 1.5f * (float) Math.sin(2 * Math.PI * 3 * seconds) : 0f;
+                resampler.add(t, 0f, 0f, 9.81f + shake + 0.01f * (float) noise.nextGaussian());
+                t += SECOND / rateHz;
+            }
+        }
+
+        @Override
+        public void onStateChanged(DetectorState state, int seconds) {}
+
+        @Override
+        public void onQuakeConfirmed(float energy, float variance, int peakCount) {
+            if (confirmedNs < 0) confirmedNs = gridNow;
+        }
+    }
+
+    @Test
+    public void idlesWhenQuietAndEscalatesWithinBoundedLatency() {
+        long onset = 120 * SECOND;
+        Simulation fixed = new Simulation(false);
+        fixed.run(onset, onset + 20 * SECOND, 200 * SECOND);
+        Simulation adaptive = new Simulation(true);
+        adaptive.run(onset, onset + 20 * SECOND, 200 * SECOND);
+
+        SamplingController c = adaptive.controller;
+        // Idle from the end of warm-up plus hold-off until the onset
+        assertTrue(c.getTimeInModeNs(SamplingController.Mode.IDLE, 200 * SECOND) > 50 * SECOND);
+        assertEquals(1, c.getEscalations());
+        assertTrue("burst after " + (adaptive.burstSinceNs - onset) / 1_000_000 + " ms",
+                adaptive.burstSinceNs - onset <= SWITCH_DELAY_NS + SECOND / 2);
+        // Confirmation at the low rate is not held back by the switch
+        assertTrue(fixed.confirmedNs > onset);
+        assertEquals(fixed.confirmedNs, adaptive.confirmedNs, 200_000_000L);
+        // And the sensor steps back down after the hold-off
+        assertEquals(SamplingController.Mode.IDLE, c.getMode());
+    }
+
+    @Test
+    public void holdsBurstWhileTriggered() {
+        int[] changes = new int[1];
+        SamplingController c = new SamplingController((mode, nowNs) -> changes[0]++, 10 * SECOND);
+        for (long t = 0; t < 60 * SECOND; t += SECOND / 50) c.update(t, true);
+        assertEquals(SamplingController.Mode.BURST, c.getMode());
+        for (long t = 60 * SECOND; t < 69 * SECOND; t += SECOND / 50) c.update(t, false);
+        assertEquals(SamplingController.Mode.BURST, c.getMode());
+        c.update(70 * SECOND, false);
+        assertEquals(SamplingController.Mode.IDLE, c.getMode());
+        c.update(70 * SECOND + SECOND / 50, true);
+        assertEquals(SamplingController.Mode.BURST, c.getMode());
+        assertEquals(2, changes[0]);
+        assertEquals(1, c.getEscalations());
+    }
+}
@@ -0,0 +1,106 @@
+package ma.fst.aiquakeproject.dsp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SpectralFeaturesTest {
+
+    private static final float FS = 50f;
+
+    private static SpectralFeatures fed(float[] samples) {
+        SpectralFeatures spectrum = new SpectralFeatures(128, FS, 1f, 10f);
+        for (float v : samples) spectrum.add(v);
+        return spectrum;
+    }
+
+    private static float[] tone(int n, float hz, float amplitude) {
+        float[] out = new float[n];
+        for (int i = 0; i < n; i++) out[i] = 9.81f + amplitude * (float) Math.sin(2 * Math.PI * hz * i / FS);
+        return out;
+    }
+
+    @Test
+    public void powerMatchesANaiveDft() {
+        Random random = new Random(7);
+        float[] samples = new float[128];
+        for (int i = 0; i < samples.length; i++) samples[i] = (float) random.nextGaussian();
+        SpectralFeatures spectrum = fed(samples);
+
+        double mean = 0;
+        for (float v : samples) mean += v;
+        mean /= samples.length;
+        float[] power = spectrum.power();
+        for (int k = 0; k <= 64; k++) {
+            double re = 0;
+            double im = 0;
+            for (int i = 0; i < 128; i++) {
+                double w = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / 128);
+                double v = (samples[i] - mean) * w;
+                re += v * Math.cos(2 * Math.PI * k * i / 128);
+                im -= v * Math.sin(2 * Math.PI * k * i / 128);
+            }
+            double expected = re * re + im * im;
+            assertEquals("bin " + k, expected, power[k], 1e-3 * Math.max(1, expected));
+        }
+    }
+
+    @Test
+    public void recomputesOnceTheWindowIsFullAndThenEveryHop() {
+        SpectralFeatures spectrum = new SpectralFeatures(128, FS, 1f, 10f);
+        int computed = 0;
+        for (int i = 0; i < 128 + 3 * SpectralFeatures.HOP; i++) {
+            boolean did = spectrum.add(0f);
+            if (did) computed++;
+            assertEquals(i >= 127 && (i - 127) % SpectralFeatures.HOP == 0, did);
+        }
+        assertEquals(4, computed);
+    }
+
+    @Test
+    public void separatesInBandShakingFromMachineryAndNoise() {
+        SpectralFeatures quake = fed(tone(256, 3f, 1.5f));
+        assertEquals(3f, quake.getDominantFrequency(), FS / 128);
+        assertTrue(quake.getBandRatio() > 10f);
+        assertTrue(quake.getFlatness() < 0.1f);
+
+        SpectralFeatures machine = fed(tone(256, 18f, 1.5f));
+        assertEquals(18f, machine.getDominantFrequency(), FS / 128);
+        assertTrue(machine.getBandRatio() < 0.1f);
+
+        Random random = new Random(3);
+        float[] noise = new float[256];
+        for (int i = 0; i < noise.length; i++) noise[i] = 9.81f + 0.05f * (float) random.nextGaussian();
+        assertTrue(fed(noise).getFlatness() > 0.4f);
+    }
+
+    @Test
+    public void engineRejectsOutOfBandVibration() {
+        DetectionEngine engine = new DetectionEngine();
+        // Strong enough for energy and variance after the filter's skirt, but mostly above the band
+        for (float v : tone(600, 18f, 6f)) engine.addSample(v);
+        assertTrue(engine.getEnergy() > DetectionEngine.ENERGY_THRESHOLD);
+        assertTrue(engine.getVariance() > DetectionEngine.VARIANCE_THRESHOLD);
+        assertTrue(engine.getPeakCount() >= DetectionEngine.PEAK_THRESHOLD);
+        assertTrue(engine.getSpectrum().getBandRatio() < DetectionEngine.MIN_BAND_RATIO);
+        assertFalse(engine.isPatternDetected());
+    }
+
+    @Test
+    public void doesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) return;
+
+        float[] samples = tone(4096, 3f, 1f);
+        SpectralFeatures spectrum = fed(samples);
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (float v : samples) spectrum.add(v);
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
@@ -0,0 +1,48 @@
+package ma.fst.aiquakeproject.dsp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StaLtaTriggerTest {
+
+    private static final float FS = 50f;
+
+    @Test
+    public void turnsOnForShakingAndOffAfterIt() {
+        StaLtaTrigger trigger = new StaLtaTrigger(FS);
+        Random noise = new Random(5);
+        int i = 0;
+        for (; i < FS * 60; i++) trigger.add(9.81f + 0.01f * (float) noise.nextGaussian());
+        assertFalse(trigger.isTriggered());
+
+        // Weak shaking well under the absolute level, but far above the noise
+        int onset = i;
+        while (!trigger.add(9.81f + 0.05f * (float) Math.sin(2 * Math.PI * 4 * i / FS))) i++;
+        assertTrue("took " + (i - onset) + " samples", i - onset < FS / 2);
+
+        for (i = 0; i < FS * 10; i++) trigger.add(9.81f + 0.01f * (float) noise.nextGaussian());
+        assertFalse(trigger.isTriggered());
+    }
+
+    @Test
+    public void strongSteadyShakingCannotHideBehindTheLta() {
+        StaLtaTrigger trigger = new StaLtaTrigger(FS);
+        // Already shaking hard when monitoring starts
+        for (int i = 0; i < FS * 120; i++) {
+            trigger.add(9.81f + 1.5f * (float) Math.sin(2 * Math.PI * 3 * i / FS));
+        }
+        assertTrue(trigger.isTriggered());
+    }
+
+    @Test
+    public void isOnDuringWarmup() {
+        StaLtaTrigger trigger = new StaLtaTrigger(FS);
+        for (int i = 0; i < FS * StaLtaTrigger.LTA_SECONDS; i++) {
+            assertTrue(trigger.add(9.81f));
+        }
+        assertFalse(trigger.add(9.81f));
+    }
+}
@@ -0,0 +1,92 @@
+package ma.fst.aiquakeproject.dsp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StumpEnsembleTest {
+
+    private static StumpEnsemble random(int stumps, long seed) {
+        Random random = new Random(seed);
+        byte[] feature = new byte[stumps];
+        float[] threshold = new float[stumps];
+        short[] left = new short[stumps];
+        short[] right = new short[stumps];
+        for (int i = 0; i < stumps; i++) {
+            feature[i] = (byte) random.nextInt(WindowClassifier.FEATURE_COUNT);
+            threshold[i] = random.nextFloat();
+            left[i] = (short) (random.nextInt(65536) - 32768);
+            right[i] = (short) (random.nextInt(65536) - 32768);
+        }
+        return new StumpEnsemble(feature, threshold, left, right, 1e-4f, -0.5f, 0f);
+    }
+
+    @Test
+    public void scoresAsTheSumOfItsStumps() {
+        StumpEnsemble model = new StumpEnsemble(
+                new byte[] {WindowClassifier.ENERGY, WindowClassifier.BAND_RATIO},
+                new float[] {0.5f, 1f}, new short[] {-100, -50}, new short[] {200, 300}, 0.01f, -1f, 0f);
+        float[] features = new float[WindowClassifier.FEATURE_COUNT];
+        features[WindowClassifier.ENERGY] = 0.8f;
+        features[WindowClassifier.BAND_RATIO] = 0.5f;
+        assertEquals(-1f + 0.01f * (200 - 50), model.score(features), 1e-6f);
+        assertTrue(model.isQuake(features));
+
+        features[WindowClassifier.ENERGY] = 0.5f;
+        assertFalse(model.isQuake(features));
+    }
+
+    @Test
+    public void roundTripsAndRejectsOtherVersions() throws IOException {
+        StumpEnsemble model = random(64, 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        model.write(out);
+        byte[] bytes = out.toByteArray();
+        StumpEnsemble loaded = StumpEnsemble.read(new ByteArrayInputStream(bytes));
+
+        Random random = new Random(2);
+        float[] features = new float[WindowClassifier.FEATURE_COUNT];
+        for (int i = 0; i < 100; i++) {
+            for (int f = 0; f < features.length; f++) features[f] = random.nextFloat();
+            assertEquals(model.score(features), loaded.score(features), 0f);
+        }
+
+        bytes[7] = 2;
+        try {
+            StumpEnsemble.read(new ByteArrayInputStream(bytes));
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("version"));
+        }
+    }
+
+    // The time per window is measured in ClassifierBenchmark; here only the cap that keeps it in budget
+    @Test
+    public void sizeIsCappedForTheBudget() throws IOException {
+        StumpEnsemble largest = random(StumpEnsemble.MAX_STUMPS, 3);
+        assertEquals(StumpEnsemble.MAX_STUMPS, largest.size());
+        try {
+            random(StumpEnsemble.MAX_STUMPS + 1, 3);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        largest.write(out);
+        byte[] bytes = out.toByteArray();
+        // The stump count follows magic, version and feature count
+        bytes[9] = (byte) ((StumpEnsemble.MAX_STUMPS + 1) >> 8);
+        bytes[10] = (byte) (StumpEnsemble.MAX_STUMPS + 1);
+        try {
+            StumpEnsemble.read(new ByteArrayInputStream(bytes));
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("limit"));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ma.fst.aiquakeproject.dsp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.*;
+
+public class WaveformCaptureTest {
+
+    private static final long PERIOD_NS = 20_000_000L;
+
+    @Test
+    public void capturesPreEventWindowAndTail() {
+        WaveformRing ring = new WaveformRing(50 * 60);
+        List<Waveform> captured = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        WaveformCapture capture = new WaveformCapture(ring, 30_000_000_000L, 10_000_000_000L,
+                Runnable::run, (id, w) -> {
+                    ids.add(id);
+                    captured.add(w);
+                });
+
+        long triggerNs = 0;
+        for (int i = 0; i < 50 * 120; i++) {
+            long ts = i * PERIOD_NS;
+            ring.add(ts, i, -i, 9.81f);
+            capture.onSample(ts);
+            if (i == 50 * 45) {
+                triggerNs = ts;
+                capture.trigger("event-1", ts);
+            }
+        }
+
+        assertEquals(1, captured.size());
+        assertEquals("event-1", ids.get(0));
+        Waveform w = captured.get(0);
+        assertEquals(triggerNs, w.triggerNs);
+        assertEquals(triggerNs - 30_000_000_000L, w.timestamps[0]);
+        assertEquals(triggerNs + 10_000_000_000L, w.timestamps[w.size - 1]);
+        for (int i = 1; i < w.size; i++) {
+            assertEquals(PERIOD_NS, w.timestamps[i] - w.timestamps[i - 1]);
+            assertEquals(w.timestamps[i] / PERIOD_NS, (long) w.x[i]);
+        }
+    }
+
+    @Test
+    public void snapshotWhileWritingNeverReturnsTornSamples() throws Exception {
+        // At one sample per 50 µs the writer fills the margin in 150 ms, far longer than a copy
+        WaveformRing ring = new WaveformRing(4096, 3072);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            long n = 0;
+            while (running.get()) {
+                ring.add(n, n, -n, 2 * n);
+                n++;
+                LockSupport.parkNanos(50_000);
+            }
+        });
+        writer.start();
+        try {
+            // Rounds until the ring has wrapped a few times
+            while (ring.written() < 4 * ring.capacity()) {
+                long end = ring.written();
+                Waveform w = ring.snapshot(end - ring.usable(), end, Long.MIN_VALUE, 0);
+                for (int i = 0; i < w.size; i++) {
+                    long ts = w.timestamps[i];
+                    assertEquals((float) ts, w.x[i], 0f);
+                    assertEquals((float) -ts, w.y[i], 0f);
+                    assertEquals((float) (2 * ts), w.z[i], 0f);
+                    if (i > 0) assertEquals(w.timestamps[i - 1] + 1, ts);
+                }
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package ma.fst.aiquakeproject.metrics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueWithinAQuarter() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() >>> (25 + random.nextInt(38));
+            int bucket = LatencyHistogram.bucketOf(value);
+            if (bucket == LatencyHistogram.BUCKETS - 1) continue;
+            long low = LatencyHistogram.lowerBound(bucket);
+            long high = LatencyHistogram.lowerBound(bucket + 1);
+            assertTrue(value + " in [" + low + ", " + high + ")", value >= low && value < high);
+            assertTrue(high - low <= Math.max(1, low / 4));
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void quantilesOfAUniformSpread() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long us = 1; us <= 1000; us++) histogram.record(us * 1000);
+        histogram.record(-5);
+
+        MetricsSnapshot.Histogram h = histogram.snapshot();
+        assertEquals(1001, h.count);
+        assertEquals(1_000_000, h.maxNs);
+        assertEquals(500_500_000L / 1001, h.meanNs());
+        assertEquals(500_000, h.quantileNs(0.5), 500_000 / 4);
+        assertEquals(990_000, h.quantileNs(0.99), 990_000 / 4);
+        assertEquals(1_000_000, h.quantileNs(1.0));
+        assertEquals(0, new LatencyHistogram().snapshot().quantileNs(0.5));
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 100_000; i++) histogram.record(random.nextInt(1_000_000));
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        assertEquals(400_000, histogram.snapshot().count);
+    }
+}
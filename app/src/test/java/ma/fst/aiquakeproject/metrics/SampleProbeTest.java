@@ -0,0 +1,66 @@
+package ma.fst.aiquakeproject.metrics;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class SampleProbeTest {
+
+    private static final long PERIOD_NS = 20_000_000L;
+
+    @Test
+    public void countsRateJitterAndDrops() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        SampleProbe probe = new SampleProbe(metrics);
+        int timed = 0;
+        for (int i = 0; i < 100; i++) {
+            // Every tenth sample is 2 ms late
+            long t = i * PERIOD_NS + (i % 10 == 5 ? 2_000_000L : 0);
+            if (probe.onSample(t)) {
+                timed++;
+                probe.onStages(0, 100, 1100);
+            }
+            if (i % 25 == 24) probe.onBatch(50_000, i / 50, 0);
+        }
+
+        MetricsSnapshot s = metrics.snapshot();
+        assertEquals(100, s.samples);
+        assertEquals(4, s.batches);
+        // 100 samples over 99 intervals
+        assertEquals(100 / (99 * 0.02f), s.sampleRateHz(null), 0.01f);
+        assertEquals(1, s.gaps);
+        assertEquals(100 / SampleProbe.TIMED_EVERY + 1, timed);
+        assertEquals(timed, s.detect.count);
+        assertEquals(1000, s.detect.maxNs);
+        assertEquals(98, s.jitter.count);
+        // Late sample: +2 ms then -4 ms and +2 ms relative to the previous interval
+        assertEquals(4_000_000L, s.jitter.maxNs);
+        assertEquals(0, s.jitter.quantileNs(0.5));
+        assertTrue(s.toJson().contains("\"samples\":100,"));
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) return;
+
+        SampleProbe probe = new SampleProbe(new PipelineMetrics());
+        for (int i = 0; i < 10_000; i++) run(probe, i);
+
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 10_000; i < 100_000; i++) run(probe, i);
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static void run(SampleProbe probe, int i) {
+        if (probe.onSample(i * PERIOD_NS)) probe.onStages(i, i + 10, i + 20);
+        if ((i & 63) == 63) probe.onBatch(i, 0, 0);
+    }
+}
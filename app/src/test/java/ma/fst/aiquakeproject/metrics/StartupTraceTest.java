@@ -0,0 +1,39 @@
+package ma.fst.aiquakeproject.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StartupTraceTest {
+
+    @Test
+    public void firstMarkWinsAndIsRelativeToTheProcessStart() {
+        StartupTrace trace = new StartupTrace();
+        assertEquals(-1, trace.sinceStartMs(StartupTrace.Mark.APPLICATION));
+
+        assertTrue(trace.mark(StartupTrace.Mark.APPLICATION, 1_100));
+        assertTrue(trace.mark(StartupTrace.Mark.FIRST_WINDOW, 3_600));
+        assertFalse(trace.mark(StartupTrace.Mark.FIRST_WINDOW, 9_000));
+        // Until the process start is known, times count from the application
+        assertEquals(2_500, trace.sinceStartMs(StartupTrace.Mark.FIRST_WINDOW));
+
+        trace.setProcessStart(1_000);
+        assertEquals(100, trace.sinceStartMs(StartupTrace.Mark.APPLICATION));
+        assertEquals(2_600, trace.sinceStartMs(StartupTrace.Mark.FIRST_WINDOW));
+        assertFalse(trace.isMarked(StartupTrace.Mark.SENSOR));
+        assertEquals(-1, trace.sinceStartMs(StartupTrace.Mark.SENSOR));
+    }
+
+    @Test
+    public void snapshotCarriesTheMarks() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.startup.setProcessStart(500);
+        metrics.startup.mark(StartupTrace.Mark.SERVICE, 700);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(200, snapshot.startupMs(StartupTrace.Mark.SERVICE));
+        assertEquals(-1, snapshot.startupMs(StartupTrace.Mark.FIRST_WINDOW));
+        assertTrue(snapshot.toJson(), snapshot.toJson().contains(
+                "\"startupMs\":{\"application\":null,\"service\":200,\"sensor\":null"));
+    }
+}
@@ -0,0 +1,282 @@
+package ma.fst.aiquakeproject.net;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+public class DetectionUploadQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private File dir;
+
+    // Retries without waiting
+    private static final Random NO_JITTER = new Random() {
+        @Override
+        public double nextDouble() {
+            return 0;
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        dir = new File(folder.getRoot(), "queue");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private DetectionUploadQueue open() throws Exception {
+        String url = server.url("/").toString();
+        return new DetectionUploadQueue(dir, SharedHttpClient.get(), url.substring(0, url.length() - 1),
+                new ScheduledThreadPoolExecutor(1), NO_JITTER);
+    }
+
+    private static DetectionRecord record(int i) {
+        return new DetectionRecord("id-" + i, 1_700_000_000_000L + i, 34.02, -6.84, 20f, 1_000, 0.8f, 0.1f, 12, "phone\"1");
+    }
+
+    private static List<DetectionRecord> decode(RecordedRequest request) throws Exception {
+        assertEquals(DetectionWire.CONTENT_TYPE, request.getHeader("Content-Type"));
+        byte[] body = request.getBody().readByteArray();
+        return DetectionWire.decodeDetections(body, 0, body.length);
+    }
+
+    // Detection ids of a request in either format
+    private static List<String> ids(RecordedRequest request) throws Exception {
+        List<String> ids = new ArrayList<>();
+        if (DetectionWire.CONTENT_TYPE.equals(request.getHeader("Content-Type"))) {
+            for (DetectionRecord r : decode(request)) ids.add(r.detectionId);
+            return ids;
+        }
+        Matcher m = Pattern.compile("\"detectionId\":\"([^\"]*)\"").matcher(request.getBody().readUtf8());
+        while (m.find()) ids.add(m.group(1));
+        return ids;
+    }
+
+    // Answers that the server also takes the binary format
+    private static MockResponse acceptingBinary(int code) {
+        return new MockResponse().setResponseCode(code)
+                .setHeader("Accept-Post", "application/json, " + DetectionWire.CONTENT_TYPE);
+    }
+
+    // Waits until every enqueued record was either sent or dropped
+    private static void awaitSettled(DetectionUploadQueue queue, int records) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (queue.getSentCount() + queue.getDroppedCount() < records
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, queue.getDepth());
+    }
+
+    @Test
+    public void singleDetectionKeepsTheOriginalEndpoint() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(201));
+        DetectionUploadQueue queue = open();
+        queue.enqueue(record(1));
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("/api/detections", request.getPath());
+        // The server hasn't said it takes anything else
+        assertTrue(request.getHeader("Content-Type").startsWith("application/json"));
+        String body = request.getBody().readUtf8();
+        assertTrue(body, body.startsWith("{\"detectionId\":\"id-1\",\"timestamp\":1700000000001"));
+        assertTrue(body, body.endsWith("\"deviceId\":\"phone\\\"1\",\"handling\":\"unavailable\"}"));
+        awaitSettled(queue, 1);
+        assertEquals(1, queue.getSentCount());
+        assertFalse(queue.isBinary());
+        queue.close();
+    }
+
+    @Test
+    public void retriesWithBackoffAndBatchesWhatPiledUp() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(200));
+        server.enqueue(new MockResponse().setResponseCode(200));
+        DetectionUploadQueue queue = open();
+        for (int i = 0; i < 5; i++) queue.enqueue(record(i));
+
+        awaitSettled(queue, 5);
+        assertEquals(5, queue.getSentCount());
+        assertTrue(queue.getFailedAttempts() >= 2);
+        // Whatever was pending after the failures goes out as one array
+        int requests = server.getRequestCount();
+        RecordedRequest last = null;
+        for (int i = 0; i < requests; i++) last = server.takeRequest();
+        assertEquals("/api/detections/batch", last.getPath());
+        assertEquals(5, ids(last).size());
+        queue.close();
+    }
+
+    @Test
+    public void switchesToBinaryOnceTheServerTakesIt() throws Exception {
+        server.enqueue(acceptingBinary(201));
+        server.enqueue(new MockResponse().setResponseCode(201));
+        DetectionUploadQueue queue = open();
+        queue.enqueue(record(1));
+        awaitSettled(queue, 1);
+        queue.enqueue(record(2));
+        awaitSettled(queue, 2);
+
+        assertTrue(server.takeRequest(5, TimeUnit.SECONDS).getHeader("Content-Type").startsWith("application/json"));
+        List<DetectionRecord> sent = decode(server.takeRequest(5, TimeUnit.SECONDS));
+        assertEquals(1, sent.size());
+        assertEquals("id-2", sent.get(0).detectionId);
+        assertEquals(1_700_000_000_002L, sent.get(0).timestampMs);
+        assertEquals("phone\"1", sent.get(0).deviceId);
+        assertTrue(queue.isBinary());
+        queue.close();
+    }
+
+    @Test
+    public void fallsBackToJsonWhenBinaryIsRefused() throws Exception {
+        server.enqueue(acceptingBinary(201));
+        server.enqueue(acceptingBinary(415));
+        server.enqueue(acceptingBinary(200));
+        DetectionUploadQueue queue = open();
+        queue.enqueue(record(1));
+        awaitSettled(queue, 1);
+        queue.enqueue(record(2));
+        awaitSettled(queue, 2);
+
+        server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals(DetectionWire.CONTENT_TYPE, server.takeRequest(5, TimeUnit.SECONDS).getHeader("Content-Type"));
+        RecordedRequest retry = server.takeRequest(5, TimeUnit.SECONDS);
+        assertTrue(retry.getHeader("Content-Type").startsWith("application/json"));
+        assertEquals(List.of("id-2"), ids(retry));
+        // The advertisement doesn't switch it back
+        assertFalse(queue.isBinary());
+        assertEquals(0, queue.getDroppedCount());
+        queue.close();
+    }
+
+    @Test
+    public void missingBatchEndpointFallsBackToSingleRecords() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(404));
+        for (int i = 0; i < 3; i++) server.enqueue(new MockResponse().setResponseCode(201));
+        DetectionUploadQueue queue = open();
+        for (int i = 0; i < 3; i++) queue.enqueue(record(i));
+
+        awaitSettled(queue, 3);
+        assertEquals(3, queue.getSentCount());
+        assertEquals(0, queue.getDroppedCount());
+        assertFalse(queue.isBatching());
+        // Skip the failed attempts; everything after the 404 went one at a time, in order
+        int requests = server.getRequestCount();
+        for (int i = 0; i < requests - 3; i++) server.takeRequest();
+        for (int i = 0; i < 3; i++) {
+            RecordedRequest request = server.takeRequest();
+            assertEquals("/api/detections", request.getPath());
+            assertEquals(List.of("id-" + i), ids(request));
+        }
+        queue.close();
+    }
+
+    @Test
+    public void missingEndpointIsRetried() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setResponseCode(201));
+        DetectionUploadQueue queue = open();
+        queue.enqueue(record(1));
+        awaitSettled(queue, 1);
+        assertEquals(1, queue.getSentCount());
+        assertEquals(0, queue.getDroppedCount());
+        queue.close();
+    }
+
+    @Test
+    public void clientErrorsDropTheBatch() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(400));
+        DetectionUploadQueue queue = open();
+        queue.enqueue(record(1));
+        awaitSettled(queue, 1);
+        assertTrue(server.takeRequest().getHeader("Content-Type").startsWith("application/json"));
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(0, queue.getSentCount());
+        queue.close();
+    }
+
+    @Test
+    public void pendingDetectionsSurviveRestartAndTornTail() throws Exception {
+        PersistentQueue log = new PersistentQueue(dir);
+        log.append(record(1).toBytes());
+        log.append(record(2).toBytes());
+        log.append(record(3).toBytes());
+        log.remove(1);
+        log.close();
+        // A crash mid-append leaves a partial entry behind
+        try (RandomAccessFile file = new RandomAccessFile(new File(dir, "queue.log"), "rw")) {
+            file.seek(file.length());
+            file.writeInt(200);
+            file.writeInt(0xCAFE);
+            file.write(new byte[17]);
+        }
+
+        server.enqueue(new MockResponse().setResponseCode(200));
+        DetectionUploadQueue queue = open();
+        assertEquals(List.of("id-2", "id-3"), ids(server.takeRequest(5, TimeUnit.SECONDS)));
+        awaitSettled(queue, 2);
+        queue.close();
+
+        assertEquals(0, new File(dir, "queue.log").length());
+    }
+
+    @Test
+    public void enqueuedDetectionIsOnDiskAtOnce() throws Exception {
+        // An upload thread that never runs, as if the process died right after enqueue
+        ScheduledThreadPoolExecutor stopped = new ScheduledThreadPoolExecutor(1);
+        stopped.shutdown();
+        String url = server.url("/").toString();
+        DetectionUploadQueue dead = new DetectionUploadQueue(dir, SharedHttpClient.get(),
+                url.substring(0, url.length() - 1), stopped, NO_JITTER);
+        dead.enqueue(record(1));
+        assertEquals(1, dead.getDepth());
+        assertEquals(0, dead.getDroppedCount());
+
+        server.enqueue(new MockResponse().setResponseCode(201));
+        DetectionUploadQueue queue = open();
+        assertEquals(List.of("id-1"), ids(server.takeRequest(5, TimeUnit.SECONDS)));
+        awaitSettled(queue, 1);
+        queue.close();
+    }
+
+    @Test
+    public void backoffIsCappedFullJitter() {
+        Random random = new Random(42);
+        for (int attempt = 0; attempt < 40; attempt++) {
+            long ceiling = Math.min(DetectionUploadQueue.MAX_BACKOFF_MS,
+                    DetectionUploadQueue.BASE_BACKOFF_MS << Math.min(attempt, 20));
+            for (int i = 0; i < 100; i++) {
+                long delay = DetectionUploadQueue.backoffMs(attempt, random);
+                assertTrue(delay >= 0 && delay <= ceiling);
+            }
+        }
+    }
+}
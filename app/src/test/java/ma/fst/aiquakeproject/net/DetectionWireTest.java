@@ -0,0 +1,157 @@
+package ma.fst.aiquakeproject.net;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import ma.fst.aiquakeproject.dsp.HandlingGate;
+import ma.fst.aiquakeproject.dsp.SampleBatch;
+
+import static org.junit.Assert.*;
+
+public class DetectionWireTest {
+
+    private static DetectionRecord record(String id, long timestampMs, String deviceId) {
+        return new DetectionRecord(id, timestampMs, 34.0209123, -6.8416456, 12.5f, 4_200, 1.82f, 0.67f, 12, deviceId,
+                HandlingGate.State.RECENTLY_HANDLED);
+    }
+
+    @Test
+    public void detectionsRoundTrip() throws Exception {
+        String uuid = UUID.randomUUID().toString();
+        DetectionRecord[] records = {
+                record(uuid, 1_747_687_106_457L, "AIQuakePhone1"),
+                record("not-a-uuid", 1_747_687_100_000L, "téléphone 📱"),
+        };
+        DetectionWire wire = new DetectionWire(8);
+        wire.beginDetections(records.length);
+        for (DetectionRecord r : records) wire.addDetection(r);
+
+        List<DetectionRecord> decoded = DetectionWire.decodeDetections(wire.buffer(), 0, wire.length());
+        assertEquals(2, decoded.size());
+        for (int i = 0; i < records.length; i++) {
+            DetectionRecord expected = records[i];
+            DetectionRecord actual = decoded.get(i);
+            assertEquals(expected.detectionId, actual.detectionId);
+            assertEquals(expected.timestampMs, actual.timestampMs);
+            assertEquals(expected.latitude, actual.latitude, 1e-7);
+            assertEquals(expected.longitude, actual.longitude, 1e-7);
+            assertEquals(expected.accuracyM, actual.accuracyM, 0f);
+            assertEquals(expected.fixAgeMs, actual.fixAgeMs);
+            assertEquals(expected.energy, actual.energy, 0f);
+            assertEquals(expected.variance, actual.variance, 0f);
+            assertEquals(expected.peakCount, actual.peakCount);
+            assertEquals(expected.deviceId, actual.deviceId);
+            assertEquals(expected.handling, actual.handling);
+        }
+        assertEquals(records[0].handling, DetectionRecord.fromBytes(records[0].toBytes()).handling);
+    }
+
+    @Test
+    public void detectionWithoutFixHasNoCoordinates() throws Exception {
+        DetectionRecord r = new DetectionRecord("no-fix", 1_747_687_106_457L, Double.NaN, Double.NaN,
+                Float.NaN, DetectionRecord.UNKNOWN_AGE, 1.82f, 0.67f, 12, "AIQuakePhone1");
+        assertTrue(r.toJson().contains("\"latitude\":null,\"longitude\":null,\"accuracy\":null,\"fixAgeMs\":null"));
+
+        DetectionWire wire = new DetectionWire();
+        wire.beginDetections(1);
+        wire.addDetection(r);
+        DetectionRecord decoded = DetectionWire.decodeDetections(wire.buffer(), 0, wire.length()).get(0);
+        assertFalse(decoded.hasLocation());
+        assertEquals(r.peakCount, decoded.peakCount);
+        assertEquals(r.deviceId, decoded.deviceId);
+
+        DetectionRecord stored = DetectionRecord.fromBytes(r.toBytes());
+        assertFalse(stored.hasLocation());
+        assertEquals(DetectionRecord.UNKNOWN_AGE, stored.fixAgeMs);
+        assertEquals(HandlingGate.State.UNAVAILABLE, stored.handling);
+        assertTrue(r.toJson().endsWith("\"handling\":\"unavailable\"}"));
+    }
+
+    @Test
+    public void detectionIsAFractionOfTheJson() {
+        DetectionRecord r = record(UUID.randomUUID().toString(), 1_747_687_106_457L, "AIQuakePhone1");
+        DetectionWire wire = new DetectionWire();
+        wire.beginDetections(1);
+        wire.addDetection(r);
+        int json = r.toJson().getBytes(StandardCharsets.UTF_8).length;
+        assertTrue(wire.length() + " vs " + json + " bytes", wire.length() * 3 <= json);
+    }
+
+    @Test
+    public void samplesRoundTripQuantized() throws Exception {
+        SampleBatch batch = new SampleBatch(500);
+        for (int i = 0; i < 500; i++) {
+            batch.add(1_000_000_000L + i * 20_000_000L + (i % 3), 0.01f * i, -0.2f, 9.81f + (float) Math.sin(i));
+        }
+        DetectionWire wire = new DetectionWire();
+        wire.encodeSamples(batch);
+        // Regular timing and small deltas take a few bytes per sample, not 20
+        assertTrue(wire.length() + " bytes", wire.length() < 500 * 10);
+
+        SampleBatch decoded = DetectionWire.decodeSamples(wire.buffer(), 0, wire.length());
+        assertEquals(500, decoded.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals(batch.timestamp(i), decoded.timestamp(i));
+            assertEquals(batch.x(i), decoded.x(i), DetectionWire.SAMPLE_SCALE);
+            assertEquals(batch.y(i), decoded.y(i), DetectionWire.SAMPLE_SCALE);
+            assertEquals(batch.z(i), decoded.z(i), DetectionWire.SAMPLE_SCALE);
+        }
+    }
+
+    @Test
+    public void telemetryRoundTrips() throws Exception {
+        DetectionWire wire = new DetectionWire();
+        wire.beginTelemetry(3);
+        wire.addTelemetry(40, 1_747_687_106_000L, 0.012f, 1.1f, 49.8f, 87, TelemetryFrame.GATE_OPEN);
+        wire.addTelemetry(41, 1_747_687_107_000L, 0.35f, 4.2f, 50.1f, 87, TelemetryFrame.GATE_OPEN | TelemetryFrame.HANDLED);
+        wire.addTelemetry(42, 1_747_687_108_001L, 0.01f, 0.9f, 50f, TelemetryFrame.UNKNOWN_BATTERY, TelemetryFrame.CHARGING);
+        // After the first record, a second of telemetry is well under 20 bytes
+        assertTrue(wire.length() + " bytes", wire.length() < 3 * 20 + 8);
+
+        List<TelemetryFrame> frames = DetectionWire.decodeTelemetry(wire.buffer(), 0, wire.length());
+        assertEquals(3, frames.size());
+        TelemetryFrame f = frames.get(1);
+        assertEquals(41, f.seq);
+        assertEquals(1_747_687_107_000L, f.timestampMs);
+        assertEquals(0.35f, f.rms, 0f);
+        assertEquals(4.2f, f.staLta, 0f);
+        assertEquals(50.1f, f.sampleRateHz, 0f);
+        assertEquals(87, f.batteryPercent);
+        assertEquals(TelemetryFrame.GATE_OPEN | TelemetryFrame.HANDLED, f.flags);
+        assertEquals(42, frames.get(2).seq);
+        assertEquals(1_747_687_108_001L, frames.get(2).timestampMs);
+        assertEquals(TelemetryFrame.UNKNOWN_BATTERY, frames.get(2).batteryPercent);
+    }
+
+    @Test
+    public void encodingDoesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) return;
+
+        DetectionRecord r = record(UUID.randomUUID().toString(), 1_747_687_106_457L, "AIQuakePhone1");
+        SampleBatch batch = new SampleBatch(1024);
+        for (int i = 0; i < 1024; i++) batch.add(i * 20_000_000L, 0.1f, 0.2f, 9.81f);
+        DetectionWire wire = new DetectionWire();
+        for (int warm = 0; warm < 1000; warm++) encode(wire, r, batch);
+
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < 10_000; i++) encode(wire, r, batch);
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static void encode(DetectionWire wire, DetectionRecord r, SampleBatch batch) {
+        wire.reset();
+        wire.beginDetections(20);
+        for (int i = 0; i < 20; i++) wire.addDetection(r);
+        wire.reset();
+        wire.encodeSamples(batch);
+    }
+}
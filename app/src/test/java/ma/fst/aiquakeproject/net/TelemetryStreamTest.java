@@ -0,0 +1,208 @@
+package ma.fst.aiquakeproject.net;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.ByteString;
+
+import static org.junit.Assert.*;
+
+public class TelemetryStreamTest {
+
+    private MockWebServer server;
+    private Dashboard dashboard;
+
+    // Reconnects without waiting
+    private static final Random NO_JITTER = new Random() {
+        @Override
+        public double nextDouble() {
+            return 0;
+        }
+    };
+
+    /** Stand-in for the dashboard's endpoint: acknowledges every message, and can hang up every few. */
+    private static final class Dashboard extends Dispatcher {
+        final BitSet received = new BitSet();
+        final Queue<String> lastAcks = new ConcurrentLinkedQueue<>();
+        final AtomicInteger messages = new AtomicInteger();
+        volatile int hangUpEvery = 0;
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            if (!"/api/telemetry".equals(request.getPath())) return new MockResponse().setResponseCode(404);
+            lastAcks.add(request.getHeader("X-Last-Ack"));
+            return new MockResponse().withWebSocketUpgrade(new WebSocketListener() {
+                int onThisConnection = 0;
+
+                @Override
+                public void onMessage(WebSocket webSocket, ByteString bytes) {
+                    List<TelemetryFrame> frames;
+                    try {
+                        byte[] data = bytes.toByteArray();
+                        frames = DetectionWire.decodeTelemetry(data, 0, data.length);
+                    } catch (IOException e) {
+                        webSocket.close(1003, e.getMessage());
+                        return;
+                    }
+                    long last = -1;
+                    synchronized (received) {
+                        for (TelemetryFrame f : frames) {
+                            received.set((int) f.seq);
+                            last = f.seq;
+                        }
+                    }
+                    messages.incrementAndGet();
+                    webSocket.send("ack " + last);
+                    if (hangUpEvery > 0 && ++onThisConnection % hangUpEvery == 0) webSocket.close(1001, "Going away");
+                }
+
+                @Override
+                public void onClosing(WebSocket webSocket, int code, String reason) {
+                    webSocket.close(1000, null);
+                }
+
+                @Override
+                public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                }
+            });
+        }
+
+        int receivedCount() {
+            synchronized (received) {
+                return received.cardinality();
+            }
+        }
+
+        int firstMissing() {
+            synchronized (received) {
+                return received.nextClearBit(0);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        dashboard = new Dashboard();
+        server.setDispatcher(dashboard);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private TelemetryStream open(int capacity) {
+        String url = server.url("/").toString();
+        return new TelemetryStream(SharedHttpClient.get(), url.substring(0, url.length() - 1), "phone1",
+                new ScheduledThreadPoolExecutor(1), NO_JITTER, capacity);
+    }
+
+    private static void offer(TelemetryStream stream, int i) {
+        stream.offer(1_747_687_106_000L + i * 1000L, 0.01f, 1f, 50f, 80, TelemetryFrame.GATE_OPEN);
+    }
+
+    private static void await(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("Timed out waiting for " + what);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void queueDropsOldestWhenFull() {
+        TelemetryQueue queue = new TelemetryQueue(4);
+        for (int i = 0; i < 6; i++) queue.offer(i, 0f, 0f, 50f, 80, 0);
+        assertEquals(4, queue.size());
+        assertEquals(2, queue.getDroppedCount());
+
+        DetectionWire wire = new DetectionWire();
+        assertEquals(3, queue.encodeNext(wire, 3));
+        assertEquals(3, queue.inFlight());
+        queue.ack(3);
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.inFlight());
+
+        // A new connection starts again from seq 4, sent or not
+        queue.rewind();
+        assertEquals(2, queue.encodeNext(wire, 10));
+        assertEquals(0, queue.encodeNext(wire, 10));
+    }
+
+    @Test
+    public void framesAreAcknowledged() throws Exception {
+        try (TelemetryStream stream = open(TelemetryStream.CAPACITY)) {
+            stream.start();
+            for (int i = 0; i < 100; i++) offer(stream, i);
+            await("acks", () -> stream.getLastAck() == 99);
+            assertEquals(100, dashboard.receivedCount());
+            assertEquals(0, stream.getDepth());
+            assertEquals(0, stream.getDroppedCount());
+            assertTrue(stream.isConnected());
+        }
+    }
+
+    @Test
+    public void reconnectResumesWithoutGaps() throws Exception {
+        dashboard.hangUpEvery = 3;
+        try (TelemetryStream stream = open(TelemetryStream.CAPACITY)) {
+            stream.start();
+            for (int i = 0; i < 300; i++) {
+                offer(stream, i);
+                if (i % 10 == 0) Thread.sleep(2);
+            }
+            await("acks", () -> stream.getLastAck() == 299);
+            assertEquals(300, dashboard.firstMissing());
+            assertEquals(0, stream.getDroppedCount());
+            assertTrue(stream.getConnectionCount() > 1);
+            // Every handshake after the first tells the server where to resume
+            assertEquals("-1", dashboard.lastAcks.peek());
+            assertTrue(dashboard.lastAcks.stream().skip(1).allMatch(ack -> Long.parseLong(ack) >= 0));
+        }
+    }
+
+    @Test
+    public void flappingConnectionStaysBounded() throws Exception {
+        dashboard.hangUpEvery = 5;
+        int capacity = 4 * TelemetryStream.MAX_IN_FLIGHT;
+        int offered = 20_000;
+        try (TelemetryStream stream = open(capacity)) {
+            stream.start();
+            int maxDepth = 0;
+            for (int i = 0; i < offered; i++) {
+                offer(stream, i);
+                maxDepth = Math.max(maxDepth, stream.getDepth());
+                // Far faster than a phone, but slow enough for the socket to keep up between hang-ups
+                if (i % 100 == 99) Thread.sleep(1);
+            }
+            await("the backlog to drain", () -> stream.getLastAck() == offered - 1 && stream.getDepth() == 0);
+
+            // Every frame either reached the server or was dropped for space
+            assertTrue(dashboard.receivedCount() + stream.getDroppedCount() >= offered);
+            assertTrue(maxDepth <= capacity);
+            assertTrue(stream.getMaxQueuedBytes() + " bytes",
+                    stream.getMaxQueuedBytes() < TelemetryStream.MAX_QUEUED_BYTES + 1024);
+            assertTrue(stream.getConnectionCount() > 1);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package ma.fst.aiquakeproject.net;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import ma.fst.aiquakeproject.dsp.Waveform;
+
+import static org.junit.Assert.*;
+
+public class WaveformCodecTest {
+
+    @Test
+    public void roundTripsWithinQuantization() throws Exception {
+        int n = 50 * 40;
+        Random random = new Random(1);
+        long[] ts = new long[n];
+        float[] x = new float[n];
+        float[] y = new float[n];
+        float[] z = new float[n];
+        for (int i = 0; i < n; i++) {
+            ts[i] = 123_456_789_000L + i * 20_000_000L + random.nextInt(500_000);
+            x[i] = 0.05f * (float) random.nextGaussian();
+            y[i] = 0.05f * (float) random.nextGaussian();
+            z[i] = 9.81f + 1.5f * (float) Math.sin(i * 0.4);
+        }
+        Waveform waveform = new Waveform(ts[n / 2], ts, x, y, z, n);
+
+        byte[] encoded = WaveformCodec.encode(waveform);
+        Waveform decoded = WaveformCodec.decode(encoded);
+
+        assertEquals(n, decoded.size);
+        assertEquals(waveform.triggerNs, decoded.triggerNs);
+        for (int i = 0; i < n; i++) {
+            assertEquals(ts[i], decoded.timestamps[i]);
+            assertEquals(x[i], decoded.x[i], WaveformCodec.SCALE);
+            assertEquals(y[i], decoded.y[i], WaveformCodec.SCALE);
+            assertEquals(z[i], decoded.z[i], WaveformCodec.SCALE);
+        }
+        // Raw is 20 bytes per sample
+        assertTrue("encoded " + encoded.length, encoded.length < n * 20 / 2);
+    }
+
+    @Test
+    public void varintsRoundTripExtremes() throws Exception {
+        long[] values = {0, 1, -1, 63, -64, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long v : values) WaveformCodec.writeVarint(out, WaveformCodec.zigzag(v));
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        for (long v : values) assertEquals(v, WaveformCodec.unzigzag(WaveformCodec.readVarint(in)));
+    }
+}
@@ -0,0 +1,184 @@
+package ma.fst.aiquakeproject.net;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+public class WaveformUploadQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private Backend backend;
+    private DetectionUploadQueue detections;
+    private WaveformUploadQueue waveforms;
+
+    // Retries without waiting
+    private static final Random NO_JITTER = new Random() {
+        @Override
+        public double nextDouble() {
+            return 0;
+        }
+    };
+
+    /** Answers detections and chunks from scripted status codes, 201 once a script runs out. */
+    private static final class Backend extends Dispatcher {
+        final Queue<Integer> detectionCodes = new ConcurrentLinkedQueue<>();
+        final Queue<Integer> chunkCodes = new ConcurrentLinkedQueue<>();
+        // Every request in order of arrival, as "POST /api/detections 201"
+        final Queue<String> log = new ConcurrentLinkedQueue<>();
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            boolean chunk = "PUT".equals(request.getMethod());
+            Integer scripted = chunk ? chunkCodes.poll() : detectionCodes.poll();
+            int code = scripted != null ? scripted : 201;
+            log.add(request.getMethod() + " " + request.getPath() + " " + code);
+            if (chunk && code == 201) {
+                synchronized (received) {
+                    received.writeBytes(request.getBody().readByteArray());
+                }
+            }
+            return new MockResponse().setResponseCode(code);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        backend = new Backend();
+        server.setDispatcher(backend);
+        server.start();
+        String url = server.url("/").toString();
+        detections = new DetectionUploadQueue(new File(folder.getRoot(), "detections"), SharedHttpClient.get(),
+                url.substring(0, url.length() - 1), new ScheduledThreadPoolExecutor(1), NO_JITTER);
+        waveforms = reopen(NO_JITTER);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        waveforms.close();
+        detections.close();
+        server.shutdown();
+    }
+
+    private static DetectionRecord record(String id) {
+        return new DetectionRecord(id, 1_700_000_000_000L, 34.02, -6.84, 20f, 1_000, 0.8f, 0.1f, 12, "phone1");
+    }
+
+    private static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        new Random(7).nextBytes(payload);
+        return payload;
+    }
+
+    private static void await(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("Timed out waiting for " + what);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void waitsForTheDetectionToBeAccepted() throws Exception {
+        backend.detectionCodes.add(503);
+        backend.detectionCodes.add(503);
+        byte[] payload = payload(2 * WaveformUploadQueue.CHUNK_SIZE + 100);
+        detections.enqueue(record("id-1"));
+        waveforms.enqueue("id-1", payload);
+        await("the waveform", () -> waveforms.getSentCount() == 1);
+
+        assertArrayEquals(new String[] {
+                "POST /api/detections 503",
+                "POST /api/detections 503",
+                "POST /api/detections 201",
+                "PUT /api/detections/id-1/waveform/0 201",
+                "PUT /api/detections/id-1/waveform/1 201",
+                "PUT /api/detections/id-1/waveform/2 201",
+        }, backend.log.toArray());
+        assertArrayEquals(payload, backend.received.toByteArray());
+        assertEquals(0, waveforms.getDepth());
+    }
+
+    @Test
+    public void failedChunksAreRetried() throws Exception {
+        backend.chunkCodes.add(201);
+        backend.chunkCodes.add(503);
+        backend.chunkCodes.add(429);
+        byte[] payload = payload(2 * WaveformUploadQueue.CHUNK_SIZE);
+        detections.enqueue(record("id-1"));
+        waveforms.enqueue("id-1", payload);
+        await("the waveform", () -> waveforms.getSentCount() == 1);
+
+        RecordedRequest chunk = null;
+        for (int i = 0; i < 5; i++) chunk = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("/api/detections/id-1/waveform/1", chunk.getPath());
+        assertEquals("2", chunk.getHeader("X-Chunk-Count"));
+        assertArrayEquals(payload, backend.received.toByteArray());
+        assertEquals(0, waveforms.getDroppedCount());
+    }
+
+    @Test
+    public void waveformOfARejectedDetectionIsDropped() throws Exception {
+        backend.detectionCodes.add(400);
+        detections.enqueue(record("id-1"));
+        await("the rejection", () -> !detections.isPending("id-1"));
+        waveforms.enqueue("id-1", payload(100));
+        detections.enqueue(record("id-2"));
+        waveforms.enqueue("id-2", payload(100));
+        await("the second waveform", () -> waveforms.getSentCount() == 1);
+
+        assertTrue(backend.log.stream().noneMatch(line -> line.contains("id-1/waveform")));
+        assertTrue(backend.log.contains("PUT /api/detections/id-2/waveform/0 201"));
+        assertEquals(1, waveforms.getDroppedCount());
+    }
+
+    @Test
+    public void pendingChunksSurviveRestart() throws Exception {
+        // Backs off for a second, long enough to stop it in between
+        waveforms.close();
+        waveforms = reopen(new Random() {
+            @Override
+            public double nextDouble() {
+                return 1;
+            }
+        });
+        backend.chunkCodes.add(503);
+        detections.enqueue(record("id-1"));
+        waveforms.enqueue("id-1", payload(100));
+        await("the failed chunk", () -> backend.log.contains("PUT /api/detections/id-1/waveform/0 503"));
+        waveforms.close();
+        assertEquals(1, waveforms.getDepth());
+
+        waveforms = reopen(NO_JITTER);
+        await("the waveform", () -> waveforms.getSentCount() == 1);
+        assertArrayEquals(payload(100), backend.received.toByteArray());
+    }
+
+    private WaveformUploadQueue reopen(Random random) throws Exception {
+        String url = server.url("/").toString();
+        return new WaveformUploadQueue(new File(folder.getRoot(), "waveforms"), SharedHttpClient.get(),
+                url.substring(0, url.length() - 1), detections, new ScheduledThreadPoolExecutor(1), random);
+    }
+}
@@ -0,0 +1,128 @@
+package ma.fst.aiquakeproject.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import ma.fst.aiquakeproject.dsp.HandlingGate;
+
+import static org.junit.Assert.*;
+
+public class FlightRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final class Collector implements FlightRecordReader.Visitor {
+        final List<Long> sensorNs = new ArrayList<>();
+        final List<Float> z = new ArrayList<>();
+        int locations = 0;
+        double lastLat;
+
+        @Override
+        public void onSample(long wallMs, long ns, float x, float y, float zValue) {
+            sensorNs.add(ns);
+            z.add(zValue);
+        }
+
+        @Override
+        public void onLocation(long wallMs, long ns, double latitude, double longitude, float accuracy) {
+            locations++;
+            lastLat = latitude;
+        }
+    }
+
+    @Test
+    public void roundTripsAcrossSegments() throws Exception {
+        File dir = new File(folder.getRoot(), "rec");
+        int segmentBytes = FlightRecorder.HEADER_SIZE + FlightRecorder.RECORD_SIZE * 100;
+        FlightRecorder recorder = new FlightRecorder(dir, segmentBytes, Long.MAX_VALUE);
+        recorder.updateLocation(34.0209, -6.8416, 5f);
+        for (int i = 0; i < 1000; i++) {
+            recorder.recordSample(i * 10_000_000L, 0.1f, 0.2f, 9.81f + i);
+        }
+        recorder.close();
+
+        assertTrue(FlightRecorder.segments(dir).length >= 10);
+        Collector collector = new Collector();
+        FlightRecordReader.readAll(dir, collector);
+        assertEquals(1000, collector.sensorNs.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i * 10_000_000L, (long) collector.sensorNs.get(i));
+            assertEquals(9.81f + i, collector.z.get(i), 0f);
+        }
+        // Every segment restates the fix
+        assertTrue(collector.locations >= FlightRecorder.segments(dir).length);
+        assertEquals(34.0209, collector.lastLat, 1e-6);
+    }
+
+    @Test
+    public void sizeCapDeletesOldestSegments() throws Exception {
+        File dir = new File(folder.getRoot(), "capped");
+        int segmentBytes = FlightRecorder.HEADER_SIZE + FlightRecorder.RECORD_SIZE * 100;
+        FlightRecorder recorder = new FlightRecorder(dir, segmentBytes, segmentBytes * 3L);
+        for (int i = 0; i < 1000; i++) {
+            recorder.recordSample(i, 0f, 0f, i);
+        }
+        recorder.close();
+
+        File[] segments = FlightRecorder.segments(dir);
+        assertEquals(3, segments.length);
+        Collector collector = new Collector();
+        FlightRecordReader.readAll(dir, collector);
+        assertEquals(999L, (long) collector.sensorNs.get(collector.sensorNs.size() - 1));
+    }
+
+    @Test
+    public void exportsCsvLoggerFormat() throws Exception {
+        File dir = new File(folder.getRoot(), "export");
+        FlightRecorder recorder = new FlightRecorder(dir, 64 * 1024, Long.MAX_VALUE);
+        recorder.updateLocation(34.5, -6.5, 3f);
+        for (int i = 0; i < 10; i++) {
+            recorder.recordSample(1_000_000_000L + i * 20_000_000L, 1f, 2f, 3f);
+        }
+        recorder.recordHandling(1_100_000_000L, HandlingGate.Evidence.STEP.code);
+        recorder.close();
+
+        File csv = new File(folder.getRoot(), "out.csv");
+        assertEquals(10, FlightRecordExporter.exportCsv(dir, csv));
+        List<String> lines = Files.readAllLines(csv.toPath());
+        assertEquals("Timestamp,X,Y,Z,Latitude,Longitude", lines.get(0));
+        assertEquals(11, lines.size());
+        String[] first = lines.get(1).split(",");
+        String[] second = lines.get(2).split(",");
+        assertEquals(20, Long.parseLong(second[0]) - Long.parseLong(first[0]));
+        assertEquals("34.5", first[4]);
+        assertEquals("-6.5", first[5]);
+
+        List<String> handling = Files.readAllLines(FlightRecordExporter.handlingFile(csv).toPath());
+        assertEquals(2, handling.size());
+        assertEquals(Long.parseLong(first[0]) + 100 + ",step", handling.get(1));
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) return;
+
+        FlightRecorder recorder = new FlightRecorder(new File(folder.getRoot(), "alloc"), 8 * 1024 * 1024, Long.MAX_VALUE);
+        recorder.updateLocation(34.0, -6.8, 5f);
+        for (int i = 0; i < 10_000; i++) recorder.recordSample(i * 2_500_000L, 0f, 0f, 9.81f);
+
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 10_000; i < 100_000; i++) recorder.recordSample(i * 2_500_000L, 0f, 0f, 9.81f);
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        recorder.close();
+
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
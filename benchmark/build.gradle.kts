@@ -0,0 +1,58 @@
+// JVM-only JMH benchmarks for the detection DSP. Run with ./gradlew :benchmark:jmh
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+// The DSP packages are plain Java, so they are compiled straight from the app sources
+sourceSets {
+    main {
+        java {
+            setSrcDirs(listOf("../app/src/main/java"))
+            include("ma/fst/aiquakeproject/dsp/**")
+            include("ma/fst/aiquakeproject/metrics/**")
+            // Encoders only; the uploaders need OkHttp
+            include("ma/fst/aiquakeproject/net/DetectionRecord.java")
+            include("ma/fst/aiquakeproject/net/DetectionWire.java")
+            include("ma/fst/aiquakeproject/net/WaveformCodec.java")
+            include("ma/fst/aiquakeproject/net/TelemetryFrame.java")
+        }
+    }
+    // Implementations the app replaced, kept as the baseline the benchmarks compare against
+    named("jmh") {
+        java.srcDir("src/baseline/java")
+    }
+}
+
+dependencies {
+    jmh(libs.jmh.core)
+    jmh(libs.jmh.generator)
+    // Android's org.json, to measure the JSONObject path the app used before
+    jmh(libs.org.json)
+}
+
+jmh {
+    jmhVersion = libs.versions.jmh
+    fork = 2
+    warmupIterations = 5
+    warmup = "1s"
+    iterations = 5
+    timeOnIteration = "1s"
+    profilers.add("gc")
+    resultFormat = "JSON"
+    // e.g. ./gradlew :benchmark:jmh -Pjmh.includes=DetectionBenchmark
+    providers.gradleProperty("jmh.includes").orNull?.let { includes.add(it) }
+    providers.gradleProperty("jmh.trace").orNull?.let {
+        jvmArgsAppend.add("-Daiquake.trace=$it")
+        benchmarkParameters.put("trace", objects.listProperty<String>().value(listOf("quiet", "quake", "recorded")))
+    }
+}
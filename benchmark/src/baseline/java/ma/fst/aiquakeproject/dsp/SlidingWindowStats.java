@@ -0,0 +1,82 @@
+package ma.fst.aiquakeproject.dsp;
+
+import java.util.Arrays;
+
+/**
+ * RMS and variance over the last {@code size} samples, maintained with running
+ * sums so each sample costs O(1). Sums are kept in double and rebuilt once per
+ * window to keep float round-off from accumulating.
+ *
+ * <p>The single-window statistics {@link DetectionEngine} ran before
+ * {@link MultiScaleStats}; not part of the app, only the baseline for the
+ * benchmarks and the reference for the unit tests.
+ */
+public final class SlidingWindowStats {
+
+    private final float[] window;
+    private int index = 0;
+    private int count = 0;
+    private double sum = 0.0;
+    private double sumSquares = 0.0;
+
+    public SlidingWindowStats(int size) {
+        window = new float[size];
+    }
+
+    public void add(float v) {
+        float old = window[index];
+        window[index] = v;
+        index++;
+        if (count < window.length) {
+            count++;
+        } else {
+            sum -= old;
+            sumSquares -= (double) old * old;
+        }
+        sum += v;
+        sumSquares += (double) v * v;
+
+        if (index == window.length) {
+            index = 0;
+            if (count == window.length) resync();
+        }
+    }
+
+    private void resync() {
+        double s = 0.0;
+        double sq = 0.0;
+        for (float v : window) {
+            s += v;
+            sq += (double) v * v;
+        }
+        sum = s;
+        sumSquares = sq;
+    }
+
+    public boolean isFull() {
+        return count == window.length;
+    }
+
+    public int size() {
+        return window.length;
+    }
+
+    public float rms() {
+        if (count == 0) return 0f;
+        return (float) Math.sqrt(Math.max(0.0, sumSquares / count));
+    }
+
+    public float variance() {
+        if (count == 0) return 0f;
+        double mean = sum / count;
+        return (float) Math.max(0.0, sumSquares / count - mean * mean);
+    }
+
+    public void reset() {
+        Arrays.fill(window, 0f);
+        index = 0;
+        count = 0;
+        sum = 0.0;
+        sumSquares = 0.0;
+    }
+}
@@ -0,0 +1,76 @@
+package ma.fst.aiquakeproject.dsp;
+
+/**
+ * Original window-recompute feature extraction, kept as the reference the
+ * streaming {@link DetectionEngine} is checked against and the baseline the
+ * benchmarks compare with. Not part of the app.
+ */
+public final class WindowFeatures {
+
+    private WindowFeatures() {}
+
+    public static void removeMean(float[] signal) {
+        float mean = 0f;
+        for (float v : signal) mean += v;
+        mean /= signal.length;
+        for (int i = 0; i < signal.length; i++) signal[i] -= mean;
+    }
+
+    public static float[] bandpassFilter(float[] signal, float low, float high, float fs) {
+        return lowpass(highpass(signal, low, fs), high, fs);
+    }
+
+    public static float[] highpass(float[] signal, float cutoff, float fs) {
+        float RC = 1.0f / (2 * (float) Math.PI * cutoff);
+        float dt = 1.0f / fs;
+        float alpha = RC / (RC + dt);
+        float[] output = new float[signal.length];
+        output[0] = signal[0];
+        for (int i = 1; i < signal.length; i++) {
+            output[i] = alpha * (output[i - 1] + signal[i] - signal[i - 1]);
+        }
+        return output;
+    }
+
+    public static float[] lowpass(float[] signal, float cutoff, float fs) {
+        float RC = 1.0f / (2 * (float) Math.PI * cutoff);
+        float dt = 1.0f / fs;
+        float alpha = dt / (RC + dt);
+        float[] output = new float[signal.length];
+        output[0] = signal[0];
+        for (int i = 1; i < signal.length; i++) {
+            output[i] = output[i - 1] + alpha * (signal[i] - output[i - 1]);
+        }
+        return output;
+    }
+
+    public static float computeRMS(float[] signal) {
+        float sum = 0f;
+        for (float v : signal) sum += v * v;
+        return (float) Math.sqrt(sum / signal.length);
+    }
+
+    public static float computeVariance(float[] signal) {
+        float mean = 0f;
+        for (float v : signal) mean += v;
+        mean /= signal.length;
+
+        float variance = 0f;
+        for (float v : signal) variance += (v - mean) * (v - mean);
+        return variance / signal.length;
+    }
+
+    public static int countSpacedPeaks(float[] signal, float threshold, int minSpacing) {
+        int count = 0;
+        int lastPeakIndex = -minSpacing;
+        for (int i = 1; i < signal.length - 1; i++) {
+            if (signal[i] > threshold && signal[i] > signal[i - 1] && signal[i] > signal[i + 1]) {
+                if (i - lastPeakIndex >= minSpacing) {
+                    count++;
+                    lastPeakIndex = i;
+                }
+            }
+        }
+        return count;
+    }
+}
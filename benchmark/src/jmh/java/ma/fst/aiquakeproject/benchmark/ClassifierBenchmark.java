@@ -0,0 +1,75 @@
+package ma.fst.aiquakeproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ma.fst.aiquakeproject.dsp.StumpEnsemble;
+import ma.fst.aiquakeproject.dsp.ThresholdClassifier;
+import ma.fst.aiquakeproject.dsp.WindowClassifier;
+
+/**
+ * Per-window inference cost of the stump ensemble at a typical and at the
+ * largest allowed size, against the threshold rule. The budget is 20 µs per
+ * window; it is measured here and nothing fails on it, so the unit tests only
+ * enforce the {@link StumpEnsemble#MAX_STUMPS} cap that keeps a model inside it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ClassifierBenchmark {
+
+    private static final int WINDOWS = 1024;
+
+    @Param({"64", "256"})
+    public int stumps;
+
+    private final float[][] windows = new float[WINDOWS][WindowClassifier.FEATURE_COUNT];
+    private final WindowClassifier thresholds = new ThresholdClassifier();
+    private StumpEnsemble model;
+
+    @Setup(Level.Trial)
+    public void createModel() {
+        Random random = new Random(1);
+        for (float[] window : windows) {
+            for (int f = 0; f < window.length; f++) window[f] = random.nextFloat() * 2f;
+        }
+        byte[] feature = new byte[stumps];
+        float[] threshold = new float[stumps];
+        short[] left = new short[stumps];
+        short[] right = new short[stumps];
+        for (int i = 0; i < stumps; i++) {
+            feature[i] = (byte) random.nextInt(WindowClassifier.FEATURE_COUNT);
+            threshold[i] = random.nextFloat() * 2f;
+            left[i] = (short) random.nextInt(Short.MAX_VALUE);
+            right[i] = (short) -random.nextInt(Short.MAX_VALUE);
+        }
+        model = new StumpEnsemble(feature, threshold, left, right, 1e-4f, 0f, 0f);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WINDOWS)
+    public int stumpEnsemble() {
+        int quakes = 0;
+        for (float[] window : windows) if (model.isQuake(window)) quakes++;
+        return quakes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WINDOWS)
+    public int thresholdRule() {
+        int quakes = 0;
+        for (float[] window : windows) if (thresholds.isQuake(window)) quakes++;
+        return quakes;
+    }
+}
@@ -0,0 +1,71 @@
+package ma.fst.aiquakeproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import ma.fst.aiquakeproject.dsp.DetectionEngine;
+
+/**
+ * Cost per sample of the detection features. Each invocation feeds a whole
+ * trace, so the reported time and the GC profiler's gc.alloc.rate.norm are
+ * per sample.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DetectionBenchmark {
+
+    static final int TRACE_LENGTH = 4096;
+
+    @Param({"50", "100", "200"})
+    public int rate;
+
+    @Param({"quiet", "quake"})
+    public String trace;
+
+    private float[] samples;
+    private WindowRecompute window;
+    private DetectionEngine engine;
+
+    @Setup(Level.Trial)
+    public void loadTrace() throws IOException {
+        samples = Traces.forName(trace, rate, TRACE_LENGTH);
+        window = new WindowRecompute(rate);
+        engine = new DetectionEngine(DetectionEngine.WINDOW_SIZE,
+                DetectionEngine.FILTER_LOW, DetectionEngine.FILTER_HIGH, rate);
+        // Start measuring past warm-up, as a running detector would be
+        for (float v : samples) {
+            window.addSample(v);
+            engine.addSample(v);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRACE_LENGTH)
+    public void windowRecompute(Blackhole bh) {
+        for (float v : samples) {
+            bh.consume(window.addSample(v));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRACE_LENGTH)
+    public void streamingEngine(Blackhole bh) {
+        for (float v : samples) {
+            engine.addSample(v);
+            bh.consume(engine.isPatternDetected());
+        }
+    }
+}
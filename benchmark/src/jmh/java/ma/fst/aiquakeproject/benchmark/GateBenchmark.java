@@ -0,0 +1,77 @@
+package ma.fst.aiquakeproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import ma.fst.aiquakeproject.dsp.DetectionEngine;
+import ma.fst.aiquakeproject.dsp.DetectorState;
+import ma.fst.aiquakeproject.dsp.QuakeMonitor;
+
+/**
+ * Per-sample cost of the whole monitor with and without the STA/LTA gate, on
+ * the 50 Hz grid it runs on. On the quiet trace the gated monitor only pays
+ * for the trigger; on the quake trace the gate opens every pass.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GateBenchmark {
+
+    @Param({"quiet", "quake"})
+    public String trace;
+
+    private static final QuakeMonitor.Listener IGNORE = new QuakeMonitor.Listener() {
+        @Override
+        public void onStateChanged(DetectorState state, int seconds) {}
+
+        @Override
+        public void onQuakeConfirmed(float energy, float variance, int peakCount) {}
+    };
+
+    private float[] samples;
+    private QuakeMonitor gated;
+    private QuakeMonitor ungated;
+    private long gatedNow = 0;
+    private long ungatedNow = 0;
+
+    @Setup(Level.Trial)
+    public void createMonitors() throws IOException {
+        samples = Traces.forName(trace, (int) DetectionEngine.SAMPLING_RATE, DetectionBenchmark.TRACE_LENGTH);
+        gated = new QuakeMonitor(IGNORE);
+        ungated = new QuakeMonitor(IGNORE, QuakeMonitor.REQUIRED_STREAK, QuakeMonitor.MIN_DETECTION_TIME_MS, null);
+        // Past the trigger's LTA warm-up
+        for (int pass = 0; pass < 2; pass++) {
+            gatedMonitor();
+            ungatedMonitor();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DetectionBenchmark.TRACE_LENGTH)
+    public void gatedMonitor() {
+        for (float v : samples) {
+            gatedNow += 20;
+            gated.onSample(v, gatedNow);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DetectionBenchmark.TRACE_LENGTH)
+    public void ungatedMonitor() {
+        for (float v : samples) {
+            ungatedNow += 20;
+            ungated.onSample(v, ungatedNow);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ma.fst.aiquakeproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ma.fst.aiquakeproject.metrics.LatencyHistogram;
+import ma.fst.aiquakeproject.metrics.PipelineMetrics;
+import ma.fst.aiquakeproject.metrics.SampleProbe;
+
+/**
+ * Per-sample cost of the pipeline instrumentation: the probe calls and clock
+ * reads the detection thread adds to each sample of a 64-sample batch,
+ * against the same loop without them. The target is under 50 ns per sample.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsBenchmark {
+
+    private static final int BATCH = 64;
+
+    private final long[] timestamps = new long[DetectionBenchmark.TRACE_LENGTH];
+    private SampleProbe probe;
+    private LatencyHistogram histogram;
+
+    @Setup(Level.Trial)
+    public void createTrace() {
+        Random random = new Random(31);
+        long t = 0;
+        for (int i = 0; i < timestamps.length; i++) {
+            // 50 Hz with up to 1 ms of delivery jitter
+            t += 20_000_000L + random.nextInt(2_000_000) - 1_000_000;
+            timestamps[i] = t;
+        }
+        probe = new SampleProbe(new PipelineMetrics());
+        histogram = new LatencyHistogram();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DetectionBenchmark.TRACE_LENGTH)
+    public void uninstrumented(Blackhole bh) {
+        for (int i = 0; i < timestamps.length; i++) {
+            bh.consume(timestamps[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DetectionBenchmark.TRACE_LENGTH)
+    public void instrumented(Blackhole bh) {
+        for (int b = 0; b < timestamps.length; b += BATCH) {
+            long batchStartNs = System.nanoTime();
+            for (int i = b; i < b + BATCH; i++) {
+                boolean timed = probe.onSample(timestamps[i]);
+                long startNs = timed ? System.nanoTime() : 0;
+                bh.consume(timestamps[i]);
+                long ingestedNs = timed ? System.nanoTime() : 0;
+                if (timed) probe.onStages(startNs, ingestedNs, System.nanoTime());
+            }
+            probe.onBatch(System.nanoTime() - batchStartNs, 0, 0);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DetectionBenchmark.TRACE_LENGTH)
+    public void histogramRecord() {
+        for (int i = 0; i < timestamps.length; i++) {
+            histogram.record(timestamps[i] & 0xFFFFF);
+        }
+    }
+}
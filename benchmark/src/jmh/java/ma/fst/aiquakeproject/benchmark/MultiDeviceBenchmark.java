@@ -0,0 +1,86 @@
+package ma.fst.aiquakeproject.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import ma.fst.aiquakeproject.dsp.DetectionEngine;
+
+/**
+ * Throughput of many simulated stations on one core, e.g. a server replaying
+ * the streams of a whole network. One invocation advances every device by one
+ * sample; the samples counter reports samples per second across devices.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MultiDeviceBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int devices;
+
+    @Param({"100"})
+    public int rate;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long samples;
+    }
+
+    private float[][] streams;
+    private WindowRecompute[] windows;
+    private DetectionEngine[] engines;
+    private int position = 0;
+
+    @Setup(Level.Trial)
+    public void createDevices() {
+        streams = new float[devices][];
+        windows = new WindowRecompute[devices];
+        engines = new DetectionEngine[devices];
+        for (int d = 0; d < devices; d++) {
+            // Every tenth station sees shaking so both code paths stay warm
+            float amplitude = d % 10 == 0 ? 1.5f : 0f;
+            streams[d] = Traces.synthetic(rate, DetectionBenchmark.TRACE_LENGTH, amplitude, 100 + d);
+            windows[d] = new WindowRecompute(rate);
+            engines[d] = new DetectionEngine(DetectionEngine.WINDOW_SIZE,
+                    DetectionEngine.FILTER_LOW, DetectionEngine.FILTER_HIGH, rate);
+        }
+    }
+
+    private int nextPosition() {
+        int p = position;
+        position = (p + 1) % DetectionBenchmark.TRACE_LENGTH;
+        return p;
+    }
+
+    @Benchmark
+    public void windowRecompute(Counters counters, Blackhole bh) {
+        int p = nextPosition();
+        for (int d = 0; d < devices; d++) {
+            bh.consume(windows[d].addSample(streams[d][p]));
+        }
+        counters.samples += devices;
+    }
+
+    @Benchmark
+    public void streamingEngine(Counters counters, Blackhole bh) {
+        int p = nextPosition();
+        for (int d = 0; d < devices; d++) {
+            DetectionEngine engine = engines[d];
+            engine.addSample(streams[d][p]);
+            bh.consume(engine.isPatternDetected());
+        }
+        counters.samples += devices;
+    }
+}
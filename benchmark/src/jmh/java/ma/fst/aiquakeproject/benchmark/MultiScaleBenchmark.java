@@ -0,0 +1,125 @@
+package ma.fst.aiquakeproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import ma.fst.aiquakeproject.dsp.BandpassFilter;
+import ma.fst.aiquakeproject.dsp.DetectionEngine;
+import ma.fst.aiquakeproject.dsp.MultiScaleStats;
+import ma.fst.aiquakeproject.dsp.SlidingWindowStats;
+import ma.fst.aiquakeproject.dsp.SpacedPeakCounter;
+import ma.fst.aiquakeproject.dsp.SpectralFeatures;
+
+/**
+ * Per-sample cost of RMS, variance and peak count on filtered samples: one
+ * 128-sample window as the engine used to keep it, five windows from 64 to
+ * 1024 samples as separate copies of that, and the same five from one
+ * {@link MultiScaleStats}. The longer windows are read once per
+ * {@link SpectralFeatures#HOP}, as the engine does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MultiScaleBenchmark {
+
+    private static final int[] SCALES = {128, 64, 256, 512, 1024};
+
+    @Param({"quiet", "quake"})
+    public String trace;
+
+    private float[] filtered;
+    private SlidingWindowStats[] stats;
+    private SpacedPeakCounter[] peaks;
+    private MultiScaleStats multi;
+
+    @Setup(Level.Trial)
+    public void createState() throws IOException {
+        float[] samples = Traces.forName(trace, (int) DetectionEngine.SAMPLING_RATE, DetectionBenchmark.TRACE_LENGTH);
+        BandpassFilter filter = new BandpassFilter(DetectionEngine.FILTER_LOW, DetectionEngine.FILTER_HIGH,
+                DetectionEngine.SAMPLING_RATE);
+        filtered = new float[samples.length];
+        for (int i = 0; i < samples.length; i++) filtered[i] = filter.filter(samples[i]);
+
+        stats = new SlidingWindowStats[SCALES.length];
+        peaks = new SpacedPeakCounter[SCALES.length];
+        for (int s = 0; s < SCALES.length; s++) {
+            stats[s] = new SlidingWindowStats(SCALES[s]);
+            peaks[s] = new SpacedPeakCounter(SCALES[s], DetectionEngine.PEAK_AMPLITUDE, DetectionEngine.PEAK_SPACING);
+        }
+        multi = new MultiScaleStats(SCALES, DetectionEngine.PEAK_AMPLITUDE, DetectionEngine.PEAK_SPACING);
+        for (float v : filtered) {
+            for (int s = 0; s < SCALES.length; s++) {
+                stats[s].add(v);
+                peaks[s].add(v);
+            }
+            multi.add(v);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DetectionBenchmark.TRACE_LENGTH)
+    public void singleWindow(Blackhole bh) {
+        SlidingWindowStats window = stats[0];
+        SpacedPeakCounter counter = peaks[0];
+        for (float v : filtered) {
+            window.add(v);
+            counter.add(v);
+            bh.consume(window.rms());
+            bh.consume(window.variance());
+            bh.consume(counter.count());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DetectionBenchmark.TRACE_LENGTH)
+    public void separateWindows(Blackhole bh) {
+        int hop = 0;
+        for (float v : filtered) {
+            for (int s = 0; s < SCALES.length; s++) {
+                stats[s].add(v);
+                peaks[s].add(v);
+            }
+            bh.consume(stats[0].rms());
+            bh.consume(stats[0].variance());
+            bh.consume(peaks[0].count());
+            if (++hop < SpectralFeatures.HOP) continue;
+            hop = 0;
+            for (int s = 1; s < SCALES.length; s++) {
+                bh.consume(stats[s].rms());
+                bh.consume(stats[s].variance());
+                bh.consume(peaks[s].count());
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DetectionBenchmark.TRACE_LENGTH)
+    public void prefixSums(Blackhole bh) {
+        int hop = 0;
+        for (float v : filtered) {
+            multi.add(v);
+            bh.consume(multi.rms(0));
+            bh.consume(multi.variance(0));
+            bh.consume(multi.peakCount(0));
+            if (++hop < SpectralFeatures.HOP) continue;
+            hop = 0;
+            for (int s = 1; s < SCALES.length; s++) {
+                bh.consume(multi.rms(s));
+                bh.consume(multi.variance(s));
+                bh.consume(multi.peakCount(s));
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ma.fst.aiquakeproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import ma.fst.aiquakeproject.dsp.DetectionEngine;
+import ma.fst.aiquakeproject.dsp.SpectralFeatures;
+
+/**
+ * Per-sample cost of the spectral features on the 128-sample window, with the
+ * packed real FFT against a direct DFT of the same window at the same hop.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpectralBenchmark {
+
+    private static final int SIZE = DetectionEngine.WINDOW_SIZE;
+
+    @Param({"quiet", "quake"})
+    public String trace;
+
+    private float[] samples;
+    private SpectralFeatures fft;
+    private final float[] window = new float[SIZE];
+    private final double[] cos = new double[SIZE];
+    private final double[] sin = new double[SIZE];
+    private final double[] power = new double[SIZE / 2 + 1];
+
+    @Setup(Level.Trial)
+    public void createState() throws IOException {
+        samples = Traces.forName(trace, (int) DetectionEngine.SAMPLING_RATE, DetectionBenchmark.TRACE_LENGTH);
+        fft = new SpectralFeatures(SIZE, DetectionEngine.SAMPLING_RATE, DetectionEngine.FILTER_LOW,
+                DetectionEngine.FILTER_HIGH);
+        for (int i = 0; i < SIZE; i++) {
+            cos[i] = Math.cos(2 * Math.PI * i / SIZE);
+            sin[i] = Math.sin(2 * Math.PI * i / SIZE);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DetectionBenchmark.TRACE_LENGTH)
+    public float packedFft() {
+        for (float v : samples) fft.add(v);
+        return fft.getBandRatio();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DetectionBenchmark.TRACE_LENGTH)
+    public double directDft() {
+        double sink = 0;
+        for (int n = 0; n < samples.length; n++) {
+            window[n & (SIZE - 1)] = samples[n];
+            if (n < SIZE - 1 || (n - SIZE + 1) % SpectralFeatures.HOP != 0) continue;
+            for (int k = 0; k <= SIZE / 2; k++) {
+                double re = 0;
+                double im = 0;
+                for (int i = 0; i < SIZE; i++) {
+                    int t = (k * i) & (SIZE - 1);
+                    re += window[i] * cos[t];
+                    im -= window[i] * sin[t];
+                }
+                power[k] = re * re + im * im;
+            }
+            sink += power[3];
+        }
+        return sink;
+    }
+}
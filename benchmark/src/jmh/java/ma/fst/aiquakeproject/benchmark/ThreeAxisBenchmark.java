@@ -0,0 +1,77 @@
+package ma.fst.aiquakeproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ma.fst.aiquakeproject.dsp.DetectionEngine;
+
+/**
+ * Per-sample cost of the engine fed three axes, with the vertical/horizontal
+ * split, against the magnitude-only path it replaces. The target is at most
+ * twice the magnitude-only cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ThreeAxisBenchmark {
+
+    @Param({"quiet", "quake"})
+    public String trace;
+
+    private final float[] x = new float[DetectionBenchmark.TRACE_LENGTH];
+    private final float[] y = new float[DetectionBenchmark.TRACE_LENGTH];
+    private final float[] z = new float[DetectionBenchmark.TRACE_LENGTH];
+    private DetectionEngine magnitudeEngine;
+    private DetectionEngine threeAxisEngine;
+
+    @Setup(Level.Trial)
+    public void createTrace() {
+        Random random = new Random(21);
+        int rate = (int) DetectionEngine.SAMPLING_RATE;
+        float amplitude = trace.equals("quake") ? 1.5f : 0f;
+        for (int i = 0; i < x.length; i++) {
+            double t = (double) i / rate;
+            float shake = i >= x.length / 2 ? amplitude * (float) Math.sin(2 * Math.PI * 3 * t) : 0f;
+            // Tilted phone, shaken both ways
+            x[i] = 0.8f * shake + 0.02f * (float) random.nextGaussian();
+            y[i] = 0.64f * Traces.GRAVITY + 0.02f * (float) random.nextGaussian();
+            z[i] = 0.77f * Traces.GRAVITY + 0.6f * shake + 0.02f * (float) random.nextGaussian();
+        }
+        magnitudeEngine = new DetectionEngine();
+        threeAxisEngine = new DetectionEngine();
+        for (int i = 0; i < x.length; i++) {
+            magnitudeEngine.addSample((float) Math.sqrt(x[i] * x[i] + y[i] * y[i] + z[i] * z[i]));
+            threeAxisEngine.addSample(x[i], y[i], z[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DetectionBenchmark.TRACE_LENGTH)
+    public void magnitudeOnly(Blackhole bh) {
+        for (int i = 0; i < x.length; i++) {
+            magnitudeEngine.addSample((float) Math.sqrt(x[i] * x[i] + y[i] * y[i] + z[i] * z[i]));
+            bh.consume(magnitudeEngine.isPatternDetected());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DetectionBenchmark.TRACE_LENGTH)
+    public void threeAxis(Blackhole bh) {
+        for (int i = 0; i < x.length; i++) {
+            threeAxisEngine.addSample(x[i], y[i], z[i]);
+            bh.consume(threeAxisEngine.isPatternDetected());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package ma.fst.aiquakeproject.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Acceleration magnitude traces for the benchmarks. Synthetic traces use fixed
+ * seeds so every run sees the same samples; a recorded CSV trace can be
+ * supplied with -Daiquake.trace=path.
+ */
+final class Traces {
+
+    static final float GRAVITY = 9.81f;
+
+    private Traces() {}
+
+    static float[] forName(String name, int rate, int length) throws IOException {
+        switch (name) {
+            case "quiet":
+                return synthetic(rate, length, 0f, 11);
+            case "quake":
+                return synthetic(rate, length, 1.5f, 12);
+            case "recorded":
+                return recorded(System.getProperty("aiquake.trace"), length);
+            default:
+                throw new IllegalArgumentException("Unknown trace " + name);
+        }
+    }
+
+    /** Sensor noise on gravity, with 3 Hz vertical shaking in the second half when amplitude > 0. */
+    static float[] synthetic(int rate, int length, float amplitude, long seed) {
+        Random random = new Random(seed);
+        float[] out = new float[length];
+        for (int i = 0; i < length; i++) {
+            double t = (double) i / rate;
+            float shake = i >= length / 2 ? amplitude * (float) Math.sin(2 * Math.PI * 3 * t) : 0f;
+            out[i] = GRAVITY + shake + 0.02f * (float) random.nextGaussian();
+        }
+        return out;
+    }
+
+    /** Reads Timestamp,X,Y,Z,... rows and repeats them until {@code length} magnitudes are filled. */
+    static float[] recorded(String path, int length) throws IOException {
+        if (path == null) throw new IllegalArgumentException("Set -Daiquake.trace to a recorded CSV file");
+        float[] rows = new float[1024];
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length < 4 || parts[0].startsWith("Timestamp")) continue;
+                float x = Float.parseFloat(parts[1]);
+                float y = Float.parseFloat(parts[2]);
+                float z = Float.parseFloat(parts[3]);
+                if (count == rows.length) rows = Arrays.copyOf(rows, count * 2);
+                rows[count++] = (float) Math.sqrt(x * x + y * y + z * z);
+            }
+        }
+        if (count == 0) throw new IOException("No samples in " + path);
+        float[] out = new float[length];
+        for (int i = 0; i < length; i++) out[i] = rows[i % count];
+        return out;
+    }
+}
@@ -0,0 +1,38 @@
+package ma.fst.aiquakeproject.benchmark;
+
+import ma.fst.aiquakeproject.dsp.DetectionEngine;
+import ma.fst.aiquakeproject.dsp.WindowFeatures;
+
+/**
+ * The per-sample window recompute DetectionFragment originally ran: clone the
+ * ring, remove the mean, filter the whole window and rescan it for features.
+ */
+final class WindowRecompute {
+
+    private final float[] signalBuffer = new float[DetectionEngine.WINDOW_SIZE];
+    private final float fs;
+    private int bufferIndex = 0;
+
+    WindowRecompute(float fs) {
+        this.fs = fs;
+    }
+
+    boolean addSample(float magnitude) {
+        signalBuffer[bufferIndex % DetectionEngine.WINDOW_SIZE] = magnitude;
+        bufferIndex++;
+        if (bufferIndex < DetectionEngine.WINDOW_SIZE) return false;
+
+        float[] bufferCopy = signalBuffer.clone();
+        WindowFeatures.removeMean(bufferCopy);
+        float[] filtered = WindowFeatures.bandpassFilter(bufferCopy,
+                DetectionEngine.FILTER_LOW, DetectionEngine.FILTER_HIGH, fs);
+        float energy = WindowFeatures.computeRMS(filtered);
+        float variance = WindowFeatures.computeVariance(filtered);
+        int peakCount = WindowFeatures.countSpacedPeaks(filtered,
+                DetectionEngine.PEAK_AMPLITUDE, DetectionEngine.PEAK_SPACING);
+
+        return energy > DetectionEngine.ENERGY_THRESHOLD
+                && variance > DetectionEngine.VARIANCE_THRESHOLD
+                && peakCount >= DetectionEngine.PEAK_THRESHOLD;
+    }
+}
@@ -0,0 +1,111 @@
+package ma.fst.aiquakeproject.benchmark;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import ma.fst.aiquakeproject.dsp.SampleBatch;
+import ma.fst.aiquakeproject.dsp.Waveform;
+import ma.fst.aiquakeproject.net.DetectionRecord;
+import ma.fst.aiquakeproject.net.DetectionWire;
+import ma.fst.aiquakeproject.net.WaveformCodec;
+
+/**
+ * Encode time of one detection and of one batch of raw samples, as JSON and
+ * in the binary wire format. Each benchmark returns the encoded size, and the
+ * sizes are printed once per fork so bytes on the wire can be compared too.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WireFormatBenchmark {
+
+    static final int BATCH_SIZE = 1024;
+
+    private DetectionRecord record;
+    private SampleBatch batch;
+    private Waveform waveform;
+    private DetectionWire wire;
+
+    @Setup(Level.Trial)
+    public void createPayloads() {
+        record = new DetectionRecord(UUID.randomUUID().toString(), 1_747_687_106_457L,
+                34.0209123, -6.8416456, 12.5f, 4_200, 1.82f, 0.67f, 12, "AIQuakePhone1");
+        float[] magnitudes = Traces.synthetic(50, BATCH_SIZE, 1.5f, 7);
+        batch = new SampleBatch(BATCH_SIZE);
+        long[] timestamps = new long[BATCH_SIZE];
+        float[] x = new float[BATCH_SIZE];
+        float[] y = new float[BATCH_SIZE];
+        float[] z = new float[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            timestamps[i] = 1_000_000_000L + i * 20_000_000L;
+            x[i] = 0.05f * magnitudes[i];
+            y[i] = -0.03f * magnitudes[i];
+            z[i] = magnitudes[i];
+            batch.add(timestamps[i], x[i], y[i], z[i]);
+        }
+        waveform = new Waveform(timestamps[0], timestamps, x, y, z, BATCH_SIZE);
+        wire = new DetectionWire(BATCH_SIZE * 16);
+    }
+
+    @TearDown(Level.Trial)
+    public void printSizes() throws Exception {
+        System.out.println();
+        System.out.println("detection: JSONObject " + detectionJsonObject() + " B, binary " + detectionBinary() + " B");
+        System.out.println(BATCH_SIZE + " samples: gzipped waveform " + samplesGzip() + " B, binary " + samplesBinary() + " B");
+    }
+
+    /** The path the app used before: org.json boxing every field. */
+    @Benchmark
+    public int detectionJsonObject() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("detectionId", record.detectionId);
+        json.put("timestamp", record.timestampMs);
+        json.put("latitude", record.latitude);
+        json.put("longitude", record.longitude);
+        json.put("energy", record.energy);
+        json.put("variance", record.variance);
+        json.put("peakCount", record.peakCount);
+        json.put("deviceId", record.deviceId);
+        return json.toString().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /** The JSON fallback the upload queue sends to servers without binary support. */
+    @Benchmark
+    public int detectionJsonBuilder() {
+        return record.toJson().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    @Benchmark
+    public int detectionBinary() {
+        wire.reset();
+        wire.beginDetections(1);
+        wire.addDetection(record);
+        return wire.length();
+    }
+
+    @Benchmark
+    public int samplesGzip() throws IOException {
+        return WaveformCodec.encode(waveform).length;
+    }
+
+    @Benchmark
+    public int samplesBinary() {
+        wire.reset();
+        wire.encodeSamples(batch);
+        return wire.length();
+    }
+}
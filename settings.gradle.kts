@@ -21,4 +21,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "AIQuakeProject"
 include(":app")
+include(":benchmark")
+include(":tools")
  
\ No newline at end of file
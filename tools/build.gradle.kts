@@ -0,0 +1,56 @@
+// JVM command-line tools that run the app's detection code off-device.
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+// The plain-Java detection and upload packages are compiled straight from the app sources
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include("ma/fst/aiquakeproject/dsp/**")
+            include("ma/fst/aiquakeproject/utils/**")
+            include("ma/fst/aiquakeproject/metrics/**")
+            include("ma/fst/aiquakeproject/net/**")
+            include("ma/fst/aiquakeproject/tools/**")
+        }
+    }
+}
+
+dependencies {
+    implementation(libs.okhttp)
+    testImplementation(libs.junit)
+}
+
+application {
+    // e.g. ./gradlew :tools:run --args="--labels labels.csv --streak 5,10,20 traces/"
+    mainClass = "ma.fst.aiquakeproject.tools.ReplayTool"
+}
+
+tasks.register<JavaExec>("exportRecording") {
+    description = "Converts a flight recorder directory to CSV"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass = "ma.fst.aiquakeproject.utils.FlightRecordExporter"
+}
+
+tasks.register<JavaExec>("trainClassifier") {
+    description = "Trains the window classifier from labelled traces"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass = "ma.fst.aiquakeproject.tools.ClassifierTrainer"
+}
+
+tasks.register<JavaExec>("loadTest") {
+    description = "Runs virtual devices against the detections endpoint and reports delivery latency"
+    classpath = sourceSets.main.get().runtimeClasspath
+    // e.g. ./gradlew :tools:loadTest --args="--devices 500 --waves 3 --interval-s 20"
+    mainClass = "ma.fst.aiquakeproject.tools.LoadGenerator"
+}
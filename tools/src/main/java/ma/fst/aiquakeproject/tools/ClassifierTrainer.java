@@ -0,0 +1,309 @@
+package ma.fst.aiquakeproject.tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import ma.fst.aiquakeproject.dsp.DetectionEngine;
+import ma.fst.aiquakeproject.dsp.Resampler;
+import ma.fst.aiquakeproject.dsp.SpectralFeatures;
+import ma.fst.aiquakeproject.dsp.StumpEnsemble;
+import ma.fst.aiquakeproject.dsp.WindowClassifier;
+
+/**
+ * Trains the {@link StumpEnsemble} the app loads from
+ * {@code assets/models/classifier.aqm}, from labelled traces replayed through
+ * the same resampler and {@link DetectionEngine} features.
+ *
+ * <pre>
+ * ClassifierTrainer --labels labels.csv [--rounds 64] [--event-ms 20000] [--cutoff 0]
+ *                   [--out classifier.aqm] &lt;trace.csv | directory&gt;...
+ * </pre>
+ *
+ * Windows that end before the labelled onset, and all windows of unlabelled
+ * traces, are negatives. Windows that lie entirely within {@code event-ms}
+ * after the onset are positives; the rest are left out. Training is logistic
+ * boosting with one Newton step per stump, over per-feature quantile bins.
+ */
+public final class ClassifierTrainer {
+
+    public static final int ROUNDS = 64;
+    public static final float LEARNING_RATE = 0.3f;
+    public static final long EVENT_MS = 20_000;
+
+    // Split candidates per feature
+    private static final int BINS = 32;
+    private static final double L2 = 1.0;
+    private static final long WINDOW_MS =
+            (long) (DetectionEngine.WINDOW_SIZE * 1000 / DetectionEngine.SAMPLING_RATE);
+
+    /** Labelled feature vectors, stored row-major. */
+    public static final class Dataset {
+        private float[] rows = new float[1024 * WindowClassifier.FEATURE_COUNT];
+        private boolean[] labels = new boolean[1024];
+        private int size = 0;
+
+        public void add(float[] features, boolean quake) {
+            if (size == labels.length) {
+                rows = Arrays.copyOf(rows, rows.length * 2);
+                labels = Arrays.copyOf(labels, labels.length * 2);
+            }
+            System.arraycopy(features, 0, rows, size * WindowClassifier.FEATURE_COUNT, WindowClassifier.FEATURE_COUNT);
+            labels[size++] = quake;
+        }
+
+        public void addAll(Dataset other) {
+            float[] row = new float[WindowClassifier.FEATURE_COUNT];
+            for (int i = 0; i < other.size; i++) {
+                System.arraycopy(other.rows, i * WindowClassifier.FEATURE_COUNT, row, 0, row.length);
+                add(row, other.labels[i]);
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int positives() {
+            int n = 0;
+            for (int i = 0; i < size; i++) if (labels[i]) n++;
+            return n;
+        }
+
+        float value(int row, int feature) {
+            return rows[row * WindowClassifier.FEATURE_COUNT + feature];
+        }
+
+        boolean label(int row) {
+            return labels[row];
+        }
+
+        void copyRow(int row, float[] out) {
+            System.arraycopy(rows, row * WindowClassifier.FEATURE_COUNT, out, 0, out.length);
+        }
+    }
+
+    private ClassifierTrainer() {}
+
+    /** Features of every {@link SpectralFeatures#HOP}-th window of {@code trace}, labelled as described above. */
+    public static Dataset collect(Trace trace, long eventMs) {
+        Dataset data = new Dataset();
+        DetectionEngine engine = new DetectionEngine();
+        float[] features = new float[WindowClassifier.FEATURE_COUNT];
+        int[] windows = {0};
+        Resampler resampler = new Resampler(DetectionEngine.SAMPLING_RATE, Resampler.MAX_GAP_NS,
+                (timestampNs, x, y, z) -> {
+                    if (!engine.addSample(x, y, z)) return;
+                    if (windows[0]++ % SpectralFeatures.HOP != 0) return;
+                    long endMs = timestampNs / 1_000_000L;
+                    engine.getFeatures(features);
+                    if (!trace.hasEvent() || endMs < trace.onsetMs) {
+                        data.add(features, false);
+                    } else if (endMs - WINDOW_MS >= trace.onsetMs && endMs < trace.onsetMs + eventMs) {
+                        data.add(features, true);
+                    }
+                });
+        for (int i = 0; i < trace.size(); i++) {
+            resampler.add(trace.timestamps[i] * 1_000_000L, trace.x[i], trace.y[i], trace.z[i]);
+        }
+        return data;
+    }
+
+    /**
+     * Boosts {@code rounds} stumps and quantizes their leaves to 16 bits.
+     *
+     * @param cutoff decision threshold on the log-odds; 0 is a probability of one half
+     */
+    public static StumpEnsemble train(Dataset data, int rounds, float learningRate, float cutoff) {
+        if (rounds > StumpEnsemble.MAX_STUMPS) {
+            throw new IllegalArgumentException("At most " + StumpEnsemble.MAX_STUMPS + " rounds");
+        }
+        int n = data.size();
+        int positives = data.positives();
+        if (positives == 0 || positives == n) {
+            throw new IllegalArgumentException("Need both quake and noise windows, got " + positives + "/" + n);
+        }
+
+        // Quantile split candidates, and each row's bin: value <= thresholds[f][b] for all b >= bin
+        int features = WindowClassifier.FEATURE_COUNT;
+        float[][] thresholds = new float[features][BINS];
+        byte[][] bins = new byte[features][n];
+        float[] column = new float[n];
+        for (int f = 0; f < features; f++) {
+            for (int i = 0; i < n; i++) column[i] = data.value(i, f);
+            float[] sorted = column.clone();
+            Arrays.sort(sorted);
+            for (int b = 0; b < BINS; b++) thresholds[f][b] = sorted[(int) ((long) (b + 1) * (n - 1) / (BINS + 1))];
+            for (int i = 0; i < n; i++) {
+                int b = Arrays.binarySearch(thresholds[f], column[i]);
+                if (b < 0) {
+                    b = -b - 1;
+                } else {
+                    // First of equal thresholds
+                    while (b > 0 && thresholds[f][b - 1] == column[i]) b--;
+                }
+                bins[f][i] = (byte) b;
+            }
+        }
+
+        double prior = Math.log((double) positives / (n - positives));
+        double[] margin = new double[n];
+        Arrays.fill(margin, prior);
+        double[] grad = new double[n];
+        double[] hess = new double[n];
+        double[] binGrad = new double[BINS + 1];
+        double[] binHess = new double[BINS + 1];
+
+        byte[] stumpFeature = new byte[rounds];
+        float[] stumpThreshold = new float[rounds];
+        double[] leftLeaf = new double[rounds];
+        double[] rightLeaf = new double[rounds];
+        for (int r = 0; r < rounds; r++) {
+            double totalGrad = 0;
+            double totalHess = 0;
+            for (int i = 0; i < n; i++) {
+                double p = 1 / (1 + Math.exp(-margin[i]));
+                grad[i] = (data.label(i) ? 1 : 0) - p;
+                hess[i] = Math.max(p * (1 - p), 1e-6);
+                totalGrad += grad[i];
+                totalHess += hess[i];
+            }
+
+            double bestGain = -1;
+            int bestFeature = 0;
+            int bestBin = 0;
+            double bestLeftGrad = 0;
+            double bestLeftHess = 0;
+            for (int f = 0; f < features; f++) {
+                Arrays.fill(binGrad, 0);
+                Arrays.fill(binHess, 0);
+                for (int i = 0; i < n; i++) {
+                    binGrad[bins[f][i]] += grad[i];
+                    binHess[bins[f][i]] += hess[i];
+                }
+                double g = 0;
+                double h = 0;
+                for (int b = 0; b < BINS; b++) {
+                    g += binGrad[b];
+                    h += binHess[b];
+                    double gr = totalGrad - g;
+                    double hr = totalHess - h;
+                    double gain = g * g / (h + L2) + gr * gr / (hr + L2);
+                    if (gain > bestGain) {
+                        bestGain = gain;
+                        bestFeature = f;
+                        bestBin = b;
+                        bestLeftGrad = g;
+                        bestLeftHess = h;
+                    }
+                }
+            }
+
+            stumpFeature[r] = (byte) bestFeature;
+            stumpThreshold[r] = thresholds[bestFeature][bestBin];
+            leftLeaf[r] = learningRate * bestLeftGrad / (bestLeftHess + L2);
+            rightLeaf[r] = learningRate * (totalGrad - bestLeftGrad) / (totalHess - bestLeftHess + L2);
+            for (int i = 0; i < n; i++) {
+                margin[i] += bins[bestFeature][i] <= bestBin ? leftLeaf[r] : rightLeaf[r];
+            }
+        }
+
+        double largest = 0;
+        for (int r = 0; r < rounds; r++) largest = Math.max(largest, Math.max(Math.abs(leftLeaf[r]), Math.abs(rightLeaf[r])));
+        float scale = largest > 0 ? (float) (largest / Short.MAX_VALUE) : 1f;
+        short[] left = new short[rounds];
+        short[] right = new short[rounds];
+        for (int r = 0; r < rounds; r++) {
+            left[r] = (short) Math.round(leftLeaf[r] / scale);
+            right[r] = (short) Math.round(rightLeaf[r] / scale);
+        }
+        return new StumpEnsemble(stumpFeature, stumpThreshold, left, right, scale, (float) prior, cutoff);
+    }
+
+    /** Share of windows the model labels correctly, as {true positive rate, true negative rate}. */
+    public static double[] rates(WindowClassifier model, Dataset data) {
+        float[] row = new float[WindowClassifier.FEATURE_COUNT];
+        int tp = 0;
+        int tn = 0;
+        int positives = 0;
+        for (int i = 0; i < data.size(); i++) {
+            data.copyRow(i, row);
+            boolean quake = model.isQuake(row);
+            if (data.label(i)) {
+                positives++;
+                if (quake) tp++;
+            } else if (!quake) {
+                tn++;
+            }
+        }
+        int negatives = data.size() - positives;
+        return new double[] {
+                positives > 0 ? (double) tp / positives : 0,
+                negatives > 0 ? (double) tn / negatives : 0};
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path labelsFile = null;
+        int rounds = ROUNDS;
+        long eventMs = EVENT_MS;
+        float cutoff = 0f;
+        Path out = Paths.get("classifier.aqm");
+        List<Path> inputs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--labels":
+                    labelsFile = Paths.get(args[++i]);
+                    break;
+                case "--rounds":
+                    rounds = Integer.parseInt(args[++i]);
+                    break;
+                case "--event-ms":
+                    eventMs = Long.parseLong(args[++i]);
+                    break;
+                case "--cutoff":
+                    cutoff = Float.parseFloat(args[++i]);
+                    break;
+                case "--out":
+                    out = Paths.get(args[++i]);
+                    break;
+                default:
+                    inputs.add(Paths.get(args[i]));
+            }
+        }
+        if (inputs.isEmpty() || labelsFile == null) {
+            System.err.println("Usage: ClassifierTrainer --labels labels.csv [--rounds 64] [--event-ms 20000] [--cutoff 0] [--out classifier.aqm] <trace.csv|dir>...");
+            System.exit(2);
+        }
+
+        Map<String, Long> labels = ReplayTool.readLabels(labelsFile);
+        ForkJoinPool pool = new ForkJoinPool();
+        Dataset data = new Dataset();
+        try {
+            List<Trace> traces = ReplayTool.loadTraces(pool, inputs, labels);
+            long window = eventMs;
+            List<Dataset> parts = pool.submit(() -> traces.parallelStream()
+                    .map(t -> collect(t, window))
+                    .collect(Collectors.toList())).join();
+            for (Dataset part : parts) data.addAll(part);
+        } finally {
+            pool.shutdown();
+        }
+
+        StumpEnsemble model = train(data, rounds, LEARNING_RATE, cutoff);
+        double[] rates = rates(model, data);
+        try (OutputStream stream = Files.newOutputStream(out)) {
+            model.write(stream);
+        }
+        System.out.printf("%d windows (%d quake), %d stumps, training TPR %.3f TNR %.3f, wrote %s%n",
+                data.size(), data.positives(), model.size(), rates[0], rates[1], out);
+    }
+}
@@ -0,0 +1,180 @@
+package ma.fst.aiquakeproject.tools;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ma.fst.aiquakeproject.net.DetectionRecord;
+import ma.fst.aiquakeproject.net.DetectionWire;
+
+/**
+ * Local stand-in for the backend's detection endpoints, for load tests. It
+ * takes {@code POST /api/detections} and {@code /api/detections/batch} in the
+ * binary wire format or as JSON, answers 201 with an {@code Accept-Post} header
+ * listing both, and records for every new
+ * {@code detectionId} when it arrived and how long after its timestamp.
+ * Repeated ids are counted and otherwise ignored, as the real server should.
+ *
+ * <p>Requests are handled on a fixed pool of threads, each optionally held for
+ * a fixed delay to stand in for a slow database.
+ */
+public final class IngestServer implements Closeable {
+
+    // The fields of one JSON detection the stand-in needs; DetectionRecord writes them first
+    private static final Pattern JSON_DETECTION = Pattern.compile("\"detectionId\":\"([^\"]*)\",\"timestamp\":(\\d+)");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long delayMs;
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+    // Guarded by this: per new detection, arrival time and latency in ms
+    private long[] arrivals = new long[1024];
+    private long[] latencies = new long[1024];
+    private int count = 0;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param port 0 for any free port
+     * @param delayMs how long each request is held before it is answered
+     */
+    public IngestServer(int port, int threads, long delayMs) throws IOException {
+        this.delayMs = delayMs;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        executor = Executors.newFixedThreadPool(threads, r -> new Thread(r, "ingest"));
+        server.setExecutor(executor);
+        server.createContext("/api/detections", this::handle);
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            String path = exchange.getRequestURI().getPath();
+            if (!"POST".equals(exchange.getRequestMethod())
+                    || !(path.equals("/api/detections") || path.equals("/api/detections/batch"))) {
+                rejected.incrementAndGet();
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            long now = System.currentTimeMillis();
+            String type = exchange.getRequestHeaders().getFirst("Content-Type");
+            List<String> ids = new ArrayList<>();
+            List<Long> timestamps = new ArrayList<>();
+            if (type != null && type.startsWith(DetectionWire.CONTENT_TYPE)) {
+                try {
+                    for (DetectionRecord r : DetectionWire.decodeDetections(body, 0, body.length)) {
+                        ids.add(r.detectionId);
+                        timestamps.add(r.timestampMs);
+                    }
+                } catch (IOException e) {
+                    rejected.incrementAndGet();
+                    exchange.sendResponseHeaders(400, -1);
+                    return;
+                }
+            } else {
+                Matcher m = JSON_DETECTION.matcher(new String(body, StandardCharsets.UTF_8));
+                while (m.find()) {
+                    ids.add(m.group(1));
+                    timestamps.add(Long.parseLong(m.group(2)));
+                }
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                if (seen.add(ids.get(i))) {
+                    record(now, now - timestamps.get(i));
+                } else {
+                    duplicates.incrementAndGet();
+                }
+            }
+            if (delayMs > 0) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.getResponseHeaders().set("Accept-Post", DetectionWire.CONTENT_TYPE + ", application/json");
+            exchange.sendResponseHeaders(201, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private synchronized void record(long arrivalMs, long latencyMs) {
+        if (count == arrivals.length) {
+            arrivals = Arrays.copyOf(arrivals, count * 2);
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        arrivals[count] = arrivalMs;
+        latencies[count] = latencyMs;
+        count++;
+    }
+
+    /** Distinct detections received. */
+    public synchronized int getDetectionCount() {
+        return count;
+    }
+
+    /** Arrival times of the distinct detections, in order of arrival. */
+    public synchronized long[] arrivalsMs() {
+        return Arrays.copyOf(arrivals, count);
+    }
+
+    /** Timestamp to arrival of each distinct detection, in order of arrival. */
+    public synchronized long[] latenciesMs() {
+        return Arrays.copyOf(latencies, count);
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /** Detections received again after they had been stored. */
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    /** Requests answered 4xx. */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
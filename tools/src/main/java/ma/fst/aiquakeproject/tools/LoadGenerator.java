@@ -0,0 +1,369 @@
+package ma.fst.aiquakeproject.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import ma.fst.aiquakeproject.dsp.HandlingGate;
+import ma.fst.aiquakeproject.metrics.MetricsSnapshot;
+import ma.fst.aiquakeproject.metrics.PipelineMetrics;
+import ma.fst.aiquakeproject.net.DetectionRecord;
+import ma.fst.aiquakeproject.net.DetectionUploadQueue;
+import ma.fst.aiquakeproject.net.SharedHttpClient;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
+/**
+ * Runs many virtual phones against the detections endpoint. Each device
+ * replays a trace through the app's detector, off line and as fast as the CPU
+ * allows; its confirmations are then played back in real time, each turned
+ * into a {@link DetectionRecord} stamped with the wall clock and handed to a
+ * {@link DetectionUploadQueue} of its own, as on a phone.
+ *
+ * <pre>
+ * LoadGenerator [--devices 100] [--waves 1] [--interval-s 60] [--radius-km 20] [--speed-km-s 6]
+ *               [--speedup 1] [--seed 1] [--url http://host:3000] [--server-threads 8]
+ *               [--server-delay-ms 0] [--threads N] [trace.csv | directory]...
+ * </pre>
+ *
+ * Without traces every device gets a synthetic one: background noise, and
+ * {@code --waves} quakes {@code --interval-s} apart from random epicentres,
+ * each reaching a device when a wave at {@code --speed-km-s} gets there, so
+ * nearby devices confirm within moments of each other. With traces, device
+ * {@code i} replays trace {@code i % n}, all starting together.
+ *
+ * <p>Without {@code --url} the detections go to a local {@link IngestServer},
+ * which times every arrival against the detection's timestamp. With a real
+ * server only the upload queues' own delivery histogram is there to report,
+ * accurate to 25%. {@code --speedup} plays the schedule back faster than real
+ * time, which packs the same detections into less time.
+ */
+public final class LoadGenerator {
+
+    public static final long FIRST_WAVE_MS = 10_000;
+    public static final long SHAKING_MS = 15_000;
+    /** Recorded after the last wave, so its confirmation is in the trace. */
+    public static final long TAIL_MS = 20_000;
+    private static final double BASE_LATITUDE = 34.02;
+    private static final double BASE_LONGITUDE = -6.84;
+    private static final double KM_PER_DEGREE = 111.2;
+
+    /** One virtual phone: where it is and what its accelerometer sees. */
+    public static final class Device {
+        public final String id;
+        public final double latitude;
+        public final double longitude;
+        public final Trace trace;
+
+        public Device(String id, double latitude, double longitude, Trace trace) {
+            this.id = id;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.trace = trace;
+        }
+    }
+
+    /** Outcome of one run. */
+    public static final class Report {
+        public final int devices;
+        /** Confirmations played back, and detections the upload queues got accepted or gave up on. */
+        public final long detections;
+        public final long sent;
+        public final long dropped;
+        public final long failedAttempts;
+        /** Distinct detections the stand-in received, and repeats it ignored; -1 against a real server. */
+        public final long received;
+        public final long duplicates;
+        /** Timestamp to arrival at the stand-in, sorted; empty against a real server. */
+        public final long[] latencyMs;
+        /** First to last arrival at the stand-in. */
+        public final long arrivalSpanMs;
+        /** Most arrivals at the stand-in within one wall-clock second. */
+        public final int peakPerSecond;
+        /** The upload queues' own timestamp-to-acceptance histogram. */
+        public final MetricsSnapshot.Histogram delivery;
+
+        Report(int devices, long detections, long sent, long dropped, long failedAttempts, IngestServer server,
+               MetricsSnapshot.Histogram delivery) {
+            this.devices = devices;
+            this.detections = detections;
+            this.sent = sent;
+            this.dropped = dropped;
+            this.failedAttempts = failedAttempts;
+            this.delivery = delivery;
+            if (server == null) {
+                received = -1;
+                duplicates = -1;
+                latencyMs = new long[0];
+                arrivalSpanMs = 0;
+                peakPerSecond = 0;
+                return;
+            }
+            received = server.getDetectionCount();
+            duplicates = server.getDuplicateCount();
+            latencyMs = server.latenciesMs();
+            Arrays.sort(latencyMs);
+            long[] arrivals = server.arrivalsMs();
+            Arrays.sort(arrivals);
+            arrivalSpanMs = arrivals.length > 0 ? arrivals[arrivals.length - 1] - arrivals[0] : 0;
+            int peak = 0;
+            for (int i = 0, j = 0; i < arrivals.length; i++) {
+                while (arrivals[i] - arrivals[j] >= 1000) j++;
+                peak = Math.max(peak, i - j + 1);
+            }
+            peakPerSecond = peak;
+        }
+
+        /** Quantile {@code q} of the stand-in's latencies, or the queues' own with a real server. */
+        public long latencyQuantileMs(double q) {
+            if (latencyMs.length == 0) return delivery.quantileNs(q) / 1_000_000L;
+            return latencyMs[Math.min(latencyMs.length - 1, (int) (q * latencyMs.length))];
+        }
+
+        /** Detections accepted per second while they were arriving. */
+        public double detectionsPerSecond() {
+            if (received <= 1 || arrivalSpanMs <= 0) return 0;
+            return (received - 1) * 1000.0 / arrivalSpanMs;
+        }
+    }
+
+    private LoadGenerator() {}
+
+    /**
+     * Devices spread uniformly over a disc of {@code radiusKm}, each with a
+     * synthetic trace in which every wave shakes it from its arrival on.
+     */
+    public static List<Device> quakeWaves(int count, int waves, long intervalMs, double radiusKm, double speedKmS,
+                                          long seed) {
+        Random random = new Random(seed);
+        double[][] epicentres = new double[waves][];
+        for (int w = 0; w < waves; w++) epicentres[w] = pointInDisc(random, radiusKm);
+        long durationMs = FIRST_WAVE_MS + (waves - 1) * intervalMs + TAIL_MS;
+        List<Device> devices = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double[] at = pointInDisc(random, radiusKm);
+            long[] arrivals = new long[waves];
+            for (int w = 0; w < waves; w++) {
+                double km = Math.hypot(at[0] - epicentres[w][0], at[1] - epicentres[w][1]);
+                arrivals[w] = FIRST_WAVE_MS + w * intervalMs + Math.round(km / speedKmS * 1000);
+            }
+            String id = String.format(Locale.ROOT, "load-%04d", i);
+            double latitude = BASE_LATITUDE + at[1] / KM_PER_DEGREE;
+            double longitude = BASE_LONGITUDE + at[0] / (KM_PER_DEGREE * Math.cos(Math.toRadians(BASE_LATITUDE)));
+            devices.add(new Device(id, latitude, longitude,
+                    synthesize(id, durationMs, arrivals, random.nextLong())));
+        }
+        return devices;
+    }
+
+    private static double[] pointInDisc(Random random, double radius) {
+        double r = radius * Math.sqrt(random.nextDouble());
+        double angle = 2 * Math.PI * random.nextDouble();
+        return new double[] {r * Math.cos(angle), r * Math.sin(angle)};
+    }
+
+    // A phone lying flat at 50 Hz, shaken at 3 Hz for SHAKING_MS from each arrival
+    private static Trace synthesize(String name, long durationMs, long[] arrivalsMs, long seed) {
+        Random random = new Random(seed);
+        int n = (int) (durationMs / 20);
+        long[] timestamps = new long[n];
+        float[] x = new float[n];
+        float[] y = new float[n];
+        float[] z = new float[n];
+        for (int i = 0; i < n; i++) {
+            long t = i * 20L;
+            float shake = 0f;
+            for (long arrival : arrivalsMs) {
+                if (t >= arrival && t < arrival + SHAKING_MS) {
+                    shake = 1.5f * (float) Math.sin(2 * Math.PI * 3 * (t - arrival) / 1000.0);
+                }
+            }
+            timestamps[i] = t;
+            x[i] = 0.02f * (float) random.nextGaussian();
+            y[i] = 0.02f * (float) random.nextGaussian();
+            z[i] = 9.81f + shake + 0.02f * (float) random.nextGaussian();
+        }
+        return new Trace(name, timestamps, x, y, z, arrivalsMs.length > 0 ? arrivalsMs[0] : -1);
+    }
+
+    /** Device {@code i} replays {@code traces.get(i % n)}, at the default location. */
+    public static List<Device> replaying(int count, List<Trace> traces) {
+        List<Device> devices = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            devices.add(new Device(String.format(Locale.ROOT, "load-%04d", i), BASE_LATITUDE, BASE_LONGITUDE,
+                    traces.get(i % traces.size())));
+        }
+        return devices;
+    }
+
+    /**
+     * Replays every device's trace on {@code pool}, then plays the
+     * confirmations back against {@code serverUrl} and waits until each one
+     * was delivered or dropped, or {@code timeoutMs} passed.
+     *
+     * @param server the stand-in behind {@code serverUrl}, or null for a real server
+     * @param queueDir parent of the devices' upload queue directories
+     */
+    public static Report run(ForkJoinPool pool, List<Device> devices, String serverUrl, IngestServer server,
+                             double speedup, Path queueDir, long timeoutMs) throws IOException, InterruptedException {
+        List<List<TraceReplay.Confirmation>> schedules = pool.submit(() -> devices.parallelStream()
+                .map(d -> TraceReplay.confirmations(d.trace))
+                .collect(Collectors.toList())).join();
+        long detections = schedules.stream().mapToLong(List::size).sum();
+
+        // One connection per phone, as on the real network
+        OkHttpClient client = SharedHttpClient.get().newBuilder()
+                .connectionPool(new ConnectionPool(devices.size(), 5, TimeUnit.MINUTES))
+                .build();
+        List<DetectionUploadQueue> queues = new ArrayList<>(devices.size());
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> new Thread(r, "load"));
+        try {
+            for (int i = 0; i < devices.size(); i++) {
+                File dir = queueDir.resolve(devices.get(i).id).toFile();
+                queues.add(new DetectionUploadQueue(dir, client, serverUrl));
+            }
+            // A moment for the scheduler to take every entry before the first is due
+            long startNs = System.nanoTime() + 500_000_000L;
+            for (int i = 0; i < devices.size(); i++) {
+                Device device = devices.get(i);
+                DetectionUploadQueue queue = queues.get(i);
+                long traceStart = device.trace.size() > 0 ? device.trace.timestamps[0] : 0;
+                for (TraceReplay.Confirmation c : schedules.get(i)) {
+                    long dueNs = startNs + (long) ((c.timeMs - traceStart) * 1_000_000L / speedup);
+                    scheduler.schedule(() -> queue.enqueue(new DetectionRecord(UUID.randomUUID().toString(),
+                                    System.currentTimeMillis(), device.latitude, device.longitude, 10f, 0,
+                                    c.energy, c.variance, c.peakCount, device.id, HandlingGate.State.SETTLED)),
+                            dueNs - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            }
+
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            while (System.currentTimeMillis() < deadline) {
+                long settled = 0;
+                for (DetectionUploadQueue q : queues) settled += q.getSentCount() + q.getDroppedCount();
+                if (settled >= detections) break;
+                Thread.sleep(50);
+            }
+        } finally {
+            scheduler.shutdownNow();
+            for (DetectionUploadQueue q : queues) q.close();
+        }
+
+        long sent = 0;
+        long dropped = 0;
+        long failed = 0;
+        for (DetectionUploadQueue q : queues) {
+            sent += q.getSentCount();
+            dropped += q.getDroppedCount();
+            failed += q.getFailedAttempts();
+        }
+        return new Report(devices.size(), detections, sent, dropped, failed, server,
+                PipelineMetrics.get().uploadDelivery.snapshot());
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int count = 100;
+        int waves = 1;
+        long intervalMs = 60_000;
+        double radiusKm = 20;
+        double speedKmS = 6;
+        double speedup = 1;
+        long seed = 1;
+        String url = null;
+        int serverThreads = 8;
+        long serverDelayMs = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Path> inputs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--devices":
+                    count = Integer.parseInt(args[++i]);
+                    break;
+                case "--waves":
+                    waves = Integer.parseInt(args[++i]);
+                    break;
+                case "--interval-s":
+                    intervalMs = Math.round(Double.parseDouble(args[++i]) * 1000);
+                    break;
+                case "--radius-km":
+                    radiusKm = Double.parseDouble(args[++i]);
+                    break;
+                case "--speed-km-s":
+                    speedKmS = Double.parseDouble(args[++i]);
+                    break;
+                case "--speedup":
+                    speedup = Double.parseDouble(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--url":
+                    url = args[++i];
+                    break;
+                case "--server-threads":
+                    serverThreads = Integer.parseInt(args[++i]);
+                    break;
+                case "--server-delay-ms":
+                    serverDelayMs = Long.parseLong(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        System.err.println("Usage: LoadGenerator [--devices 100] [--waves 1] [--interval-s 60] [--radius-km 20] [--speed-km-s 6] [--speedup 1] [--seed 1] [--url http://host:3000] [--server-threads 8] [--server-delay-ms 0] [--threads N] [trace.csv|dir]...");
+                        System.exit(2);
+                    }
+                    inputs.add(Paths.get(args[i]));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        IngestServer server = url == null ? new IngestServer(0, serverThreads, serverDelayMs) : null;
+        Path queueDir = Files.createTempDirectory("aiquake-load");
+        try {
+            List<Device> devices = inputs.isEmpty()
+                    ? quakeWaves(count, waves, intervalMs, radiusKm, speedKmS, seed)
+                    : replaying(count, ReplayTool.loadTraces(pool, inputs, new HashMap<>()));
+            String target = server != null ? server.getUrl() : url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+            System.out.println("Running " + devices.size() + " devices against " + target);
+            long timeoutMs = 120_000 + devices.stream().mapToLong(d -> d.trace.durationMs()).max().orElse(0);
+            Report r = run(pool, devices, target, server, speedup, queueDir, timeoutMs);
+            System.out.println("devices  detections  sent  dropped  retries  received  duplicates"
+                    + "  p50_ms  p90_ms  p99_ms  max_ms  per_s  peak_per_s");
+            System.out.printf(Locale.ROOT, "%7d  %10d  %4d  %7d  %7d  %8d  %10d  %6d  %6d  %6d  %6d  %5.1f  %10d%n",
+                    r.devices, r.detections, r.sent, r.dropped, r.failedAttempts, r.received, r.duplicates,
+                    r.latencyQuantileMs(0.5), r.latencyQuantileMs(0.9), r.latencyQuantileMs(0.99),
+                    r.latencyMs.length > 0 ? r.latencyMs[r.latencyMs.length - 1] : r.delivery.maxNs / 1_000_000L,
+                    r.detectionsPerSecond(), r.peakPerSecond);
+        } finally {
+            if (server != null) server.close();
+            pool.shutdown();
+            deleteRecursively(queueDir);
+        }
+    }
+}
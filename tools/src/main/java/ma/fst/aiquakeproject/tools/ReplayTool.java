@@ -0,0 +1,256 @@
+package ma.fst.aiquakeproject.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import ma.fst.aiquakeproject.dsp.QuakeMonitor;
+import ma.fst.aiquakeproject.dsp.StumpEnsemble;
+import ma.fst.aiquakeproject.dsp.ThresholdClassifier;
+import ma.fst.aiquakeproject.dsp.WindowClassifier;
+import ma.fst.aiquakeproject.utils.FlightRecordExporter;
+
+/**
+ * Replays recorded traces through the detector, in parallel on a fork/join
+ * pool, for every combination of the confirmation parameters given.
+ *
+ * <pre>
+ * ReplayTool [--labels labels.csv] [--streak 5,10] [--min-time 2000,3000]
+ *            [--gate on,off] [--handling on,off] [--model classifier.aqm] [--threads N]
+ *            &lt;trace.csv | directory&gt;...
+ * </pre>
+ *
+ * The labels file has {@code file,onset_ms} rows; traces it does not list are
+ * treated as noise-only, so every confirmation in them is a false positive.
+ * {@code --model} replaces the threshold rule with a model written by
+ * {@link ClassifierTrainer}. {@code --handling off} ignores the handling
+ * evidence recorded next to the traces, to see what the gating saves.
+ */
+public final class ReplayTool {
+
+    /** Aggregate over all traces for one parameter set. */
+    public static final class Summary {
+        public final int requiredStreak;
+        public final long minDetectionTimeMs;
+        public final boolean gated;
+        public final boolean handling;
+        public final long samples;
+        public final double noiseHours;
+        public final int falsePositives;
+        public final int events;
+        public final int detected;
+        public final long[] timeToConfirmMs;
+        public final double samplesPerSecond;
+        /** Share of grid samples the feature engine had to process. */
+        public final double engineShare;
+        /** Share of grid samples skipped because the device was being handled. */
+        public final double handledShare;
+
+        Summary(int requiredStreak, long minDetectionTimeMs, boolean gated, boolean handling,
+                List<TraceReplay.Result> results, long elapsedNs) {
+            this.requiredStreak = requiredStreak;
+            this.minDetectionTimeMs = minDetectionTimeMs;
+            this.gated = gated;
+            this.handling = handling;
+            long totalSamples = 0;
+            long gridSamples = 0;
+            long evaluated = 0;
+            long handled = 0;
+            long noiseMs = 0;
+            int fp = 0;
+            int eventCount = 0;
+            List<Long> ttc = new ArrayList<>();
+            for (TraceReplay.Result r : results) {
+                totalSamples += r.samples;
+                gridSamples += r.gridSamples;
+                evaluated += r.evaluatedSamples;
+                handled += r.handledSamples;
+                noiseMs += r.noiseMs;
+                fp += r.falsePositives;
+                if (r.hasEvent) {
+                    eventCount++;
+                    if (r.timeToConfirmMs >= 0) ttc.add(r.timeToConfirmMs);
+                }
+            }
+            samples = totalSamples;
+            noiseHours = noiseMs / 3_600_000.0;
+            falsePositives = fp;
+            events = eventCount;
+            detected = ttc.size();
+            timeToConfirmMs = ttc.stream().mapToLong(Long::longValue).sorted().toArray();
+            samplesPerSecond = elapsedNs > 0 ? totalSamples * 1e9 / elapsedNs : 0;
+            engineShare = gridSamples > 0 ? (double) evaluated / gridSamples : 0;
+            handledShare = gridSamples > 0 ? (double) handled / gridSamples : 0;
+        }
+
+        public double falsePositivesPerHour() {
+            return noiseHours > 0 ? falsePositives / noiseHours : 0;
+        }
+
+        public long medianTimeToConfirmMs() {
+            return timeToConfirmMs.length == 0 ? -1 : timeToConfirmMs[timeToConfirmMs.length / 2];
+        }
+    }
+
+    private ReplayTool() {}
+
+    public static Summary evaluate(ForkJoinPool pool, List<Trace> traces, int requiredStreak, long minDetectionTimeMs) {
+        return evaluate(pool, traces, requiredStreak, minDetectionTimeMs, true);
+    }
+
+    public static Summary evaluate(ForkJoinPool pool, List<Trace> traces, int requiredStreak, long minDetectionTimeMs,
+                                   boolean gated) {
+        return evaluate(pool, traces, requiredStreak, minDetectionTimeMs, gated, new ThresholdClassifier());
+    }
+
+    public static Summary evaluate(ForkJoinPool pool, List<Trace> traces, int requiredStreak, long minDetectionTimeMs,
+                                   boolean gated, WindowClassifier classifier) {
+        return evaluate(pool, traces, requiredStreak, minDetectionTimeMs, gated, classifier, true);
+    }
+
+    public static Summary evaluate(ForkJoinPool pool, List<Trace> traces, int requiredStreak, long minDetectionTimeMs,
+                                   boolean gated, WindowClassifier classifier, boolean handling) {
+        long start = System.nanoTime();
+        List<TraceReplay.Result> results = pool.submit(() -> traces.parallelStream()
+                .map(t -> TraceReplay.run(t, requiredStreak, minDetectionTimeMs, gated, classifier, handling))
+                .collect(Collectors.toList())).join();
+        return new Summary(requiredStreak, minDetectionTimeMs, gated, handling, results, System.nanoTime() - start);
+    }
+
+    public static Map<String, Long> readLabels(Path file) throws IOException {
+        Map<String, Long> labels = new HashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            String[] parts = line.split(",");
+            if (parts.length < 2 || parts[0].equals("file")) continue;
+            labels.put(parts[0].trim(), Long.parseLong(parts[1].trim()));
+        }
+        return labels;
+    }
+
+    public static List<Trace> loadTraces(ForkJoinPool pool, List<Path> inputs, Map<String, Long> labels) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> stream = Files.list(input)) {
+                    stream.filter(p -> isTrace(p.getFileName().toString()))
+                            .sorted()
+                            .forEach(files::add);
+                }
+            } else {
+                files.add(input);
+            }
+        }
+        return pool.submit(() -> files.parallelStream().map(f -> {
+            try {
+                return Trace.read(f, labels.getOrDefault(f.getFileName().toString(), -1L));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).collect(Collectors.toList())).join();
+    }
+
+    private static boolean isTrace(String name) {
+        return name.endsWith(".csv") && !name.equals("labels.csv")
+                && !name.endsWith(FlightRecordExporter.HANDLING_SUFFIX);
+    }
+
+    public static StumpEnsemble readModel(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return StumpEnsemble.read(in);
+        }
+    }
+
+    private static int[] parseInts(String csv) {
+        return Arrays.stream(csv.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+    }
+
+    private static long[] parseLongs(String csv) {
+        return Arrays.stream(csv.split(",")).mapToLong(s -> Long.parseLong(s.trim())).toArray();
+    }
+
+    private static boolean[] parseSwitches(String csv) {
+        String[] values = csv.split(",");
+        boolean[] switches = new boolean[values.length];
+        for (int i = 0; i < values.length; i++) switches[i] = values[i].trim().equals("on");
+        return switches;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path labelsFile = null;
+        int[] streaks = {QuakeMonitor.REQUIRED_STREAK};
+        long[] minTimes = {QuakeMonitor.MIN_DETECTION_TIME_MS};
+        boolean[] gates = {true};
+        boolean[] handlings = {true};
+        WindowClassifier classifier = new ThresholdClassifier();
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Path> inputs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--labels":
+                    labelsFile = Paths.get(args[++i]);
+                    break;
+                case "--streak":
+                    streaks = parseInts(args[++i]);
+                    break;
+                case "--min-time":
+                    minTimes = parseLongs(args[++i]);
+                    break;
+                case "--gate":
+                    gates = parseSwitches(args[++i]);
+                    break;
+                case "--handling":
+                    handlings = parseSwitches(args[++i]);
+                    break;
+                case "--model":
+                    classifier = readModel(Paths.get(args[++i]));
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    inputs.add(Paths.get(args[i]));
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("Usage: ReplayTool [--labels labels.csv] [--streak 5,10] [--min-time 2000,3000] [--gate on,off] [--handling on,off] [--model classifier.aqm] [--threads N] <trace.csv|dir>...");
+            System.exit(2);
+        }
+
+        Map<String, Long> labels = labelsFile != null ? readLabels(labelsFile) : new HashMap<>();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Trace> traces = loadTraces(pool, inputs, labels);
+            System.out.println("Loaded " + traces.size() + " traces on " + threads + " threads");
+            System.out.println("streak  min_ms  gate  handling  events  detected  median_ttc_ms  fp  fp_per_hour"
+                    + "  engine_share  handled_share  samples_per_s");
+            for (int streak : streaks) {
+                for (long minTime : minTimes) {
+                    for (boolean gated : gates) {
+                        for (boolean handling : handlings) {
+                            Summary s = evaluate(pool, traces, streak, minTime, gated, classifier, handling);
+                            System.out.printf("%6d  %6d  %4s  %8s  %6d  %8d  %13d  %2d  %11.3f  %12.3f  %13.3f  %13.0f%n",
+                                    s.requiredStreak, s.minDetectionTimeMs, gated ? "on" : "off",
+                                    handling ? "on" : "off", s.events, s.detected, s.medianTimeToConfirmMs(),
+                                    s.falsePositives, s.falsePositivesPerHour(), s.engineShare, s.handledShare,
+                                    s.samplesPerSecond);
+                        }
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
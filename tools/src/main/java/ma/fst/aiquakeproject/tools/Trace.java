@@ -0,0 +1,119 @@
+package ma.fst.aiquakeproject.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ma.fst.aiquakeproject.dsp.HandlingGate;
+import ma.fst.aiquakeproject.utils.FlightRecordExporter;
+
+/**
+ * One recorded accelerometer trace in the CSV format FlightRecordExporter
+ * writes ({@code Timestamp,X,Y,Z,Latitude,Longitude}, timestamp in ms), held in
+ * primitive arrays so it can be replayed many times. Handling evidence comes
+ * from the {@code Timestamp,Evidence} file the exporter writes next to it,
+ * when there is one.
+ */
+public final class Trace {
+
+    public final String name;
+    public final long[] timestamps;
+    public final float[] x;
+    public final float[] y;
+    public final float[] z;
+    /** Labelled event onset in trace time (ms), or -1 for a noise-only trace. */
+    public final long onsetMs;
+    /** Handling evidence in trace time, oldest first; empty without a handling file. */
+    public final long[] handlingMs;
+    public final HandlingGate.Evidence[] handling;
+
+    public Trace(String name, long[] timestamps, float[] x, float[] y, float[] z, long onsetMs) {
+        this(name, timestamps, x, y, z, onsetMs, new long[0], new HandlingGate.Evidence[0]);
+    }
+
+    public Trace(String name, long[] timestamps, float[] x, float[] y, float[] z, long onsetMs,
+                 long[] handlingMs, HandlingGate.Evidence[] handling) {
+        this.name = name;
+        this.timestamps = timestamps;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.onsetMs = onsetMs;
+        this.handlingMs = handlingMs;
+        this.handling = handling;
+    }
+
+    public int size() {
+        return timestamps.length;
+    }
+
+    public long durationMs() {
+        return size() < 2 ? 0 : timestamps[size() - 1] - timestamps[0];
+    }
+
+    public boolean hasEvent() {
+        return onsetMs >= 0;
+    }
+
+    public boolean hasHandling() {
+        return handlingMs.length > 0;
+    }
+
+    public static Trace read(Path file, long onsetMs) throws IOException {
+        int capacity = 4096;
+        long[] ts = new long[capacity];
+        float[] xs = new float[capacity];
+        float[] ys = new float[capacity];
+        float[] zs = new float[capacity];
+        int n = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Older CSVLogger files repeat the header on every open
+                if (line.isEmpty() || line.startsWith("Timestamp")) continue;
+                String[] parts = line.split(",");
+                if (parts.length < 4) continue;
+                if (n == capacity) {
+                    capacity *= 2;
+                    ts = Arrays.copyOf(ts, capacity);
+                    xs = Arrays.copyOf(xs, capacity);
+                    ys = Arrays.copyOf(ys, capacity);
+                    zs = Arrays.copyOf(zs, capacity);
+                }
+                ts[n] = Long.parseLong(parts[0].trim());
+                xs[n] = Float.parseFloat(parts[1]);
+                ys[n] = Float.parseFloat(parts[2]);
+                zs[n] = Float.parseFloat(parts[3]);
+                n++;
+            }
+        }
+
+        List<long[]> events = new ArrayList<>();
+        Path sidecar = FlightRecordExporter.handlingFile(file.toFile()).toPath();
+        if (Files.exists(sidecar)) {
+            for (String line : Files.readAllLines(sidecar, StandardCharsets.UTF_8)) {
+                String[] parts = line.split(",");
+                if (parts.length < 2 || parts[0].equals("Timestamp")) continue;
+                HandlingGate.Evidence evidence = HandlingGate.Evidence.fromKey(parts[1].trim());
+                if (evidence == null) continue;
+                events.add(new long[] {Long.parseLong(parts[0].trim()), evidence.code});
+            }
+            events.sort((a, b) -> Long.compare(a[0], b[0]));
+        }
+        long[] handlingMs = new long[events.size()];
+        HandlingGate.Evidence[] handling = new HandlingGate.Evidence[events.size()];
+        for (int i = 0; i < handlingMs.length; i++) {
+            handlingMs[i] = events.get(i)[0];
+            handling[i] = HandlingGate.Evidence.fromCode((int) events.get(i)[1]);
+        }
+
+        return new Trace(file.getFileName().toString(), Arrays.copyOf(ts, n),
+                Arrays.copyOf(xs, n), Arrays.copyOf(ys, n), Arrays.copyOf(zs, n), onsetMs, handlingMs, handling);
+    }
+}
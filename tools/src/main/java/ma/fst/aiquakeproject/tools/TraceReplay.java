@@ -0,0 +1,175 @@
+package ma.fst.aiquakeproject.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ma.fst.aiquakeproject.dsp.DetectionEngine;
+import ma.fst.aiquakeproject.dsp.DetectorState;
+import ma.fst.aiquakeproject.dsp.HandlingGate;
+import ma.fst.aiquakeproject.dsp.QuakeMonitor;
+import ma.fst.aiquakeproject.dsp.Resampler;
+import ma.fst.aiquakeproject.dsp.StaLtaTrigger;
+import ma.fst.aiquakeproject.dsp.ThresholdClassifier;
+import ma.fst.aiquakeproject.dsp.WindowClassifier;
+
+/**
+ * Replays one {@link Trace} through the same {@link Resampler} and
+ * {@link QuakeMonitor} the app runs, on trace time and as fast as the CPU
+ * allows. A trace's handling evidence reaches the {@link HandlingGate}
+ * {@link #EVIDENCE_LATENCY_MS} after its time, as it would on the device, so
+ * the samples in between are judged without it.
+ */
+public final class TraceReplay {
+
+    /**
+     * How long after its timestamp handling evidence reaches the detection
+     * thread: a step is reported once it is complete, and the step detector is
+     * batched separately from the accelerometer.
+     */
+    public static final long EVIDENCE_LATENCY_MS = 1000;
+
+    /** Outcome of one trace under one parameter set. */
+    public static final class Result {
+        public final String trace;
+        public final long samples;
+        /** Time without a labelled event: the whole trace, or the part before onset. */
+        public final long noiseMs;
+        public final int falsePositives;
+        public final boolean hasEvent;
+        /** Onset to first confirmation at or after it, or -1 if the event was missed. */
+        public final long timeToConfirmMs;
+        /** Grid samples, and those that went through the feature engine. */
+        public final long gridSamples;
+        public final long evaluatedSamples;
+        /** Grid samples skipped as handled. */
+        public final long handledSamples;
+
+        Result(String trace, long samples, long noiseMs, int falsePositives, boolean hasEvent, long timeToConfirmMs,
+               long gridSamples, long evaluatedSamples, long handledSamples) {
+            this.trace = trace;
+            this.samples = samples;
+            this.noiseMs = noiseMs;
+            this.falsePositives = falsePositives;
+            this.hasEvent = hasEvent;
+            this.timeToConfirmMs = timeToConfirmMs;
+            this.gridSamples = gridSamples;
+            this.evaluatedSamples = evaluatedSamples;
+            this.handledSamples = handledSamples;
+        }
+    }
+
+    /** One confirmation, on trace time, with the features that confirmed it. */
+    public static final class Confirmation {
+        public final long timeMs;
+        public final float energy;
+        public final float variance;
+        public final int peakCount;
+
+        Confirmation(long timeMs, float energy, float variance, int peakCount) {
+            this.timeMs = timeMs;
+            this.energy = energy;
+            this.variance = variance;
+            this.peakCount = peakCount;
+        }
+    }
+
+    private TraceReplay() {}
+
+    /** Every confirmation the app's default detector makes over {@code trace}, oldest first. */
+    public static List<Confirmation> confirmations(Trace trace) {
+        Confirmations confirmations = new Confirmations(trace.onsetMs);
+        replay(trace, confirmations, QuakeMonitor.REQUIRED_STREAK, QuakeMonitor.MIN_DETECTION_TIME_MS, true,
+                new ThresholdClassifier(), true);
+        return confirmations.all;
+    }
+
+    public static Result run(Trace trace, int requiredStreak, long minDetectionTimeMs) {
+        return run(trace, requiredStreak, minDetectionTimeMs, true);
+    }
+
+    /** @param gated whether the STA/LTA trigger gates the engine, as in the app */
+    public static Result run(Trace trace, int requiredStreak, long minDetectionTimeMs, boolean gated) {
+        return run(trace, requiredStreak, minDetectionTimeMs, gated, new ThresholdClassifier());
+    }
+
+    /** @param classifier shared across threads, so it must be immutable */
+    public static Result run(Trace trace, int requiredStreak, long minDetectionTimeMs, boolean gated,
+                             WindowClassifier classifier) {
+        return run(trace, requiredStreak, minDetectionTimeMs, gated, classifier, true);
+    }
+
+    /** @param handling whether the trace's handling evidence gates the engine, as in the app */
+    public static Result run(Trace trace, int requiredStreak, long minDetectionTimeMs, boolean gated,
+                             WindowClassifier classifier, boolean handling) {
+        Confirmations confirmations = new Confirmations(trace.onsetMs);
+        QuakeMonitor monitor = replay(trace, confirmations, requiredStreak, minDetectionTimeMs, gated, classifier,
+                handling);
+
+        long noiseMs = trace.hasEvent()
+                ? Math.max(0, trace.onsetMs - (trace.size() > 0 ? trace.timestamps[0] : trace.onsetMs))
+                : trace.durationMs();
+        long timeToConfirm = confirmations.firstAfterOnset >= 0
+                ? confirmations.firstAfterOnset - trace.onsetMs : -1;
+        return new Result(trace.name, trace.size(), noiseMs, confirmations.falsePositives,
+                trace.hasEvent(), timeToConfirm, monitor.getSampleCount(), monitor.getEvaluatedSampleCount(),
+                monitor.getHandledSampleCount());
+    }
+
+    private static QuakeMonitor replay(Trace trace, Confirmations confirmations, int requiredStreak,
+                                       long minDetectionTimeMs, boolean gated, WindowClassifier classifier,
+                                       boolean handling) {
+        QuakeMonitor monitor = new QuakeMonitor(confirmations, requiredStreak, minDetectionTimeMs,
+                gated ? new StaLtaTrigger(DetectionEngine.SAMPLING_RATE) : null, classifier);
+        HandlingGate gate = new HandlingGate();
+        if (handling && trace.hasHandling()) {
+            gate.setAvailable(true);
+            monitor.setHandlingGate(gate);
+        }
+        int[] nextEvidence = {0};
+        Resampler resampler = new Resampler(DetectionEngine.SAMPLING_RATE, Resampler.MAX_GAP_NS,
+                (timestampNs, x, y, z) -> {
+                    long nowMs = timestampNs / 1_000_000L;
+                    confirmations.now = nowMs;
+                    if (gate.isAvailable()) {
+                        int e = nextEvidence[0];
+                        // Only what the device would have been told by now
+                        while (e < trace.handlingMs.length && trace.handlingMs[e] + EVIDENCE_LATENCY_MS <= nowMs) {
+                            gate.onEvidence(trace.handling[e], trace.handlingMs[e]);
+                            e++;
+                        }
+                        nextEvidence[0] = e;
+                    }
+                    monitor.onAcceleration(x, y, z, nowMs);
+                });
+
+        for (int i = 0; i < trace.size(); i++) {
+            resampler.add(trace.timestamps[i] * 1_000_000L, trace.x[i], trace.y[i], trace.z[i]);
+        }
+        return monitor;
+    }
+
+    private static final class Confirmations implements QuakeMonitor.Listener {
+        private final long onsetMs;
+        long now;
+        int falsePositives = 0;
+        long firstAfterOnset = -1;
+        final List<Confirmation> all = new ArrayList<>();
+
+        Confirmations(long onsetMs) {
+            this.onsetMs = onsetMs;
+        }
+
+        @Override
+        public void onStateChanged(DetectorState state, int seconds) {}
+
+        @Override
+        public void onQuakeConfirmed(float energy, float variance, int peakCount) {
+            all.add(new Confirmation(now, energy, variance, peakCount));
+            if (onsetMs < 0 || now < onsetMs) {
+                falsePositives++;
+            } else if (firstAfterOnset < 0) {
+                firstAfterOnset = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ma.fst.aiquakeproject.tools;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import ma.fst.aiquakeproject.dsp.QuakeMonitor;
+import ma.fst.aiquakeproject.dsp.StumpEnsemble;
+
+import static org.junit.Assert.*;
+
+public class ClassifierTrainerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void learnsToSeparateQuakesFromMachinery() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        TraceFixtures.write(dir, "event1.csv", 40, 10_000, 1.5f, 1);
+        TraceFixtures.write(dir, "event2.csv", 40, 15_000, 0.8f, 2);
+        TraceFixtures.write(dir, "quiet.csv", 60, -1, 0f, 3);
+        // Strong shaking above the band, from the start
+        TraceFixtures.write(dir, "machine.csv", 60, 0, 3f, 18f, 4);
+        Files.write(dir.resolve("labels.csv"), ("file,onset_ms\n"
+                + "event1.csv," + (TraceFixtures.START_MS + 10_000) + "\n"
+                + "event2.csv," + (TraceFixtures.START_MS + 15_000) + "\n").getBytes());
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<Trace> traces = ReplayTool.loadTraces(pool, Collections.singletonList(dir),
+                    ReplayTool.readLabels(dir.resolve("labels.csv")));
+            ClassifierTrainer.Dataset data = new ClassifierTrainer.Dataset();
+            for (Trace trace : traces) data.addAll(ClassifierTrainer.collect(trace, ClassifierTrainer.EVENT_MS));
+            assertTrue(data.positives() > 0 && data.positives() < data.size());
+
+            StumpEnsemble model = ClassifierTrainer.train(data, 32, ClassifierTrainer.LEARNING_RATE, 0f);
+            double[] rates = ClassifierTrainer.rates(model, data);
+            assertTrue("TPR " + rates[0], rates[0] > 0.95);
+            assertTrue("TNR " + rates[1], rates[1] > 0.99);
+
+            // What the app loads is what was trained
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            model.write(bytes);
+            StumpEnsemble loaded = StumpEnsemble.read(new ByteArrayInputStream(bytes.toByteArray()));
+            assertArrayEquals(rates, ClassifierTrainer.rates(loaded, data), 0.0);
+
+            ReplayTool.Summary summary = ReplayTool.evaluate(pool, traces,
+                    QuakeMonitor.REQUIRED_STREAK, QuakeMonitor.MIN_DETECTION_TIME_MS, true, loaded);
+            assertEquals(2, summary.detected);
+            assertEquals(0, summary.falsePositives);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ma.fst.aiquakeproject.tools;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import ma.fst.aiquakeproject.net.DetectionRecord;
+import ma.fst.aiquakeproject.net.SharedHttpClient;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import static org.junit.Assert.*;
+
+public class LoadGeneratorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ForkJoinPool pool;
+    private IngestServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new ForkJoinPool(4);
+        server = new IngestServer(0, 8, 0);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+        pool.shutdown();
+    }
+
+    @Test
+    public void quakeWavesReachEveryDevice() throws Exception {
+        List<LoadGenerator.Device> devices = LoadGenerator.quakeWaves(60, 2, 20_000, 5, 6, 1);
+        LoadGenerator.Report r = LoadGenerator.run(pool, devices, server.getUrl(), server, 20,
+                folder.newFolder("queues").toPath(), 30_000);
+
+        // Every device confirms each wave at least once
+        assertTrue(r.detections + " detections", r.detections >= 2 * devices.size());
+        assertEquals(r.detections, r.sent);
+        assertEquals(r.detections, r.received);
+        assertEquals(0, r.dropped);
+        assertEquals(0, r.duplicates);
+        assertEquals(r.received, r.latencyMs.length);
+        assertTrue(r.latencyQuantileMs(0.5) <= r.latencyQuantileMs(0.99));
+        assertTrue(r.peakPerSecond > 0);
+        assertTrue(r.detectionsPerSecond() > 0);
+    }
+
+    @Test
+    public void replaysRecordedTraces() throws Exception {
+        Path dir = folder.newFolder("traces").toPath();
+        TraceFixtures.write(dir, "event.csv", 30, 10_000, 1.5f, 3);
+        TraceFixtures.write(dir, "quiet.csv", 30, -1, 0f, 4);
+        List<Trace> traces = ReplayTool.loadTraces(pool, List.of(dir), Collections.emptyMap());
+        int perEvent = TraceReplay.confirmations(traces.get(0)).size();
+        assertTrue(perEvent > 0);
+        assertTrue(TraceReplay.confirmations(traces.get(1)).isEmpty());
+
+        LoadGenerator.Report r = LoadGenerator.run(pool, LoadGenerator.replaying(10, traces), server.getUrl(),
+                server, 20, folder.newFolder("queues").toPath(), 30_000);
+        assertEquals(5 * perEvent, r.detections);
+        assertEquals(r.detections, r.received);
+    }
+
+    @Test
+    public void standInIgnoresRepeatedDetections() throws Exception {
+        DetectionRecord record = new DetectionRecord("id-1", System.currentTimeMillis(), 34.02, -6.84, 10f, 0,
+                1f, 0.5f, 12, "phone1");
+        RequestBody body = RequestBody.create(record.toJson(), MediaType.get("application/json"));
+        for (int i = 0; i < 2; i++) {
+            Request request = new Request.Builder().url(server.getUrl() + "/api/detections").post(body).build();
+            try (Response response = SharedHttpClient.get().newCall(request).execute()) {
+                assertEquals(201, response.code());
+            }
+        }
+        assertEquals(1, server.getDetectionCount());
+        assertEquals(1, server.getDuplicateCount());
+    }
+}
@@ -0,0 +1,136 @@
+package ma.fst.aiquakeproject.tools;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import ma.fst.aiquakeproject.dsp.QuakeMonitor;
+import ma.fst.aiquakeproject.dsp.ThresholdClassifier;
+
+import static org.junit.Assert.*;
+
+public class ReplayToolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsCsvLoggerFormat() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        Path file = TraceFixtures.write(dir, "quiet.csv", 2, -1, 0f, 1);
+        // Older CSVLogger files repeat the header every time they were opened
+        Files.write(file, "Timestamp,X,Y,Z,Latitude,Longitude\n".getBytes(), StandardOpenOption.APPEND);
+
+        Trace trace = Trace.read(file, -1);
+        assertEquals(100, trace.size());
+        assertEquals(TraceFixtures.START_MS, trace.timestamps[0]);
+        assertEquals(9.81f, trace.z[0], 0.2f);
+        assertFalse(trace.hasEvent());
+    }
+
+    @Test
+    public void reportsTimeToConfirmAndFalsePositives() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        TraceFixtures.write(dir, "quiet1.csv", 60, -1, 0f, 1);
+        TraceFixtures.write(dir, "quiet2.csv", 60, -1, 0f, 2);
+        TraceFixtures.write(dir, "event1.csv", 30, 10_000, 1.5f, 3);
+        TraceFixtures.write(dir, "event2.csv", 30, 12_000, 1.5f, 4);
+        Files.write(dir.resolve("labels.csv"), ("file,onset_ms\n"
+                + "event1.csv," + (TraceFixtures.START_MS + 10_000) + "\n"
+                + "event2.csv," + (TraceFixtures.START_MS + 12_000) + "\n").getBytes());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Map<String, Long> labels = ReplayTool.readLabels(dir.resolve("labels.csv"));
+            List<Trace> traces = ReplayTool.loadTraces(pool, Collections.singletonList(dir), labels);
+            assertEquals(4, traces.size());
+
+            ReplayTool.Summary summary = ReplayTool.evaluate(pool, traces,
+                    QuakeMonitor.REQUIRED_STREAK, QuakeMonitor.MIN_DETECTION_TIME_MS);
+            assertEquals(2, summary.events);
+            assertEquals(2, summary.detected);
+            assertEquals(0, summary.falsePositives);
+            for (long ttc : summary.timeToConfirmMs) {
+                assertTrue("ttc " + ttc, ttc >= QuakeMonitor.MIN_DETECTION_TIME_MS && ttc < 8000);
+            }
+            assertTrue(summary.noiseHours > 0);
+            assertTrue(summary.samplesPerSecond > 0);
+
+            // A shorter minimum duration confirms sooner
+            ReplayTool.Summary faster = ReplayTool.evaluate(pool, traces, QuakeMonitor.REQUIRED_STREAK, 1000);
+            assertTrue(faster.medianTimeToConfirmMs() < summary.medianTimeToConfirmMs());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void gateKeepsTimeToConfirm() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        // Onsets well past the trigger's LTA warm-up, so the gate is really closed before them
+        TraceFixtures.write(dir, "late1.csv", 90, 60_000, 1.5f, 5);
+        TraceFixtures.write(dir, "late2.csv", 90, 70_000, 1.5f, 6);
+        TraceFixtures.write(dir, "quiet.csv", 120, -1, 0f, 7);
+        Files.write(dir.resolve("labels.csv"), ("file,onset_ms\n"
+                + "late1.csv," + (TraceFixtures.START_MS + 60_000) + "\n"
+                + "late2.csv," + (TraceFixtures.START_MS + 70_000) + "\n").getBytes());
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<Trace> traces = ReplayTool.loadTraces(pool, Collections.singletonList(dir),
+                    ReplayTool.readLabels(dir.resolve("labels.csv")));
+            ReplayTool.Summary gated = ReplayTool.evaluate(pool, traces,
+                    QuakeMonitor.REQUIRED_STREAK, QuakeMonitor.MIN_DETECTION_TIME_MS, true);
+            ReplayTool.Summary ungated = ReplayTool.evaluate(pool, traces,
+                    QuakeMonitor.REQUIRED_STREAK, QuakeMonitor.MIN_DETECTION_TIME_MS, false);
+
+            assertEquals(2, gated.detected);
+            assertArrayEquals(ungated.timeToConfirmMs, gated.timeToConfirmMs);
+            assertEquals(ungated.falsePositives, gated.falsePositives);
+            assertEquals(1.0, ungated.engineShare, 0.0);
+            assertTrue("engine share " + gated.engineShare, gated.engineShare < 0.6);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void handlingGateDropsFalsePositivesAndWork() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        TraceFixtures.writeHandled(dir, "carried1.csv", 120, new long[] {40_000, 80_000}, 10_000, 8);
+        TraceFixtures.writeHandled(dir, "carried2.csv", 120, new long[] {50_000}, 20_000, 9);
+        TraceFixtures.write(dir, "late.csv", 90, 60_000, 1.5f, 10);
+        Files.write(dir.resolve("labels.csv"), ("file,onset_ms\n"
+                + "late.csv," + (TraceFixtures.START_MS + 60_000) + "\n").getBytes());
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<Trace> traces = ReplayTool.loadTraces(pool, Collections.singletonList(dir),
+                    ReplayTool.readLabels(dir.resolve("labels.csv")));
+            assertEquals(3, traces.size());
+            ReplayTool.Summary gated = ReplayTool.evaluate(pool, traces, QuakeMonitor.REQUIRED_STREAK,
+                    QuakeMonitor.MIN_DETECTION_TIME_MS, true, new ThresholdClassifier(), true);
+            ReplayTool.Summary ungated = ReplayTool.evaluate(pool, traces, QuakeMonitor.REQUIRED_STREAK,
+                    QuakeMonitor.MIN_DETECTION_TIME_MS, true, new ThresholdClassifier(), false);
+
+            assertEquals(3, ungated.falsePositives);
+            assertEquals(0, gated.falsePositives);
+            // A trace without handling evidence is untouched
+            assertEquals(1, gated.detected);
+            assertArrayEquals(ungated.timeToConfirmMs, gated.timeToConfirmMs);
+            assertTrue("handled share " + gated.handledShare, gated.handledShare > 0.1);
+            assertTrue("engine share " + gated.engineShare + " vs " + ungated.engineShare,
+                    gated.engineShare < ungated.engineShare * 0.9);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ma.fst.aiquakeproject.tools;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+/** Writes synthetic traces in the recorder CSV format for replay tests. */
+final class TraceFixtures {
+
+    static final long START_MS = 1_700_000_000_000L;
+
+    private TraceFixtures() {}
+
+    /**
+     * Phone lying flat at 50 Hz: gravity plus sensor noise, with 3 Hz vertical
+     * shaking from {@code onsetMs} (relative to the start) when it is >= 0.
+     */
+    static Path write(Path dir, String name, int seconds, long onsetMs, float amplitude, long seed) throws IOException {
+        return write(dir, name, seconds, onsetMs, amplitude, 3f, seed);
+    }
+
+    /** Same, shaking at {@code hz} instead of 3 Hz. */
+    static Path write(Path dir, String name, int seconds, long onsetMs, float amplitude, float hz, long seed)
+            throws IOException {
+        Random random = new Random(seed);
+        Path file = dir.resolve(name);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("Timestamp,X,Y,Z,Latitude,Longitude\n");
+            for (int i = 0; i < seconds * 50; i++) {
+                long t = i * 20L;
+                float shake = onsetMs >= 0 && t >= onsetMs
+                        ? amplitude * (float) Math.sin(2 * Math.PI * hz * t / 1000.0) : 0f;
+                float x = 0.02f * (float) random.nextGaussian();
+                float y = 0.02f * (float) random.nextGaussian();
+                float z = 9.81f + shake + 0.02f * (float) random.nextGaussian();
+                writer.write(String.format(Locale.ROOT, "%d,%f,%f,%f,34.0,-6.8%n", START_MS + t, x, y, z));
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Noise-only trace in which the phone is carried around for
+     * {@code handledMs} from each of {@code handledAt} (relative to the
+     * start): shaking at walking cadence, with a step every half second in
+     * the handling file next to it.
+     */
+    static Path writeHandled(Path dir, String name, int seconds, long[] handledAt, long handledMs, long seed)
+            throws IOException {
+        Random random = new Random(seed);
+        Path file = dir.resolve(name);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+             Writer steps = Files.newBufferedWriter(dir.resolve(name.replace(".csv", ".handling.csv")),
+                     StandardCharsets.UTF_8)) {
+            writer.write("Timestamp,X,Y,Z,Latitude,Longitude\n");
+            steps.write("Timestamp,Evidence\n");
+            for (int i = 0; i < seconds * 50; i++) {
+                long t = i * 20L;
+                float shake = 0f;
+                for (long start : handledAt) {
+                    if (t < start || t >= start + handledMs) continue;
+                    shake = 1.5f * (float) Math.sin(2 * Math.PI * 2 * t / 1000.0);
+                    if ((t - start) % 500 == 0) steps.write(String.format(Locale.ROOT, "%d,step%n", START_MS + t));
+                }
+                float x = 0.02f * (float) random.nextGaussian();
+                float y = 0.02f * (float) random.nextGaussian();
+                float z = 9.81f + shake + 0.02f * (float) random.nextGaussian();
+                writer.write(String.format(Locale.ROOT, "%d,%f,%f,%f,34.0,-6.8%n", START_MS + t, x, y, z));
+            }
+        }
+        return file;
+    }
+}